@@ -0,0 +1,183 @@
+package com.koibots.scout.hub.benchmark;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+/**
+ * Compares two sets of JMH results (written with <code>-rf json</code>)
+ * and reports which benchmarks got slower.
+ *
+ * Exits with status 1 if any benchmark got slower by more than the
+ * threshold, so a run before an event can fail loudly. Benchmarks which
+ * only appear in one of the files are listed but never fail the
+ * comparison.
+ */
+public class BenchmarkComparison
+{
+    private static void usage(PrintStream out) {
+        out.println("Usage: " + BenchmarkComparison.class.getName() + " [options] baseline.json current.json");
+        out.println();
+        out.println("Options:");
+        out.println("    -t, --threshold pct  The slowdown allowed before failing, in percent. (default 10)");
+    }
+
+    public static void main(String[] args) throws Exception {
+        int argindex = 0;
+        double threshold = 10;
+
+        while(argindex < args.length && args[argindex].startsWith("-")) {
+            String arg = args[argindex++];
+
+            if("--threshold".equals(arg) || "-t".equals(arg)) {
+                threshold = Double.parseDouble(args[argindex++]);
+            } else if("--help".equals(arg) || "-h".equals(arg)) {
+                usage(System.out);
+
+                System.exit(0);
+            } else {
+                System.err.println("Unrecognized argument: " + arg);
+
+                usage(System.err);
+
+                System.exit(1);
+            }
+        }
+
+        if(args.length - argindex != 2) {
+            usage(System.err);
+
+            System.exit(1);
+        }
+
+        Path baselineFile = Paths.get(args[argindex++]);
+        Path currentFile = Paths.get(args[argindex++]);
+
+        if(!Files.exists(baselineFile)) {
+            System.err.println("No baseline at " + baselineFile + "; copy " + currentFile + " there to start one.");
+
+            System.exit(1);
+        }
+
+        Map<String,Result> baseline = readResults(baselineFile);
+        Map<String,Result> current = readResults(currentFile);
+
+        TreeMap<String,Boolean> names = new TreeMap<>();
+        baseline.keySet().forEach(name -> names.put(name, Boolean.TRUE));
+        current.keySet().forEach(name -> names.put(name, Boolean.TRUE));
+
+        System.out.println(String.format("%-80s %14s %14s %9s", "benchmark", "baseline", "current", "change"));
+
+        int regressions = 0;
+        for(String name : names.keySet()) {
+            Result before = baseline.get(name);
+            Result after = current.get(name);
+
+            if(null == before || null == after) {
+                System.out.println(String.format("%-80s %14s %14s %9s",
+                        name,
+                        null == before ? "-" : before.format(),
+                        null == after ? "-" : after.format(),
+                        ""));
+
+                continue;
+            }
+
+            // Positive means slower, whichever way the unit goes
+            double slowdown = (after.higherIsBetter() ? before.score / after.score - 1 : after.score / before.score - 1) * 100;
+
+            boolean regressed = slowdown > threshold;
+            if(regressed) {
+                ++regressions;
+            }
+
+            System.out.println(String.format("%-80s %14s %14s %+8.1f%%%s",
+                    name,
+                    before.format(),
+                    after.format(),
+                    -slowdown,
+                    regressed ? "  REGRESSION" : ""));
+        }
+
+        if(regressions > 0) {
+            System.out.println();
+            System.out.println(regressions + " benchmark(s) got more than " + threshold + "% slower.");
+
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Reads a JMH JSON result file.
+     *
+     * @return The results, by benchmark name and parameters.
+     */
+    private static Map<String,Result> readResults(Path file) throws IOException {
+        LinkedHashMap<String,Result> results = new LinkedHashMap<>();
+
+        try(Reader in = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            JsonArray array = JsonParser.parseReader(in).getAsJsonArray();
+
+            for(JsonElement element : array) {
+                JsonObject result = element.getAsJsonObject();
+
+                StringBuilder name = new StringBuilder(result.get("benchmark").getAsString()
+                        .replace(BenchmarkComparison.class.getPackageName() + ".", ""));
+
+                if(result.has("params")) {
+                    // Keep the parameter order stable
+                    TreeMap<String,String> params = new TreeMap<>();
+                    for(Map.Entry<String,JsonElement> param : result.getAsJsonObject("params").entrySet()) {
+                        params.put(param.getKey(), param.getValue().getAsString());
+                    }
+
+                    name.append(params);
+                }
+
+                JsonObject metric = result.getAsJsonObject("primaryMetric");
+
+                results.put(name.toString(), new Result(result.get("mode").getAsString(),
+                        metric.get("score").getAsDouble(),
+                        metric.get("scoreUnit").getAsString()));
+            }
+        }
+
+        return results;
+    }
+
+    private static final class Result {
+        final String mode;
+        final double score;
+        final String unit;
+
+        Result(String mode, double score, String unit) {
+            this.mode = mode;
+            this.score = score;
+            this.unit = unit;
+        }
+
+        /**
+         * Throughput is "operations per time"; everything else is "time
+         * per operation".
+         */
+        boolean higherIsBetter() {
+            return "thrpt".equals(mode);
+        }
+
+        String format() {
+            return String.format("%.3f %s", score, unit);
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package com.koibots.scout.hub.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.koibots.scout.hub.Project;
+
+/**
+ * Measures reading a database of a realistic size: fetching all the
+ * records for the editor, running the sample analysis query, and
+ * exporting to CSV.
+ *
+ * The sample query is written for Reefscape, so it is skipped for other
+ * games.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DatabaseBenchmark
+{
+    /**
+     * About a regional's worth of stand scouting: 80 matches, 6 robots,
+     * a few scouters each.
+     */
+    @Param({ "2000" })
+    public int records;
+
+    @Param({ SyntheticData.REEFSCAPE, SyntheticData.REBUILT_STAND })
+    public String game;
+
+    private Project project;
+    private String analysisQuery;
+
+    @Setup
+    public void setup() throws Exception {
+        project = SyntheticData.createProject(game, records);
+
+        File queryFile = new File(SyntheticData.getBaseDirectory(), "queries/" + game + "/simple_analysis.sql");
+        if(queryFile.exists()) {
+            analysisQuery = Files.readString(queryFile.toPath(), StandardCharsets.UTF_8).trim();
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        SyntheticData.deleteProject(project);
+    }
+
+    @Benchmark
+    public List<String[]> getRecords() throws Exception {
+        return project.getRecords();
+    }
+
+    @Benchmark
+    public List<Object[]> queryDatabase() throws Exception {
+        if(null == analysisQuery) {
+            return null;
+        }
+
+        return project.queryDatabase(analysisQuery);
+    }
+
+    @Benchmark
+    public void exportDatabase(Blackhole blackhole) throws Exception {
+        try(Writer out = new BlackholeWriter(blackhole)) {
+            project.exportDatabase(out);
+        }
+    }
+
+    /**
+     * Throws the CSV away without letting the JIT skip writing it.
+     */
+    private static final class BlackholeWriter
+        extends Writer
+    {
+        private final Blackhole blackhole;
+
+        BlackholeWriter(Blackhole blackhole) {
+            this.blackhole = blackhole;
+        }
+
+        @Override
+        public void write(char[] cbuf, int off, int len) {
+            blackhole.consume(cbuf);
+            blackhole.consume(len);
+        }
+
+        @Override
+        public void write(String str, int off, int len) {
+            blackhole.consume(str);
+            blackhole.consume(len);
+        }
+
+        @Override
+        public void flush() throws IOException {
+        }
+
+        @Override
+        public void close() throws IOException {
+        }
+    }
+}
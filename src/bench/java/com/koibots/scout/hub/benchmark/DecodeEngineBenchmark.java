@@ -0,0 +1,131 @@
+package com.koibots.scout.hub.benchmark;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.zxing.Result;
+import com.koibots.scout.hub.scan.DecodeEngine;
+import com.koibots.scout.hub.scan.DecodeStrategy;
+import com.koibots.scout.hub.scan.FrameDecoder;
+
+/**
+ * Compares the decode engines over a corpus of frames, one frame per
+ * operation, cycling through the corpus.
+ *
+ * <ul>
+ * <li>The score is the average time to decode a frame: the latency.</li>
+ * <li><code>found</code> / <code>codes</code> is the decode rate: the
+ *     fraction of frames with a code in them that were decoded.</li>
+ * <li><code>cpuMicros</code> / <code>frames</code> is the CPU time used per
+ *     frame by the whole process, which is more than the latency if the
+ *     engine uses more than one core.</li>
+ * </ul>
+ *
+ * The corpus is synthetic unless given, e.g.
+ * <code>-Djmh.args="-p corpus=/path/to/recording.frames DecodeEngine"</code>.
+ * See {@link FrameCorpus}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DecodeEngineBenchmark
+{
+    @Param({ "ZXING", "OPENCV" })
+    public DecodeEngine engine;
+
+    @Param({ "FULL", "ADAPTIVE" })
+    public DecodeStrategy.Mode mode;
+
+    @Param({ "1280x720" })
+    public String size;
+
+    @Param({ FrameCorpus.SYNTHETIC })
+    public String corpus;
+
+    private FrameCorpus frames;
+    private FrameDecoder decoder;
+    private DecodeStrategy strategy;
+    private int next;
+
+    /**
+     * The extra results, totalled over each iteration.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Counters {
+        public long frames;
+        public long codes;
+        public long found;
+        public long cpuMicros;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            frames = 0;
+            codes = 0;
+            found = 0;
+            cpuMicros = 0;
+        }
+    }
+
+    @Setup
+    public void setup() throws Exception {
+        frames = FrameCorpus.load(corpus, size);
+        decoder = engine.createDecoder();
+
+        strategy = new DecodeStrategy();
+        strategy.setMode(mode);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        System.out.println();
+        System.out.println(engine + " " + strategy);
+
+        decoder.close();
+        frames.close();
+    }
+
+    @Benchmark
+    public Result decode(Counters counters) {
+        int index = next;
+        next = (next + 1) % frames.size();
+
+        long cpuStart = getProcessCpuNanos();
+
+        Result result = strategy.decode(decoder, frames.getFrame(index));
+
+        counters.cpuMicros += (getProcessCpuNanos() - cpuStart) / 1000;
+        ++counters.frames;
+        if(frames.hasCode(index)) {
+            ++counters.codes;
+        }
+        if(null != result) {
+            ++counters.found;
+        }
+
+        return result;
+    }
+
+    private static long getProcessCpuNanos() {
+        return ((com.sun.management.OperatingSystemMXBean)ManagementFactory.getOperatingSystemMXBean()).getProcessCpuTime();
+    }
+}
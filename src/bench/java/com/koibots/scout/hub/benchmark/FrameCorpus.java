@@ -0,0 +1,177 @@
+package com.koibots.scout.hub.benchmark;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+import javax.imageio.ImageIO;
+
+import org.bytedeco.javacv.Frame;
+import org.bytedeco.javacv.Java2DFrameConverter;
+
+import com.google.zxing.WriterException;
+import com.koibots.scout.hub.scan.FrameLog;
+
+/**
+ * A set of camera frames to decode over and over in a benchmark.
+ *
+ * The corpus is one of:
+ *
+ * <ul>
+ * <li><code>synthetic</code>: a mix of frames with codes of different
+ *     sizes in different places, and frames with no code.</li>
+ * <li>A {@link FrameLog} file recorded from a real camera, e.g. with
+ *     <code>CodeScanner --test --record file</code>.</li>
+ * <li>A directory of images (PNG or JPEG), e.g. screenshots of real
+ *     camera frames.</li>
+ * </ul>
+ */
+public final class FrameCorpus
+{
+    public static final String SYNTHETIC = "synthetic";
+
+    /**
+     * The synthetic frames: code size and offsets from the middle, or
+     * <code>null</code> for a frame with no code. Most frames in real use
+     * have no code in them.
+     */
+    private static final double[][] SYNTHETIC_CODES = {
+        null,
+        { 0.4, 0, 0 },
+        null,
+        { 0.25, 0, 0 },
+        null,
+        { 0.55, 0, 0 },
+        null,
+        { 0.3, -0.25, 0.1 },
+        null,
+        { 0.4, 0.2, -0.15 },
+        null,
+        { 0.2, 0.05, 0.05 },
+    };
+
+    private final List<Frame> frames;
+    private final List<Boolean> hasCode;
+
+    /**
+     * The log the frames are in, if they're from one.
+     */
+    private final FrameLog log;
+
+    private FrameCorpus(List<Frame> frames, List<Boolean> hasCode, FrameLog log) {
+        this.frames = frames;
+        this.hasCode = hasCode;
+        this.log = log;
+    }
+
+    /**
+     * Loads a corpus.
+     *
+     * @param corpus {@link #SYNTHETIC}, or the path of a frame log or a
+     *        directory of images.
+     * @param size The size of synthetic frames, e.g. "1280x720". Images
+     *        are used at their own size.
+     *
+     * @return The corpus.
+     *
+     * @throws IOException If the images cannot be read.
+     * @throws WriterException If a synthetic code cannot be made.
+     */
+    public static FrameCorpus load(String corpus, String size) throws IOException, WriterException {
+        List<Frame> frames = new ArrayList<>();
+        List<Boolean> hasCode = new ArrayList<>();
+
+        if(new File(corpus).isFile()) {
+            FrameLog log = FrameLog.open(new File(corpus));
+
+            // The frames stay in the mapped file
+            for(int i=0; i<log.getFrameCount(); ++i) {
+                frames.add(log.getFrame(i));
+
+                // We don't know; count them all
+                hasCode.add(Boolean.TRUE);
+            }
+
+            return new FrameCorpus(frames, hasCode, log);
+        }
+
+        try(Java2DFrameConverter converter = new Java2DFrameConverter()) {
+            if(SYNTHETIC.equals(corpus)) {
+                int[] dimensions = SyntheticFrames.parseSize(size);
+                SyntheticData data = new SyntheticData(SyntheticData.readGame(SyntheticData.REEFSCAPE));
+
+                for(double[] code : SYNTHETIC_CODES) {
+                    BufferedImage image;
+                    if(null == code) {
+                        image = SyntheticFrames.createImage(dimensions[0], dimensions[1], null);
+                    } else {
+                        image = SyntheticFrames.createImage(dimensions[0], dimensions[1], data.nextRecord(), code[0], code[1], code[2]);
+                    }
+
+                    // The converter's frame is re-used, so copy it
+                    frames.add(converter.convert(image).clone());
+                    hasCode.add(Boolean.valueOf(null != code));
+                }
+            } else {
+                File dir = new File(corpus);
+                File[] files = dir.listFiles((d, name) -> name.toLowerCase(Locale.ROOT).matches(".*\\.(png|jpe?g)"));
+                if(null == files || 0 == files.length) {
+                    throw new IOException("No images in corpus directory " + dir);
+                }
+                Arrays.sort(files);
+
+                for(File file : files) {
+                    BufferedImage image = ImageIO.read(file);
+                    if(null == image) {
+                        throw new IOException("Cannot read image " + file);
+                    }
+
+                    // The same layout as frames from the camera
+                    BufferedImage bgr = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_3BYTE_BGR);
+                    bgr.createGraphics().drawImage(image, 0, 0, null);
+
+                    frames.add(converter.convert(bgr).clone());
+
+                    // We don't know; count them all
+                    hasCode.add(Boolean.TRUE);
+                }
+            }
+        }
+
+        return new FrameCorpus(frames, hasCode, null);
+    }
+
+    public int size() {
+        return frames.size();
+    }
+
+    public Frame getFrame(int index) {
+        return frames.get(index);
+    }
+
+    /**
+     * Checks whether a frame is known to have a code in it.
+     *
+     * @param index The frame.
+     *
+     * @return <code>true</code> if the frame has a code in it, or is from a
+     *         directory of images.
+     */
+    public boolean hasCode(int index) {
+        return hasCode.get(index).booleanValue();
+    }
+
+    public void close() throws IOException {
+        if(null != log) {
+            log.close();
+        } else {
+            for(Frame frame : frames) {
+                frame.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package com.koibots.scout.hub.benchmark;
+
+import java.awt.image.BufferedImage;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.bytedeco.javacv.Frame;
+import org.bytedeco.javacv.Java2DFrameConverter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.BinaryBitmap;
+import com.google.zxing.DecodeHintType;
+import com.google.zxing.LuminanceSource;
+import com.google.zxing.MultiFormatReader;
+import com.google.zxing.NotFoundException;
+import com.google.zxing.Result;
+import com.google.zxing.client.j2se.BufferedImageLuminanceSource;
+import com.google.zxing.common.HybridBinarizer;
+import com.koibots.scout.hub.scan.ZXingDecoder;
+
+/**
+ * Measures decoding one camera frame, the way the scanner used to (through
+ * a BufferedImage) and the way it does now (straight from the frame).
+ *
+ * <ul>
+ * <li><code>bufferedImageAllFormats</code>: the old scanner loop. Convert
+ *     to a BufferedImage, new luminance source and binarizer, and
+ *     <code>MultiFormatReader.decode</code>, which looks for every kind of
+ *     barcode.</li>
+ * <li><code>bufferedImage</code>: the same conversion, but reading only QR
+ *     codes like the new decoder, to separate the two changes.</li>
+ * <li><code>frame</code>: {@link ZXingDecoder}.</li>
+ * </ul>
+ *
+ * Run with the GC profiler to see the allocation rate, e.g.
+ * <code>-Djmh.args="-prof gc FrameDecode"</code>, and look at
+ * <code>gc.alloc.rate.norm</code> (bytes per decode).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FrameDecodeBenchmark
+{
+    @Param({ "640x480", "1280x720" })
+    public String size;
+
+    /**
+     * Whether the frame has a code in it. Most frames don't.
+     */
+    @Param({ "code", "empty" })
+    public String content;
+
+    private Frame frame;
+    private Java2DFrameConverter converter;
+    private MultiFormatReader allFormatsReader;
+    private MultiFormatReader qrReader;
+    private ZXingDecoder decoder;
+
+    @Setup
+    public void setup() throws Exception {
+        int[] dimensions = SyntheticFrames.parseSize(size);
+
+        String text = null;
+        if("code".equals(content)) {
+            text = new SyntheticData(SyntheticData.readGame(SyntheticData.REEFSCAPE)).nextRecord();
+        }
+
+        frame = SyntheticFrames.createFrame(dimensions[0], dimensions[1], text);
+
+        converter = new Java2DFrameConverter();
+        allFormatsReader = new MultiFormatReader();
+
+        Map<DecodeHintType,Object> hints = new EnumMap<>(DecodeHintType.class);
+        hints.put(DecodeHintType.POSSIBLE_FORMATS, Collections.singletonList(BarcodeFormat.QR_CODE));
+        qrReader = new MultiFormatReader();
+        qrReader.setHints(hints);
+
+        decoder = new ZXingDecoder();
+
+        // Make sure we're measuring what we think we are
+        if((null == text) != (null == frame()) || (null == text) != (null == bufferedImageAllFormats())) {
+            throw new IllegalStateException("Synthetic frame did not decode as expected");
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        converter.close();
+        frame.close();
+    }
+
+    @Benchmark
+    public Result bufferedImageAllFormats() {
+        BufferedImage img = converter.getBufferedImage(frame);
+        LuminanceSource source = new BufferedImageLuminanceSource(img);
+        BinaryBitmap bitmap = new BinaryBitmap(new HybridBinarizer(source));
+
+        try {
+            return allFormatsReader.decode(bitmap);
+        } catch (NotFoundException nfe) {
+            return null;
+        }
+    }
+
+    @Benchmark
+    public Result bufferedImage() {
+        BufferedImage img = converter.getBufferedImage(frame);
+        LuminanceSource source = new BufferedImageLuminanceSource(img);
+        BinaryBitmap bitmap = new BinaryBitmap(new HybridBinarizer(source));
+
+        try {
+            return qrReader.decodeWithState(bitmap);
+        } catch (NotFoundException nfe) {
+            return null;
+        } finally {
+            qrReader.reset();
+        }
+    }
+
+    @Benchmark
+    public Result frame() {
+        return decoder.decode(frame);
+    }
+}
@@ -0,0 +1,46 @@
+package com.koibots.scout.hub.benchmark;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.koibots.scout.hub.GameConfig;
+
+/**
+ * Measures reading a game configuration file, which happens every time a
+ * project is opened.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GameConfigBenchmark
+{
+    @Param({ SyntheticData.REEFSCAPE, SyntheticData.REBUILT_STAND })
+    public String game;
+
+    private File file;
+
+    @Setup
+    public void setup() {
+        file = SyntheticData.getGameFile(game);
+    }
+
+    @Benchmark
+    public GameConfig readFile() throws Exception {
+        return GameConfig.readFile(file);
+    }
+}
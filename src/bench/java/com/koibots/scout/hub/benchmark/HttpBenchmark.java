@@ -0,0 +1,143 @@
+package com.koibots.scout.hub.benchmark;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.koibots.scout.hub.HttpRequest;
+import com.koibots.scout.hub.SimpleHttpServer;
+
+/**
+ * Measures how many requests per second {@link SimpleHttpServer} can
+ * answer for the web app's files, with several phones each reusing a
+ * keep-alive connection.
+ *
+ * The document root is a copy of the stock QR Scout files in
+ * <code>src/main/resources/qrscout</code>. For a closer look at a single
+ * file, see {@link HttpServerBenchmark}.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(4)
+public class HttpBenchmark
+{
+    @State(Scope.Benchmark)
+    public static class Server {
+        @Param({ "CONCURRENT", "SELECTOR" })
+        public String mode;
+
+        @Param({ "/index.html", "/koibots-logo.png" })
+        public String path;
+
+        SimpleHttpServer server;
+        Path documentRoot;
+
+        @Setup
+        public void setup() throws Exception {
+            documentRoot = Files.createTempDirectory("http-benchmark");
+
+            Path source = SyntheticData.getBaseDirectory().toPath().resolve("src/main/resources/qrscout");
+            try(var files = Files.list(source)) {
+                for(Path file : (Iterable<Path>)files::iterator) {
+                    Files.copy(file, documentRoot.resolve(file.getFileName().toString()));
+                }
+            }
+
+            int port;
+            try(ServerSocket probe = new ServerSocket(0)) {
+                port = probe.getLocalPort();
+            }
+
+            server = new SimpleHttpServer(port, documentRoot);
+            server.setMode(SimpleHttpServer.Mode.valueOf(mode));
+            server.start();
+        }
+
+        @TearDown
+        public void tearDown() throws Exception {
+            server.shutdown();
+
+            SyntheticData.deleteAll(documentRoot);
+        }
+    }
+
+    /**
+     * One phone's connection.
+     */
+    @State(Scope.Thread)
+    public static class Client {
+        Socket socket;
+        InputStream in;
+        OutputStream out;
+        byte[] request;
+
+        @Setup
+        public void setup(Server server) throws IOException {
+            request = ("GET " + server.path + " HTTP/1.1\r\nHost: localhost\r\nAccept-Encoding: gzip\r\n\r\n").getBytes(StandardCharsets.US_ASCII);
+        }
+
+        void connect(Server server) throws IOException {
+            socket = new Socket();
+            socket.connect(new InetSocketAddress("localhost", server.server.getPort()));
+            in = new BufferedInputStream(socket.getInputStream(), 65536);
+            out = socket.getOutputStream();
+        }
+
+        @TearDown
+        public void tearDown() throws IOException {
+            if(null != socket) {
+                socket.close();
+            }
+        }
+    }
+
+    @Benchmark
+    public long get(Server server, Client client) throws IOException {
+        if(null == client.socket) {
+            client.connect(server);
+        }
+
+        client.out.write(client.request);
+        client.out.flush();
+
+        HttpRequest response = HttpRequest.read(client.in); // Same format, near enough
+        if(null == response) {
+            throw new IOException("Server closed the connection");
+        }
+
+        long contentLength = response.getContentLength();
+        client.in.skipNBytes(contentLength);
+
+        if("close".equalsIgnoreCase(response.getHeader("Connection"))) {
+            client.socket.close();
+            client.socket = null;
+        }
+
+        return contentLength;
+    }
+}
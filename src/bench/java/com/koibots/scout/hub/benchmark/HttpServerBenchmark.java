@@ -0,0 +1,271 @@
+package com.koibots.scout.hub.benchmark;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.koibots.scout.hub.HttpRequest;
+import com.koibots.scout.hub.SimpleHttpServer;
+
+/**
+ * Measures how quickly {@link SimpleHttpServer} can serve a single file.
+ *
+ * Starts a server on a free local port and runs a number of client
+ * threads, each of which requests the same file over and over on its own
+ * keep-alive connection. Each configuration is run in turn and reported
+ * as requests per second, megabytes per second, and process CPU time per
+ * request. (The clients run in the same process, so the CPU figure
+ * includes their work too; it is still good for comparing configurations.)
+ */
+public class HttpServerBenchmark
+{
+    /**
+     * The response-body strategies which can be compared.
+     */
+    private enum Strategy {
+        /**
+         * Read the file through a heap buffer for every request.
+         */
+        stream,
+
+        /**
+         * Send the file with FileChannel.transferTo for every request.
+         */
+        zerocopy,
+
+        /**
+         * Serve the file from the in-memory cache.
+         */
+        cached;
+    }
+
+    private static void usage(PrintStream out) {
+        out.println("Usage: " + HttpServerBenchmark.class.getName() + " [options]");
+        out.println();
+        out.println("Options:");
+        out.println("    -f, --file file     The file to serve. (default: a random file; see --size)");
+        out.println("    -s, --size bytes    The size of the random file to serve. (default 245760)");
+        out.println("    -t, --threads n     The number of client connections. (default 8)");
+        out.println("    -d, --duration sec  The number of seconds to measure each strategy. (default 10)");
+        out.println("    -w, --warmup sec    The number of seconds to warm up each strategy. (default 3)");
+        out.println("    --strategy name     Only run one strategy: stream, zerocopy or cached.");
+        out.println("    --mode mode         The server mode: CONCURRENT or SELECTOR. (default CONCURRENT)");
+        out.println("                        SELECTOR mode always sends uncached files with transferTo.");
+    }
+
+    public static void main(String[] args) throws Exception {
+        int argindex = 0;
+        Path file = null;
+        int size = 240 * 1024; // About the size of the logo
+        int threads = 8;
+        int durationSeconds = 10;
+        int warmupSeconds = 3;
+        Strategy only = null;
+        SimpleHttpServer.Mode mode = SimpleHttpServer.Mode.CONCURRENT;
+
+        while(argindex < args.length) {
+            String arg = args[argindex++];
+
+            if("--file".equals(arg) || "-f".equals(arg)) {
+                file = Paths.get(args[argindex++]);
+            } else if("--size".equals(arg) || "-s".equals(arg)) {
+                size = Integer.parseInt(args[argindex++]);
+            } else if("--threads".equals(arg) || "-t".equals(arg)) {
+                threads = Integer.parseInt(args[argindex++]);
+            } else if("--duration".equals(arg) || "-d".equals(arg)) {
+                durationSeconds = Integer.parseInt(args[argindex++]);
+            } else if("--warmup".equals(arg) || "-w".equals(arg)) {
+                warmupSeconds = Integer.parseInt(args[argindex++]);
+            } else if("--strategy".equals(arg)) {
+                only = Strategy.valueOf(args[argindex++]);
+            } else if("--mode".equals(arg)) {
+                mode = SimpleHttpServer.Mode.valueOf(args[argindex++]);
+            } else if("--help".equals(arg) || "-h".equals(arg)) {
+                usage(System.out);
+
+                System.exit(0);
+            } else {
+                System.err.println("Unrecognized argument: " + arg);
+
+                usage(System.err);
+
+                System.exit(1);
+            }
+        }
+
+        Path documentRoot = Files.createTempDirectory("http-benchmark");
+        try {
+            Path served;
+            if(null == file) {
+                byte[] data = new byte[size];
+                new Random(8230).nextBytes(data);
+
+                served = documentRoot.resolve("benchmark.bin");
+                Files.write(served, data);
+            } else {
+                served = documentRoot.resolve(file.getFileName().toString());
+                Files.copy(file, served);
+            }
+
+            long length = Files.size(served);
+            String target = "/" + served.getFileName();
+
+            System.out.println("Serving " + target + " (" + length + " bytes) to " + threads + " connections in " + mode + " mode");
+            System.out.println();
+            System.out.println(String.format("%-10s %12s %10s %14s", "strategy", "requests/s", "MB/s", "CPU us/request"));
+
+            for(Strategy strategy : Strategy.values()) {
+                if(null != only && only != strategy) {
+                    continue;
+                }
+
+                run(mode, strategy, documentRoot, target, threads, warmupSeconds, durationSeconds, length);
+            }
+        } finally {
+            try(var paths = Files.walk(documentRoot)) {
+                paths.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+            }
+        }
+    }
+
+    private static void run(SimpleHttpServer.Mode mode, Strategy strategy, Path documentRoot, String target, int threads, int warmupSeconds, int durationSeconds, long length)
+        throws Exception
+    {
+        int port;
+        try(ServerSocket probe = new ServerSocket(0)) {
+            port = probe.getLocalPort();
+        }
+
+        SimpleHttpServer server = new SimpleHttpServer(port, documentRoot);
+        server.setMode(mode);
+        server.setMaxConnections(threads);
+        server.setAssetCacheEnabled(Strategy.cached == strategy);
+        server.setZeroCopyEnabled(Strategy.zerocopy == strategy);
+        if(Strategy.cached == strategy) {
+            // Keep the file in memory no matter how big it is
+            server.setZeroCopyEnabled(false);
+        }
+        server.start();
+
+        try {
+            LongAdder requests = new LongAdder();
+            LongAdder bytes = new LongAdder();
+
+            // Warm up, then measure
+            runClients(port, target, threads, warmupSeconds, requests, bytes);
+
+            requests.reset();
+            bytes.reset();
+
+            long startCpu = getProcessCpuNanos();
+            long start = System.nanoTime();
+
+            runClients(port, target, threads, durationSeconds, requests, bytes);
+
+            long elapsed = System.nanoTime() - start;
+            long cpu = getProcessCpuNanos() - startCpu;
+
+            long count = requests.sum();
+            double seconds = elapsed / 1e9;
+
+            System.out.println(String.format("%-10s %12.0f %10.1f %14.1f",
+                    strategy,
+                    count / seconds,
+                    bytes.sum() / seconds / (1024 * 1024),
+                    count > 0 && cpu >= 0 ? (cpu / 1000.0) / count : Double.NaN));
+        } finally {
+            server.shutdown();
+        }
+    }
+
+    private static void runClients(int port, String target, int threads, int seconds, LongAdder requests, LongAdder bytes)
+        throws InterruptedException
+    {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+
+        ArrayList<Thread> clients = new ArrayList<>();
+        for(int i=0; i<threads; ++i) {
+            Thread client = new Thread(() -> {
+                try {
+                    runClient(port, target, deadline, requests, bytes);
+                } catch (IOException ioe) {
+                    ioe.printStackTrace();
+                }
+            }, "HttpServerBenchmark-client-" + i);
+
+            client.start();
+            clients.add(client);
+        }
+
+        for(Thread client : clients) {
+            client.join();
+        }
+    }
+
+    private static void runClient(int port, String target, long deadline, LongAdder requests, LongAdder bytes)
+        throws IOException
+    {
+        byte[] request = ("GET " + target + " HTTP/1.1\r\nHost: localhost\r\n\r\n").getBytes(StandardCharsets.US_ASCII);
+
+        Socket socket = null;
+        InputStream in = null;
+        OutputStream out = null;
+
+        try {
+            while(System.nanoTime() < deadline) {
+                if(null == socket) {
+                    socket = new Socket();
+                    socket.connect(new InetSocketAddress("localhost", port));
+                    in = new BufferedInputStream(socket.getInputStream(), 65536);
+                    out = socket.getOutputStream();
+                }
+
+                out.write(request);
+                out.flush();
+
+                HttpRequest response = HttpRequest.read(in); // Same format, near enough
+                if(null == response) {
+                    throw new IOException("Server closed the connection");
+                }
+
+                long contentLength = response.getContentLength();
+                in.skipNBytes(contentLength);
+
+                requests.increment();
+                bytes.add(contentLength);
+
+                if("close".equalsIgnoreCase(response.getHeader("Connection"))) {
+                    socket.close();
+                    socket = null;
+                }
+            }
+        } finally {
+            if(null != socket) {
+                socket.close();
+            }
+        }
+    }
+
+    private static long getProcessCpuNanos() {
+        if(ManagementFactory.getOperatingSystemMXBean() instanceof com.sun.management.OperatingSystemMXBean os) {
+            return os.getProcessCpuTime();
+        }
+
+        return -1;
+    }
+}
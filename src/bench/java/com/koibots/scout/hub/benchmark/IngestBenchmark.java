@@ -0,0 +1,73 @@
+package com.koibots.scout.hub.benchmark;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.koibots.scout.hub.InsertResult;
+import com.koibots.scout.hub.Project;
+
+/**
+ * Measures inserting records, one at a time and in batches.
+ *
+ * Scores are per record, so the single and batch paths can be compared
+ * directly. The database grows as the benchmark runs, as it does over
+ * the course of an event.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class IngestBenchmark
+{
+    private static final int BATCH_SIZE = 100;
+
+    @Param({ SyntheticData.REEFSCAPE, SyntheticData.REBUILT_STAND })
+    public String game;
+
+    private Project project;
+    private SyntheticData data;
+
+    @Setup
+    public void setup() throws Exception {
+        project = SyntheticData.createProject(game, 0);
+        data = new SyntheticData(project.getGameConfig());
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        SyntheticData.deleteProject(project);
+    }
+
+    @Benchmark
+    public InsertResult insertRecord() throws Exception {
+        return project.insertRecord(data.nextRecord());
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public List<InsertResult> insertRecords() throws Exception {
+        return project.insertRecords(data.nextRecords(BATCH_SIZE));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public List<InsertResult> insertRecordStream() throws Exception {
+        return project.insertRecords(data.nextRecords(BATCH_SIZE).stream());
+    }
+}
@@ -0,0 +1,204 @@
+package com.koibots.scout.hub.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import com.koibots.scout.hub.Field;
+import com.koibots.scout.hub.GameConfig;
+import com.koibots.scout.hub.Project;
+
+/**
+ * Generates reproducible scouting records for the benchmarks, from the
+ * sample game configurations in <code>samples/</code>.
+ *
+ * Every record is made from a seeded {@link Random}, so every run (and
+ * every machine) benchmarks exactly the same data. Records also carry
+ * their sequence number in the first text field, so no two are
+ * duplicates.
+ *
+ * Files are found relative to the <code>benchmark.basedir</code> system
+ * property, which defaults to the current directory (the project
+ * directory, when run through Maven).
+ */
+public final class SyntheticData
+{
+    public static final long SEED = 8230;
+
+    /**
+     * The sample games, by the names the benchmarks use as parameters.
+     */
+    public static final String REEFSCAPE = "reefscape";
+    public static final String REBUILT_STAND = "rebuilt-stand";
+
+    private final List<Field> fields;
+    private final Random random;
+    private long sequence = 0;
+
+    /**
+     * Creates a new SyntheticData generator.
+     *
+     * @param config The game to make records for.
+     */
+    public SyntheticData(GameConfig config) {
+        this.fields = config.getFields();
+        this.random = new Random(SEED);
+    }
+
+    public static File getBaseDirectory() {
+        return new File(System.getProperty("benchmark.basedir", "."));
+    }
+
+    /**
+     * Gets one of the sample game configuration files.
+     *
+     * @param game The name of the game, e.g. {@link #REEFSCAPE}.
+     *
+     * @return The sample game configuration file.
+     */
+    public static File getGameFile(String game) {
+        return new File(getBaseDirectory(), "samples/" + game + ".json");
+    }
+
+    public static GameConfig readGame(String game) throws IOException {
+        return GameConfig.readFile(getGameFile(game));
+    }
+
+    /**
+     * Makes the next record.
+     *
+     * @return A tab-separated record, as it would be scanned from a QR code.
+     */
+    public String nextRecord() {
+        StringBuilder record = new StringBuilder();
+        boolean first = true;
+        boolean sequenced = false;
+
+        for(Field field : fields) {
+            if(!first) {
+                record.append('\t');
+            }
+            first = false;
+
+            String type = field.getType();
+
+            if("text".equals(type) && !sequenced) {
+                // Keeps every record unique
+                record.append('s').append(sequence);
+                sequenced = true;
+            } else {
+                record.append(value(field, type));
+            }
+        }
+
+        ++sequence;
+
+        return record.toString();
+    }
+
+    /**
+     * Makes a number of records.
+     *
+     * @param count The number of records to make.
+     *
+     * @return The records.
+     */
+    public List<String> nextRecords(int count) {
+        ArrayList<String> records = new ArrayList<>(count);
+
+        for(int i=0; i<count; ++i) {
+            records.add(nextRecord());
+        }
+
+        return records;
+    }
+
+    private String value(Field field, String type) {
+        if("boolean".equals(type)) {
+            return String.valueOf(random.nextBoolean());
+        } else if("number".equals(type)) {
+            // e.g. match 1-100, team 0-99: enough to group by
+            int min = null == field.getMin() ? 1 : field.getMin();
+            int max = null == field.getMax() ? Integer.MAX_VALUE : field.getMax();
+
+            return String.valueOf(min + random.nextInt((int)Math.min(100L, (long)max - min + 1)));
+        } else if("counter".equals(type)) {
+            int max = null == field.getMax() ? 12 : field.getMax();
+
+            return String.valueOf(random.nextInt(max + 1));
+        } else if("range".equals(type)) {
+            int min = null == field.getMin() ? 1 : field.getMin();
+            int max = null == field.getMax() ? 5 : field.getMax();
+
+            return String.valueOf(min + random.nextInt(max - min + 1));
+        } else if("select".equals(type)) {
+            Map<String,String> choices = field.getChoices();
+
+            if(null == choices || choices.isEmpty()) {
+                return "";
+            }
+
+            return new ArrayList<>(choices.keySet()).get(random.nextInt(choices.size()));
+        } else if("timer".equals(type)) {
+            return String.format(Locale.ROOT, "%.1f", random.nextDouble() * 15);
+        } else {
+            // Comments and the like
+            return random.nextInt(4) == 0 ? "" : "note " + Integer.toString(random.nextInt(1 << 20), 36);
+        }
+    }
+
+    /**
+     * Creates a project in a new temporary directory.
+     *
+     * @param game The name of the game.
+     * @param records The number of synthetic records to insert.
+     *
+     * @return The new project.
+     *
+     * @throws Exception If the project cannot be created.
+     */
+    public static Project createProject(String game, int records) throws Exception {
+        GameConfig config = readGame(game);
+
+        Path directory = Files.createTempDirectory("scout-benchmark");
+        Project project = Project.createProject(directory.resolve("project").toFile(), config);
+
+        if(records > 0) {
+            project.insertRecords(new SyntheticData(config).nextRecords(records));
+        }
+
+        return project;
+    }
+
+    /**
+     * Closes a project created by {@link #createProject} and deletes it.
+     *
+     * This also shuts down Derby, which can't be restarted in the same JVM;
+     * that's fine as long as JMH runs each benchmark in its own fork (the
+     * default).
+     *
+     * @param project The project to delete.
+     *
+     * @throws Exception If the project cannot be deleted.
+     */
+    public static void deleteProject(Project project) throws Exception {
+        project.close();
+        Project.dispose();
+
+        deleteAll(project.getDirectory().getParentFile().toPath());
+    }
+
+    static void deleteAll(Path directory) throws IOException {
+        try(Stream<Path> paths = Files.walk(directory)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package com.koibots.scout.hub.benchmark;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.Random;
+
+import org.bytedeco.javacv.Frame;
+import org.bytedeco.javacv.Java2DFrameConverter;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.WriterException;
+import com.google.zxing.common.BitMatrix;
+import com.google.zxing.qrcode.QRCodeWriter;
+
+/**
+ * Makes reproducible camera frames for the scanner benchmarks: a QR code
+ * (or nothing) held in the middle of a noisy background, in BGR like
+ * frames from <code>OpenCVFrameGrabber</code>.
+ */
+public final class SyntheticFrames
+{
+    /**
+     * The fraction of the frame's height taken up by the code, about what
+     * we see with a phone held at arm's length.
+     */
+    private static final double CODE_SIZE = 0.4;
+
+    private SyntheticFrames() {
+    }
+
+    /**
+     * Parses a frame size like "1280x720".
+     *
+     * @param size The size.
+     *
+     * @return The width and height.
+     */
+    public static int[] parseSize(String size) {
+        int x = size.indexOf('x');
+
+        return new int[] { Integer.parseInt(size.substring(0, x)), Integer.parseInt(size.substring(x + 1)) };
+    }
+
+    /**
+     * Draws a frame.
+     *
+     * @param width The width of the frame.
+     * @param height The height of the frame.
+     * @param text The text for the QR code, or <code>null</code> for a frame
+     *        with no code in it.
+     *
+     * @return The frame, as a BGR image.
+     *
+     * @throws WriterException If the code cannot be made.
+     */
+    public static BufferedImage createImage(int width, int height, String text) throws WriterException {
+        return createImage(width, height, text, CODE_SIZE, 0, 0);
+    }
+
+    /**
+     * Draws a frame with the code somewhere other than the middle.
+     *
+     * @param width The width of the frame.
+     * @param height The height of the frame.
+     * @param text The text for the QR code, or <code>null</code> for a frame
+     *        with no code in it.
+     * @param codeSize The fraction of the frame's height taken up by the
+     *        code.
+     * @param offsetX How far the code is from the middle of the frame, as a
+     *        fraction of the frame's width.
+     * @param offsetY How far the code is from the middle of the frame, as a
+     *        fraction of the frame's height.
+     *
+     * @return The frame, as a BGR image.
+     *
+     * @throws WriterException If the code cannot be made.
+     */
+    public static BufferedImage createImage(int width, int height, String text,
+            double codeSize, double offsetX, double offsetY)
+        throws WriterException
+    {
+        Random random = new Random(SyntheticData.SEED);
+
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_3BYTE_BGR);
+        Graphics2D g = image.createGraphics();
+
+        // A lit room: brighter towards the top, and some clutter
+        for(int y=0; y<height; ++y) {
+            int level = 170 - 90 * y / height;
+            g.setColor(new Color(level, level - 10, level - 25));
+            g.drawLine(0, y, width, y);
+        }
+        for(int i=0; i<40; ++i) {
+            int level = random.nextInt(200);
+            g.setColor(new Color(level, level, level));
+            g.fillRect(random.nextInt(width), random.nextInt(height), random.nextInt(width / 6) + 1, random.nextInt(height / 6) + 1);
+        }
+
+        if(null != text) {
+            int size = (int)(height * codeSize);
+            BitMatrix code = new QRCodeWriter().encode(text, BarcodeFormat.QR_CODE, size, size);
+
+            int left = Math.max(0, Math.min(width - size, (width - size) / 2 + (int)(width * offsetX)));
+            int top = Math.max(0, Math.min(height - size, (height - size) / 2 + (int)(height * offsetY)));
+
+            for(int y=0; y<size; ++y) {
+                for(int x=0; x<size; ++x) {
+                    // A phone screen isn't quite black and white
+                    image.setRGB(left + x, top + y, code.get(x, y) ? 0x202020 : 0xe8e8e8);
+                }
+            }
+        }
+
+        g.dispose();
+
+        // Sensor noise
+        for(int y=0; y<height; ++y) {
+            for(int x=0; x<width; ++x) {
+                int rgb = image.getRGB(x, y);
+                int noise = random.nextInt(17) - 8;
+                int r = clamp(((rgb >> 16) & 0xff) + noise);
+                int gr = clamp(((rgb >> 8) & 0xff) + noise);
+                int b = clamp((rgb & 0xff) + noise);
+                image.setRGB(x, y, (r << 16) | (gr << 8) | b);
+            }
+        }
+
+        return image;
+    }
+
+    /**
+     * Draws a frame, as a JavaCV frame which owns its own pixels.
+     *
+     * @see #createImage
+     */
+    public static Frame createFrame(int width, int height, String text) throws WriterException {
+        try(Java2DFrameConverter converter = new Java2DFrameConverter()) {
+            // The converter's frame is re-used, so copy it
+            return converter.convert(createImage(width, height, text)).clone();
+        }
+    }
+
+    private static int clamp(int value) {
+        return Math.max(0, Math.min(255, value));
+    }
+}
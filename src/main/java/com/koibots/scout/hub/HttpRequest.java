@@ -0,0 +1,348 @@
+package com.koibots.scout.hub;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.ProtocolException;
+import java.nio.charset.StandardCharsets;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * An HTTP request line and its headers, as read by {@link SimpleHttpServer}.
+ *
+ * The request body (if any) is not read by this class.
+ */
+public final class HttpRequest
+{
+    /**
+     * The longest request line or header line we will accept.
+     */
+    static final int MAX_LINE_LENGTH = 8192;
+
+    /**
+     * The most header lines we will accept in a single request.
+     */
+    static final int MAX_HEADERS = 100;
+
+    private final String method;
+    private final String target;
+    private final String version;
+    private final Map<String,String> headers;
+
+    HttpRequest(String method, String target, String version, Map<String,String> headers) {
+        this.method = method;
+        this.target = target;
+        this.version = version;
+        this.headers = Collections.unmodifiableMap(headers);
+    }
+
+    public String getMethod() {
+        return method;
+    }
+
+    /**
+     * Gets the request target, e.g. <code>/index.html</code>.
+     *
+     * @return The request target, exactly as sent by the client.
+     */
+    public String getTarget() {
+        return target;
+    }
+
+    /**
+     * Gets the HTTP version of the request, e.g. <code>HTTP/1.1</code>.
+     *
+     * @return The HTTP version of the request.
+     */
+    public String getVersion() {
+        return version;
+    }
+
+    /**
+     * Gets the value of a request header.
+     *
+     * If the client sent the header more than once, the values are joined
+     * with commas.
+     *
+     * @param name The (case-insensitive) name of the header.
+     *
+     * @return The value of the header, or <code>null</code> if the client
+     *         did not send it.
+     */
+    public String getHeader(String name) {
+        return headers.get(name.toLowerCase(Locale.ROOT));
+    }
+
+    public Map<String,String> getHeaders() {
+        return headers;
+    }
+
+    /**
+     * Determines whether the client wants to keep the connection open after
+     * this request.
+     *
+     * HTTP/1.1 connections are persistent unless the client sends
+     * <code>Connection: close</code>; HTTP/1.0 connections are only
+     * persistent if the client sends <code>Connection: keep-alive</code>.
+     *
+     * @return <code>true</code> if the connection should be kept open,
+     *         <code>false</code> otherwise.
+     */
+    public boolean isKeepAlive() {
+        String connection = getHeader("Connection");
+
+        if("HTTP/1.1".equals(version)) {
+            return !hasToken(connection, "close");
+        } else {
+            return hasToken(connection, "keep-alive");
+        }
+    }
+
+    /**
+     * Gets the length of the request body.
+     *
+     * @return The value of the <code>Content-Length</code> header, or
+     *         <code>0</code> if there is none.
+     *
+     * @throws ProtocolException If the header is not a valid length.
+     */
+    public long getContentLength() throws ProtocolException {
+        String length = getHeader("Content-Length");
+
+        if(null == length) {
+            return 0;
+        }
+
+        try {
+            long contentLength = Long.parseLong(length.trim());
+
+            if(contentLength < 0) {
+                throw new ProtocolException("Invalid Content-Length: " + length);
+            }
+
+            return contentLength;
+        } catch (NumberFormatException nfe) {
+            throw new ProtocolException("Invalid Content-Length: " + length);
+        }
+    }
+
+    /**
+     * Determines whether the request body uses a transfer coding
+     * (e.g. <code>chunked</code>), which we do not support.
+     *
+     * @return <code>true</code> if the request has a
+     *         <code>Transfer-Encoding</code> header.
+     */
+    public boolean hasTransferEncoding() {
+        return null != getHeader("Transfer-Encoding");
+    }
+
+    /**
+     * Determines whether the client accepts a particular content coding,
+     * according to its <code>Accept-Encoding</code> header.
+     *
+     * @param encoding The content coding, e.g. <code>gzip</code>.
+     *
+     * @return <code>true</code> if the client accepts the coding,
+     *         <code>false</code> otherwise.
+     */
+    public boolean acceptsEncoding(String encoding) {
+        String accept = getHeader("Accept-Encoding");
+
+        if(null == accept) {
+            return false;
+        }
+
+        for(String part : accept.split(",")) {
+            String[] params = part.split(";");
+
+            if(encoding.equalsIgnoreCase(params[0].trim())) {
+                // "gzip;q=0" means "anything but gzip"
+                for(int i=1; i<params.length; ++i) {
+                    String param = params[i].trim();
+
+                    if(param.startsWith("q=")) {
+                        try {
+                            return Double.parseDouble(param.substring(2)) > 0;
+                        } catch (NumberFormatException nfe) {
+                            return false;
+                        }
+                    }
+                }
+
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Determines whether the client already has the current version of
+     * a resource, according to its conditional request headers.
+     *
+     * If the client sent <code>If-None-Match</code>, the entity tags are
+     * compared (weakly, as required for GET); otherwise, the
+     * <code>If-Modified-Since</code> date is compared with the modification
+     * time of the resource.
+     *
+     * @param etag The entity tag of the resource, including the quotes.
+     * @param lastModified The modification time of the resource, in
+     *        milliseconds since the epoch.
+     *
+     * @return <code>true</code> if a <code>304 Not Modified</code> response
+     *         should be sent, <code>false</code> otherwise.
+     */
+    public boolean isNotModified(String etag, long lastModified) {
+        String ifNoneMatch = getHeader("If-None-Match");
+
+        if(null != ifNoneMatch) {
+            // If-Modified-Since is ignored when If-None-Match is present
+            String opaque = opaqueTag(etag);
+
+            for(String candidate : ifNoneMatch.split(",")) {
+                candidate = candidate.trim();
+
+                if("*".equals(candidate) || opaque.equals(opaqueTag(candidate))) {
+                    return true;
+                }
+            }
+
+            return false;
+        }
+
+        String ifModifiedSince = getHeader("If-Modified-Since");
+
+        if(null != ifModifiedSince) {
+            try {
+                long since = ZonedDateTime.parse(ifModifiedSince, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant().toEpochMilli();
+
+                return lastModified <= since;
+            } catch (DateTimeParseException dtpe) {
+                // Invalid dates are ignored
+                return false;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Strips the weakness indicator from an entity tag.
+     */
+    private static String opaqueTag(String etag) {
+        return etag.startsWith("W/") ? etag.substring(2) : etag;
+    }
+
+    private static boolean hasToken(String value, String token) {
+        if(null == value) {
+            return false;
+        }
+
+        for(String part : value.split(",")) {
+            if(token.equalsIgnoreCase(part.trim())) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Reads a request line and headers from a stream.
+     *
+     * The stream is left positioned at the start of the request body (or
+     * the next request, if there is no body). Blank lines before the request
+     * line are ignored.
+     *
+     * @param in The stream to read. Should be buffered.
+     *
+     * @return The request, or <code>null</code> if the stream ended before
+     *         a request was started.
+     *
+     * @throws ProtocolException If the request is malformed.
+     * @throws EOFException If the stream ends in the middle of a request.
+     * @throws IOException If there is a problem reading the stream.
+     */
+    public static HttpRequest read(InputStream in) throws IOException {
+        String requestLine;
+        do {
+            requestLine = readLine(in, true);
+
+            if(null == requestLine) {
+                return null;
+            }
+        } while(requestLine.isEmpty());
+
+        String[] parts = requestLine.split(" ");
+        if(parts.length < 2) {
+            throw new ProtocolException("Malformed request line: " + requestLine);
+        }
+
+        String method = parts[0];
+        String target = parts[1];
+        String version = parts.length > 2 ? parts[2] : "HTTP/0.9";
+
+        HashMap<String,String> headers = new HashMap<>();
+
+        String line;
+        while(!(line = readLine(in, false)).isEmpty()) {
+            if(headers.size() >= MAX_HEADERS) {
+                throw new ProtocolException("Too many headers");
+            }
+
+            int colon = line.indexOf(':');
+            if(colon < 1) {
+                throw new ProtocolException("Malformed header: " + line);
+            }
+
+            String name = line.substring(0, colon).trim().toLowerCase(Locale.ROOT);
+            String value = line.substring(colon + 1).trim();
+
+            headers.merge(name, value, (a, b) -> a + "," + b);
+        }
+
+        return new HttpRequest(method, target, version, headers);
+    }
+
+    private static String readLine(InputStream in, boolean eofAllowed) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream(128);
+
+        int c;
+        while(-1 != (c = in.read())) {
+            if('\n' == c) {
+                byte[] bytes = line.toByteArray();
+                int length = bytes.length;
+                if(length > 0 && '\r' == bytes[length - 1]) {
+                    --length;
+                }
+
+                return new String(bytes, 0, length, StandardCharsets.ISO_8859_1);
+            }
+
+            if(line.size() >= MAX_LINE_LENGTH) {
+                throw new ProtocolException("Line too long");
+            }
+
+            line.write(c);
+        }
+
+        if(eofAllowed && 0 == line.size()) {
+            return null;
+        }
+
+        throw new EOFException("Connection closed during request");
+    }
+
+    @Override
+    public String toString() {
+        return "HttpRequest { " + method + " " + target + " " + version + ", headers=" + headers + " }";
+    }
+}
@@ -0,0 +1,246 @@
+package com.koibots.scout.hub;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.List;
+
+/**
+ * A pre-compiled plan for inserting QR Scout records into the database.
+ *
+ * The plan is built once from a GameConfig and holds everything needed to
+ * turn a tab-separated QR code payload into a row: the INSERT statement
+ * text and one binder per column, chosen from the field's type. Inserting
+ * a record is then a single pass over the payload with no per-row lookups.
+ *
+ * The last parameter of the INSERT statement is always the payload hash
+ * (see {@link #hash(String)}), which is used to detect duplicate records.
+ *
+ * Plans are immutable. When the game configuration changes, compile a new
+ * plan rather than modifying an existing one.
+ */
+final class IngestPlan
+{
+    /**
+     * Binds a single QR code value to a statement parameter.
+     */
+    @FunctionalInterface
+    interface ColumnBinder {
+        void bind(PreparedStatement ps, int parameterIndex, String value) throws SQLException;
+    }
+
+    private static final ColumnBinder INTEGER_BINDER = (ps, index, value) -> {
+        if(null == value) {
+            ps.setNull(index, Types.INTEGER);
+        } else {
+            ps.setInt(index, Integer.parseInt(value));
+        }
+    };
+
+    private static final ColumnBinder BOOLEAN_BINDER = (ps, index, value) -> {
+        if(null == value) {
+            ps.setNull(index, Types.BOOLEAN);
+        } else {
+            ps.setString(index, "true".equals(value) ? "Y" : "N");
+        }
+    };
+
+    private static final ColumnBinder STRING_BINDER = (ps, index, value) -> {
+        ps.setString(index, value);
+    };
+
+    private final String insertSQL;
+    private final ColumnBinder[] binders;
+
+    private IngestPlan(String insertSQL, ColumnBinder[] binders) {
+        this.insertSQL = insertSQL;
+        this.binders = binders;
+    }
+
+    /**
+     * Gets the INSERT statement for this plan.
+     *
+     * @return The SQL INSERT statement text.
+     */
+    public String getInsertSQL() {
+        return insertSQL;
+    }
+
+    /**
+     * Gets the number of columns (fields) expected in each record.
+     *
+     * @return The number of fields in each record.
+     */
+    public int getColumnCount() {
+        return binders.length;
+    }
+
+    /**
+     * Gets the binder for the column at the specified (0-based) index.
+     *
+     * @param column The 0-based column index.
+     *
+     * @return The binder for the column.
+     */
+    ColumnBinder getBinder(int column) {
+        return binders[column];
+    }
+
+    /**
+     * Checks that a QR code payload has the right number of fields for this
+     * plan.
+     *
+     * @param code The tab-separated QR code payload.
+     *
+     * @throws IllegalArgumentException If the number of fields in the
+     *         payload does not match the game config.
+     */
+    public void validate(String code) {
+        int count = 1;
+        for(int i = code.indexOf('\t'); i >= 0; i = code.indexOf('\t', i + 1)) {
+            ++count;
+        }
+
+        if(count != binders.length) {
+            throw new IllegalArgumentException("QR code and game config size mismatch: " + count + " != " + binders.length);
+        }
+    }
+
+    /**
+     * Binds all the values from a QR code payload to the parameters of
+     * a statement prepared from {@link #getInsertSQL()}.
+     *
+     * @param ps The statement to bind.
+     * @param code The tab-separated QR code payload.
+     * @param hash The payload's hash, from {@link #hash(String)}.
+     *
+     * @throws IllegalArgumentException If the number of fields in the
+     *         payload does not match the game config.
+     * @throws NumberFormatException If a numeric field contains a
+     *         non-numeric value.
+     * @throws SQLException If a parameter cannot be bound.
+     */
+    public void bind(PreparedStatement ps, String code, long hash) throws SQLException {
+        // QR code format is: datum \t datum \t datum with no keys :(
+        validate(code);
+
+        int start = 0;
+        for(int column = 0; column < binders.length; ++column) {
+            int end = code.indexOf('\t', start);
+            if(end < 0) {
+                end = code.length();
+            }
+
+            // JDBC uses 1-based addressing
+            binders[column].bind(ps, column + 1, code.substring(start, end));
+
+            start = end + 1;
+        }
+
+        ps.setLong(binders.length + 1, hash);
+    }
+
+    /**
+     * Normalizes a QR code payload so that the same scan always produces the
+     * same text: any trailing line terminators (e.g. from a text file or
+     * an HTTP request body) are removed.
+     *
+     * Note that trailing tabs are significant: they separate empty fields.
+     *
+     * @param code The QR code payload.
+     *
+     * @return The normalized payload.
+     */
+    public static String normalize(String code) {
+        int end = code.length();
+        while(end > 0 && ('\n' == code.charAt(end - 1) || '\r' == code.charAt(end - 1))) {
+            --end;
+        }
+
+        return end == code.length() ? code : code.substring(0, end);
+    }
+
+    /**
+     * Computes a 64-bit content hash of a QR code payload.
+     *
+     * This is the first 64 bits of the SHA-256 digest of the normalized
+     * payload, which is plenty to tell a few thousand records apart.
+     *
+     * @param code The QR code payload.
+     *
+     * @return The 64-bit hash of the payload.
+     */
+    public static long hash(String code) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException nsae) {
+            // Every JVM is required to support SHA-256
+            throw new IllegalStateException(nsae);
+        }
+
+        byte[] bytes = digest.digest(normalize(code).getBytes(StandardCharsets.UTF_8));
+
+        long hash = 0;
+        for(int i=0; i<Long.BYTES; ++i) {
+            hash = (hash << 8) | (bytes[i] & 0xff);
+        }
+
+        return hash;
+    }
+
+    /**
+     * Compiles a plan from a game configuration.
+     *
+     * @param config The game configuration.
+     *
+     * @return A new plan for inserting records for the game.
+     */
+    public static IngestPlan compile(GameConfig config) {
+        List<Field> fields = config.getFields();
+
+        StringBuilder insert = new StringBuilder("INSERT INTO stand_scouting (");
+        ColumnBinder[] binders = new ColumnBinder[fields.size()];
+
+        int index = 0;
+        for(Field field : fields) {
+            if(index > 0) { insert.append(','); }
+
+            insert.append('"').append(Project.normalizeColumnName(field.getCode())).append('"');
+
+            binders[index++] = getBinder(field.getType());
+        }
+
+        if(index > 0) { insert.append(','); }
+        insert.append(Project.HASH_COLUMN);
+
+        insert.append(") VALUES (");
+
+        for(int i=0; i<binders.length; ++i) {
+            insert.append('?').append(',');
+        }
+        insert.append('?'); // payload hash
+
+        insert.append(')');
+
+        return new IngestPlan(insert.toString(), binders);
+    }
+
+    private static ColumnBinder getBinder(String fieldType) {
+        if("counter".equals(fieldType) || "number".equals(fieldType) || "range".equals(fieldType)) {
+            return INTEGER_BINDER;
+        } else if("boolean".equals(fieldType)) {
+            return BOOLEAN_BINDER;
+        } else {
+            return STRING_BINDER;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "IngestPlan { sql=" + insertSQL + ", columns=" + binders.length + " }";
+    }
+}
@@ -0,0 +1,450 @@
+package com.koibots.scout.hub;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Decouples producing records (e.g. scanning QR codes) from writing them to
+ * the database.
+ *
+ * Records are placed on a bounded queue and written by a single background
+ * thread. Whenever the writer finds more than one record waiting, it
+ * writes them all in a single transaction ("group commit") using
+ * {@link Project#insertRecords(Iterable)}.
+ *
+ * Records submitted with {@link #submitIfNew} are checked against the
+ * records submitted recently, so that several scanners (e.g. one for each
+ * camera) can all feed the same queue without writing the same record
+ * more than once.
+ *
+ * Records submitted with {@link #submitAndWait} come back to the caller
+ * with their results, e.g. to answer a request, instead of going to the
+ * listeners. They are still written by the one writer thread, so they
+ * can't race the other records into the database.
+ */
+public class IngestQueue
+    implements AutoCloseable
+{
+    public static final int DEFAULT_CAPACITY = 1000;
+
+    /**
+     * The most records the writer will put into a single transaction.
+     */
+    private static final int MAX_GROUP_SIZE = 500;
+
+    /**
+     * The most recently submitted records remembered by
+     * {@link #submitIfNew}. Older duplicates are still caught by the
+     * project, they just take a trip to the database first.
+     */
+    private static final int MAX_RECENT_RECORDS = 1000;
+
+    /**
+     * Receives notifications about records written by an IngestQueue.
+     *
+     * Listeners are notified on the writer thread.
+     */
+    public interface IngestListener {
+        /**
+         * Called after a group of records has been written.
+         *
+         * @param records The records, in the order they were submitted.
+         * @param results The result for each record, in the same order.
+         * @param commitMillis The time taken to write the records.
+         */
+        public void recordsCommitted(List<String> records, List<InsertResult> results, long commitMillis);
+
+        /**
+         * Called if a group of records could not be written at all.
+         *
+         * @param records The records which were not written.
+         * @param t The problem which occurred.
+         */
+        public void ingestFailed(List<String> records, Throwable t);
+    }
+
+    private final Project project;
+    private final BlockingQueue<Entry> queue;
+    private final List<IngestListener> listeners = new CopyOnWriteArrayList<>();
+    private final Thread writerThread;
+
+    private volatile boolean closing = false;
+
+    /**
+     * Held for reading while a record is being queued, and for writing
+     * while closing, so that no record is queued after the writer has
+     * finished. Producers only hold it for reading, so they don't wait
+     * for each other.
+     */
+    private final ReadWriteLock closeLock = new ReentrantReadWriteLock();
+    private volatile long lastCommitMillis = -1;
+    private volatile int lastGroupSize = 0;
+
+    /**
+     * The records submitted recently, oldest first. Guarded by itself.
+     */
+    private final Map<String,Boolean> recentRecords = new LinkedHashMap<String,Boolean>() {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String,Boolean> eldest) {
+            return size() > MAX_RECENT_RECORDS;
+        }
+    };
+
+    private final LongAdder duplicatesSkipped = new LongAdder();
+
+    public IngestQueue(Project project) {
+        this(project, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Creates a new IngestQueue and starts its writer thread.
+     *
+     * @param project The project to write records into.
+     * @param capacity The maximum number of records waiting to be written.
+     *        Producers block when the queue is full.
+     */
+    public IngestQueue(Project project, int capacity) {
+        this.project = project;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+
+        writerThread = new Thread(this::runWriter, "IngestQueue-writer");
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    /**
+     * Adds a listener to be notified when records are written.
+     *
+     * @param listener The listener to add.
+     */
+    public void addIngestListener(IngestListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Queues a record to be written to the database.
+     *
+     * Returns as soon as the record is queued, waiting only if the queue
+     * is full.
+     *
+     * @param record The tab-separated record to write.
+     *
+     * @throws InterruptedException If interrupted while waiting for space
+     *         in the queue.
+     * @throws IllegalStateException If the queue has been closed.
+     */
+    public void submit(String record) throws InterruptedException {
+        closeLock.readLock().lock();
+        try {
+            if(closing) {
+                throw new IllegalStateException("Ingest queue is closed");
+            }
+
+            queue.put(new Entry(record, null));
+        } finally {
+            closeLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Queues records to be written to the database, and waits until they
+     * have been. The results are returned, and listeners are not told
+     * about these records.
+     *
+     * @param records The tab-separated records to write.
+     *
+     * @return The result for each record, in the same order. Its index is
+     *         the record's position in <code>records</code>.
+     *
+     * @throws InterruptedException If interrupted while waiting for space
+     *         in the queue, or for the records to be written. Records
+     *         already queued are written anyway.
+     * @throws IllegalStateException If the queue has been closed.
+     */
+    public List<InsertResult> submitAndWait(List<String> records) throws InterruptedException {
+        List<CompletableFuture<InsertResult>> pending = new ArrayList<>(records.size());
+
+        // All of them or none of them, if we're closing
+        closeLock.readLock().lock();
+        try {
+            if(closing) {
+                throw new IllegalStateException("Ingest queue is closed");
+            }
+
+            for(String record : records) {
+                CompletableFuture<InsertResult> result = new CompletableFuture<>();
+                queue.put(new Entry(record, result));
+                pending.add(result);
+            }
+        } finally {
+            closeLock.readLock().unlock();
+        }
+
+        List<InsertResult> results = new ArrayList<>(records.size());
+        for(int i=0; i<pending.size(); ++i) {
+            InsertResult result;
+            try {
+                result = pending.get(i).get();
+            } catch (ExecutionException ee) {
+                // We never complete them exceptionally
+                throw new IllegalStateException(ee);
+            }
+
+            results.add(new InsertResult(i, result.getStatus(), result.getMessage()));
+        }
+
+        return results;
+    }
+
+    /**
+     * Queues a record to be written to the database, unless the same
+     * record has been submitted recently.
+     *
+     * Duplicates return straight away, even if the queue is full.
+     *
+     * @param record The tab-separated record to write.
+     *
+     * @return <code>true</code> if the record was queued, or
+     *         <code>false</code> if it was a duplicate.
+     *
+     * @throws InterruptedException If interrupted while waiting for space
+     *         in the queue.
+     * @throws IllegalStateException If the queue has been closed.
+     */
+    public boolean submitIfNew(String record) throws InterruptedException {
+        // Claim the record before queuing it, so that the writer can
+        // forget it again if it fails
+        synchronized(recentRecords) {
+            if(null != recentRecords.putIfAbsent(record, Boolean.TRUE)) {
+                duplicatesSkipped.increment();
+
+                return false;
+            }
+        }
+
+        boolean queued = false;
+        try {
+            submit(record);
+
+            queued = true;
+        } finally {
+            if(!queued) {
+                forget(Collections.singletonList(record));
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Gets the number of records not queued by {@link #submitIfNew}
+     * because they had already been submitted.
+     *
+     * @return The number of duplicates skipped.
+     */
+    public long getDuplicatesSkipped() {
+        return duplicatesSkipped.sum();
+    }
+
+    /**
+     * Gets the number of records waiting to be written.
+     *
+     * @return The number of records waiting to be written.
+     */
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    /**
+     * Gets the time taken by the most recent commit.
+     *
+     * @return The time taken by the most recent commit, in milliseconds, or
+     *         <code>-1</code> if nothing has been committed yet.
+     */
+    public long getLastCommitMillis() {
+        return lastCommitMillis;
+    }
+
+    /**
+     * Gets the number of records written by the most recent commit.
+     *
+     * @return The number of records written by the most recent commit.
+     */
+    public int getLastGroupSize() {
+        return lastGroupSize;
+    }
+
+    /**
+     * Stops accepting records, writes any records still waiting in the
+     * queue, and stops the writer thread.
+     *
+     * Blocks until all queued records have been written.
+     */
+    @Override
+    public void close() {
+        // Wait for any records being queued
+        closeLock.writeLock().lock();
+        try {
+            closing = true;
+        } finally {
+            closeLock.writeLock().unlock();
+        }
+
+        try {
+            writerThread.join();
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void runWriter() {
+        ArrayList<Entry> group = new ArrayList<>();
+
+        while(true) {
+            Entry first;
+            try {
+                first = queue.poll(100, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException ie) {
+                // Only close() is supposed to stop us
+                continue;
+            }
+
+            if(null == first) {
+                if(closing && queue.isEmpty()) {
+                    break;
+                }
+
+                continue;
+            }
+
+            group.add(first);
+            queue.drainTo(group, MAX_GROUP_SIZE - 1);
+
+            write(group);
+
+            group.clear();
+        }
+    }
+
+    private void write(List<Entry> group) {
+        List<String> records = new ArrayList<>(group.size());
+        for(Entry entry : group) {
+            records.add(entry.record);
+        }
+
+        long start = System.nanoTime();
+
+        List<InsertResult> results;
+        try {
+            results = project.insertRecords(records);
+        } catch (Throwable t) {
+            // Let these be submitted again
+            forget(records);
+
+            List<String> notified = new ArrayList<>();
+            for(Entry entry : group) {
+                if(null != entry.result) {
+                    entry.result.complete(new InsertResult(0, InsertResult.Status.FAILED, String.valueOf(t)));
+                } else {
+                    notified.add(entry.record);
+                }
+            }
+
+            if(notified.isEmpty()) {
+                return;
+            }
+
+            for(IngestListener listener : listeners) {
+                try {
+                    listener.ingestFailed(Collections.unmodifiableList(notified), t);
+                } catch (RuntimeException rte) {
+                    // Don't let a listener kill the writer thread
+                    rte.printStackTrace();
+                }
+            }
+
+            return;
+        }
+
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        lastCommitMillis = elapsed;
+        lastGroupSize = records.size();
+
+        List<String> failed = new ArrayList<>();
+        for(int i=0; i<results.size(); ++i) {
+            if(InsertResult.Status.FAILED == results.get(i).getStatus()) {
+                failed.add(records.get(i));
+            }
+        }
+        forget(failed);
+
+        // Hand back the results of records someone is waiting for, and
+        // tell the listeners about the rest
+        List<String> notifiedRecords = new ArrayList<>();
+        List<InsertResult> notifiedResults = new ArrayList<>();
+        for(int i=0; i<group.size(); ++i) {
+            Entry entry = group.get(i);
+            InsertResult result = results.get(i);
+
+            if(null != entry.result) {
+                entry.result.complete(result);
+            } else {
+                notifiedResults.add(new InsertResult(notifiedRecords.size(), result.getStatus(), result.getMessage()));
+                notifiedRecords.add(entry.record);
+            }
+        }
+
+        if(notifiedRecords.isEmpty()) {
+            return;
+        }
+
+        records = Collections.unmodifiableList(notifiedRecords);
+        results = Collections.unmodifiableList(notifiedResults);
+
+        for(IngestListener listener : listeners) {
+            try {
+                listener.recordsCommitted(records, results, elapsed);
+            } catch (RuntimeException rte) {
+                // Don't let a listener kill the writer thread
+                rte.printStackTrace();
+            }
+        }
+    }
+
+    private void forget(List<String> records) {
+        synchronized(recentRecords) {
+            for(String record : records) {
+                recentRecords.remove(record);
+            }
+        }
+    }
+
+    /**
+     * A queued record, and where its result goes if someone is waiting
+     * for it.
+     */
+    private static final class Entry {
+        final String record;
+        final CompletableFuture<InsertResult> result;
+
+        Entry(String record, CompletableFuture<InsertResult> result) {
+            this.record = record;
+            this.result = result;
+        }
+    }
+}
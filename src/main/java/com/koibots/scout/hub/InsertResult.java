@@ -0,0 +1,72 @@
+package com.koibots.scout.hub;
+
+/**
+ * The outcome of inserting a single record into the database.
+ */
+public class InsertResult
+{
+    public enum Status {
+        /**
+         * The record was inserted.
+         */
+        INSERTED,
+
+        /**
+         * The record did not match the game configuration and was not
+         * inserted.
+         */
+        INVALID,
+
+        /**
+         * The record has already been inserted and was not inserted again.
+         */
+        DUPLICATE,
+
+        /**
+         * The record was valid, but the database rejected it.
+         */
+        FAILED;
+    }
+
+    private final int index;
+    private final Status status;
+    private final String message;
+
+    InsertResult(int index, Status status, String message) {
+        this.index = index;
+        this.status = status;
+        this.message = message;
+    }
+
+    /**
+     * Gets the 0-based position of the record in the batch.
+     *
+     * @return The position of the record in the batch.
+     */
+    public int getIndex() {
+        return index;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    /**
+     * Gets a description of why the record was not inserted.
+     *
+     * @return A description of the problem, or <code>null</code> if the
+     *         record was inserted.
+     */
+    public String getMessage() {
+        return message;
+    }
+
+    public boolean isInserted() {
+        return Status.INSERTED == status;
+    }
+
+    @Override
+    public String toString() {
+        return "InsertResult { index=" + index + ", status=" + status + (null == message ? "" : ", message=" + message) + " }";
+    }
+}
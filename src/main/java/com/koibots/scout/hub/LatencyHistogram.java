@@ -0,0 +1,167 @@
+package com.koibots.scout.hub;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A histogram of latencies, in the style of HdrHistogram.
+ *
+ * Values are counted in buckets whose width grows with the value, so that
+ * every recorded value is reported within about 1.5% of its true value
+ * no matter how large it is, using a fixed amount of memory. Values are
+ * whatever unit the caller chooses; {@link ServerMetrics} uses
+ * microseconds.
+ *
+ * Recording is lock-free and may be done from any number of threads.
+ * Reading while values are being recorded gives a result which may be
+ * slightly out of date, but is never corrupt.
+ */
+public final class LatencyHistogram
+{
+    /**
+     * Values below 2^SUB_BUCKET_BITS are counted exactly; above that, each
+     * power of two is divided into 2^(SUB_BUCKET_BITS - 1) buckets.
+     */
+    private static final int SUB_BUCKET_BITS = 7;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    private static final int SUB_BUCKET_HALF_COUNT = SUB_BUCKET_COUNT / 2;
+    private static final int BUCKET_COUNT = SUB_BUCKET_COUNT
+        + (Long.SIZE - SUB_BUCKET_BITS) * SUB_BUCKET_HALF_COUNT;
+
+    private final AtomicLongArray counts;
+    private final LongAdder count = new LongAdder();
+    private final LongAdder total = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    public LatencyHistogram() {
+        counts = new AtomicLongArray(BUCKET_COUNT);
+    }
+
+    /**
+     * Records a value.
+     *
+     * @param value The value to record. Negative values are recorded as
+     *        zero.
+     */
+    public void record(long value) {
+        if(value < 0) {
+            value = 0;
+        }
+
+        counts.incrementAndGet(bucketIndex(value));
+        count.increment();
+        total.add(value);
+        max.accumulateAndGet(value, Math::max);
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    /**
+     * Gets the sum of all recorded values.
+     *
+     * @return The sum of all recorded values.
+     */
+    public long getTotal() {
+        return total.sum();
+    }
+
+    public long getMax() {
+        return max.get();
+    }
+
+    public double getMean() {
+        long n = getCount();
+
+        return 0 == n ? 0 : (double)getTotal() / n;
+    }
+
+    /**
+     * Gets the value below which a given percentage of the recorded values
+     * fall.
+     *
+     * @param percentile The percentile, from 0 to 100.
+     *
+     * @return The highest value which is equivalent (within the histogram's
+     *         precision) to the value at the percentile, or <code>0</code>
+     *         if nothing has been recorded.
+     */
+    public long getValueAtPercentile(double percentile) {
+        if(percentile < 0 || percentile > 100) {
+            throw new IllegalArgumentException("Percentile must be between 0 and 100: " + percentile);
+        }
+
+        long n = 0;
+        long[] snapshot = new long[BUCKET_COUNT];
+        for(int i=0; i<BUCKET_COUNT; ++i) {
+            snapshot[i] = counts.get(i);
+            n += snapshot[i];
+        }
+
+        if(0 == n) {
+            return 0;
+        }
+
+        long target = Math.max(1, (long)Math.ceil(percentile / 100 * n));
+
+        long seen = 0;
+        for(int i=0; i<BUCKET_COUNT; ++i) {
+            seen += snapshot[i];
+
+            if(seen >= target) {
+                // Don't report more than was ever recorded
+                return Math.min(highestEquivalentValue(i), getMax());
+            }
+        }
+
+        return getMax();
+    }
+
+    /**
+     * Makes a copy of this histogram, e.g. to report from while recording
+     * continues.
+     *
+     * @return A copy of this histogram.
+     */
+    public LatencyHistogram copy() {
+        LatencyHistogram copy = new LatencyHistogram();
+
+        for(int i=0; i<BUCKET_COUNT; ++i) {
+            long c = counts.get(i);
+            if(0 != c) {
+                copy.counts.set(i, c);
+            }
+        }
+
+        copy.count.add(count.sum());
+        copy.total.add(total.sum());
+        copy.max.set(max.get());
+
+        return copy;
+    }
+
+    static int bucketIndex(long value) {
+        if(value < SUB_BUCKET_COUNT) {
+            return (int)value;
+        }
+
+        // Scale the value into [SUB_BUCKET_HALF_COUNT, SUB_BUCKET_COUNT)
+        int shift = (Long.SIZE - Long.numberOfLeadingZeros(value)) - SUB_BUCKET_BITS;
+        int subBucket = (int)(value >>> shift);
+
+        return SUB_BUCKET_COUNT + (shift - 1) * SUB_BUCKET_HALF_COUNT + (subBucket - SUB_BUCKET_HALF_COUNT);
+    }
+
+    static long highestEquivalentValue(int index) {
+        if(index < SUB_BUCKET_COUNT) {
+            return index;
+        }
+
+        int shift = (index - SUB_BUCKET_COUNT) / SUB_BUCKET_HALF_COUNT + 1;
+        long subBucket = (index - SUB_BUCKET_COUNT) % SUB_BUCKET_HALF_COUNT + SUB_BUCKET_HALF_COUNT;
+
+        return ((subBucket + 1) << shift) - 1;
+    }
+}
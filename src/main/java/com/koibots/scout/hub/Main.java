@@ -48,9 +48,11 @@ import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.EnumMap;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.MissingResourceException;
 import java.util.ResourceBundle;
@@ -66,6 +68,7 @@ import javax.swing.AbstractAction;
 import javax.swing.BorderFactory;
 import javax.swing.Box;
 import javax.swing.BoxLayout;
+import javax.swing.ButtonGroup;
 import javax.swing.Icon;
 import javax.swing.ImageIcon;
 import javax.swing.JButton;
@@ -78,6 +81,7 @@ import javax.swing.JMenuBar;
 import javax.swing.JMenuItem;
 import javax.swing.JOptionPane;
 import javax.swing.JPanel;
+import javax.swing.JRadioButtonMenuItem;
 import javax.swing.JTextArea;
 import javax.swing.JTextPane;
 import javax.swing.KeyStroke;
@@ -97,12 +101,16 @@ import com.google.zxing.client.j2se.MatrixToImageWriter;
 import com.google.zxing.common.BitMatrix;
 import com.google.zxing.qrcode.QRCodeWriter;
 import com.google.zxing.qrcode.decoder.ErrorCorrectionLevel;
+import com.koibots.scout.hub.scan.BulkDecoder;
+import com.koibots.scout.hub.scan.DecodeEngine;
 import com.koibots.scout.hub.ui.AnalyticWindow;
 import com.koibots.scout.hub.ui.AnalyticsWindow;
 import com.koibots.scout.hub.ui.CodeScanner;
 import com.koibots.scout.hub.ui.DatabaseEditor;
 import com.koibots.scout.hub.ui.FileViewer;
 import com.koibots.scout.hub.ui.GameConfigEditorDialog;
+import com.koibots.scout.hub.ui.ScanStationsPanel;
+import com.koibots.scout.hub.ui.ServerMetricsWindow;
 import com.koibots.scout.hub.ui.UIUtils;
 import com.koibots.scout.hub.utils.AnalyticUpdater;
 import com.koibots.scout.hub.utils.Queryable;
@@ -119,10 +127,20 @@ public class Main {
 
     private static final String PREFS_KEY_FILE_DIALOG_DIRECTORY = "file.dialog.directory";
     private static final String PREFS_KEY_CAMERA_DEVICE_ID = "camera.device.id";
+    private static final String PREFS_KEY_CAMERA_DEVICES = "camera.devices";
+    private static final String PREFS_KEY_KEEP_CAMERA_OPEN = "camera.keep.open";
     private static final String PREFS_KEY_LAST_OPEN_PROJECT = "last.project.directory";
     private static final String PREFS_KEY_INSERT_IMMEDIATELY = "insert.immediately";
     private static final String PREFS_KEY_RESCAN_IMMEDIATELY = "rescan.immediately";
     private static final String PREFS_KEY_USE_PLATFORM_FILE_DIALOGS = "file.use.platform.file.dialogs";
+    private static final String PREFS_KEY_DECODE_ENGINE = "scan.decode.engine";
+    private static final String PREFS_KEY_STATION_CAMERAS = "scan.station.cameras";
+
+    /**
+     * How often to check the project's in-memory record count against the
+     * database.
+     */
+    private static final long RECORD_COUNT_RECONCILIATION_MILLIS = 5 * 60 * 1000;
 
     private static final Collection<String> IMAGE_URLs = Arrays.asList(new String[] {
             "/icons/koibots-logo-16x16.png",
@@ -165,6 +183,7 @@ public class Main {
     private JLabel _statusLine;
 
     private AnalyticsWindow _analyticsWindow;
+    private ServerMetricsWindow _serverMetricsWindow;
 
     /**
      * A list of Windows that are actually open.
@@ -178,6 +197,11 @@ public class Main {
      */
     private Project _project;
 
+    /**
+     * Writes scanned records to the current project in the background.
+     */
+    private volatile IngestQueue _ingestQueue;
+
     // Actions which can be manifested as buttons or menu items
     private Action _newAction;
     private Action _openAction;
@@ -186,12 +210,16 @@ public class Main {
     private Action _scanAction;
     private Action _importAction;
     private Action _exportAction;
+    private Action _decodeFilesAction;
     private Action _generateWebApplicationAction;
     private Action _analyticsAction;
 
     private Action _justScanNow;
     private Action _chooseCameraAction;
+    private Action _startStationsAction;
+    private Action _stopStationsAction;
     private Action _launchWebappAction;
+    private Action _serverMetricsAction;
     private Action _editGameConfigAction;
     private Action _editDatabaseAction;
     private Action _purgeDatabaseAction;
@@ -204,7 +232,10 @@ public class Main {
     private JCheckBoxMenuItem _rescanImmediatelyOption;
     private Action _rescanImmediatelyAction;
     private JCheckBoxMenuItem _usePlatformFileDialogsOption;
+    private JCheckBoxMenuItem _keepCameraOpenOption;
+    private Action _keepCameraOpenAction;
     private Action _usePlatformFileDialogsAction;
+    private final Map<DecodeEngine,JRadioButtonMenuItem> _decodeEngineOptions = new EnumMap<>(DecodeEngine.class);
 
     /**
      * The number of camera failures since process start.
@@ -222,6 +253,17 @@ public class Main {
      */
     private CodeScanner _scanner;
 
+    /**
+     * The scanning stations, one for each camera, when scanning with
+     * several cameras at once.
+     */
+    private ScanStationsPanel _stationsPanel;
+
+    /**
+     * The cameras last used for the scanning stations, e.g. "0, 1".
+     */
+    private String _stationCameras = "0, 1";
+
     /**
      * The last code that was scanned. Storing this allows us to avoid
      * scanning the same code multiple times.
@@ -230,6 +272,11 @@ public class Main {
 
     private final AtomicInteger _lastScannedCodeRepeatCount = new AtomicInteger();
 
+    /**
+     * Whether the scanner is open and scanning one code after another.
+     */
+    private volatile boolean _scanningContinuously;
+
     /**
      * Whether or not to insert records immediately without asking.
      */
@@ -264,6 +311,17 @@ public class Main {
         return _rescanImmediately;
     }
 
+    public void setKeepCameraOpen(boolean keepCameraOpen) {
+        _scanner.setKeepCameraOpen(keepCameraOpen);
+
+        _keepCameraOpenOption.setSelected(keepCameraOpen);
+        _keepCameraOpenAction.putValue(Action.SELECTED_KEY, keepCameraOpen);
+    }
+
+    public boolean getKeepCameraOpen() {
+        return _scanner.getKeepCameraOpen();
+    }
+
     public void setUsePlatformFileDialogs(boolean platformDialogs) {
         _usePlatformFileDialogs = platformDialogs;
 
@@ -275,6 +333,16 @@ public class Main {
         return _usePlatformFileDialogs;
     }
 
+    public void setDecodeEngine(DecodeEngine engine) {
+        _scanner.setDecodeEngine(engine);
+
+        _decodeEngineOptions.get(engine).setSelected(true);
+    }
+
+    public DecodeEngine getDecodeEngine() {
+        return _scanner.getDecodeEngine();
+    }
+
     /**
      * These menus and menu items are dynamic, and will need to be updated
      * at various times.
@@ -559,6 +627,26 @@ public class Main {
             }
         };
 
+        _decodeFilesAction = new ActionBase("action.decodeFiles") {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                File selectedFile = showOpenFileDialog(_main,
+                        "Import Codes from Images or Video",
+                        JFileChooser.FILES_AND_DIRECTORIES,
+                        null);
+
+                if(null != selectedFile) {
+                    new Thread(() -> {
+                        try {
+                            decodeFiles(selectedFile);
+                        } catch (Throwable t) {
+                            showError(t);
+                        }
+                    }).start();
+                }
+            }
+        };
+
         _generateWebApplicationAction = new ActionBase("action.makeWebApp") {
             @Override
             public void actionPerformed(ActionEvent e) {
@@ -579,6 +667,31 @@ public class Main {
             }
         };
 
+        _serverMetricsAction = new ActionBase("action.serverMetrics") {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                if(null == _serverMetricsWindow) {
+                    _serverMetricsWindow = new ServerMetricsWindow(_main, () -> {
+                        SimpleHttpServer server = webServer;
+
+                        return null == server ? null : server.getMetrics().snapshot();
+                    });
+
+                    _serverMetricsWindow.addWindowListener(new WindowAdapter() {
+                        @Override
+                        public void windowClosed(WindowEvent e) {
+                            _serverMetricsWindow = null;
+                        }
+                    });
+
+                    _serverMetricsWindow.setVisible(true);
+                } else {
+                    _serverMetricsWindow.toFront();
+                    _serverMetricsWindow.requestFocus();
+                }
+            }
+        };
+
         _analyticsAction = new ActionBase("action.analytics") {
             @Override
             public void actionPerformed(ActionEvent e) {
@@ -667,6 +780,11 @@ public class Main {
                     // NOTE: chooseCamera already sets the device to be used
                     // with later CodeScanner-related operations (e.g. "scan").
 
+                    if(cameraDeviceID >= 0) {
+                        // Keep the new camera ready, if we're doing that
+                        warmUpCamera();
+                    }
+
                     if(-3 == cameraDeviceID) {
                         // This was an error
                         SwingUtilities.invokeLater(() ->
@@ -688,6 +806,41 @@ public class Main {
             }
         };
 
+        _startStationsAction = new ActionBase("action.startStations") {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                Object cameras = JOptionPane.showInputDialog(_main,
+                        "Cameras to scan with, e.g. 0, 1, 2:",
+                        "Scanning Stations",
+                        JOptionPane.QUESTION_MESSAGE,
+                        null,
+                        null,
+                        _stationCameras);
+
+                if(null != cameras) {
+                    int[] cameraDeviceIDs;
+                    try {
+                        cameraDeviceIDs = parseCameraList(cameras.toString());
+                    } catch (IllegalArgumentException iae) {
+                        showError(iae);
+
+                        return;
+                    }
+
+                    _stationCameras = cameras.toString().trim();
+
+                    new Thread(() -> startStations(cameraDeviceIDs)).start();
+                }
+            }
+        };
+
+        _stopStationsAction = new ActionBase("action.stopStations") {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                new Thread(() -> stopStations()).start();
+            }
+        };
+
         _justScanNow = new ActionBase("action.scanNow") {
             @Override
             public void actionPerformed(ActionEvent e) {
@@ -754,7 +907,7 @@ public class Main {
                                         for(int row = e.getFirstRow(); row <= e.getLastRow(); ++row) {
                                             _project.updateRecord(de.getData(row));
                                         }
-                                        _statusLine.setText("Record count: " + _project.getRecordCount());
+                                        updateStatusLine(_project.getRecordCount());
                                     } catch (RuntimeException rte) {
                                         // Throw this back to the TableModel to deal with
                                         throw rte;
@@ -786,6 +939,8 @@ public class Main {
                 if(JOptionPane.YES_OPTION == option) {
                     try {
                         _project.purgeDatabase();
+
+                        updateStatusLine(_project.getRecordCount());
                     } catch (Throwable t) {
                         UIUtils.showError(t, _main);
                     }
@@ -817,6 +972,20 @@ public class Main {
             }
         };
 
+        _keepCameraOpenAction = new ActionBase("action.keepCameraOpen") {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                JCheckBoxMenuItem item = (JCheckBoxMenuItem) e.getSource();
+                boolean selected = item.isSelected();
+
+                setKeepCameraOpen(selected);
+
+                if(selected) {
+                    new Thread(() -> warmUpCamera()).start();
+                }
+            }
+        };
+
         _usePlatformFileDialogsAction = new ActionBase("action.usePlatformFileDialogs") {
             @Override
             public void actionPerformed(ActionEvent e) {
@@ -981,6 +1150,10 @@ public class Main {
             public void windowClosing(WindowEvent we) {
                 _main.dispose(); // Close the window
 
+                closeIngestQueue();
+
+                _scanner.closeWarmCamera();
+
                 try {
                     Project.dispose();
                 } catch (Throwable t) {
@@ -1047,10 +1220,16 @@ public class Main {
         _scanner = new CodeScanner();
         _scanner.setParent(_main);
 
+        _stationsPanel = new ScanStationsPanel(_scanner);
+        workPanel.add(_stationsPanel);
+
         setProjectLoaded(false);
 
         loadPreferences();
 
+        // Get the camera ready while the user finds their project
+        warmUpScanner();
+
         System.out.println(System.currentTimeMillis() + ", " + (System.currentTimeMillis() - elapsed) + " :  Showing main window...");
         _main.setVisible(true);
     }
@@ -1262,6 +1441,7 @@ public class Main {
         menu.add(new JMenuItem(_importGameConfigAction));
         menu.add(new JMenuItem(_editGameConfigAction));
         menu.add(new JMenuItem(_launchWebappAction));
+        menu.add(new JMenuItem(_serverMetricsAction));
         menu.add(new JMenuItem(_generateWebApplicationAction));
         menubar.add(menu);
 
@@ -1269,12 +1449,16 @@ public class Main {
         menu.add(new JMenuItem(_analyticsAction));
         menu.add(new JMenuItem(_editDatabaseAction));
         menu.add(new JMenuItem(_purgeDatabaseAction));
+        menu.add(new JMenuItem(_decodeFilesAction));
         menu.add(new JMenuItem(_exportAction));
         menubar.add(menu);
 
         menu = new JMenu(getString("menu.tools.name"));
         menu.add(new JMenuItem(_chooseCameraAction));
         menu.add(new JMenuItem(_justScanNow));
+        menu.addSeparator();
+        menu.add(new JMenuItem(_startStationsAction));
+        menu.add(new JMenuItem(_stopStationsAction));
         menubar.add(menu);
 
 //        _projectMenuItem = new JMenuItem("Project");
@@ -1289,7 +1473,24 @@ public class Main {
         menu = new JMenu(getString("menu.options.name"));
         menu.add(_importImmediatelyOption = new JCheckBoxMenuItem(_importImmediatelyAction));
         menu.add(_rescanImmediatelyOption = new JCheckBoxMenuItem(_rescanImmediatelyAction));
+        menu.add(_keepCameraOpenOption = new JCheckBoxMenuItem(_keepCameraOpenAction));
         menu.add(_usePlatformFileDialogsOption = new JCheckBoxMenuItem(_usePlatformFileDialogsAction));
+
+        JMenu decoderMenu = new JMenu(getString("menu.options.decoder.name"));
+        ButtonGroup decoders = new ButtonGroup();
+        for(DecodeEngine engine : DecodeEngine.values()) {
+            JRadioButtonMenuItem option = new JRadioButtonMenuItem(new ActionBase("action.decodeEngine." + engine.name().toLowerCase(Locale.ROOT)) {
+                @Override
+                public void actionPerformed(ActionEvent e) {
+                    setDecodeEngine(engine);
+                }
+            });
+
+            decoders.add(option);
+            decoderMenu.add(option);
+            _decodeEngineOptions.put(engine, option);
+        }
+        menu.add(decoderMenu);
         menubar.add(menu);
 
         menu = new JMenu(getString("menu.help.name"));
@@ -1477,6 +1678,14 @@ System.out.println("Loaded preferences: " + toString(prefs));
             }
         }
 
+        // The cameras found last time, until we've looked again
+        String cameraDevices = prefs.get(PREFS_KEY_CAMERA_DEVICES, null);
+        if(null != cameraDevices && !cameraDevices.isEmpty()) {
+            _scanner.setCameraDevices(cameraDevices.split("\n"));
+        }
+
+        setKeepCameraOpen(prefs.getBoolean(PREFS_KEY_KEEP_CAMERA_OPEN, false));
+
         String lastProjectDirectory = prefs.get(PREFS_KEY_LAST_OPEN_PROJECT, null);
         if(null != lastProjectDirectory) {
             System.out.println("Last open project: " + lastProjectDirectory);
@@ -1496,11 +1705,38 @@ System.out.println("Loaded preferences: " + toString(prefs));
         setInsertImmediately(prefs.getBoolean(PREFS_KEY_INSERT_IMMEDIATELY, false));
         setRescanImmediately(prefs.getBoolean(PREFS_KEY_RESCAN_IMMEDIATELY, false));
         setUsePlatformFileDialogs(prefs.getBoolean(PREFS_KEY_USE_PLATFORM_FILE_DIALOGS, false));
+
+        DecodeEngine engine = DecodeEngine.ZXING;
+        try {
+            engine = DecodeEngine.valueOf(prefs.get(PREFS_KEY_DECODE_ENGINE, engine.name()));
+        } catch (IllegalArgumentException iae) {
+            // Ignore
+        }
+        setDecodeEngine(engine);
+
+        _stationCameras = prefs.get(PREFS_KEY_STATION_CAMERAS, _stationCameras);
     }
 
     private void scan() {
         String code = null;
         try {
+            if(getInsertImmediately() && getRescanImmediately()) {
+                // Scouts are being scanned back-to-back: keep the camera
+                // open and queue each code as it comes into view, rather
+                // than re-opening the camera for every record.
+                _scanningContinuously = true;
+
+                _scanner.scanContinuously(scanned -> {
+                    System.out.println("Got code: " + scanned);
+
+                    SwingUtilities.invokeLater(() -> _recordText.setText(scanned));
+
+                    insertRecord(scanned);
+                });
+
+                return;
+            }
+
             code = _scanner.scanCode();
 
             if(null != code) {
@@ -1530,9 +1766,150 @@ System.out.println("Loaded preferences: " + toString(prefs));
             cameraFailures.incrementAndGet();
         } catch (Throwable t) {
             showError(t);
+        } finally {
+            _scanningContinuously = false;
         }
     }
 
+    /**
+     * Does the slow parts of getting the scanner going, in the background
+     * at startup, so that "Scan" can show video straight away: loads the
+     * native libraries, looks for cameras, and (optionally) opens the
+     * camera and keeps it open.
+     *
+     * Returns straight away. A scan started before the cameras have been
+     * probed waits for the probe to finish with the camera.
+     */
+    private void warmUpScanner() {
+        long elapsed = System.currentTimeMillis();
+
+        _scanner.probeCameraDevicesInBackground().whenComplete((devices, t) -> {
+            if(null != t) {
+                t.printStackTrace();
+            } else {
+                System.out.println("Found " + devices.length + " camera(s) in " + (System.currentTimeMillis() - elapsed) + "ms");
+            }
+
+            warmUpCamera();
+
+            System.out.println("Scanner warmed up in " + (System.currentTimeMillis() - elapsed) + "ms");
+        });
+    }
+
+    /**
+     * Opens the current camera and keeps it open, if that option is on.
+     */
+    private void warmUpCamera() {
+        try {
+            _scanner.warmUpCamera();
+        } catch (FrameGrabber.Exception fge) {
+            // The scan will try again, and report any problem
+            fge.printStackTrace();
+        }
+    }
+
+    /**
+     * Parses a list of camera device ids, e.g. "0, 1, 2".
+     *
+     * @throws IllegalArgumentException If the list is empty or has
+     *         anything but camera numbers in it.
+     */
+    private static int[] parseCameraList(String cameras) {
+        String trimmed = cameras.trim();
+        if(trimmed.isEmpty()) {
+            throw new IllegalArgumentException("No cameras specified");
+        }
+
+        String[] ids = trimmed.split("[,\\s]+");
+        int[] cameraDeviceIDs = new int[ids.length];
+        for(int i=0; i<ids.length; ++i) {
+            try {
+                cameraDeviceIDs[i] = Integer.parseInt(ids[i]);
+            } catch (NumberFormatException nfe) {
+                throw new IllegalArgumentException("Not a camera number: " + ids[i]);
+            }
+
+            if(cameraDeviceIDs[i] < 0) {
+                throw new IllegalArgumentException("Not a camera number: " + ids[i]);
+            }
+        }
+
+        return cameraDeviceIDs;
+    }
+
+    /**
+     * Starts a scanning station for each camera, all queueing their codes
+     * for import. Codes scanned by more than one station, or more than
+     * once, are only queued once.
+     */
+    private void startStations(int[] cameraDeviceIDs) {
+        SwingUtilities.invokeLater(() -> {
+            _startStationsAction.setEnabled(false);
+            // The stations may be using the scanner's camera
+            _scanAction.setEnabled(false);
+        });
+
+        int started = _stationsPanel.start(cameraDeviceIDs, this::stationCodeScanned);
+
+        System.out.println("Started " + started + " of " + cameraDeviceIDs.length + " scanning station(s)");
+
+        if(0 == started) {
+            stopStations();
+
+            SwingUtilities.invokeLater(() ->
+                JOptionPane.showMessageDialog(_main,
+                    getString("error.camera.failedToOpen.text"),
+                    getString("error.camera.failedToOpen.title"),
+                    JOptionPane.INFORMATION_MESSAGE)
+            );
+        } else {
+            SwingUtilities.invokeLater(() -> _stopStationsAction.setEnabled(true));
+        }
+    }
+
+    private void stopStations() {
+        if(null == _stationsPanel || !_stationsPanel.isRunning()) {
+            return;
+        }
+
+        _stationsPanel.stop();
+
+        SwingUtilities.invokeLater(() -> {
+            boolean loaded = null != _project;
+
+            _stopStationsAction.setEnabled(false);
+            _startStationsAction.setEnabled(loaded);
+            _scanAction.setEnabled(loaded);
+        });
+    }
+
+    /**
+     * Receives a code from one of the scanning stations, on that station's
+     * decode thread.
+     */
+    private void stationCodeScanned(String code) throws InterruptedException {
+        IngestQueue ingestQueue = _ingestQueue;
+        if(null == ingestQueue) {
+            return;
+        }
+
+        if(ingestQueue.submitIfNew(code)) {
+            System.out.println("Got code: " + code);
+
+            SwingUtilities.invokeLater(() -> _recordText.setText(code));
+        } else {
+            System.out.println("Ignoring duplicate code from scanning station");
+        }
+    }
+
+    /**
+     * Checks whether to open the scanner again after a code has been
+     * handled. Not needed if it never closed.
+     */
+    private boolean shouldRescan() {
+        return getRescanImmediately() && !_scanningContinuously;
+    }
+
     private void exportQRScout(File file)
         throws IOException
     {
@@ -1647,6 +2024,14 @@ System.out.println("Loaded preferences: " + toString(prefs));
         prefs.putBoolean(PREFS_KEY_INSERT_IMMEDIATELY, getInsertImmediately());
         prefs.putBoolean(PREFS_KEY_RESCAN_IMMEDIATELY, getRescanImmediately());
         prefs.putBoolean(PREFS_KEY_USE_PLATFORM_FILE_DIALOGS, getUsePlatformFileDialogs());
+        prefs.put(PREFS_KEY_DECODE_ENGINE, getDecodeEngine().name());
+        prefs.put(PREFS_KEY_STATION_CAMERAS, _stationCameras);
+        prefs.putBoolean(PREFS_KEY_KEEP_CAMERA_OPEN, getKeepCameraOpen());
+
+        String[] cameraDevices = _scanner.getCameraDevices();
+        if(null != cameraDevices) {
+            prefs.put(PREFS_KEY_CAMERA_DEVICES, String.join("\n", cameraDevices));
+        }
 
 System.out.println("Saving preferences: " + toString(prefs));
         try {
@@ -1707,6 +2092,9 @@ System.out.println("Saving preferences: " + toString(prefs));
         _scanAction.setEnabled(loaded);
         _launchWebappAction.setEnabled(loaded);
         _exportAction.setEnabled(loaded);
+        _decodeFilesAction.setEnabled(loaded);
+        _startStationsAction.setEnabled(loaded && !_stationsPanel.isRunning());
+        _stopStationsAction.setEnabled(loaded && _stationsPanel.isRunning());
         _generateWebApplicationAction.setEnabled(loaded);
         _analyticsAction.setEnabled(loaded);
         _editGameConfigAction.setEnabled(loaded);
@@ -1727,14 +2115,66 @@ System.out.println("Saving preferences: " + toString(prefs));
         String projectName = project.getGameConfig().getPageTitle();
         int recordCount = project.getRecordCount();
 
+        closeIngestQueue();
+
+        // The web server serves the old project's app and records
+        if(_project != project) {
+            stopWebServer();
+        }
+
+        if(null != _project && _project != project) {
+            _project.close();
+        }
+
         _project = project;
 
+        project.setRecordCountReconciliationInterval(RECORD_COUNT_RECONCILIATION_MILLIS);
+
+        IngestQueue ingestQueue = new IngestQueue(project);
+        ingestQueue.addIngestListener(new IngestQueue.IngestListener() {
+            @Override
+            public void recordsCommitted(List<String> records, List<InsertResult> results, long commitMillis) {
+                int recordCount;
+                try {
+                    recordCount = project.getRecordCount();
+                } catch (SQLException sqle) {
+                    showError(sqle);
+
+                    return;
+                }
+
+                int duplicates = 0;
+                for(InsertResult result : results) {
+                    if(InsertResult.Status.DUPLICATE == result.getStatus()) {
+                        // Re-scanning the same code is common; not an error
+                        ++duplicates;
+                    } else if(!result.isInserted()) {
+                        showError(new IllegalArgumentException("Failed to import record: " + result.getMessage()));
+                    }
+                }
+
+                final int skipped = duplicates;
+                SwingUtilities.invokeLater(() -> {
+                    if(skipped > 0) {
+                        _recordText.setText("Skipped " + skipped + " duplicate record(s).");
+                    }
+                    updateStatusLine(recordCount);
+                });
+            }
+
+            @Override
+            public void ingestFailed(List<String> records, Throwable t) {
+                showError(t);
+            }
+        });
+        _ingestQueue = ingestQueue;
+
         SwingUtilities.invokeLater(() -> {
             _main.setTitle(PROGRAM_NAME + ": " + projectName);
 
             setProjectLoaded(true);
 
-            _statusLine.setText("Record count: " + recordCount);
+            updateStatusLine(recordCount);
 
             JOptionPane.showMessageDialog(_main, "Successfully loaded project \"" + projectName + "\"", "Project Loaded", JOptionPane.INFORMATION_MESSAGE);
         });
@@ -1743,9 +2183,54 @@ System.out.println("Saving preferences: " + toString(prefs));
         loadProject(Project.loadProject(projectDir));
     }
 
+    /**
+     * Updates the status line with the record count and the state of the
+     * ingest queue.
+     *
+     * @param recordCount The number of records in the project.
+     */
+    private void updateStatusLine(int recordCount) {
+        StringBuilder status = new StringBuilder("Record count: ").append(recordCount);
+
+        IngestQueue ingestQueue = _ingestQueue;
+        if(null != ingestQueue) {
+            status.append("    Queued: ").append(ingestQueue.getQueueDepth());
+
+            long lastCommitMillis = ingestQueue.getLastCommitMillis();
+            if(lastCommitMillis >= 0) {
+                status.append("    Last commit: ").append(lastCommitMillis).append("ms");
+            }
+        }
+
+        _statusLine.setText(status.toString());
+    }
+
+    /**
+     * Writes any records waiting in the ingest queue and stops the queue.
+     */
+    private void closeIngestQueue() {
+        // Stop the scanning stations feeding the queue first
+        stopStations();
+
+        IngestQueue ingestQueue = _ingestQueue;
+
+        if(null != ingestQueue) {
+            System.out.println("Draining ingest queue (" + ingestQueue.getQueueDepth() + " records)...");
+
+            ingestQueue.close();
+
+            _ingestQueue = null;
+        }
+    }
+
     private void closeProject() {
         setProjectLoaded(false);
 
+        closeIngestQueue();
+
+        // Don't accept records for a closed project
+        stopWebServer();
+
         _main.setTitle(PROGRAM_NAME);
         _statusLine.setText("Project closed.");
 
@@ -1760,6 +2245,10 @@ System.out.println("Saving preferences: " + toString(prefs));
             _analyticsWindow.dispose();
         }
 
+        if(null != _project) {
+            _project.close();
+        }
+
         _project = null;
     }
 
@@ -1769,6 +2258,11 @@ System.out.println("Saving preferences: " + toString(prefs));
             return;
         }
 
+        // Decide now, not later on the EDT: by then a continuous scan may
+        // have been cancelled, and it mustn't look like a one-off scan
+        // which needs re-opening
+        final boolean rescan = shouldRescan();
+
         if(codeData.equals(_lastScannedCode)) {
             System.out.println("Ignoring duplicate code (" + _lastScannedCodeRepeatCount + ")");
 
@@ -1780,7 +2274,7 @@ System.out.println("Saving preferences: " + toString(prefs));
                             "Duplicate Code Scanned",
                             JOptionPane.WARNING_MESSAGE);
 
-                    if(getRescanImmediately()) {
+                    if(rescan) {
                         // Run this separately in its own thread.
                         // This prevents infinite recursion which we might get
                         // if we call scan() directly, which calls us back
@@ -1790,7 +2284,7 @@ System.out.println("Saving preferences: " + toString(prefs));
                     }
                 });
             } else {
-                if(getRescanImmediately()) {
+                if(rescan) {
                     // Run this separately in its own thread.
                     // This prevents infinite recursion which we might get
                     // if we call scan() directly, which calls us back
@@ -1807,21 +2301,20 @@ System.out.println("Saving preferences: " + toString(prefs));
         _lastScannedCodeRepeatCount.set(0);
 
         try {
-            _project.insertRecord(codeData);
+            // The record is written in the background so we can get back
+            // to scanning right away.
+            _ingestQueue.submit(codeData);
             _lastScannedCode = codeData;
 
-            int recordCount = _project.getRecordCount();
-
             SwingUtilities.invokeLater(() -> {
-                _recordText.setText("Import successful.");
-                _statusLine.setText("Record count: " + recordCount);
+                _recordText.setText("Import queued.");
 
-                if(getRescanImmediately()) {
+                if(rescan) {
                     // Run this separately in its own thread.
                     // This prevents infinite recursion which we might get
                     // if we call scan() directly, which calls us back
                     // and so on.
-                    System.out.println("Immeditely re-scanning after successful import");
+                    System.out.println("Immediately re-scanning after queueing import");
                     new Thread(this::scan).start();
                 } else {
                     _importAction.setEnabled(false);
@@ -1832,6 +2325,60 @@ System.out.println("Saving preferences: " + toString(prefs));
         }
     }
 
+    /**
+     * Decodes the QR codes in a directory of images or a video file, and
+     * imports them all at once.
+     *
+     * @param file The directory or video file.
+     */
+    private void decodeFiles(File file) throws IOException, InterruptedException, SQLException {
+        BulkDecoder decoder = new BulkDecoder();
+        decoder.setDecodeEngine(getDecodeEngine());
+        decoder.setProgressListener((done, total) -> SwingUtilities.invokeLater(() ->
+                _recordText.setText("Decoding " + done + (total > 0 ? " of " + total : "") + "...")));
+
+        BulkDecoder.Report report = decoder.decode(file);
+
+        System.out.println("Decoded " + report);
+
+        List<InsertResult> results = _project.insertRecords(report.getCodes());
+
+        int inserted = 0;
+        int duplicates = 0;
+        StringBuilder problems = new StringBuilder();
+        for(InsertResult result : results) {
+            if(result.isInserted()) {
+                ++inserted;
+            } else if(InsertResult.Status.DUPLICATE == result.getStatus()) {
+                // Already scanned at the event
+                ++duplicates;
+            } else {
+                problems.append('\n').append(result.getStatus()).append(": ").append(result.getMessage());
+            }
+        }
+        for(String problem : report.getUnreadable()) {
+            problems.append('\n').append(problem);
+        }
+
+        int recordCount = _project.getRecordCount();
+        final int imported = inserted;
+
+        String message = "Found " + results.size() + " code(s) in " + report.getDecoded() + " of " + report.getSources() + " image(s) or frame(s).\n"
+                + "Imported " + inserted + " record(s); skipped " + duplicates + " already in the database."
+                + problems;
+
+        SwingUtilities.invokeLater(() -> {
+            _recordText.setText("Imported " + imported + " record(s).");
+
+            updateStatusLine(recordCount);
+
+            JOptionPane.showMessageDialog(_main,
+                    message,
+                    "Codes Imported",
+                    JOptionPane.INFORMATION_MESSAGE);
+        });
+    }
+
     private void exportDatabase(File targetFile) throws IOException, SQLException {
         try (FileWriter out = new FileWriter(targetFile)) {
             _project.exportDatabase(out);
@@ -1935,7 +2482,8 @@ System.out.println("Saving preferences: " + toString(prefs));
         if(null == webServer) {
             try {
                 SimpleHttpServer server = new SimpleHttpServer(8080, new File(_project.getDirectory(), "web").toPath());
-                server.start();
+                // Lots of phones tend to load the app at the same time
+                server.setMode(SimpleHttpServer.Mode.CONCURRENT);
 
                 server.addRequestListener(new SimpleHttpServer.RequestListener() {
 
@@ -1950,6 +2498,37 @@ System.out.println("Saving preferences: " + toString(prefs));
                         System.out.println("HTTP Server: " + responseCode + " " + path + " len=" + length);
                     }
                 });
+
+                server.addRequestHandler(MetricsHandler.PATH, new MetricsHandler(server.getMetrics()));
+
+                // Phones with a network connection can skip the camera. The
+                // records join the scanned ones in the ingest queue.
+                final Project project = _project;
+                server.addRequestHandler(RecordsApiHandler.PATH, new RecordsApiHandler(() -> _ingestQueue, new IngestQueue.IngestListener() {
+                    @Override
+                    public void recordsCommitted(List<String> records, List<InsertResult> results, long commitMillis) {
+                        System.out.println("Received " + records.size() + " record(s) over HTTP in " + commitMillis + "ms");
+
+                        try {
+                            int recordCount = project.getRecordCount();
+
+                            SwingUtilities.invokeLater(() -> {
+                                updateStatusLine(recordCount);
+                            });
+                        } catch (SQLException sqle) {
+                            sqle.printStackTrace();
+                        }
+                    }
+
+                    @Override
+                    public void ingestFailed(List<String> records, Throwable t) {
+                        // Not called: records which couldn't be written
+                        // come back to the phone as FAILED
+                    }
+                }));
+
+                server.start();
+
                 webServer = server;
             } catch (IOException e) {
                 showError(e);
@@ -2050,6 +2629,11 @@ System.out.println("Saving preferences: " + toString(prefs));
 
             stopWebServer();
 
+            // Finish writing any scanned records before shutting down the database
+            closeIngestQueue();
+
+            _scanner.closeWarmCamera();
+
             try {
                 Project.dispose();
             } catch (Throwable t) {
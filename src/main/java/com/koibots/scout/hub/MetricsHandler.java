@@ -0,0 +1,46 @@
+package com.koibots.scout.hub;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reports a server's {@link ServerMetrics} as plain text, so we can see
+ * how the laptop is holding up from a browser (or a phone) while scouts
+ * are loading the web app.
+ *
+ * The text is in the Prometheus text exposition format, e.g.
+ *
+ * <pre>
+ * scout_hub_http_connections_active 12
+ * scout_hub_http_requests_total{path="/index.html"} 48
+ * scout_hub_http_time_to_last_byte_seconds{quantile="0.99"} 0.018431
+ * </pre>
+ */
+public class MetricsHandler
+    implements SimpleHttpServer.RequestHandler
+{
+    public static final String PATH = "/metrics";
+
+    private static final String TEXT_CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    private final ServerMetrics metrics;
+
+    /**
+     * Creates a new MetricsHandler.
+     *
+     * @param metrics The metrics to report.
+     */
+    public MetricsHandler(ServerMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    @Override
+    public SimpleHttpServer.Response handle(HttpRequest request, byte[] body) {
+        if(!"GET".equals(request.getMethod())) {
+            return new SimpleHttpServer.Response(405, "Method Not Allowed", TEXT_CONTENT_TYPE,
+                    "Use GET to read metrics\n".getBytes(StandardCharsets.UTF_8));
+        }
+
+        return new SimpleHttpServer.Response(200, "OK", TEXT_CONTENT_TYPE,
+                metrics.snapshot().toText().getBytes(StandardCharsets.UTF_8));
+    }
+}
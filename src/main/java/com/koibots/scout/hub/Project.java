@@ -20,7 +20,6 @@ import java.sql.ResultSet;
 import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
 import java.sql.Statement;
-import java.sql.Types;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
@@ -28,11 +27,22 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
+import java.util.ListIterator;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
+import com.koibots.scout.hub.scan.BulkDecoder;
+import com.koibots.scout.hub.utils.ConnectionPool;
 import com.opencsv.CSVWriter;
 
 /**
@@ -45,6 +55,12 @@ public class Project
     private static final String ANALYTICS_SUBDIRECTORY = "analytics";
     private static final String DB_SUBDIRECTORY = "db";
 
+    /**
+     * The column holding the hash of each record's QR code payload, used to
+     * detect duplicate records.
+     */
+    static final String HASH_COLUMN = "payload_hash";
+
     /**
      * The directory in which the project lives.
      */
@@ -65,6 +81,51 @@ public class Project
      */
     private List<Analytic> analytics = new ArrayList<>();
 
+    /**
+     * The compiled plan for inserting records with the current game config.
+     */
+    private volatile IngestPlan ingestPlan;
+
+    /**
+     * The number of records per JDBC batch when inserting many records.
+     */
+    private int batchSize = DEFAULT_BATCH_SIZE;
+
+    /**
+     * The number of records not marked for deletion.
+     */
+    private final AtomicInteger liveRecordCount = new AtomicInteger();
+
+    /**
+     * The number of records marked for deletion but not yet purged.
+     */
+    private final AtomicInteger deletedRecordCount = new AtomicInteger();
+
+    /**
+     * Guards the record counts. Anything which changes the number of records
+     * holds the read (shared) lock while it writes and adjusts the counts;
+     * re-counting from the database holds the write (exclusive) lock so that
+     * it never sees a change in the database without the matching change in
+     * the counts.
+     */
+    private final ReadWriteLock recordCountLock = new ReentrantReadWriteLock();
+
+    /**
+     * Periodically checks the record counts against the database.
+     */
+    private ScheduledExecutorService reconciler;
+
+    /**
+     * The hashes of every record in the database, so duplicates can be
+     * detected without a trip to the database.
+     */
+    private final Set<Long> payloadHashes = ConcurrentHashMap.newKeySet();
+
+    /**
+     * The pool of connections to the database.
+     */
+    private ConnectionPool connectionPool;
+
     private Project() {
         // Only define a private constructor: clients must use static Factory methods.
     }
@@ -83,6 +144,8 @@ public class Project
 
     public void setGameConfig(GameConfig config) {
         this.config = config;
+
+        compileIngestPlan();
     }
 
     private void setDatabaseURL(String databaseURL) {
@@ -121,6 +184,28 @@ public class Project
 
     private static boolean _derbyLoaded;
 
+    /**
+     * The maximum number of connections to keep open to a project database.
+     */
+    private static final int CONNECTION_POOL_SIZE = 4;
+
+    /**
+     * The number of connections to open as soon as the database is loaded.
+     */
+    private static final int CONNECTION_POOL_WARM_SIZE = 2;
+
+    /**
+     * The default number of records per JDBC batch when inserting many
+     * records.
+     */
+    public static final int DEFAULT_BATCH_SIZE = 500;
+
+    /**
+     * All connection pools which have not yet been closed, so that they
+     * can be closed before Derby is shut down.
+     */
+    private static final Set<ConnectionPool> _connectionPools = ConcurrentHashMap.newKeySet();
+
     {
         System.setProperty("derby.stream.error.method", Project.class.getName() + ".getDerbyLogStream");
     }
@@ -136,7 +221,7 @@ public class Project
 //        return OutputStream.nullOutputStream();
     }
 
-    private static String normalizeColumnName(String column) {
+    static String normalizeColumnName(String column) {
         return column.toUpperCase().replaceAll("[^A-Z]+", "_");
     }
 
@@ -172,11 +257,93 @@ public class Project
 
             setDatabaseURL("jdbc:derby:" + dbDir.getAbsolutePath()); // without "create"
         }
+
+        // Warm up the pool now that the database exists
+        getConnectionPool();
+    }
+
+    /**
+     * Gets the pool of connections to this project's database, creating
+     * it if necessary.
+     *
+     * @return The connection pool for this project's database.
+     *
+     * @throws SQLException If the pool could not be created.
+     */
+    private synchronized ConnectionPool getConnectionPool() throws SQLException {
+        if(null == connectionPool) {
+            String databaseURL = getDatabaseURL();
+
+            if(null == databaseURL) {
+                throw new IllegalStateException("No database URL");
+            }
+
+            connectionPool = new ConnectionPool(databaseURL,
+                    CONNECTION_POOL_SIZE,
+                    CONNECTION_POOL_WARM_SIZE,
+                    ConnectionPool.DEFAULT_STATEMENT_CACHE_SIZE,
+                    ConnectionPool.DEFAULT_ACQUIRE_TIMEOUT_MILLIS);
+
+            _connectionPools.add(connectionPool);
+        }
+
+        return connectionPool;
+    }
+
+    /**
+     * Gets a connection to this project's database.
+     *
+     * The connection comes from the project's connection pool: closing it
+     * returns it to the pool.
+     *
+     * @return A connection to the project's database.
+     *
+     * @throws SQLException If a connection could not be obtained.
+     */
+    private Connection getConnection() throws SQLException {
+        return getConnectionPool().getConnection();
+    }
+
+    /**
+     * Gets a snapshot of the usage statistics for this project's database
+     * connection pool.
+     *
+     * @return The connection pool statistics, or <code>null</code> if
+     *         the database has not yet been opened.
+     */
+    public synchronized ConnectionPool.Statistics getConnectionPoolStatistics() {
+        if(null == connectionPool) {
+            return null;
+        } else {
+            return connectionPool.getStatistics();
+        }
+    }
+
+    /**
+     * Closes this project's database connections.
+     *
+     * The project should not be used after it has been closed.
+     */
+    public synchronized void close() {
+        if(null != reconciler) {
+            reconciler.shutdownNow();
+            reconciler = null;
+        }
+
+        if(null != connectionPool) {
+            System.out.println("Closing connection pool: " + connectionPool.getStatistics());
+
+            connectionPool.close();
+
+            _connectionPools.remove(connectionPool);
+
+            connectionPool = null;
+        }
     }
 
     // NOTE: Caller is responsible for resource management
     private static void createTables(GameConfig config, Connection conn) throws SQLException {
-        StringBuilder sql = new StringBuilder("CREATE TABLE stand_scouting (id INT PRIMARY KEY GENERATED ALWAYS AS IDENTITY (START WITH 1, INCREMENT BY 1), deleted BOOLEAN NOT NULL DEFAULT FALSE");
+        StringBuilder sql = new StringBuilder("CREATE TABLE stand_scouting (id INT PRIMARY KEY GENERATED ALWAYS AS IDENTITY (START WITH 1, INCREMENT BY 1), deleted BOOLEAN NOT NULL DEFAULT FALSE, " + HASH_COLUMN + " BIGINT");
 
         for(Field field : config.getFields()) {
             sql.append(", \"") // NOTE: Using explicit " surrounding the column name to protect keywords, etc.
@@ -193,48 +360,173 @@ public class Project
         try(PreparedStatement ps = conn.prepareStatement(sql.toString())) {
             ps.executeUpdate();
         }
+
+        createHashConstraint(conn);
+    }
+
+    // NOTE: Caller is responsible for resource management
+    private static void createHashConstraint(Connection conn) throws SQLException {
+        // NOTE: Derby UNIQUE constraints (unlike UNIQUE indexes) allow
+        // any number of NULLs, which older records will have.
+        try(Statement stmt = conn.createStatement()) {
+            stmt.execute("ALTER TABLE stand_scouting ADD CONSTRAINT stand_scouting_" + HASH_COLUMN + " UNIQUE (" + HASH_COLUMN + ")");
+        }
+    }
+
+    /**
+     * Loads the hashes of all records already in the database.
+     */
+    private void loadPayloadHashes() throws SQLException {
+        try(Connection conn = getConnection();
+            PreparedStatement ps = conn.prepareStatement("SELECT " + HASH_COLUMN + " FROM stand_scouting WHERE " + HASH_COLUMN + " IS NOT NULL");
+            ResultSet rs = ps.executeQuery()) {
+
+            while(rs.next()) {
+                payloadHashes.add(rs.getLong(1));
+            }
+        }
+
+        System.out.println("Loaded " + payloadHashes.size() + " record hashes");
     }
 
     /**
      * Gets the number of records in the project database.
      *
-     * @return The number of records in the project's database.
+     * This count is maintained in memory as records are inserted, updated
+     * and purged, so it does not require a trip to the database.
+     *
+     * @return The number of records in the project's database, not counting
+     *         records marked for deletion.
      *
      * @throws SQLException If there was a problem counting the records.
      */
     public int getRecordCount() throws SQLException {
-        String databaseURL = getDatabaseURL();
+        return liveRecordCount.get();
+    }
 
-        try(Connection conn = DriverManager.getConnection(databaseURL)) {
-            return getRecordCount(conn);
-        }
+    /**
+     * Gets the number of records in the project database which are marked
+     * for deletion but have not yet been purged.
+     *
+     * @return The number of records marked for deletion.
+     */
+    public int getDeletedRecordCount() {
+        return deletedRecordCount.get();
     }
 
-    private int getRecordCount(Connection conn) throws SQLException {
-        try(PreparedStatement ps = conn.prepareStatement("SELECT COUNT(*) AS cnt FROM stand_scouting WHERE deleted = FALSE");
+    /**
+     * Counts the live and deleted records in the database and stores the
+     * counts in the in-memory counters.
+     *
+     * NOTE: Caller must hold the record count write lock.
+     *
+     * @return <code>true</code> if the in-memory counts already matched the
+     *         database, <code>false</code> if they had to be corrected.
+     */
+    private boolean loadRecordCounts(Connection conn) throws SQLException {
+        int live = 0;
+        int deleted = 0;
+
+        try(PreparedStatement ps = conn.prepareStatement("SELECT deleted, COUNT(*) AS cnt FROM stand_scouting GROUP BY deleted");
             ResultSet rs = ps.executeQuery();) {
 
-            if(rs.next()) {
-                return rs.getInt("cnt");
-            } else {
-                return 0;
+            while(rs.next()) {
+                if(rs.getBoolean("deleted")) {
+                    deleted = rs.getInt("cnt");
+                } else {
+                    live = rs.getInt("cnt");
+                }
             }
         }
+
+        boolean matched = live == liveRecordCount.getAndSet(live);
+        matched &= deleted == deletedRecordCount.getAndSet(deleted);
+
+        return matched;
+    }
+
+    /**
+     * Checks the in-memory record counts against the database, correcting
+     * them if necessary.
+     *
+     * @return <code>true</code> if the in-memory counts matched the
+     *         database, <code>false</code> if they had to be corrected.
+     *
+     * @throws SQLException If there was a problem counting the records.
+     */
+    public boolean reconcileRecordCounts() throws SQLException {
+        int live = liveRecordCount.get();
+        int deleted = deletedRecordCount.get();
+
+        recordCountLock.writeLock().lock();
+        try(Connection conn = getConnection()) {
+            boolean matched = loadRecordCounts(conn);
+
+            if(!matched) {
+                System.err.println("Corrected record counts: live " + live + " -> " + liveRecordCount.get() + ", deleted " + deleted + " -> " + deletedRecordCount.get());
+            }
+
+            return matched;
+        } finally {
+            recordCountLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Sets how often the in-memory record counts are checked against the
+     * database.
+     *
+     * @param intervalMillis The time between checks in milliseconds, or
+     *        <code>0</code> to disable periodic checks.
+     */
+    public synchronized void setRecordCountReconciliationInterval(long intervalMillis) {
+        if(null != reconciler) {
+            reconciler.shutdownNow();
+            reconciler = null;
+        }
+
+        if(intervalMillis > 0) {
+            reconciler = Executors.newSingleThreadScheduledExecutor((r) -> {
+                Thread t = new Thread(r, "Project-record-count-reconciler");
+                t.setDaemon(true);
+                return t;
+            });
+
+            reconciler.scheduleWithFixedDelay(() -> {
+                try {
+                    reconcileRecordCounts();
+                } catch (SQLException | RuntimeException e) {
+                    // Log and try again next time
+                    e.printStackTrace();
+                }
+            }, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+        }
     }
 
     private void loadDatabase(String databaseURL) throws SQLException {
         if(null == databaseURL)
             return;
 
-        try(Connection conn = DriverManager.getConnection(databaseURL)) {
+        setDatabaseURL(databaseURL);
+
+        try(Connection conn = getConnection()) {
 
             _derbyLoaded = true;
 
-            int count = getRecordCount(conn);
+            recordCountLock.writeLock().lock();
+            try {
+                loadRecordCounts(conn);
+            } finally {
+                recordCountLock.writeLock().unlock();
+            }
+
+            System.out.println("Completed loading database " + databaseURL + " with " + liveRecordCount.get() + " records");
+        } catch (SQLException | RuntimeException e) {
+            close();
 
-            System.out.println("Completed loading database " + databaseURL + " with " + count + " records");
+            setDatabaseURL(null);
 
-            setDatabaseURL(databaseURL);
+            throw e;
         }
     }
 
@@ -254,7 +546,7 @@ public class Project
         System.out.println("Config: " + config);
 
         boolean hasDeletedField = false;
-        try(Connection conn = DriverManager.getConnection(databaseURL)) {
+        try(Connection conn = getConnection()) {
 
             PreparedStatement ps = null;
             ResultSet rs = null;
@@ -271,6 +563,7 @@ public class Project
                 }
 
                 hasDeletedField = dbFields.containsKey("DELETED");
+                boolean hasHashField = dbFields.containsKey(HASH_COLUMN.toUpperCase());
 
                 // Check all columns are defined
                 for(Field field : config.getFields()) {
@@ -284,7 +577,9 @@ public class Project
                 for(Map.Entry<String,String> entry : dbFields.entrySet()) {
                     String columnName = entry.getKey();
 
-                    if(!"id".equalsIgnoreCase(columnName) && !"deleted".equalsIgnoreCase(columnName)) {
+                    if(!"id".equalsIgnoreCase(columnName)
+                       && !"deleted".equalsIgnoreCase(columnName)
+                       && !HASH_COLUMN.equalsIgnoreCase(columnName)) {
                         Field field = getFieldFromSQLColumn(config, columnName);
                         if(null == field) {
                             throw new IllegalStateException("Database contains field not found in configuration: " + columnName);
@@ -298,7 +593,17 @@ public class Project
                     ps.executeUpdate();
                 }
 
-                System.out.println("Verification complete; hasDeleted=" + hasDeletedField);
+                if(!hasHashField) {
+                    // Records inserted before this column existed will
+                    // have no hash, and so can't be checked for duplicates.
+                    try(Statement stmt = conn.createStatement()) {
+                        stmt.execute("ALTER TABLE stand_scouting ADD COLUMN " + HASH_COLUMN + " BIGINT");
+                    }
+
+                    createHashConstraint(conn);
+                }
+
+                System.out.println("Verification complete; hasDeleted=" + hasDeletedField + ", hasHash=" + hasHashField);
             } finally {
                 if(null != ps) try { ps.close(); }
                 catch (SQLException sqle) {
@@ -312,112 +617,359 @@ public class Project
         }
     }
 
-    private String getInsertStatement() {
-        StringBuilder insert = new StringBuilder("INSERT INTO stand_scouting (");
+    /**
+     * Gets the plan for inserting records, compiling it if necessary.
+     *
+     * @return The plan for inserting records with the current game config.
+     */
+    private IngestPlan getIngestPlan() {
+        IngestPlan plan = ingestPlan;
 
-        Collection<Field> fields = getGameConfig().getFields();
+        if(null == plan) {
+            plan = compileIngestPlan();
+        }
 
-        boolean first = true;
-        for(Field field : fields) {
-            if(first) { first = false; }
-            else { insert.append(','); }
+        return plan;
+    }
+
+    /**
+     * Compiles a new plan for inserting records from the current game
+     * config and makes it the current plan.
+     *
+     * @return The new plan.
+     */
+    private IngestPlan compileIngestPlan() {
+        GameConfig config = getGameConfig();
+
+        if(null == config) {
+            ingestPlan = null;
 
-            insert.append('"').append(normalizeColumnName(field.getCode())).append('"');
+            return null;
         }
 
-        insert.append(") VALUES (");
+        IngestPlan plan = IngestPlan.compile(config);
+
+        System.out.println("Compiled ingest plan: " + plan);
+
+        ingestPlan = plan;
+
+        return plan;
+    }
+
+    /**
+     * Inserts a record into the database.
+     *
+     * Records which have already been inserted are not inserted again;
+     * they are reported as {@link InsertResult.Status#DUPLICATE}.
+     *
+     * @param codeData The game data record. Should be tab-separated and have
+     *        the same number of fields as the game.
+     *
+     * @return The result of the insert.
+     *
+     * @throws IllegalArgumentException If the record does not match the
+     *         game config.
+     * @throws SQLException If there is a problem inserting the data.
+     */
+    public InsertResult insertRecord(String codeData) throws SQLException {
+        IngestPlan plan = getIngestPlan();
 
-        first = true;
-        for(int i=0; i<fields.size(); ++i) {
-            if(first) { first = false; }
-            else { insert.append(','); }
+        codeData = IngestPlan.normalize(codeData);
+        Long hash = IngestPlan.hash(codeData);
 
-            insert.append('?');
+        if(payloadHashes.contains(hash)) {
+            return new InsertResult(0, InsertResult.Status.DUPLICATE, "Record has already been imported");
         }
 
-        insert.append(')');
+        try(Connection conn = getConnection();
+            PreparedStatement ps = conn.prepareStatement(plan.getInsertSQL())) {
 
-        return insert.toString();
-    }
+            plan.bind(ps, codeData, hash);
 
-    private Map<Field,String> parseCodeData(String code) {
-        // QR code format is: datum \t datum \t datum with no keys :(
+            recordCountLock.readLock().lock();
+            try {
+                ps.executeUpdate();
 
-        // NOTE: Use 2-argument version of String.split() to ensure we get blanks at the end
-        String[] values = code.split("\\t", 500); // 500 seems like a reasonable limit ;)
+                payloadHashes.add(hash);
+                liveRecordCount.incrementAndGet();
+            } catch (SQLException sqle) {
+                if(isUniqueViolation(sqle)) {
+                    // Someone else inserted it first
+                    payloadHashes.add(hash);
 
-        Collection<Field> fields = getGameConfig().getFields();
+                    return new InsertResult(0, InsertResult.Status.DUPLICATE, "Record has already been imported");
+                }
 
-        if(values.length != fields.size()) {
-            throw new IllegalArgumentException("QR code and game config size mismatch: " + values.length + " != " + fields.size());
+                throw sqle;
+            } finally {
+                recordCountLock.readLock().unlock();
+            }
         }
 
-        HashMap<Field,String> data = new HashMap<Field,String>();
+        return new InsertResult(0, InsertResult.Status.INSERTED, null);
+    }
 
-        int index = 0;
+    private static boolean isUniqueViolation(SQLException sqle) {
+        return hasSQLState(sqle, "23505");
+    }
 
-        for(Field field : fields) {
-            data.put(field, values[index++]);
+    /**
+     * Checks whether a transaction was chosen as a deadlock victim, e.g.
+     * when two transactions insert the same records in a different order.
+     */
+    private static boolean isDeadlock(SQLException sqle) {
+        return hasSQLState(sqle, "40001");
+    }
+
+    private static boolean hasSQLState(SQLException sqle, String sqlState) {
+        // A failed batch may only report the error in a chained exception
+        for(Throwable t = sqle; null != t; t = t.getCause()) {
+            if(t instanceof SQLException) {
+                for(SQLException e = (SQLException)t; null != e; e = e.getNextException()) {
+                    if(sqlState.equals(e.getSQLState())) {
+                        return true;
+                    }
+                }
+            }
         }
 
-        return data;
+        return false;
     }
 
     /**
-     * Inserts a record into the database.
+     * Sets the number of records sent to the database in each JDBC batch by
+     * {@link #insertRecords(Iterable)}.
      *
-     * @param codeData The game data record. Should be tab-separated and have
-     *        the same number of fields as the game.
+     * @param batchSize The number of records per batch. Must be positive.
+     */
+    public void setBatchSize(int batchSize) {
+        if(batchSize < 1) {
+            throw new IllegalArgumentException("Batch size must be positive: " + batchSize);
+        }
+
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Gets the number of records sent to the database in each JDBC batch by
+     * {@link #insertRecords(Iterable)}.
      *
-     * @throws SQLException If there is a problem inserting the data.
+     * @return The number of records per batch.
      */
-    public void insertRecord(String codeData) throws SQLException {
-        String databaseURL = getDatabaseURL();
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * Inserts many records into the database in a single transaction.
+     *
+     * Every record is checked against the game config before being sent to
+     * the database; records which do not match are reported as
+     * {@link InsertResult.Status#INVALID} and skipped. All valid records are
+     * committed together. If the database rejects any of them, the whole
+     * transaction is rolled back, every valid record is reported as
+     * {@link InsertResult.Status#FAILED} and no further records are read.
+     *
+     * @param records The game data records. Each should be tab-separated and
+     *        have the same number of fields as the game.
+     *
+     * @return One result for each record processed, in order.
+     *
+     * @throws SQLException If there is a problem connecting to the database.
+     */
+    public List<InsertResult> insertRecords(Iterable<String> records) throws SQLException {
+        return insertRecords(records.iterator());
+    }
+
+    /**
+     * Inserts many records into the database in a single transaction.
+     *
+     * @param records The game data records.
+     *
+     * @return One result for each record processed, in order.
+     *
+     * @throws SQLException If there is a problem connecting to the database.
+     *
+     * @see #insertRecords(Iterable)
+     */
+    public List<InsertResult> insertRecords(Stream<String> records) throws SQLException {
+        return insertRecords(records.iterator());
+    }
 
-        Map<Field,String> data = parseCodeData(codeData);
+    private List<InsertResult> insertRecords(Iterator<String> records) throws SQLException {
+        IngestPlan plan = getIngestPlan();
+        int batchSize = getBatchSize();
 
-        System.out.println("Parsed code data: " + data);
+        ArrayList<InsertResult> results = new ArrayList<>();
 
-        String insertStatement = getInsertStatement();
+        // The hashes of the records in this transaction
+        HashSet<Long> batchHashes = new HashSet<>();
 
-        System.out.println("Insert statement: " + insertStatement);
+        // The records in this transaction, in the same order as their
+        // INSERTED results
+        ArrayList<String> batchRecords = new ArrayList<>();
 
-        try(Connection conn = DriverManager.getConnection(databaseURL);
-            PreparedStatement ps = conn.prepareStatement(insertStatement)) {
+        // Set if another writer was inserting one of our records too
+        boolean raced = false;
 
-            Collection<Field> fields = getGameConfig().getFields();
+        // Why the transaction failed, if it did for any other reason
+        String failure = null;
 
-            int index = 0; // JDBC uses 1-based addressing; we start at 0 and pre-increment
-            for(Field field : fields) {
-                String datum = data.get(field);
+        try(Connection conn = getConnection();
+            PreparedStatement ps = conn.prepareStatement(plan.getInsertSQL())) {
 
-                if("counter".equals(field.getType()) || "number".equals(field.getType()) || "range".equals(field.getType())) {
-                    if(null == datum) {
-                        ps.setNull(++index, Types.INTEGER);
-                    } else {
-                        ps.setInt(++index, Integer.parseInt(datum));
-                    }
-                } else if("boolean".equals(field.getType())) {
-                        if(null == datum) {
-                            ps.setNull(++index, Types.BOOLEAN);
-                        } else {
-                            ps.setString(++index, "true".equals(datum) ? "Y" : "N");
+            conn.setAutoCommit(false); // BEGIN TRANSACTION
+            recordCountLock.readLock().lock();
+            try {
+                int index = 0;
+                int batched = 0;
+
+                while(records.hasNext()) {
+                    String record = records.next();
+
+                    try {
+                        if(null == record) {
+                            throw new IllegalArgumentException("Empty record");
+                        }
+
+                        record = IngestPlan.normalize(record);
+                        Long hash = IngestPlan.hash(record);
+
+                        if(payloadHashes.contains(hash) || batchHashes.contains(hash)) {
+                            results.add(new InsertResult(index, InsertResult.Status.DUPLICATE, "Record has already been imported"));
+
+                            ++index;
+
+                            continue;
+                        }
+
+                        plan.bind(ps, record, hash);
+                        ps.addBatch();
+
+                        batchHashes.add(hash);
+                        batchRecords.add(record);
+
+                        // Optimistic: this will be changed if the commit fails
+                        results.add(new InsertResult(index, InsertResult.Status.INSERTED, null));
+
+                        if(++batched >= batchSize) {
+                            ps.executeBatch();
+                            batched = 0;
                         }
+                    } catch (IllegalArgumentException iae) {
+                        // Includes NumberFormatException
+                        results.add(new InsertResult(index, InsertResult.Status.INVALID, iae.getMessage()));
+                    }
+
+                    ++index;
+                }
+
+                if(batched > 0) {
+                    ps.executeBatch();
+                }
+
+                conn.commit();
+
+                payloadHashes.addAll(batchHashes);
+
+                int inserted = 0;
+                for(InsertResult result : results) {
+                    if(result.isInserted()) {
+                        ++inserted;
+                    }
+                }
+                liveRecordCount.addAndGet(inserted);
+            } catch (SQLException sqle) {
+                try { conn.rollback(); } catch (SQLException rbe) {
+                    rbe.printStackTrace();
+                }
+
+                if(isUniqueViolation(sqle) || isDeadlock(sqle)) {
+                    // Nothing was committed, but the rest of the records
+                    // can still be inserted: try them again one at a time
+                    raced = true;
                 } else {
-                    if(null == datum) {
-                        ps.setString(++index, null);
-                    } else {
-                        ps.setString(++index, datum);
+                    sqle.printStackTrace();
+
+                    failure = sqle.getMessage();
+
+                    // Nothing was committed
+                    for(ListIterator<InsertResult> i = results.listIterator(); i.hasNext(); ) {
+                        InsertResult result = i.next();
+                        if(result.isInserted()) {
+                            i.set(new InsertResult(result.getIndex(), InsertResult.Status.FAILED, sqle.getMessage()));
+                        }
                     }
                 }
+            } catch (RuntimeException | Error e) {
+                // e.g. an UncheckedIOException reading the records; don't
+                // let the batches already executed be committed
+                try { conn.rollback(); } catch (SQLException rbe) {
+                    rbe.printStackTrace();
+                }
+
+                throw e;
+            } finally {
+                recordCountLock.readLock().unlock();
+                conn.setAutoCommit(true);
             }
+        }
 
-            ps.executeUpdate();
+        if(raced) {
+            System.out.println("Record inserted concurrently; retrying " + batchRecords.size() + " record(s) one at a time");
+
+            Iterator<String> batched = batchRecords.iterator();
+            for(ListIterator<InsertResult> i = results.listIterator(); i.hasNext(); ) {
+                InsertResult result = i.next();
+                if(result.isInserted()) {
+                    i.set(insertRecord(result.getIndex(), batched.next()));
+                }
+            }
+
+            // The batch may have failed part-way through the records, so
+            // insert the ones we hadn't got to yet the same way
+            while(records.hasNext()) {
+                results.add(insertRecord(results.size(), records.next()));
+            }
+        } else if(null != failure) {
+            // Every record gets a result, even those we hadn't got to yet
+            while(records.hasNext()) {
+                records.next();
+
+                results.add(new InsertResult(results.size(), InsertResult.Status.FAILED, failure));
+            }
         }
+
+        return results;
+    }
+
+    /**
+     * Inserts one record on its own, for {@link #insertRecords(Iterator)},
+     * reporting any problem in the result.
+     */
+    private InsertResult insertRecord(int index, String record) {
+        InsertResult result;
+        try {
+            if(null == record) {
+                throw new IllegalArgumentException("Empty record");
+            }
+
+            // Maps a unique key violation to DUPLICATE
+            result = insertRecord(record);
+        } catch (IllegalArgumentException iae) {
+            // Includes NumberFormatException
+            return new InsertResult(index, InsertResult.Status.INVALID, iae.getMessage());
+        } catch (SQLException sqle) {
+            sqle.printStackTrace();
+
+            return new InsertResult(index, InsertResult.Status.FAILED, sqle.getMessage());
+        }
+
+        return new InsertResult(index, result.getStatus(), result.getMessage());
     }
 
     public List<String[]> getRecords() throws SQLException {
-        try (Connection conn = DriverManager.getConnection(getDatabaseURL());
+        try (Connection conn = getConnection();
              PreparedStatement ps = conn.prepareStatement(getSelectAllStatement());
              ResultSet rs = ps.executeQuery()) {
 
@@ -478,51 +1030,62 @@ public class Project
 
         System.out.println("Update statement: " + updateStatement);
 
-        try(Connection conn = DriverManager.getConnection(getDatabaseURL());
+        int id = Integer.parseInt(record[0]);
+        boolean deleted = Boolean.parseBoolean(record[1]);
+
+        try(Connection conn = getConnection();
+            PreparedStatement select = conn.prepareStatement("SELECT deleted FROM stand_scouting WHERE id=?");
             PreparedStatement ps = conn.prepareStatement(updateStatement)) {
 
-            Collection<Field> fields = getGameConfig().getFields();
+            // The update statement has the same columns in the same order
+            // as the insert statement, so we can re-use its binders.
+            IngestPlan plan = getIngestPlan();
 
             int index = 0; // JDBC uses 1-based addressing; we start at 0 and pre-increment
-            int i = 2; // Skip the "id" and "deleted" fields
             // Handle the 'deleted' flag specially
-            ps.setBoolean(++index, Boolean.parseBoolean(record[1]));
-//System.out.println("Binding parameter index=" + index + " for deleted value " + record[1]);
-            for(Field field : fields) {
-//System.out.println("Binding parameter index=" + (index+1) + ", i=" + i + " for field " + field.getCode() + " with value [[" + record[i] + "]]");
+            ps.setBoolean(++index, deleted);
+            for(int column = 0; column < plan.getColumnCount(); ++column) {
+                // Skip the "id" and "deleted" fields
+                plan.getBinder(column).bind(ps, ++index, record[column + 2]);
+            }
+            ps.setInt(++index, id);
 
-                String datum;
-                if(null == record[i]) {
-                    datum = null;
-                } else {
-                    datum = String.valueOf(record[i]);
+            // We need to know whether the 'deleted' flag is changing in
+            // order to keep the record counts up to date.
+            conn.setAutoCommit(false); // BEGIN TRANSACTION
+            recordCountLock.readLock().lock();
+            try {
+                Boolean wasDeleted = null;
+
+                select.setInt(1, id);
+                try(ResultSet rs = select.executeQuery()) {
+                    if(rs.next()) {
+                        wasDeleted = rs.getBoolean("deleted");
+                    }
                 }
 
-                ++i;
+                int updated = ps.executeUpdate();
 
-                if("counter".equals(field.getType()) || "number".equals(field.getType()) || "range".equals(field.getType())) {
-                    if(null == datum) {
-                        ps.setNull(++index, Types.INTEGER);
-                    } else {
-                        ps.setInt(++index, Integer.parseInt(datum));
-                    }
-                } else if("boolean".equals(field.getType())) {
-                        if(null == datum) {
-                            ps.setNull(++index, Types.BOOLEAN);
-                        } else {
-                            ps.setString(++index, "true".equals(datum) ? "Y" : "N");
-                        }
-                } else {
-                    if(null == datum) {
-                        ps.setString(++index, null);
+                conn.commit();
+
+                if(updated > 0 && null != wasDeleted && wasDeleted.booleanValue() != deleted) {
+                    if(deleted) {
+                        liveRecordCount.decrementAndGet();
+                        deletedRecordCount.incrementAndGet();
                     } else {
-                        ps.setString(++index, datum);
+                        deletedRecordCount.decrementAndGet();
+                        liveRecordCount.incrementAndGet();
                     }
                 }
+            } catch (SQLException | RuntimeException | Error e) {
+                try { conn.rollback(); } catch (SQLException sqle) {
+                    sqle.printStackTrace();
+                }
+                throw e;
+            } finally {
+                recordCountLock.readLock().unlock();
+                conn.setAutoCommit(true);
             }
-            ps.setInt(++index, Integer.parseInt(record[0]));
-
-            ps.executeUpdate();
         }
     }
 
@@ -550,10 +1113,36 @@ public class Project
      * @throws SQLException If there is a problem deleting the records.
      */
     public void purgeDatabase() throws SQLException {
-        try(Connection conn = DriverManager.getConnection(getDatabaseURL());
+        try(Connection conn = getConnection();
+            PreparedStatement select = conn.prepareStatement("SELECT " + HASH_COLUMN + " FROM stand_scouting WHERE deleted=TRUE AND " + HASH_COLUMN + " IS NOT NULL");
             PreparedStatement ps = conn.prepareStatement("DELETE FROM stand_scouting WHERE deleted=TRUE")) {
 
-            ps.executeUpdate();
+            conn.setAutoCommit(false); // BEGIN TRANSACTION
+            recordCountLock.readLock().lock();
+            try {
+                // Purged records may be imported again
+                ArrayList<Long> purgedHashes = new ArrayList<>();
+                try(ResultSet rs = select.executeQuery()) {
+                    while(rs.next()) {
+                        purgedHashes.add(rs.getLong(1));
+                    }
+                }
+
+                int purged = ps.executeUpdate();
+
+                conn.commit();
+
+                payloadHashes.removeAll(purgedHashes);
+                deletedRecordCount.addAndGet(-purged);
+            } catch (SQLException | RuntimeException | Error e) {
+                try { conn.rollback(); } catch (SQLException sqle) {
+                    sqle.printStackTrace();
+                }
+                throw e;
+            } finally {
+                recordCountLock.readLock().unlock();
+                conn.setAutoCommit(true);
+            }
         }
     }
 
@@ -584,7 +1173,7 @@ public class Project
         }
         sql.append(" FROM stand_scouting WHERE deleted=FALSE");
 
-        try (Connection conn = DriverManager.getConnection(getDatabaseURL());
+        try (Connection conn = getConnection();
              PreparedStatement ps = conn.prepareStatement(sql.toString());
              ResultSet rs = ps.executeQuery()) {
 
@@ -629,7 +1218,7 @@ public class Project
     public void validateQuery(String sql)
         throws IOException, SQLException
     {
-        try (Connection conn = DriverManager.getConnection(getDatabaseURL());
+        try (Connection conn = getConnection();
                 PreparedStatement ps = conn.prepareStatement(sql)) {
 
             conn.setReadOnly(true);
@@ -649,7 +1238,7 @@ public class Project
     {
         System.out.println("Running query: " + sql);
 
-        try (Connection conn = DriverManager.getConnection(getDatabaseURL());
+        try (Connection conn = getConnection();
              PreparedStatement ps = conn.prepareStatement(sql);
              ResultSet rs = ps.executeQuery()) {
 
@@ -797,7 +1386,10 @@ public class Project
         try {
             project.loadDatabase("jdbc:derby:" + new File(dir, DB_SUBDIRECTORY).getAbsolutePath());
             project.verifyDatabase();
+            project.loadPayloadHashes();
         } catch (SQLException sqle) {
+            project.close();
+
             throw new IOException("Database error", sqle);
         }
         project.loadAnalytics();
@@ -814,6 +1406,11 @@ public class Project
      * @throws SQLException If there is a problem shutting-down Apache Derby.
      */
     public static void dispose() throws SQLException {
+        for(ConnectionPool pool : _connectionPools) {
+            pool.close();
+        }
+        _connectionPools.clear();
+
         if(_derbyLoaded) {
             System.out.println("Shutting down Derby...");
 
@@ -850,6 +1447,9 @@ public class Project
         out.println("    -o, --output       Write output (e.g. export) to the specified file. (default stdout)");
         out.println("    -x, --export       Exports a project's database.");
         out.println("    -a, --add data     Adds a record to the project's database. (Tab-separated string)");
+        out.println("    --add-file file    Adds every line of the file as a record in the project's database.");
+        out.println("    --decode path      Decodes the QR codes in a directory of images or a video file and adds them to the project's database.");
+        out.println("    --batch-size n     The number of records per database batch for --add-file and --decode. (default " + DEFAULT_BATCH_SIZE + ")");
         out.println("    -q, --query sql    Query the database with the specified SQL query.");
         out.println("    --query-file file  Query the database with a SQL query stored in the specified file.");
     }
@@ -858,6 +1458,8 @@ public class Project
         create,
         info,
         add,
+        addFile,
+        decode,
         query,
         export;
     }
@@ -868,6 +1470,9 @@ public class Project
         File configFile = null;
         File output = null;
         String data = null;
+        File dataFile = null;
+        File codesFile = null;
+        int batchSize = DEFAULT_BATCH_SIZE;
         String query = null;
         Operation operation = null;
 
@@ -897,6 +1502,14 @@ public class Project
             } else if("--add".equals(arg) || "-a".equals(arg)) {
                 operation = Operation.add;
                 data = args[argindex++];
+            } else if("--add-file".equals(arg)) {
+                operation = Operation.addFile;
+                dataFile = new File(args[argindex++]);
+            } else if("--decode".equals(arg)) {
+                operation = Operation.decode;
+                codesFile = new File(args[argindex++]);
+            } else if("--batch-size".equals(arg)) {
+                batchSize = Integer.parseInt(args[argindex++]);
             } else if("--help".equals(arg) || "-h".equals(arg)) {
                 usage(System.out);
 
@@ -929,12 +1542,14 @@ public class Project
             System.out.println("Project: " + config.getPageTitle());
             System.out.println();
             System.out.println("Record count: " + project.getRecordCount());
+            System.out.println("Records marked for deletion: " + project.getDeletedRecordCount());
             System.out.println();
             System.out.println("Scouting fields:");
             for(Field field : config.getFields()) {
                 System.out.println("  " + field.getTitle() + " / " + field.getCode());
             }
             System.out.println("Analytics: " + project.getAnalytics());
+            System.out.println("Connection pool: " + project.getConnectionPoolStatistics());
         } else if(Operation.add == operation) {
             if(null == directory) {
                 System.err.println("Must specify --directory");
@@ -946,7 +1561,87 @@ public class Project
 
             Project project = Project.loadProject(directory);
 
-            project.insertRecord(data);
+            InsertResult result = project.insertRecord(data);
+
+            if(!result.isInserted()) {
+                System.err.println(result.getStatus() + ": " + result.getMessage());
+            }
+        } else if(Operation.addFile == operation) {
+            if(null == directory) {
+                System.err.println("Must specify --directory");
+
+                usage(System.err);
+
+                System.exit(1);
+            }
+
+            Project project = Project.loadProject(directory);
+            project.setBatchSize(batchSize);
+
+            long elapsed = System.currentTimeMillis();
+
+            List<InsertResult> results;
+            // Skip blank lines, e.g. at the end of the file, remembering
+            // which line each record came from
+            ArrayList<Integer> lineNumbers = new ArrayList<>();
+            int[] lineNumber = { 0 };
+            try(Stream<String> lines = Files.lines(dataFile.toPath(), StandardCharsets.UTF_8)) {
+                results = project.insertRecords(lines.filter((line) -> {
+                    ++lineNumber[0];
+
+                    if(line.isEmpty()) {
+                        return false;
+                    }
+
+                    lineNumbers.add(lineNumber[0]);
+
+                    return true;
+                }));
+            }
+
+            elapsed = System.currentTimeMillis() - elapsed;
+
+            int inserted = 0;
+            for(InsertResult result : results) {
+                if(result.isInserted()) {
+                    ++inserted;
+                } else {
+                    System.err.println("Line " + lineNumbers.get(result.getIndex()) + ": " + result.getStatus() + ": " + result.getMessage());
+                }
+            }
+
+            System.out.println("Inserted " + inserted + " of " + results.size() + " records in " + elapsed + "ms");
+        } else if(Operation.decode == operation) {
+            if(null == directory) {
+                System.err.println("Must specify --directory");
+
+                usage(System.err);
+
+                System.exit(1);
+            }
+
+            Project project = Project.loadProject(directory);
+            project.setBatchSize(batchSize);
+
+            BulkDecoder.Report report = new BulkDecoder().decode(codesFile);
+
+            System.out.println("Decoded " + report);
+            for(String problem : report.getUnreadable()) {
+                System.err.println(problem);
+            }
+
+            List<InsertResult> results = project.insertRecords(report.getCodes());
+
+            int inserted = 0;
+            for(InsertResult result : results) {
+                if(result.isInserted()) {
+                    ++inserted;
+                } else {
+                    System.err.println("Code " + (result.getIndex() + 1) + ": " + result.getStatus() + ": " + result.getMessage());
+                }
+            }
+
+            System.out.println("Inserted " + inserted + " of " + results.size() + " records");
         } else if(Operation.query == operation) {
             Project project = Project.loadProject(directory);
 
@@ -1103,9 +1798,7 @@ public class Project
         // the database but not in the config object any more.
         //
 
-        String databaseURL = getDatabaseURL();
-
-        try(Connection conn = DriverManager.getConnection(databaseURL)) {
+        try(Connection conn = getConnection()) {
             List<Section> sections = config.getSections();
             if(null != sections && !sections.isEmpty()) {
                 // First, let's update everything we still have.
@@ -1128,6 +1821,10 @@ public class Project
                 removeAllFields(conn);
             }
         }
+
+        // The config may have been edited in-place; make sure the ingest
+        // plan reflects any changes.
+        compileIngestPlan();
     }
 
     private void updateField(Field field, Connection conn) throws SQLException {
@@ -1215,6 +1912,7 @@ public class Project
         dbFieldNames.removeAll(retainedFieldNames);
         dbFieldNames.remove("ID");
         dbFieldNames.remove("DELETED");
+        dbFieldNames.remove(HASH_COLUMN.toUpperCase());
 
         if(!dbFieldNames.isEmpty()) {
             try(Statement stmt = conn.createStatement()) {
@@ -0,0 +1,153 @@
+package com.koibots.scout.hub;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+
+/**
+ * Accepts QR Scout records POSTed over HTTP, so a phone with a working
+ * network connection doesn't have to wait its turn in front of the camera.
+ *
+ * The request body is the same tab-separated text the QR code would
+ * contain: one record per line. The records are written by the project's
+ * {@link IngestQueue}, along with the scanned ones, and the response is a
+ * JSON object with the outcome for each line, e.g.
+ *
+ * <pre>
+ * {
+ *   "inserted": 1,
+ *   "duplicate": 1,
+ *   "invalid": 0,
+ *   "failed": 0,
+ *   "results": [
+ *     { "line": 1, "status": "INSERTED" },
+ *     { "line": 2, "status": "DUPLICATE", "message": "Record has already been imported" }
+ *   ]
+ * }
+ * </pre>
+ *
+ * Blank lines are ignored; line numbers count them anyway, so they match
+ * the request body.
+ *
+ * If no project is open, the response is <code>503 Service
+ * Unavailable</code>.
+ */
+public class RecordsApiHandler
+    implements SimpleHttpServer.RequestHandler
+{
+    public static final String PATH = "/api/records";
+
+    private static final String JSON_CONTENT_TYPE = "application/json; charset=utf-8";
+
+    private final Supplier<IngestQueue> ingestQueue;
+    private final IngestQueue.IngestListener listener;
+    private final Gson gson = new GsonBuilder().disableHtmlEscaping().create();
+
+    /**
+     * Creates a new RecordsApiHandler.
+     *
+     * @param ingestQueue Gives the open project's ingest queue, or
+     *        <code>null</code> if no project is open.
+     * @param listener A listener to notify when records have been written,
+     *        or <code>null</code>.
+     */
+    public RecordsApiHandler(Supplier<IngestQueue> ingestQueue, IngestQueue.IngestListener listener) {
+        this.ingestQueue = ingestQueue;
+        this.listener = listener;
+    }
+
+    @Override
+    public SimpleHttpServer.Response handle(HttpRequest request, byte[] body)
+        throws IOException
+    {
+        if(!"POST".equals(request.getMethod())) {
+            return error(405, "Method Not Allowed", "Use POST to submit records");
+        }
+
+        String text = new String(body, StandardCharsets.UTF_8);
+
+        ArrayList<String> records = new ArrayList<>();
+        ArrayList<Integer> lineNumbers = new ArrayList<>();
+
+        int lineNumber = 0;
+        for(String line : text.split("\n", -1)) {
+            ++lineNumber;
+
+            line = IngestPlan.normalize(line);
+
+            if(!line.isBlank()) {
+                records.add(line);
+                lineNumbers.add(lineNumber);
+            }
+        }
+
+        if(records.isEmpty()) {
+            return error(400, "Bad Request", "No records found in request body");
+        }
+
+        IngestQueue queue = ingestQueue.get();
+        if(null == queue) {
+            return error(503, "Service Unavailable", "No project is open");
+        }
+
+        long start = System.nanoTime();
+
+        List<InsertResult> results;
+        try {
+            results = queue.submitAndWait(records);
+        } catch (IllegalStateException ise) {
+            // The project is being closed
+            return error(503, "Service Unavailable", ise.getMessage());
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+
+            throw new IOException("Interrupted while inserting records", ie);
+        }
+
+        if(null != listener) {
+            listener.recordsCommitted(Collections.unmodifiableList(records),
+                    results,
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        }
+
+        int[] counts = new int[InsertResult.Status.values().length];
+
+        ArrayList<Map<String,Object>> lines = new ArrayList<>(results.size());
+        for(InsertResult result : results) {
+            ++counts[result.getStatus().ordinal()];
+
+            LinkedHashMap<String,Object> json = new LinkedHashMap<>();
+            json.put("line", lineNumbers.get(result.getIndex()));
+            json.put("status", result.getStatus().name());
+            if(null != result.getMessage()) {
+                json.put("message", result.getMessage());
+            }
+
+            lines.add(json);
+        }
+
+        LinkedHashMap<String,Object> json = new LinkedHashMap<>();
+        json.put("inserted", counts[InsertResult.Status.INSERTED.ordinal()]);
+        json.put("duplicate", counts[InsertResult.Status.DUPLICATE.ordinal()]);
+        json.put("invalid", counts[InsertResult.Status.INVALID.ordinal()]);
+        json.put("failed", counts[InsertResult.Status.FAILED.ordinal()]);
+        json.put("results", lines);
+
+        return new SimpleHttpServer.Response(200, "OK", JSON_CONTENT_TYPE, gson.toJson(json).getBytes(StandardCharsets.UTF_8));
+    }
+
+    private SimpleHttpServer.Response error(int statusCode, String reasonPhrase, String message) {
+        String json = gson.toJson(Map.of("error", message));
+
+        return new SimpleHttpServer.Response(statusCode, reasonPhrase, JSON_CONTENT_TYPE, json.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,972 @@
+package com.koibots.scout.hub;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.ProtocolException;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The non-blocking connection engine behind {@link SimpleHttpServer.Mode#SELECTOR}.
+ *
+ * A fixed number of event-loop threads each own a {@link Selector} and
+ * a share of the connections; the first loop also accepts new connections
+ * and deals them out round-robin. Each connection reads into a pooled
+ * direct buffer, from which request headers are picked out as soon as they
+ * are complete. Responses are produced by the same code as the blocking
+ * modes ({@link SimpleHttpServer#handleRequest}) and queued as buffers and
+ * file regions, which are written as fast as the client will take them;
+ * a slow client just leaves its queue waiting for the next
+ * <code>OP_WRITE</code>. File regions are sent with
+ * {@link FileChannel#transferTo}.
+ *
+ * Requests for a {@link SimpleHttpServer.RequestHandler} (which may block,
+ * e.g. on the database) are run on worker threads so they never stall an
+ * event loop.
+ *
+ * Pipelined requests on a connection are answered in order; a connection
+ * stops reading while a response is still being produced or has a lot of
+ * output queued, so no single client can make the server buffer without
+ * limit.
+ */
+final class SelectorEngine
+{
+    static final int DEFAULT_EVENT_LOOP_THREADS = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() / 2));
+
+    /**
+     * The size of each connection's read buffer. Request headers must fit
+     * into it.
+     */
+    private static final int READ_BUFFER_SIZE = 16 * 1024;
+
+    /**
+     * Stop reading new requests when a connection has this many response
+     * bytes waiting to be sent.
+     */
+    private static final int MAX_PENDING_WRITE_BYTES = 64 * 1024;
+
+    /**
+     * Response writes at least this big are queued as-is rather than
+     * being copied.
+     */
+    private static final int DIRECT_WRITE_SIZE = 1024;
+
+    /**
+     * The most idle read buffers each event loop keeps for reuse.
+     */
+    private static final int MAX_POOLED_BUFFERS = 64;
+
+    private static final long TIMEOUT_CHECK_MILLIS = 250;
+
+    private final SimpleHttpServer server;
+    private final ServerSocketChannel serverChannel;
+    private final EventLoop[] loops;
+    private final ExecutorService workers;
+
+    private final AtomicInteger connectionCount = new AtomicInteger();
+    private final AtomicInteger nextLoop = new AtomicInteger();
+    private volatile boolean acceptPaused = false;
+    private SelectionKey acceptKey;
+
+    /**
+     * Creates a new SelectorEngine.
+     *
+     * @param server The server whose requests we handle.
+     * @param serverChannel The bound server channel to accept connections
+     *        from.
+     * @param threads The number of event-loop threads.
+     *
+     * @throws IOException If the selectors cannot be opened.
+     */
+    SelectorEngine(SimpleHttpServer server, ServerSocketChannel serverChannel, int threads)
+        throws IOException
+    {
+        this.server = server;
+        this.serverChannel = serverChannel;
+        this.loops = new EventLoop[threads];
+
+        try {
+            for(int i=0; i<threads; ++i) {
+                loops[i] = new EventLoop(i);
+            }
+
+            serverChannel.configureBlocking(false);
+            acceptKey = serverChannel.register(loops[0].selector, SelectionKey.OP_ACCEPT);
+        } catch (IOException ioe) {
+            for(EventLoop loop : loops) {
+                if(null != loop) {
+                    loop.selector.close();
+                }
+            }
+
+            throw ioe;
+        }
+
+        workers = Executors.newThreadPerTaskExecutor(
+                Thread.ofVirtual().name("SimpleHttpServer-worker-", 0).factory());
+    }
+
+    /**
+     * Starts the event-loop threads.
+     */
+    void start() {
+        for(EventLoop loop : loops) {
+            loop.thread.start();
+        }
+    }
+
+    /**
+     * Gets the number of open connections.
+     *
+     * @return The number of open connections.
+     */
+    int getConnectionCount() {
+        return connectionCount.get();
+    }
+
+    /**
+     * Stops the event loops. The server must already have stopped running.
+     *
+     * Idle connections are closed immediately. Connections with a request
+     * in progress get up to <code>graceMillis</code> to finish, and are
+     * then closed.
+     *
+     * @param graceMillis How long to wait for in-progress requests.
+     */
+    void shutdown(int graceMillis) {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(graceMillis);
+
+        try {
+            for(EventLoop loop : loops) {
+                loop.selector.wakeup();
+            }
+
+            boolean finished = true;
+            for(EventLoop loop : loops) {
+                long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+                loop.thread.join(Math.max(1, remaining));
+
+                finished &= !loop.thread.isAlive();
+            }
+
+            if(!finished) {
+                System.out.println("Closing " + connectionCount.get() + " in-progress HTTP connection(s)");
+
+                for(EventLoop loop : loops) {
+                    loop.forceClose = true;
+                    loop.selector.wakeup();
+                }
+
+                for(EventLoop loop : loops) {
+                    loop.thread.join();
+                }
+            }
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        }
+
+        // Any handlers still running will find their connections closed
+        workers.shutdown();
+    }
+
+    private void resumeAccept() {
+        if(acceptPaused && acceptKey.isValid() && connectionCount.get() < server.getMaxConnections()) {
+            acceptPaused = false;
+            acceptKey.interestOps(SelectionKey.OP_ACCEPT);
+        }
+    }
+
+    /**
+     * Accepts all waiting connections, up to the connection limit.
+     *
+     * Runs on the first event loop.
+     */
+    private void accept() {
+        while(true) {
+            if(connectionCount.get() >= server.getMaxConnections()) {
+                // Leave the rest in the accept queue until someone leaves
+                acceptPaused = true;
+                acceptKey.interestOps(0);
+
+                return;
+            }
+
+            SocketChannel channel;
+            try {
+                channel = serverChannel.accept();
+            } catch (IOException ioe) {
+                if(server.isRunning()) {
+                    server.publishError(ioe);
+                }
+
+                return;
+            }
+
+            if(null == channel) {
+                return;
+            }
+
+            long acceptNanos = System.nanoTime();
+
+            connectionCount.incrementAndGet();
+            server.getMetrics().connectionAccepted();
+
+            EventLoop loop = loops[Math.floorMod(nextLoop.getAndIncrement(), loops.length)];
+            if(loop == loops[0]) {
+                loop.register(channel, acceptNanos);
+            } else {
+                loop.execute(() -> loop.register(channel, acceptNanos));
+            }
+        }
+    }
+
+    private void connectionClosed() {
+        if(connectionCount.decrementAndGet() < server.getMaxConnections() && acceptPaused) {
+            loops[0].execute(this::resumeAccept);
+        }
+    }
+
+    /**
+     * One thread, one selector, and the connections registered with it.
+     */
+    private final class EventLoop
+        implements Runnable
+    {
+        private final Selector selector;
+        private final Thread thread;
+        private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+
+        // Only touched on the loop thread
+        private final HashSet<Connection> connections = new HashSet<>();
+        private final ArrayDeque<ByteBuffer> bufferPool = new ArrayDeque<>();
+
+        private volatile boolean forceClose = false;
+
+        EventLoop(int index) throws IOException {
+            selector = Selector.open();
+            thread = new Thread(this, "SimpleHttpServer-event-loop-" + index);
+        }
+
+        /**
+         * Runs a task on this loop's thread.
+         */
+        void execute(Runnable task) {
+            tasks.add(task);
+            selector.wakeup();
+        }
+
+        ByteBuffer acquireBuffer() {
+            ByteBuffer buffer = bufferPool.poll();
+
+            return null == buffer ? ByteBuffer.allocateDirect(READ_BUFFER_SIZE) : buffer;
+        }
+
+        void releaseBuffer(ByteBuffer buffer) {
+            if(bufferPool.size() < MAX_POOLED_BUFFERS) {
+                buffer.clear();
+                bufferPool.push(buffer);
+            }
+        }
+
+        void register(SocketChannel channel, long acceptNanos) {
+            try {
+                channel.configureBlocking(false);
+                channel.setOption(StandardSocketOptions.TCP_NODELAY, Boolean.TRUE);
+
+                Connection connection = new Connection(this, channel, acceptNanos);
+                connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+                connections.add(connection);
+            } catch (IOException ioe) {
+                server.publishError(ioe);
+
+                try {
+                    channel.close();
+                } catch (IOException ignored) {
+                }
+
+                connectionClosed();
+            }
+        }
+
+        @Override
+        public void run() {
+            long nextTimeoutCheck = System.nanoTime();
+
+            try {
+                while(true) {
+                    if(!server.isRunning()) {
+                        // Connections waiting for another request have
+                        // nothing in progress
+                        for(Connection connection : new ArrayList<>(connections)) {
+                            if(forceClose || connection.isIdle()) {
+                                connection.close();
+                            }
+                        }
+
+                        if(connections.isEmpty()) {
+                            break;
+                        }
+                    }
+
+                    selector.select(TIMEOUT_CHECK_MILLIS);
+
+                    Runnable task;
+                    while(null != (task = tasks.poll())) {
+                        task.run();
+                    }
+
+                    Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                    while(keys.hasNext()) {
+                        SelectionKey key = keys.next();
+                        keys.remove();
+
+                        if(!key.isValid()) {
+                            continue;
+                        }
+
+                        if(key == acceptKey) {
+                            accept();
+                        } else {
+                            ((Connection)key.attachment()).handleEvent(key);
+                        }
+                    }
+
+                    long now = System.nanoTime();
+                    if(now - nextTimeoutCheck >= 0) {
+                        for(Connection connection : new ArrayList<>(connections)) {
+                            connection.checkTimeout(now);
+                        }
+
+                        nextTimeoutCheck = now + TimeUnit.MILLISECONDS.toNanos(TIMEOUT_CHECK_MILLIS);
+                    }
+                }
+            } catch (IOException | RuntimeException e) {
+                server.publishError(e);
+            } finally {
+                for(Connection connection : new ArrayList<>(connections)) {
+                    connection.close();
+                }
+
+                // Tasks may hold accepted channels
+                tasks.clear();
+
+                try {
+                    selector.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+
+    /**
+     * Something waiting to be written to a connection.
+     */
+    private interface PendingWrite {
+        /**
+         * Writes as much as the channel will take.
+         *
+         * @return <code>true</code> if everything has been written,
+         *         <code>false</code> if the channel is full.
+         */
+        boolean writeTo(SocketChannel channel) throws IOException;
+
+        long remaining();
+
+        default void release() {
+        }
+    }
+
+    private static final class BufferWrite
+        implements PendingWrite
+    {
+        private final ByteBuffer buffer;
+
+        BufferWrite(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public boolean writeTo(SocketChannel channel) throws IOException {
+            while(buffer.hasRemaining()) {
+                if(0 == channel.write(buffer)) {
+                    return false;
+                }
+            }
+
+            return true;
+        }
+
+        @Override
+        public long remaining() {
+            return buffer.remaining();
+        }
+    }
+
+    private static final class FileRegionWrite
+        implements PendingWrite
+    {
+        private final Path path;
+        private final FileChannel file;
+        private final long end;
+        private long position = 0;
+
+        FileRegionWrite(Path path, FileChannel file, long length) {
+            this.path = path;
+            this.file = file;
+            this.end = length;
+        }
+
+        @Override
+        public boolean writeTo(SocketChannel channel) throws IOException {
+            while(position < end) {
+                long sent = file.transferTo(position, end - position, channel);
+
+                if(0 == sent) {
+                    if(position >= file.size()) {
+                        // We can't take back the Content-Length
+                        throw new IOException("File truncated while sending: " + path);
+                    }
+
+                    return false;
+                }
+
+                position += sent;
+            }
+
+            return true;
+        }
+
+        @Override
+        public long remaining() {
+            return end - position;
+        }
+
+        @Override
+        public void release() {
+            try {
+                file.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    /**
+     * Marks the end of a response in a connection's pending writes.
+     */
+    private static final class ExchangeEnd
+        implements PendingWrite
+    {
+        private final ServerMetrics.Exchange exchange;
+
+        ExchangeEnd(ServerMetrics.Exchange exchange) {
+            this.exchange = exchange;
+        }
+
+        @Override
+        public boolean writeTo(SocketChannel channel) {
+            exchange.finished();
+
+            return true;
+        }
+
+        @Override
+        public long remaining() {
+            return 0;
+        }
+    }
+
+    /**
+     * Collects a response produced by
+     * {@link SimpleHttpServer#handleRequest} as a list of pending writes.
+     *
+     * Small writes (headers) are gathered into one buffer; large ones are
+     * queued without copying, which is safe because the server never
+     * modifies an array after writing it. File bodies become file regions.
+     */
+    private static final class ResponseCollector
+        extends OutputStream
+    {
+        private final ArrayList<PendingWrite> writes = new ArrayList<>();
+        private final ByteArrayOutputStream small = new ByteArrayOutputStream(512);
+
+        @Override
+        public void write(int b) {
+            small.write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            if(len >= DIRECT_WRITE_SIZE) {
+                flushSmall();
+
+                writes.add(new BufferWrite(ByteBuffer.wrap(b, off, len)));
+            } else {
+                small.write(b, off, len);
+            }
+        }
+
+        void writeFile(Path file, long length, OutputStream out) throws IOException {
+            flushSmall();
+
+            writes.add(new FileRegionWrite(file, FileChannel.open(file, StandardOpenOption.READ), length));
+        }
+
+        List<PendingWrite> finish() {
+            flushSmall();
+
+            return writes;
+        }
+
+        void release() {
+            for(PendingWrite write : writes) {
+                write.release();
+            }
+        }
+
+        private void flushSmall() {
+            if(small.size() > 0) {
+                writes.add(new BufferWrite(ByteBuffer.wrap(small.toByteArray())));
+                small.reset();
+            }
+        }
+    }
+
+    /**
+     * The state of a single client connection. Only touched on its event
+     * loop's thread.
+     */
+    private final class Connection {
+        private final EventLoop loop;
+        private final SocketChannel channel;
+        private SelectionKey key;
+
+        /**
+         * Bytes read but not yet parsed, in [0, position).
+         */
+        private ByteBuffer readBuffer;
+
+        /**
+         * A request whose body is still arriving.
+         */
+        private HttpRequest request;
+        private long requestNanos;
+        private byte[] body;
+        private int bodyRead;
+
+        private final ArrayDeque<PendingWrite> writes = new ArrayDeque<>();
+        private long pendingWriteBytes = 0;
+
+        /**
+         * Responses in <code>writes</code> which haven't been completely
+         * sent yet, oldest first.
+         */
+        private final ArrayDeque<ServerMetrics.Exchange> sending = new ArrayDeque<>();
+
+        /**
+         * A RequestHandler is working on a request.
+         */
+        private boolean busy = false;
+        private boolean closeAfterWrites = false;
+        private boolean closed = false;
+        private int requestCount = 0;
+        private final long acceptNanos;
+        private long lastActivity = System.nanoTime();
+
+        Connection(EventLoop loop, SocketChannel channel, long acceptNanos) {
+            this.loop = loop;
+            this.channel = channel;
+            this.acceptNanos = acceptNanos;
+            this.readBuffer = loop.acquireBuffer();
+        }
+
+        boolean isIdle() {
+            return !busy && writes.isEmpty();
+        }
+
+        void handleEvent(SelectionKey key) {
+            try {
+                if(key.isReadable()) {
+                    int read = channel.read(readBuffer);
+
+                    if(read < 0) {
+                        // Client closed the connection
+                        close();
+
+                        return;
+                    }
+
+                    lastActivity = System.nanoTime();
+                }
+
+                if(key.isValid() && key.isWritable()) {
+                    flushWrites();
+                }
+
+                processInput();
+            } catch (IOException ioe) {
+                if(server.isRunning()) {
+                    server.publishError(ioe);
+                }
+
+                close();
+            }
+        }
+
+        void checkTimeout(long now) {
+            if(busy) {
+                // A handler is working; not the client's fault
+                return;
+            }
+
+            boolean waiting = requestCount > 0
+                && writes.isEmpty()
+                && null == request
+                && 0 == readBuffer.position();
+
+            long timeoutMillis = waiting ? server.getIdleTimeout() : server.getReadTimeout();
+
+            if(timeoutMillis > 0 && now - lastActivity > TimeUnit.MILLISECONDS.toNanos(timeoutMillis)) {
+                if(0 == requestCount) {
+                    // The client was too slow to send its request
+                    server.publishRequest(408, null, -1);
+                    server.getMetrics().requestRejected(408);
+                }
+
+                close();
+            }
+        }
+
+        /**
+         * Parses and answers as many buffered requests as we can.
+         */
+        private void processInput() throws IOException {
+            while(!closed && !busy && !closeAfterWrites && pendingWriteBytes < MAX_PENDING_WRITE_BYTES && server.isRunning()) {
+                if(null == request) {
+                    HttpRequest parsed;
+                    try {
+                        parsed = parseHeaders();
+                    } catch (ProtocolException pe) {
+                        reject("400 Bad Request", 400);
+
+                        break;
+                    }
+
+                    if(null == parsed) {
+                        if(!readBuffer.hasRemaining()) {
+                            // The headers will never fit
+                            reject("400 Bad Request", 400);
+                        }
+
+                        break;
+                    }
+
+                    long contentLength;
+                    try {
+                        contentLength = parsed.getContentLength();
+                    } catch (ProtocolException pe) {
+                        reject("400 Bad Request", 400);
+
+                        break;
+                    }
+
+                    if(parsed.hasTransferEncoding()) {
+                        // We can't tell where the body ends
+                        reject("501 Not Implemented", 501);
+
+                        break;
+                    }
+
+                    if(contentLength > server.getMaxRequestBodySize()) {
+                        reject("413 Content Too Large", 413);
+
+                        break;
+                    }
+
+                    request = parsed;
+                    // As in the blocking modes, later requests are timed
+                    // from when they arrived
+                    requestNanos = 0 == requestCount ? acceptNanos : System.nanoTime();
+                    body = new byte[(int)contentLength];
+                    bodyRead = 0;
+                }
+
+                // Move any body bytes out of the read buffer
+                int available = Math.min(readBuffer.position(), body.length - bodyRead);
+                if(available > 0) {
+                    readBuffer.flip();
+                    readBuffer.get(body, bodyRead, available);
+                    readBuffer.compact();
+
+                    bodyRead += available;
+                }
+
+                if(bodyRead < body.length) {
+                    break;
+                }
+
+                HttpRequest complete = request;
+                byte[] completeBody = body;
+                request = null;
+                body = null;
+
+                dispatch(complete, completeBody, server.getMetrics().startExchange(requestNanos));
+            }
+
+            updateInterest();
+        }
+
+        /**
+         * Picks a complete set of request headers out of the read buffer.
+         *
+         * @return The request, or <code>null</code> if the headers are not
+         *         all here yet.
+         */
+        private HttpRequest parseHeaders() throws IOException {
+            int limit = readBuffer.position();
+
+            // Blank lines before a request are allowed
+            int start = 0;
+            while(start < limit && ('\r' == readBuffer.get(start) || '\n' == readBuffer.get(start))) {
+                ++start;
+            }
+
+            int end = -1;
+            for(int i=start; i<limit; ++i) {
+                if('\n' == readBuffer.get(i)) {
+                    if(i + 1 < limit && '\n' == readBuffer.get(i + 1)) {
+                        end = i + 2;
+                        break;
+                    }
+                    if(i + 2 < limit && '\r' == readBuffer.get(i + 1) && '\n' == readBuffer.get(i + 2)) {
+                        end = i + 3;
+                        break;
+                    }
+                }
+            }
+
+            if(end < 0) {
+                if(start > 0) {
+                    discard(start);
+                }
+
+                return null;
+            }
+
+            byte[] headers = new byte[end - start];
+            readBuffer.get(start, headers);
+
+            discard(end);
+
+            return HttpRequest.read(new ByteArrayInputStream(headers));
+        }
+
+        private void discard(int count) {
+            readBuffer.flip();
+            readBuffer.position(count);
+            readBuffer.compact();
+        }
+
+        private void reject(String status, int responseCode) throws IOException {
+            ResponseCollector response = new ResponseCollector();
+            server.sendResponse(response, status, null, false);
+            server.publishRequest(responseCode, null, -1);
+            server.getMetrics().requestRejected(responseCode);
+
+            complete(response.finish(), null, false);
+        }
+
+        private void dispatch(HttpRequest request, byte[] body, ServerMetrics.Exchange exchange) throws IOException {
+            ++requestCount;
+
+            boolean keepAlive = request.isKeepAlive()
+                && requestCount < SimpleHttpServer.MAX_REQUESTS_PER_CONNECTION
+                && server.isRunning();
+
+            if(server.hasRequestHandler(request)) {
+                // Handlers may block; keep them off the event loop
+                busy = true;
+
+                try {
+                    workers.execute(() -> {
+                        ResponseCollector response = new ResponseCollector();
+                        Boolean stayOpen = respond(request, body, exchange, keepAlive, response);
+
+                        loop.execute(() -> {
+                            busy = false;
+
+                            if(closed || null == stayOpen) {
+                                response.release();
+                                close();
+
+                                return;
+                            }
+
+                            try {
+                                complete(response.finish(), exchange, stayOpen);
+                                processInput();
+                            } catch (IOException ioe) {
+                                if(server.isRunning()) {
+                                    server.publishError(ioe);
+                                }
+
+                                close();
+                            }
+                        });
+                    });
+                } catch (RejectedExecutionException ree) {
+                    // Shutting down
+                    close();
+                }
+            } else {
+                ResponseCollector response = new ResponseCollector();
+                Boolean stayOpen = respond(request, body, exchange, keepAlive, response);
+
+                if(null == stayOpen) {
+                    response.release();
+                    close();
+
+                    return;
+                }
+
+                complete(response.finish(), exchange, stayOpen);
+            }
+        }
+
+        /**
+         * Produces the response to a request.
+         *
+         * @return Whether the connection should stay open afterward, or
+         *         <code>null</code> if the response failed and the
+         *         connection must be dropped.
+         */
+        private Boolean respond(HttpRequest request, byte[] body, ServerMetrics.Exchange exchange, boolean keepAlive, ResponseCollector response) {
+            try {
+                return server.handleRequest(request, new ByteArrayInputStream(body), response, response::writeFile, exchange, keepAlive);
+            } catch (IOException | RuntimeException e) {
+                server.publishError(e);
+
+                return null;
+            }
+        }
+
+        private void complete(List<PendingWrite> response, ServerMetrics.Exchange exchange, boolean keepAlive) throws IOException {
+            for(PendingWrite write : response) {
+                writes.add(write);
+                pendingWriteBytes += write.remaining();
+            }
+
+            if(null != exchange) {
+                writes.add(new ExchangeEnd(exchange));
+                sending.add(exchange);
+            }
+
+            if(!keepAlive) {
+                closeAfterWrites = true;
+            }
+
+            // Most responses fit into the socket buffer right away
+            flushWrites();
+        }
+
+        private void flushWrites() throws IOException {
+            while(!writes.isEmpty()) {
+                PendingWrite write = writes.peek();
+
+                long before = write.remaining();
+                boolean done = write.writeTo(channel);
+
+                long written = before - write.remaining();
+                if(written > 0) {
+                    // A slow reader is still a live one
+                    pendingWriteBytes -= written;
+                    lastActivity = System.nanoTime();
+
+                    ServerMetrics.Exchange exchange = sending.peek();
+                    if(null != exchange) {
+                        exchange.firstByteSent();
+                    }
+                }
+
+                if(!done) {
+                    break;
+                }
+
+                writes.poll();
+                write.release();
+
+                if(write instanceof ExchangeEnd) {
+                    sending.poll();
+                }
+            }
+
+            if(writes.isEmpty() && closeAfterWrites) {
+                close();
+            }
+        }
+
+        private void updateInterest() {
+            if(closed || !key.isValid()) {
+                return;
+            }
+
+            int ops = 0;
+
+            if(!writes.isEmpty()) {
+                ops |= SelectionKey.OP_WRITE;
+            }
+
+            if(!closeAfterWrites && readBuffer.hasRemaining()) {
+                ops |= SelectionKey.OP_READ;
+            }
+
+            key.interestOps(ops);
+        }
+
+        void close() {
+            if(closed) {
+                return;
+            }
+
+            closed = true;
+
+            key.cancel();
+            try {
+                channel.close();
+            } catch (IOException ignored) {
+            }
+
+            for(PendingWrite write : writes) {
+                write.release();
+            }
+            writes.clear();
+
+            loop.releaseBuffer(readBuffer);
+            readBuffer = null;
+
+            loop.connections.remove(this);
+
+            connectionClosed();
+        }
+    }
+}
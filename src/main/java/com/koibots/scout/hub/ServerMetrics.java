@@ -0,0 +1,393 @@
+package com.koibots.scout.hub;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.Collections;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntSupplier;
+
+/**
+ * Counts the requests handled by a {@link SimpleHttpServer} and how long
+ * they took.
+ *
+ * Two latencies are recorded for each request: the time to the first byte
+ * of the response, and the time to the last. Both are measured from when
+ * the connection was accepted (for the first request on a connection) or
+ * when the request arrived (for later requests on a kept-alive
+ * connection), and both are "sent" when they were handed to the
+ * operating system, not when the client received them.
+ *
+ * Call {@link #snapshot()} for a consistent copy to display or report.
+ */
+public final class ServerMetrics
+{
+    /**
+     * The most distinct paths we count separately. Requests for other paths
+     * (say, a scanner probing for things which don't exist) are counted
+     * under {@link #OTHER_PATHS}.
+     */
+    static final int MAX_TRACKED_PATHS = 200;
+
+    public static final String OTHER_PATHS = "(other)";
+    public static final String NO_PATH = "(none)";
+
+    private final IntSupplier activeConnections;
+    private final long startNanos = System.nanoTime();
+
+    private final LongAdder connections = new LongAdder();
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder bytesSent = new LongAdder();
+    private final Map<Integer,LongAdder> statusCounts = new ConcurrentHashMap<>();
+    private final Map<String,PathCounter> paths = new ConcurrentHashMap<>();
+    private final LatencyHistogram timeToFirstByte = new LatencyHistogram();
+    private final LatencyHistogram timeToLastByte = new LatencyHistogram();
+
+    /**
+     * Creates a new ServerMetrics.
+     *
+     * @param activeConnections Reports the number of connections open
+     *        right now.
+     */
+    ServerMetrics(IntSupplier activeConnections) {
+        this.activeConnections = activeConnections;
+    }
+
+    /**
+     * Notes that a connection was accepted.
+     */
+    void connectionAccepted() {
+        connections.increment();
+    }
+
+    /**
+     * Starts timing a request.
+     *
+     * @param startNanos When the request started, according to
+     *        {@link System#nanoTime()}.
+     *
+     * @return An exchange to report the response to.
+     */
+    Exchange startExchange(long startNanos) {
+        return new Exchange(startNanos);
+    }
+
+    /**
+     * Counts a request which was refused before it could be timed, e.g.
+     * because it was malformed.
+     *
+     * @param statusCode The response status.
+     */
+    void requestRejected(int statusCode) {
+        requests.increment();
+        statusCounts.computeIfAbsent(statusCode, k -> new LongAdder()).increment();
+        pathCounter(NO_PATH).requests.increment();
+    }
+
+    private PathCounter pathCounter(String path) {
+        PathCounter counter = paths.get(path);
+
+        if(null == counter) {
+            if(paths.size() >= MAX_TRACKED_PATHS) {
+                path = OTHER_PATHS;
+            }
+
+            counter = paths.computeIfAbsent(path, k -> new PathCounter());
+        }
+
+        return counter;
+    }
+
+    private void record(Exchange exchange) {
+        long length = Math.max(0, exchange.length);
+
+        requests.increment();
+        bytesSent.add(length);
+        statusCounts.computeIfAbsent(exchange.statusCode, k -> new LongAdder()).increment();
+
+        PathCounter counter = pathCounter(null == exchange.path ? NO_PATH : exchange.path);
+        counter.requests.increment();
+        counter.bytesSent.add(length);
+
+        long firstByte = 0 == exchange.firstByteNanos ? exchange.lastByteNanos : exchange.firstByteNanos;
+
+        timeToFirstByte.record(TimeUnit.NANOSECONDS.toMicros(firstByte - exchange.startNanos));
+        timeToLastByte.record(TimeUnit.NANOSECONDS.toMicros(exchange.lastByteNanos - exchange.startNanos));
+    }
+
+    /**
+     * Takes a copy of the current numbers.
+     *
+     * @return A copy of the current numbers.
+     */
+    public Snapshot snapshot() {
+        TreeMap<String,PathStats> pathStats = new TreeMap<>();
+        for(Map.Entry<String,PathCounter> entry : paths.entrySet()) {
+            pathStats.put(entry.getKey(), new PathStats(entry.getValue().requests.sum(), entry.getValue().bytesSent.sum()));
+        }
+
+        TreeMap<Integer,Long> statuses = new TreeMap<>();
+        for(Map.Entry<Integer,LongAdder> entry : statusCounts.entrySet()) {
+            statuses.put(entry.getKey(), entry.getValue().sum());
+        }
+
+        return new Snapshot(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos),
+                activeConnections.getAsInt(),
+                connections.sum(),
+                requests.sum(),
+                bytesSent.sum(),
+                Collections.unmodifiableMap(statuses),
+                Collections.unmodifiableMap(pathStats),
+                timeToFirstByte.copy(),
+                timeToLastByte.copy());
+    }
+
+    private static final class PathCounter {
+        final LongAdder requests = new LongAdder();
+        final LongAdder bytesSent = new LongAdder();
+    }
+
+    /**
+     * A single request and its response, from the server's point of view.
+     *
+     * Not thread-safe; an exchange belongs to whichever thread is handling
+     * its connection.
+     */
+    final class Exchange {
+        private final long startNanos;
+        private String path;
+        private int statusCode;
+        private long length = -1;
+        private long firstByteNanos;
+        private long lastByteNanos;
+        private boolean finished;
+
+        private Exchange(long startNanos) {
+            this.startNanos = startNanos;
+        }
+
+        void setPath(String path) {
+            this.path = path;
+        }
+
+        /**
+         * Records the response status and body length.
+         */
+        void setResponse(int statusCode, long length) {
+            this.statusCode = statusCode;
+            this.length = length;
+        }
+
+        /**
+         * Notes that the first byte of the response has been sent. Only
+         * the first call counts.
+         */
+        void firstByteSent() {
+            if(0 == firstByteNanos) {
+                firstByteNanos = System.nanoTime();
+            }
+        }
+
+        /**
+         * Notes that the whole response has been sent, and records it.
+         */
+        void finished() {
+            if(!finished && 0 != statusCode) {
+                finished = true;
+                lastByteNanos = System.nanoTime();
+
+                record(this);
+            }
+        }
+    }
+
+    /**
+     * The number of requests for a single path, and the number of body
+     * bytes sent in response.
+     */
+    public static final class PathStats {
+        private final long requests;
+        private final long bytesSent;
+
+        PathStats(long requests, long bytesSent) {
+            this.requests = requests;
+            this.bytesSent = bytesSent;
+        }
+
+        public long getRequests() {
+            return requests;
+        }
+
+        public long getBytesSent() {
+            return bytesSent;
+        }
+    }
+
+    /**
+     * A copy of a server's metrics at a moment in time.
+     */
+    public static final class Snapshot {
+        private final long uptimeMillis;
+        private final int activeConnections;
+        private final long connections;
+        private final long requests;
+        private final long bytesSent;
+        private final Map<Integer,Long> statusCounts;
+        private final Map<String,PathStats> paths;
+        private final LatencyHistogram timeToFirstByte;
+        private final LatencyHistogram timeToLastByte;
+
+        Snapshot(long uptimeMillis, int activeConnections, long connections, long requests, long bytesSent,
+                Map<Integer,Long> statusCounts, Map<String,PathStats> paths,
+                LatencyHistogram timeToFirstByte, LatencyHistogram timeToLastByte)
+        {
+            this.uptimeMillis = uptimeMillis;
+            this.activeConnections = activeConnections;
+            this.connections = connections;
+            this.requests = requests;
+            this.bytesSent = bytesSent;
+            this.statusCounts = statusCounts;
+            this.paths = paths;
+            this.timeToFirstByte = timeToFirstByte;
+            this.timeToLastByte = timeToLastByte;
+        }
+
+        public long getUptimeMillis() {
+            return uptimeMillis;
+        }
+
+        /**
+         * Gets the number of connections which were open when the snapshot
+         * was taken.
+         *
+         * @return The number of open connections.
+         */
+        public int getActiveConnections() {
+            return activeConnections;
+        }
+
+        /**
+         * Gets the number of connections accepted since the server started.
+         *
+         * @return The number of connections accepted.
+         */
+        public long getConnections() {
+            return connections;
+        }
+
+        public long getRequests() {
+            return requests;
+        }
+
+        /**
+         * Gets the number of response body bytes sent since the server
+         * started. Headers are not counted.
+         *
+         * @return The number of body bytes sent.
+         */
+        public long getBytesSent() {
+            return bytesSent;
+        }
+
+        /**
+         * Gets the number of responses sent with each status code.
+         *
+         * @return The response counts, in order of status code.
+         */
+        public Map<Integer,Long> getStatusCounts() {
+            return statusCounts;
+        }
+
+        /**
+         * Gets the request counts for each path.
+         *
+         * @return The request counts, in order of path.
+         */
+        public Map<String,PathStats> getPaths() {
+            return paths;
+        }
+
+        /**
+         * Gets the distribution of times to the first byte of each
+         * response, in microseconds.
+         *
+         * @return The time-to-first-byte histogram.
+         */
+        public LatencyHistogram getTimeToFirstByte() {
+            return timeToFirstByte;
+        }
+
+        /**
+         * Gets the distribution of times to the last byte of each
+         * response, in microseconds.
+         *
+         * @return The time-to-last-byte histogram.
+         */
+        public LatencyHistogram getTimeToLastByte() {
+            return timeToLastByte;
+        }
+
+        /**
+         * Formats this snapshot as plain text, in the Prometheus text
+         * exposition format, so it can be read by a person or scraped by
+         * a tool.
+         *
+         * @return This snapshot as text.
+         */
+        public String toText() {
+            StringWriter text = new StringWriter();
+            PrintWriter out = new PrintWriter(text);
+
+            out.println("# TYPE scout_hub_uptime_seconds gauge");
+            out.println("scout_hub_uptime_seconds " + (uptimeMillis / 1000.0));
+            out.println("# TYPE scout_hub_http_connections_active gauge");
+            out.println("scout_hub_http_connections_active " + activeConnections);
+            out.println("# TYPE scout_hub_http_connections_total counter");
+            out.println("scout_hub_http_connections_total " + connections);
+
+            out.println("# TYPE scout_hub_http_responses_total counter");
+            for(Map.Entry<Integer,Long> entry : statusCounts.entrySet()) {
+                out.println("scout_hub_http_responses_total{status=\"" + entry.getKey() + "\"} " + entry.getValue());
+            }
+
+            out.println("# TYPE scout_hub_http_requests_total counter");
+            for(Map.Entry<String,PathStats> entry : paths.entrySet()) {
+                out.println("scout_hub_http_requests_total{path=\"" + escape(entry.getKey()) + "\"} " + entry.getValue().getRequests());
+            }
+
+            out.println("# TYPE scout_hub_http_response_bytes_total counter");
+            for(Map.Entry<String,PathStats> entry : paths.entrySet()) {
+                out.println("scout_hub_http_response_bytes_total{path=\"" + escape(entry.getKey()) + "\"} " + entry.getValue().getBytesSent());
+            }
+
+            writeSummary(out, "scout_hub_http_time_to_first_byte_seconds", timeToFirstByte);
+            writeSummary(out, "scout_hub_http_time_to_last_byte_seconds", timeToLastByte);
+
+            out.flush();
+
+            return text.toString();
+        }
+
+        private static void writeSummary(PrintWriter out, String name, LatencyHistogram histogram) {
+            out.println("# TYPE " + name + " summary");
+            for(double quantile : new double[] { 0.5, 0.9, 0.99, 0.999 }) {
+                out.println(name + "{quantile=\"" + quantile + "\"} " + seconds(histogram.getValueAtPercentile(quantile * 100)));
+            }
+            out.println(name + "_max " + seconds(histogram.getMax()));
+            out.println(name + "_sum " + seconds(histogram.getTotal()));
+            out.println(name + "_count " + histogram.getCount());
+        }
+
+        private static String seconds(long micros) {
+            return String.format(Locale.ROOT, "%.6f", micros / 1e6);
+        }
+
+        private static String escape(String label) {
+            return label.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+        }
+    }
+}
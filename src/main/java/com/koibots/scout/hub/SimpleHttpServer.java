@@ -2,32 +2,218 @@ package com.koibots.scout.hub;
 
 import java.io.*;
 import java.net.*;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.*;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Implements a very simple HTTP server.
  *
- * This is a single-threaded server that serves files out of a single directory
- * tree.
+ * This server serves files out of a single directory tree. By default it
+ * is single-threaded, handling one connection at a time; in
+ * {@link Mode#CONCURRENT} mode each connection is handled on its own
+ * virtual thread, up to a maximum number of simultaneous connections; in
+ * {@link Mode#SELECTOR} mode a small, fixed number of threads service all
+ * connections with non-blocking I/O.
  */
 public class SimpleHttpServer
 {
+    /**
+     * Receives notifications about requests handled by the server.
+     *
+     * In {@link Mode#CONCURRENT} and {@link Mode#SELECTOR} modes, listeners
+     * may be called from several threads at once.
+     */
     public interface RequestListener {
         public void requestErrored(Throwable t);
         public void requestProcessed(int responseCode, Path path, long length);
     }
 
+    /**
+     * Handles requests for a particular path instead of serving a file.
+     *
+     * In {@link Mode#CONCURRENT} and {@link Mode#SELECTOR} modes, handlers
+     * may be called from several threads at once. In {@link Mode#SELECTOR}
+     * mode they are called on worker threads, never on an event loop, so
+     * they are free to block.
+     */
+    public interface RequestHandler {
+        /**
+         * Handles a request.
+         *
+         * @param request The request line and headers.
+         * @param body The request body; empty if there was none.
+         *
+         * @return The response to send.
+         *
+         * @throws IOException If there is a problem handling the request.
+         *         The client will get a <code>500 Internal Server Error</code>.
+         */
+        public Response handle(HttpRequest request, byte[] body) throws IOException;
+    }
+
+    /**
+     * A response from a {@link RequestHandler}.
+     */
+    public static final class Response {
+        private final int statusCode;
+        private final String reasonPhrase;
+        private final String contentType;
+        private final byte[] body;
+
+        /**
+         * Creates a new Response.
+         *
+         * @param statusCode The HTTP status code, e.g. <code>200</code>.
+         * @param reasonPhrase The reason phrase, e.g. <code>OK</code>.
+         * @param contentType The content type of the body, or
+         *        <code>null</code> if there is no body.
+         * @param body The response body, or <code>null</code>.
+         */
+        public Response(int statusCode, String reasonPhrase, String contentType, byte[] body) {
+            this.statusCode = statusCode;
+            this.reasonPhrase = reasonPhrase;
+            this.contentType = contentType;
+            this.body = body;
+        }
+
+        public int getStatusCode() {
+            return statusCode;
+        }
+
+        public String getReasonPhrase() {
+            return reasonPhrase;
+        }
+
+        public String getContentType() {
+            return contentType;
+        }
+
+        public byte[] getBody() {
+            return body;
+        }
+    }
+
+    /**
+     * How the server handles connections.
+     */
+    public enum Mode {
+        /**
+         * One connection at a time, on the server thread.
+         */
+        SINGLE_THREADED,
+
+        /**
+         * Each connection on its own virtual thread.
+         */
+        CONCURRENT,
+
+        /**
+         * All connections multiplexed over a few non-blocking event-loop
+         * threads. See {@link SelectorEngine}.
+         */
+        SELECTOR;
+    }
+
+    public static final int DEFAULT_MAX_CONNECTIONS = 64;
+    public static final int DEFAULT_READ_TIMEOUT_MILLIS = 10000;
+    public static final int DEFAULT_SHUTDOWN_GRACE_MILLIS = 2000;
+    public static final int DEFAULT_IDLE_TIMEOUT_MILLIS = 5000;
+    public static final int DEFAULT_MAX_REQUEST_BODY_SIZE = 1024 * 1024;
+    public static final int DEFAULT_ZERO_COPY_THRESHOLD = StaticAssetCache.MAX_CACHED_FILE_SIZE;
+
+    /**
+     * The most requests we will answer on one persistent connection before
+     * closing it.
+     */
+    static final int MAX_REQUESTS_PER_CONNECTION = 1000;
+
+    /**
+     * Writes the body of a file response once its headers have been
+     * written to the response stream.
+     */
+    @FunctionalInterface
+    interface FileBodyWriter {
+        /**
+         * Writes a file as a response body.
+         *
+         * @param file The file to send.
+         * @param length The number of bytes promised in the Content-Length
+         *        header.
+         * @param out The response stream, holding the response headers.
+         *
+         * @throws IOException If there is a problem sending the file.
+         */
+        void writeFile(Path file, long length, OutputStream out) throws IOException;
+    }
+
     private int port;
     private final Path documentRoot;
 
-    private ArrayList<RequestListener> listeners;
+    private final List<RequestListener> listeners = new CopyOnWriteArrayList<>();
+    private final Map<String,RequestHandler> handlers = new ConcurrentHashMap<>();
+    private int maxRequestBodySize = DEFAULT_MAX_REQUEST_BODY_SIZE;
+
+    private Mode mode = Mode.SINGLE_THREADED;
+    private int maxConnections = DEFAULT_MAX_CONNECTIONS;
+    private int readTimeoutMillis = DEFAULT_READ_TIMEOUT_MILLIS;
+    private int shutdownGraceMillis = DEFAULT_SHUTDOWN_GRACE_MILLIS;
+    private int idleTimeoutMillis = DEFAULT_IDLE_TIMEOUT_MILLIS;
+    private byte[] keepAliveHeaderBytes = keepAliveHeader(DEFAULT_IDLE_TIMEOUT_MILLIS);
+    private boolean assetCacheEnabled = true;
+    private boolean zeroCopyEnabled = true;
+    private int zeroCopyThreshold = DEFAULT_ZERO_COPY_THRESHOLD;
+    private StaticAssetCache assetCache;
+
+    /**
+     * Cache-Control header values by content type. The web app's files
+     * aren't versioned, so by default clients must check with us before
+     * reusing anything (which costs only a 304 when nothing has changed).
+     * The logo practically never changes.
+     */
+    private final Map<String,String> cacheControlPolicies = new ConcurrentHashMap<>(Map.of(
+            "image/png", "max-age=86400"));
+    private String defaultCacheControl = "no-cache";
 
     private volatile boolean running = false;
     private ServerSocket serverSocket;
+    private SelectorEngine selectorEngine;
+    private int eventLoopThreads = SelectorEngine.DEFAULT_EVENT_LOOP_THREADS;
     private Thread serverThread;
 
+    /**
+     * Connections currently being handled, so they can be closed
+     * on shutdown.
+     */
+    private final Set<Socket> activeConnections = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Persistent connections waiting for their next request.
+     */
+    private final Set<Socket> idleConnections = ConcurrentHashMap.newKeySet();
+    private Semaphore connectionPermits;
+    private ExecutorService connectionExecutor;
+
+    private final ServerMetrics metrics = new ServerMetrics(this::getActiveConnectionCount);
+
     public SimpleHttpServer(int port, Path documentRoot) {
         this.port = port;
         this.documentRoot = documentRoot.normalize().toAbsolutePath();
@@ -78,11 +264,356 @@ public class SimpleHttpServer
      * @param listener The listener to add.
      */
     public void addRequestListener(RequestListener listener) {
-        if(null == this.listeners) {
-            this.listeners= new ArrayList<>();
+        this.listeners.add(listener);
+    }
+
+    /**
+     * Adds a RequestHandler for a path. Requests for exactly that path
+     * (ignoring any query string), with any method, go to the handler
+     * instead of being served from the document root.
+     *
+     * @param path The path to handle, e.g. <code>/api/records</code>.
+     * @param handler The handler for the path.
+     */
+    public void addRequestHandler(String path, RequestHandler handler) {
+        if(!path.startsWith("/")) {
+            throw new IllegalArgumentException("Path must start with /: " + path);
         }
 
-        this.listeners.add(listener);
+        handlers.put(path, Objects.requireNonNull(handler));
+    }
+
+    /**
+     * Sets the largest request body the server will accept for
+     * a {@link RequestHandler}. Larger requests get a
+     * <code>413 Content Too Large</code> response.
+     *
+     * @param maxRequestBodySize The maximum body size in bytes.
+     */
+    public void setMaxRequestBodySize(int maxRequestBodySize) {
+        if(maxRequestBodySize < 0) {
+            throw new IllegalArgumentException("Illegal maxRequestBodySize: " + maxRequestBodySize);
+        }
+
+        this.maxRequestBodySize = maxRequestBodySize;
+    }
+
+    public int getMaxRequestBodySize() {
+        return maxRequestBodySize;
+    }
+
+    /**
+     * Sets how the server handles connections. Must be called before
+     * {@link #start()}.
+     *
+     * @param mode The connection-handling mode.
+     *
+     * @throws IllegalStateException If the server is running.
+     */
+    public synchronized void setMode(Mode mode) {
+        checkNotRunning();
+
+        this.mode = Objects.requireNonNull(mode);
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    /**
+     * Sets the maximum number of connections handled at once in
+     * {@link Mode#CONCURRENT} mode. Further connections wait in the
+     * operating system's accept queue until a connection finishes.
+     *
+     * @param maxConnections The maximum number of simultaneous connections.
+     *
+     * @throws IllegalArgumentException If <code>maxConnections</code> is
+     *         less than 1.
+     * @throws IllegalStateException If the server is running.
+     */
+    public synchronized void setMaxConnections(int maxConnections) {
+        checkNotRunning();
+
+        if(maxConnections < 1) {
+            throw new IllegalArgumentException("Illegal maxConnections: " + maxConnections);
+        }
+
+        this.maxConnections = maxConnections;
+    }
+
+    public int getMaxConnections() {
+        return maxConnections;
+    }
+
+    /**
+     * Sets how long the server will wait for a client to send data before
+     * giving up on the connection.
+     *
+     * @param readTimeoutMillis The read timeout in milliseconds, or
+     *        <code>0</code> to wait forever.
+     *
+     * @throws IllegalArgumentException If <code>readTimeoutMillis</code> is
+     *         negative.
+     */
+    public void setReadTimeout(int readTimeoutMillis) {
+        if(readTimeoutMillis < 0) {
+            throw new IllegalArgumentException("Illegal readTimeoutMillis: " + readTimeoutMillis);
+        }
+
+        this.readTimeoutMillis = readTimeoutMillis;
+    }
+
+    public int getReadTimeout() {
+        return readTimeoutMillis;
+    }
+
+    /**
+     * Sets how long a persistent (keep-alive) connection may sit idle
+     * between requests before the server closes it.
+     *
+     * Persistent connections are only used in {@link Mode#CONCURRENT} mode.
+     *
+     * @param idleTimeoutMillis The idle timeout in milliseconds.
+     *
+     * @throws IllegalArgumentException If <code>idleTimeoutMillis</code> is
+     *         less than 1.
+     * @throws IllegalStateException If the server is running.
+     */
+    public synchronized void setIdleTimeout(int idleTimeoutMillis) {
+        checkNotRunning();
+
+        if(idleTimeoutMillis < 1) {
+            throw new IllegalArgumentException("Illegal idleTimeoutMillis: " + idleTimeoutMillis);
+        }
+
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.keepAliveHeaderBytes = keepAliveHeader(idleTimeoutMillis);
+    }
+
+    public int getIdleTimeout() {
+        return idleTimeoutMillis;
+    }
+
+    private static byte[] keepAliveHeader(int idleTimeoutMillis) {
+        // Tell clients when we'll hang up so they don't reuse a dead connection
+        return ("Keep-Alive: timeout=" + Math.max(1, idleTimeoutMillis / 1000) + "\r\n").getBytes(StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Sets whether files should be served from an in-memory cache.
+     * Must be called before {@link #start()}.
+     *
+     * @param enabled <code>true</code> to cache files in memory,
+     *        <code>false</code> to read every file from disk.
+     *
+     * @throws IllegalStateException If the server is running.
+     *
+     * @see StaticAssetCache
+     */
+    public synchronized void setAssetCacheEnabled(boolean enabled) {
+        checkNotRunning();
+
+        this.assetCacheEnabled = enabled;
+    }
+
+    public boolean isAssetCacheEnabled() {
+        return assetCacheEnabled;
+    }
+
+    /**
+     * Sets whether file bodies which are not served from the cache should
+     * be sent with {@link FileChannel#transferTo}, which lets the operating
+     * system copy the file straight to the socket (e.g. with
+     * <code>sendfile</code> on Linux) instead of copying it through
+     * a buffer in the JVM. Must be called before {@link #start()}.
+     *
+     * @param enabled <code>true</code> to use zero-copy transfers,
+     *        <code>false</code> to copy files through a buffer.
+     *
+     * @throws IllegalStateException If the server is running.
+     */
+    public synchronized void setZeroCopyEnabled(boolean enabled) {
+        checkNotRunning();
+
+        this.zeroCopyEnabled = enabled;
+    }
+
+    public boolean isZeroCopyEnabled() {
+        return zeroCopyEnabled;
+    }
+
+    /**
+     * Sets the size at which files are sent with zero-copy transfers instead
+     * of being held in the in-memory cache. Only used when zero-copy
+     * transfers are enabled. Must be called before {@link #start()}.
+     *
+     * Small files are faster to send from memory; large ones are better left
+     * to the operating system.
+     *
+     * @param zeroCopyThreshold The size in bytes at or above which files
+     *        are not cached.
+     *
+     * @throws IllegalStateException If the server is running.
+     */
+    public synchronized void setZeroCopyThreshold(int zeroCopyThreshold) {
+        checkNotRunning();
+
+        if(zeroCopyThreshold < 0) {
+            throw new IllegalArgumentException("Illegal zeroCopyThreshold: " + zeroCopyThreshold);
+        }
+
+        this.zeroCopyThreshold = zeroCopyThreshold;
+    }
+
+    public int getZeroCopyThreshold() {
+        return zeroCopyThreshold;
+    }
+
+    /**
+     * Sets the <code>Cache-Control</code> header sent with files of
+     * a particular content type. Must be called before {@link #start()}.
+     *
+     * @param contentType The content type, as returned by
+     *        {@link #guessContentType(Path)}, e.g. <code>text/css</code>.
+     * @param cacheControl The header value, e.g.
+     *        <code>max-age=3600</code>, or <code>null</code> to use the
+     *        default policy for this content type.
+     *
+     * @throws IllegalStateException If the server is running.
+     *
+     * @see #setDefaultCacheControl(String)
+     */
+    public synchronized void setCacheControl(String contentType, String cacheControl) {
+        checkNotRunning();
+
+        if(null == cacheControl) {
+            cacheControlPolicies.remove(contentType);
+        } else {
+            cacheControlPolicies.put(contentType, cacheControl);
+        }
+    }
+
+    /**
+     * Sets the <code>Cache-Control</code> header sent with files which have
+     * no specific policy. Must be called before {@link #start()}.
+     *
+     * @param cacheControl The header value, or <code>null</code> to send no
+     *        <code>Cache-Control</code> header.
+     *
+     * @throws IllegalStateException If the server is running.
+     */
+    public synchronized void setDefaultCacheControl(String cacheControl) {
+        checkNotRunning();
+
+        this.defaultCacheControl = cacheControl;
+    }
+
+    /**
+     * Gets the <code>Cache-Control</code> header value for a content type.
+     *
+     * @param contentType The content type, which may be <code>null</code>.
+     *
+     * @return The header value, or <code>null</code> if no
+     *         <code>Cache-Control</code> header should be sent.
+     */
+    public String getCacheControl(String contentType) {
+        String cacheControl = null == contentType ? null : cacheControlPolicies.get(contentType);
+
+        return null == cacheControl ? defaultCacheControl : cacheControl;
+    }
+
+    /**
+     * Sets how long {@link #shutdown()} will wait for in-progress requests
+     * to complete before closing their connections.
+     *
+     * @param shutdownGraceMillis The grace period in milliseconds.
+     */
+    public void setShutdownGracePeriod(int shutdownGraceMillis) {
+        if(shutdownGraceMillis < 0) {
+            throw new IllegalArgumentException("Illegal shutdownGraceMillis: " + shutdownGraceMillis);
+        }
+
+        this.shutdownGraceMillis = shutdownGraceMillis;
+    }
+
+    /**
+     * Gets the number of connections currently being handled.
+     *
+     * @return The number of connections currently being handled.
+     */
+    public int getActiveConnectionCount() {
+        SelectorEngine engine = selectorEngine;
+
+        return activeConnections.size() + (null == engine ? 0 : engine.getConnectionCount());
+    }
+
+    /**
+     * Gets the request counts and latencies recorded by this server.
+     *
+     * @return This server's metrics.
+     */
+    public ServerMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Sets the number of event-loop threads used in {@link Mode#SELECTOR}
+     * mode. Must be called before {@link #start()}.
+     *
+     * @param eventLoopThreads The number of event-loop threads.
+     *
+     * @throws IllegalArgumentException If <code>eventLoopThreads</code> is
+     *         less than 1.
+     * @throws IllegalStateException If the server is running.
+     */
+    public synchronized void setEventLoopThreads(int eventLoopThreads) {
+        checkNotRunning();
+
+        if(eventLoopThreads < 1) {
+            throw new IllegalArgumentException("Illegal eventLoopThreads: " + eventLoopThreads);
+        }
+
+        this.eventLoopThreads = eventLoopThreads;
+    }
+
+    public int getEventLoopThreads() {
+        return eventLoopThreads;
+    }
+
+    /**
+     * Determines whether the server is running.
+     *
+     * @return <code>true</code> if the server is running.
+     */
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * Determines whether a request will be answered by
+     * a {@link RequestHandler} rather than from the document root.
+     *
+     * @param request The request.
+     *
+     * @return <code>true</code> if a RequestHandler will answer the request.
+     */
+    boolean hasRequestHandler(HttpRequest request) {
+        return handlers.containsKey(getPath(request.getTarget()));
+    }
+
+    /**
+     * Gets the path from a request target, ignoring any query string.
+     */
+    private static String getPath(String target) {
+        int query = target.indexOf('?');
+
+        return query < 0 ? target : target.substring(0, query);
+    }
+
+    private void checkNotRunning() {
+        if(running) {
+            throw new IllegalStateException("Server is already running");
+        }
     }
 
     /**
@@ -94,18 +625,67 @@ public class SimpleHttpServer
         }
 
         Files.createDirectories(documentRoot);
-        serverSocket = new ServerSocket(port);
+
+        if(assetCacheEnabled) {
+            int maxCachedFileSize = zeroCopyEnabled
+                ? Math.min(zeroCopyThreshold - 1, StaticAssetCache.MAX_CACHED_FILE_SIZE)
+                : StaticAssetCache.MAX_CACHED_FILE_SIZE;
+
+            assetCache = new StaticAssetCache(documentRoot, keepAliveHeaderBytes, maxCachedFileSize, this::getCacheControl);
+            assetCache.open();
+        }
+
+        ServerSocketChannel serverChannel = null;
+        try {
+            // Open the socket through a channel, so that accepted sockets
+            // have channels we can transferTo()
+            serverChannel = ServerSocketChannel.open();
+            serverChannel.bind(new InetSocketAddress(port));
+            serverSocket = serverChannel.socket();
+
+            if(Mode.SELECTOR == mode) {
+                selectorEngine = new SelectorEngine(this, serverChannel, eventLoopThreads);
+            }
+        } catch (IOException ioe) {
+            if(null != serverChannel) {
+                serverChannel.close();
+            }
+
+            if(null != assetCache) {
+                assetCache.close();
+                assetCache = null;
+            }
+
+            throw ioe;
+        }
+
         running = true;
 
-        serverThread = new Thread(this::runServer, "SimpleHttpServer");
+        if(Mode.SELECTOR == mode) {
+            selectorEngine.start();
+
+            return;
+        }
+
+        if(Mode.CONCURRENT == mode) {
+            connectionPermits = new Semaphore(maxConnections);
+            connectionExecutor = Executors.newThreadPerTaskExecutor(
+                    Thread.ofVirtual().name("SimpleHttpServer-connection-", 0).factory());
+
+            serverThread = new Thread(this::runConcurrentServer, "SimpleHttpServer");
+        } else {
+            serverThread = new Thread(this::runServer, "SimpleHttpServer");
+        }
         serverThread.start();
     }
 
     /**
      * Stops the server.
      *
-     * Stops accepting new connections, frees all resources, and terminates
-     * the request-handling thread.
+     * Stops accepting new connections and gives any in-progress requests
+     * a short grace period to complete. Any connections still open after
+     * that are closed. Frees all resources and terminates the
+     * request-handling threads.
      */
     public synchronized void shutdown() {
         running = false;
@@ -117,13 +697,62 @@ public class SimpleHttpServer
         } catch (IOException ignored) {
         }
 
+        if(null != selectorEngine) {
+            selectorEngine.shutdown(shutdownGraceMillis);
+            selectorEngine = null;
+        }
+
+        // Connections waiting for another request have nothing in progress
+        for(Socket socket : idleConnections) {
+            try {
+                socket.close();
+            } catch (IOException ignored) {
+            }
+        }
+
         try {
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(shutdownGraceMillis);
+
+            if (serverThread != null) {
+                // wait for any in-progress request to complete
+                serverThread.join(Math.max(1, shutdownGraceMillis));
+            }
+
+            if(null != connectionExecutor) {
+                connectionExecutor.shutdown();
+                connectionExecutor.awaitTermination(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+            }
+
+            if(!activeConnections.isEmpty()) {
+                System.out.println("Closing " + activeConnections.size() + " in-progress HTTP connection(s)");
+
+                for(Socket socket : activeConnections) {
+                    try {
+                        socket.close(); // unblocks any reads or writes
+                    } catch (IOException ignored) {
+                    }
+                }
+            }
+
             if (serverThread != null) {
-                serverThread.join(); // wait for any in-progress request to complete
+                serverThread.join();
+            }
+
+            if(null != connectionExecutor) {
+                connectionExecutor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
             }
         } catch (InterruptedException ignored) {
             Thread.currentThread().interrupt();
         }
+
+        if(null != assetCache) {
+            assetCache.close();
+        }
+
+        assetCache = null;
+        serverThread = null;
+        connectionExecutor = null;
+        connectionPermits = null;
     }
 
     /**
@@ -136,121 +765,563 @@ public class SimpleHttpServer
     private void runServer() {
         while (running) {
             try (Socket socket = serverSocket.accept()) {
-                handleRequest(socket);
-            } catch (SocketException e) {
-                System.out.println("Caught SocketException during accept(); assuming shutdown");
+                long acceptNanos = System.nanoTime();
 
-                break;
+                activeConnections.add(socket);
+                metrics.connectionAccepted();
+                try {
+                    handleConnection(socket, acceptNanos);
+                } finally {
+                    activeConnections.remove(socket);
+                }
             } catch (IOException e) {
+                if(serverSocket.isClosed()) {
+                    System.out.println("Caught " + e.getClass().getSimpleName() + " during accept(); assuming shutdown");
+
+                    break;
+                }
+
                 // Log and continue
                 publishError(e);
             }
         }
     }
 
-    private void publishError(Throwable t) {
-        if(null != this.listeners) {
-            for(RequestListener listener : this.listeners) {
-                listener.requestErrored(t);
+    /**
+     * The server's main loop in {@link Mode#CONCURRENT} mode:
+     *
+     * 1. Wait until fewer than <code>maxConnections</code> are open
+     * 2. Accept a connection
+     * 3. Hand it off to a new virtual thread
+     * 4. Repeat
+     */
+    private void runConcurrentServer() {
+        while (running) {
+            try {
+                // Time out so we notice shutdown
+                if(!connectionPermits.tryAcquire(100, TimeUnit.MILLISECONDS)) {
+                    continue;
+                }
+            } catch (InterruptedException ie) {
+                continue;
             }
-        }
-    }
 
-    private void publishRequest(int responseCode, Path path, long length) {
-        if(null != this.listeners) {
-            for(RequestListener listener : this.listeners) {
-                listener.requestProcessed(responseCode, path, length);
+            Socket socket;
+            try {
+                socket = serverSocket.accept();
+            } catch (IOException e) {
+                connectionPermits.release();
+
+                if(serverSocket.isClosed()) {
+                    System.out.println("Caught " + e.getClass().getSimpleName() + " during accept(); assuming shutdown");
+
+                    break;
+                }
+
+                // Log and continue
+                publishError(e);
+
+                continue;
+            }
+
+            long acceptNanos = System.nanoTime();
+
+            activeConnections.add(socket);
+            metrics.connectionAccepted();
+            try {
+                connectionExecutor.execute(() -> {
+                    try (socket) {
+                        handleConnection(socket, acceptNanos);
+                    } catch (IOException e) {
+                        // Connections closed by shutdown() aren't errors
+                        if(running) {
+                            publishError(e);
+                        }
+                    } finally {
+                        activeConnections.remove(socket);
+                        connectionPermits.release();
+                    }
+                });
+            } catch (RejectedExecutionException ree) {
+                // Shutting down
+                activeConnections.remove(socket);
+                connectionPermits.release();
+
+                try {
+                    socket.close();
+                } catch (IOException ignored) {
+                }
             }
         }
     }
 
-    private final byte[] CRLF = "\r\n".getBytes(StandardCharsets.US_ASCII);
-    private final byte[] OK_RESPONSE_BYTES = "HTTP/1.0 200 OK\r\n".getBytes(StandardCharsets.US_ASCII);
-    private final byte[] CONTENT_TYPE_HEADER_BYTES = "Content-Type: ".getBytes(StandardCharsets.US_ASCII);
-    private final byte[] CONTENT_LENGTH_HEADER_BYTES = "Content-Length: ".getBytes(StandardCharsets.US_ASCII);
-
-    private void handleRequest(Socket socket)
+    /**
+     * Handles all the requests on a single connection.
+     *
+     * HTTP/1.1 connections (and HTTP/1.0 connections which ask for it) are
+     * kept open after each response, and the next request is read from the
+     * same socket. Pipelined requests are simply read and answered in order;
+     * the response buffer is only flushed once no more requests are waiting.
+     *
+     * @param socket The client connection.
+     * @param acceptNanos When the connection was accepted, according to
+     *        {@link System#nanoTime()}.
+     *
+     * @throws IOException If there is a problem talking to the client.
+     */
+    private void handleConnection(Socket socket, long acceptNanos)
         throws IOException
     {
-        try(BufferedReader in = new BufferedReader(
-                new InputStreamReader(socket.getInputStream()));
-                OutputStream out = socket.getOutputStream();
-            ) {
-            String requestLine = in.readLine();
-            if (requestLine == null) {
-                sendResponse(out, "400 Bad Request", null);
+        socket.setSoTimeout(readTimeoutMillis);
 
-                publishRequest(400, null, -1);
+        // Responses which haven't been completely flushed yet
+        List<ServerMetrics.Exchange> unsent = new ArrayList<>();
 
-                return;
-            }
+        InputStream in = new BufferedInputStream(socket.getInputStream());
+        OutputStream out = new BufferedOutputStream(new FirstByteOutputStream(socket.getOutputStream(), unsent));
+        SocketChannel channel = socket.getChannel();
+        FileBodyWriter fileWriter = (zeroCopyEnabled && null != channel)
+            ? (file, length, o) -> transferFile(file, length, o, channel)
+            : SimpleHttpServer::copyFile;
+
+        int requestCount = 0;
+        while(running) {
+            HttpRequest request;
+            try {
+                if(requestCount > 0) {
+                    idleConnections.add(socket);
+                    socket.setSoTimeout(idleTimeoutMillis);
+                }
+
+                request = HttpRequest.read(in);
+            } catch (SocketTimeoutException ste) {
+                if(0 == requestCount) {
+                    // The client was too slow to send its request
+                    publishRequest(408, null, -1);
+                    metrics.requestRejected(408);
+                }
 
-            String[] parts = requestLine.split(" ");
-            if (parts.length < 2) {
-                sendResponse(out, "400 Bad Request", null);
+                // Otherwise, an idle keep-alive connection; just close it
+
+                return;
+            } catch (ProtocolException pe) {
+                sendResponse(out, "400 Bad Request", null, false);
+                out.flush();
 
                 publishRequest(400, null, -1);
+                metrics.requestRejected(400);
+
+                return;
+            } finally {
+                idleConnections.remove(socket);
+            }
 
+            if(null == request) {
+                // Client closed the connection
                 return;
             }
 
-            if(!"GET".equals(parts[0])) {
-                sendResponse(out, "405 Method Not Allowed", null);
+            ++requestCount;
+
+            // Later requests can't be timed from when the client started
+            // sending them, only from when they arrived.
+            ServerMetrics.Exchange exchange = metrics.startExchange(1 == requestCount ? acceptNanos : System.nanoTime());
+            unsent.add(exchange);
+
+            socket.setSoTimeout(readTimeoutMillis);
+
+            // A single-threaded server can't wait around for another
+            // request while other clients are waiting to connect.
+            boolean keepAlive = Mode.CONCURRENT == mode
+                && request.isKeepAlive()
+                && requestCount < MAX_REQUESTS_PER_CONNECTION
+                && running;
 
-                publishRequest(405, null, -1);
+            keepAlive = handleRequest(request, in, out, fileWriter, exchange, keepAlive);
+
+            if(!keepAlive) {
+                flush(out, unsent);
 
                 return;
             }
 
-
-            String rawPath = parts[1];
-            if (rawPath.equals("/")) {
-                rawPath = "/index.html";
+            if(0 == in.available()) {
+                // No pipelined request waiting; send what we have
+                flush(out, unsent);
             }
+        }
 
-            // Resolve and normalize path
-            Path requested = documentRoot
-                    .resolve(rawPath.substring(1))
-                    .normalize();
+        flush(out, unsent);
+    }
 
-            // STRICT containment check (prevents ../ attacks and symlink escape)
-            if (!requested.startsWith(documentRoot) || !Files.isRegularFile(requested)) {
-                sendResponse(out, "404 Not Found", null);
+    private static void flush(OutputStream out, List<ServerMetrics.Exchange> unsent)
+        throws IOException
+    {
+        out.flush();
 
-                publishRequest(404, requested, -1);
+        for(ServerMetrics.Exchange exchange : unsent) {
+            exchange.finished();
+        }
+        unsent.clear();
+    }
 
-                return;
+    /**
+     * Sits under a connection's output buffer, and notes when each
+     * response actually starts going out to the client.
+     */
+    private static final class FirstByteOutputStream
+        extends FilterOutputStream
+    {
+        private final List<ServerMetrics.Exchange> unsent;
+
+        FirstByteOutputStream(OutputStream out, List<ServerMetrics.Exchange> unsent) {
+            super(out);
+
+            this.unsent = unsent;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            firstByteSent();
+
+            out.write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            firstByteSent();
+
+            out.write(b, off, len);
+        }
+
+        private void firstByteSent() {
+            for(ServerMetrics.Exchange exchange : unsent) {
+                exchange.firstByteSent();
             }
+        }
+    }
+
+    void publishError(Throwable t) {
+        for(RequestListener listener : this.listeners) {
+            listener.requestErrored(t);
+        }
+    }
+
+    void publishRequest(int responseCode, Path path, long length) {
+        for(RequestListener listener : this.listeners) {
+            listener.requestProcessed(responseCode, path, length);
+        }
+    }
+
+    private void publishRequest(ServerMetrics.Exchange exchange, int responseCode, Path path, long length) {
+        exchange.setResponse(responseCode, length);
+
+        publishRequest(responseCode, path, length);
+    }
+
+    private static final byte[] CRLF = "\r\n".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] OK_RESPONSE_BYTES = "HTTP/1.1 200 OK\r\n".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] NOT_MODIFIED_RESPONSE_BYTES = "HTTP/1.1 304 Not Modified\r\n".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] CONTENT_TYPE_HEADER_BYTES = "Content-Type: ".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] CONTENT_LENGTH_HEADER_BYTES = "Content-Length: ".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] CONNECTION_CLOSE_BYTES = "Connection: close\r\n".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] CONNECTION_KEEP_ALIVE_BYTES = "Connection: keep-alive\r\n".getBytes(StandardCharsets.US_ASCII);
+
+    /**
+     * Handles a single request.
+     *
+     * @param request The request line and headers.
+     * @param in The connection's input, positioned at the request body.
+     * @param out The connection's output.
+     * @param fileWriter Writes the bodies of file responses which aren't
+     *        served from the cache.
+     * @param exchange Records the response in the server's metrics.
+     * @param keepAlive Whether the connection may be kept open after this
+     *        request.
+     *
+     * @return <code>true</code> if the connection should be kept open for
+     *         another request, <code>false</code> if it should be closed.
+     *
+     * @throws IOException If there is a problem talking to the client.
+     */
+    boolean handleRequest(HttpRequest request, InputStream in, OutputStream out, FileBodyWriter fileWriter, ServerMetrics.Exchange exchange, boolean keepAlive)
+        throws IOException
+    {
+        long contentLength;
+        try {
+            contentLength = request.getContentLength();
+        } catch (ProtocolException pe) {
+            sendResponse(out, "400 Bad Request", null, false);
+
+            publishRequest(exchange, 400, null, -1);
+
+            return false;
+        }
+
+        if(request.hasTransferEncoding()) {
+            // We can't tell where the body ends, so we can't keep going
+            sendResponse(out, "501 Not Implemented", null, false);
+
+            publishRequest(exchange, 501, null, -1);
+
+            return false;
+        }
+
+        String rawPath = getPath(request.getTarget());
+        exchange.setPath(rawPath);
+
+        RequestHandler handler = handlers.get(rawPath);
+        if(null != handler) {
+            return handleWithHandler(handler, request, rawPath, contentLength, in, out, exchange, keepAlive);
+        }
+
+        // Files don't use request bodies; skip over it to the next request
+        in.skipNBytes(contentLength);
+
+        if(!"GET".equals(request.getMethod())) {
+            sendResponse(out, "405 Method Not Allowed", null, keepAlive);
+
+            publishRequest(exchange, 405, null, -1);
+
+            return keepAlive;
+        }
+
+        if (rawPath.equals("/") || rawPath.isEmpty()) {
+            rawPath = "/index.html";
+        }
+
+        // Resolve and normalize path
+        Path requested = documentRoot
+                .resolve(rawPath.substring(1))
+                .normalize();
+
+        // STRICT containment check (prevents ../ attacks and symlink escape)
+        if (!requested.startsWith(documentRoot)) {
+            sendResponse(out, "404 Not Found", null, keepAlive);
+
+            publishRequest(exchange, 404, requested, -1);
+
+            return keepAlive;
+        }
+
+        StaticAssetCache cache = assetCache;
+        if(null != cache) {
+            StaticAssetCache.Asset asset = cache.get(requested);
 
-            File requestedFile = requested.toFile();
-            long fileLength = requestedFile.length();
+            if(null != asset) {
+                boolean gzip = request.acceptsEncoding("gzip");
 
-            String contentType = guessContentType(requested);
+                // The whole response has already been built
+                if(request.isNotModified(asset.getETag(gzip), asset.getLastModified())) {
+                    out.write(asset.getNotModifiedResponse(gzip, keepAlive));
 
-            out.write(OK_RESPONSE_BYTES); // HTTP/1.0 200 OK
-            if(null != contentType) {
-                // Content-Type: mime-type
-                out.write(CONTENT_TYPE_HEADER_BYTES);
-                out.write(String.valueOf(contentType).getBytes(StandardCharsets.US_ASCII));
-                out.write(CRLF);
+                    publishRequest(exchange, 304, requested, 0);
+                } else {
+                    out.write(asset.getResponse(gzip, keepAlive));
+
+                    publishRequest(exchange, 200, requested, asset.getLength());
+                }
+
+                return keepAlive;
             }
-            // Content-Length: [bytes]
-            out.write(CONTENT_LENGTH_HEADER_BYTES);
-            out.write(String.valueOf(fileLength).getBytes(StandardCharsets.US_ASCII));
+        }
+
+        if (!Files.isRegularFile(requested)) {
+            sendResponse(out, "404 Not Found", null, keepAlive);
+
+            publishRequest(exchange, 404, requested, -1);
+
+            return keepAlive;
+        }
+
+        File requestedFile = requested.toFile();
+        long fileLength = requestedFile.length();
+        // HTTP dates only have 1-second resolution
+        long lastModified = requestedFile.lastModified() / 1000 * 1000;
+
+        // We don't want to read the whole file to hash it, so this is only
+        // a weak validator.
+        String etag = "W/\"" + Long.toHexString(fileLength) + "-" + Long.toHexString(lastModified) + "\"";
+
+        String contentType = guessContentType(requested);
+
+        if(request.isNotModified(etag, lastModified)) {
+            out.write(NOT_MODIFIED_RESPONSE_BYTES); // HTTP/1.1 304 Not Modified
+            writeValidatorHeaders(out, etag, lastModified, contentType);
+            writeConnectionHeader(out, keepAlive);
             out.write(CRLF);
+
+            publishRequest(exchange, 304, requested, 0);
+
+            return keepAlive;
+        }
+
+        out.write(OK_RESPONSE_BYTES); // HTTP/1.1 200 OK
+        writeValidatorHeaders(out, etag, lastModified, contentType);
+        if(null != contentType) {
+            // Content-Type: mime-type
+            out.write(CONTENT_TYPE_HEADER_BYTES);
+            out.write(String.valueOf(contentType).getBytes(StandardCharsets.US_ASCII));
             out.write(CRLF);
+        }
+        // Content-Length: [bytes]
+        out.write(CONTENT_LENGTH_HEADER_BYTES);
+        out.write(String.valueOf(fileLength).getBytes(StandardCharsets.US_ASCII));
+        out.write(CRLF);
+        writeConnectionHeader(out, keepAlive);
+        out.write(CRLF);
+
+        fileWriter.writeFile(requested, fileLength, out);
+
+        publishRequest(exchange, 200, requested, fileLength);
 
-            byte[] buffer = new byte[8192];
-            int c;
+        return keepAlive;
+    }
 
-            try(FileInputStream fin = new FileInputStream(requestedFile)) {
-                while(-1 < (c = fin.read(buffer))) {
-                    out.write(buffer, 0, c);
+    /**
+     * Sends a file body by copying it through a buffer.
+     */
+    private static void copyFile(Path file, long length, OutputStream out)
+        throws IOException
+    {
+        byte[] buffer = new byte[8192];
+        int c;
+
+        try(FileInputStream fin = new FileInputStream(file.toFile())) {
+            while(-1 < (c = fin.read(buffer))) {
+                out.write(buffer, 0, c);
+            }
+        }
+    }
+
+    /**
+     * Sends a file body with {@link FileChannel#transferTo}, so the bytes
+     * go straight from the file to the socket without passing through the
+     * JVM.
+     *
+     * @param file The file to send.
+     * @param length The number of bytes promised in the Content-Length
+     *        header.
+     * @param out The connection's buffered output, holding the response
+     *        headers. It is flushed before the body is sent.
+     * @param channel The connection's channel.
+     *
+     * @throws IOException If there is a problem reading the file or
+     *         writing to the client, or if the file got shorter after the
+     *         headers were sent.
+     */
+    private void transferFile(Path file, long length, OutputStream out, SocketChannel channel)
+        throws IOException
+    {
+        // The headers must go out first
+        out.flush();
+
+        try(FileChannel fc = FileChannel.open(file, StandardOpenOption.READ)) {
+            long position = 0;
+            while(position < length) {
+                long sent = fc.transferTo(position, length - position, channel);
+
+                if(sent <= 0 && position >= fc.size()) {
+                    // We can't take back the Content-Length; the caller
+                    // must drop the connection.
+                    throw new IOException("File truncated while sending: " + file);
                 }
+
+                position += sent;
             }
-            out.flush();
+        }
+    }
+
+    private boolean handleWithHandler(RequestHandler handler, HttpRequest request, String path, long contentLength, InputStream in, OutputStream out, ServerMetrics.Exchange exchange, boolean keepAlive)
+        throws IOException
+    {
+        if(contentLength > maxRequestBodySize) {
+            // Don't bother reading it; just hang up afterward
+            sendResponse(out, "413 Content Too Large", "Request body is larger than " + maxRequestBodySize + " bytes", false);
+
+            publishRequest(exchange, 413, Paths.get(path), -1);
+
+            return false;
+        }
 
-            publishRequest(200, requested, fileLength);
+        byte[] body = in.readNBytes((int)contentLength);
+        if(body.length < contentLength) {
+            throw new EOFException("Connection closed during request body");
+        }
+
+        Response response;
+        try {
+            response = handler.handle(request, body);
+        } catch (IOException | RuntimeException e) {
+            publishError(e);
+
+            sendResponse(out, "500 Internal Server Error", null, keepAlive);
+
+            publishRequest(exchange, 500, Paths.get(path), -1);
+
+            return keepAlive;
+        }
+
+        byte[] content = null == response.getBody() ? new byte[0] : response.getBody();
+
+        StringBuilder headers = new StringBuilder("HTTP/1.1 ");
+        headers.append(response.getStatusCode()).append(' ').append(response.getReasonPhrase()).append("\r\n");
+        if(null != response.getContentType()) {
+            headers.append("Content-Type: ").append(response.getContentType()).append("\r\n");
+        }
+        headers.append("Content-Length: ").append(content.length).append("\r\n");
+        // Handler responses are generated fresh every time
+        headers.append("Cache-Control: no-store\r\n");
+
+        out.write(headers.toString().getBytes(StandardCharsets.US_ASCII));
+        writeConnectionHeader(out, keepAlive);
+        out.write(CRLF);
+        out.write(content);
+
+        publishRequest(exchange, response.getStatusCode(), Paths.get(path), content.length);
+
+        return keepAlive;
+    }
+
+    private void writeValidatorHeaders(OutputStream out, String etag, long lastModified, String contentType)
+        throws IOException
+    {
+        StringBuilder headers = new StringBuilder();
+        headers.append("ETag: ").append(etag).append("\r\n");
+        headers.append("Last-Modified: ").append(formatHttpDate(lastModified)).append("\r\n");
+
+        String cacheControl = getCacheControl(contentType);
+        if(null != cacheControl) {
+            headers.append("Cache-Control: ").append(cacheControl).append("\r\n");
+        }
+
+        out.write(headers.toString().getBytes(StandardCharsets.US_ASCII));
+    }
+
+    /**
+     * Formats a time as an HTTP date, e.g.
+     * <code>Sun, 06 Nov 1994 08:49:37 GMT</code>.
+     *
+     * @param millis The time in milliseconds since the epoch.
+     *
+     * @return The formatted date.
+     */
+    static String formatHttpDate(long millis) {
+        return HTTP_DATE_FORMAT.format(Instant.ofEpochMilli(millis).atOffset(ZoneOffset.UTC));
+    }
+
+    // NOTE: DateTimeFormatter.RFC_1123_DATE_TIME doesn't zero-pad the day
+    private static final DateTimeFormatter HTTP_DATE_FORMAT =
+        DateTimeFormatter.ofPattern("EEE, dd MMM yyyy HH:mm:ss 'GMT'", Locale.US);
+
+    private void writeConnectionHeader(OutputStream out, boolean keepAlive)
+        throws IOException
+    {
+        if(keepAlive) {
+            out.write(CONNECTION_KEEP_ALIVE_BYTES);
+            out.write(keepAliveHeaderBytes);
+        } else {
+            out.write(CONNECTION_CLOSE_BYTES);
         }
     }
 
@@ -264,7 +1335,7 @@ public class SimpleHttpServer
      * @return The guessed MIME type of the file; returns null
      *         per RFC 9110 if the file type is not recognized.
      */
-    private static String guessContentType(Path file) {
+    static String guessContentType(Path file) {
         String name = file.getFileName().toString().toLowerCase();
 
         if (name.endsWith(".html") || name.endsWith(".htm")) {
@@ -276,6 +1347,9 @@ public class SimpleHttpServer
         if (name.endsWith(".js")) {
             return "application/javascript";
         }
+        if (name.endsWith(".json")) {
+            return "application/json";
+        }
         if (name.endsWith(".png")) {
             return "image/png";
         }
@@ -283,7 +1357,7 @@ public class SimpleHttpServer
         return null;
     }
 
-    private void sendResponse(OutputStream out, String status, String body)
+    void sendResponse(OutputStream out, String status, String body, boolean keepAlive)
         throws IOException
     {
         int contentLength;
@@ -297,23 +1371,22 @@ public class SimpleHttpServer
             content = null;
         }
 
-        OutputStreamWriter oor = new OutputStreamWriter(out);
-        oor.write("HTTP/1.0 ");
-        oor.write(status);
-        oor.write("\r\nContent-Length: ");
-        oor.write(String.valueOf(contentLength));
-        oor.write("\r\n");
+        StringBuilder headers = new StringBuilder("HTTP/1.1 ");
+        headers.append(status);
+        headers.append("\r\nContent-Length: ");
+        headers.append(contentLength);
+        headers.append("\r\n");
 
         if(contentLength > 0) {
-            oor.write("Content-Type: text/plain\r\n");
+            headers.append("Content-Type: text/plain; charset=utf-8\r\n");
         }
 
-        oor.write("\r\n");
-        oor.flush();
+        out.write(headers.toString().getBytes(StandardCharsets.US_ASCII));
+        writeConnectionHeader(out, keepAlive);
+        out.write(CRLF);
 
         if(null != content) {
             out.write(content);
         }
-        out.flush();
     }
-}
\ No newline at end of file
+}
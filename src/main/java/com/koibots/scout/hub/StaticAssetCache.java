@@ -0,0 +1,498 @@
+package com.koibots.scout.hub;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * An in-memory cache of the files served by {@link SimpleHttpServer}.
+ *
+ * Every file under the document root is read when the cache is opened.
+ * For each file, the complete HTTP response (status line, headers and
+ * body) is built ahead of time, as is its <code>304 Not Modified</code>
+ * response, so serving a cached file is a single write. Text files also
+ * get a gzip-compressed variant for clients which accept it.
+ *
+ * The document root is watched for changes; any file which is created,
+ * modified or deleted is dropped from the cache and re-read the next time
+ * it is requested.
+ */
+public class StaticAssetCache
+    implements AutoCloseable
+{
+    /**
+     * By default, files larger than this are not cached; they are streamed
+     * from disk.
+     */
+    public static final int MAX_CACHED_FILE_SIZE = 4 * 1024 * 1024;
+
+    /**
+     * The most bytes of file content we will hold in memory.
+     */
+    public static final long MAX_CACHE_SIZE = 32 * 1024 * 1024;
+
+    /**
+     * A single cached file.
+     */
+    public static final class Asset {
+        private final Path path;
+        private final long length;
+        private final String etag;
+        private final long lastModified;
+        private final String contentType;
+
+        /**
+         * Prebuilt responses, indexed by [gzip][keepAlive].
+         */
+        private final byte[][][] responses;
+        private final byte[][][] notModifiedResponses;
+
+        private Asset(Path path, long length, String etag, long lastModified, String contentType, byte[][][] responses, byte[][][] notModifiedResponses) {
+            this.path = path;
+            this.length = length;
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.contentType = contentType;
+            this.responses = responses;
+            this.notModifiedResponses = notModifiedResponses;
+        }
+
+        public Path getPath() {
+            return path;
+        }
+
+        /**
+         * Gets the (uncompressed) length of the file.
+         *
+         * @return The length of the file in bytes.
+         */
+        public long getLength() {
+            return length;
+        }
+
+        /**
+         * Gets the strong entity tag for this file, including the quotes.
+         *
+         * @param gzip Whether the client accepts gzip encoding. The
+         *        compressed variant has its own entity tag, since its bytes
+         *        differ.
+         *
+         * @return The ETag of the file.
+         */
+        public String getETag(boolean gzip) {
+            return (gzip && hasGzipVariant()) ? gzipETag(etag) : etag;
+        }
+
+        /**
+         * Gets the modification time of the file, truncated to whole seconds
+         * as sent in the <code>Last-Modified</code> header.
+         *
+         * @return The modification time of the file in milliseconds since
+         *         the epoch.
+         */
+        public long getLastModified() {
+            return lastModified;
+        }
+
+        public String getContentType() {
+            return contentType;
+        }
+
+        /**
+         * Determines whether this file has a gzip-compressed variant.
+         *
+         * @return <code>true</code> if a compressed variant is available.
+         */
+        public boolean hasGzipVariant() {
+            return null != responses[1];
+        }
+
+        /**
+         * Gets the complete prebuilt <code>200 OK</code> response for this
+         * file.
+         *
+         * @param gzip Whether the client accepts gzip encoding. Ignored if
+         *        there is no compressed variant.
+         * @param keepAlive Whether the connection will be kept open.
+         *
+         * @return The complete response, ready to be written to the client.
+         *         Must not be modified.
+         */
+        public byte[] getResponse(boolean gzip, boolean keepAlive) {
+            byte[][] variant = (gzip && hasGzipVariant()) ? responses[1] : responses[0];
+
+            return variant[keepAlive ? 1 : 0];
+        }
+
+        /**
+         * Gets the complete prebuilt <code>304 Not Modified</code> response
+         * for this file.
+         *
+         * @param gzip Whether the client accepts gzip encoding. Ignored if
+         *        there is no compressed variant.
+         * @param keepAlive Whether the connection will be kept open.
+         *
+         * @return The complete response, ready to be written to the client.
+         *         Must not be modified.
+         */
+        public byte[] getNotModifiedResponse(boolean gzip, boolean keepAlive) {
+            byte[][] variant = (gzip && hasGzipVariant()) ? notModifiedResponses[1] : notModifiedResponses[0];
+
+            return variant[keepAlive ? 1 : 0];
+        }
+    }
+
+    private final Path documentRoot;
+    private final byte[] keepAliveHeaderBytes;
+    private final int maxCachedFileSize;
+    private final Function<String,String> cacheControlPolicy;
+
+    private final Map<Path,Asset> assets = new ConcurrentHashMap<>();
+    private final AtomicLong cachedBytes = new AtomicLong();
+
+    /**
+     * Bumped whenever files are dropped from the cache, so that a file
+     * which changed while it was being read is not cached.
+     */
+    private final AtomicLong generation = new AtomicLong();
+
+    private WatchService watchService;
+    private Thread watchThread;
+
+    /**
+     * Creates a new, empty cache.
+     *
+     * @param documentRoot The (normalized, absolute) document root.
+     * @param keepAliveHeaderBytes The <code>Keep-Alive</code> header line
+     *        (including CRLF) to send on persistent connections.
+     * @param maxCachedFileSize The largest file to cache, in bytes.
+     * @param cacheControlPolicy Gives the <code>Cache-Control</code> header
+     *        value for a content type (which may be <code>null</code>), or
+     *        <code>null</code> to send no such header.
+     */
+    StaticAssetCache(Path documentRoot, byte[] keepAliveHeaderBytes, int maxCachedFileSize, Function<String,String> cacheControlPolicy) {
+        this.documentRoot = documentRoot;
+        this.keepAliveHeaderBytes = keepAliveHeaderBytes;
+        this.maxCachedFileSize = maxCachedFileSize;
+        this.cacheControlPolicy = cacheControlPolicy;
+    }
+
+    /**
+     * Loads every file under the document root and starts watching it for
+     * changes.
+     *
+     * @throws IOException If the document root cannot be read or watched.
+     */
+    public void open() throws IOException {
+        watchService = FileSystems.getDefault().newWatchService();
+
+        Files.walkFileTree(documentRoot, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                register(dir);
+
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                if(attrs.isRegularFile()) {
+                    load(file.normalize().toAbsolutePath());
+                }
+
+                return FileVisitResult.CONTINUE;
+            }
+        });
+
+        System.out.println("Cached " + assets.size() + " web files (" + cachedBytes.get() + " bytes)");
+
+        watchThread = new Thread(this::watch, "StaticAssetCache-watcher");
+        watchThread.setDaemon(true);
+        watchThread.start();
+    }
+
+    /**
+     * Gets a cached file, loading it into the cache if necessary.
+     *
+     * @param path The normalized, absolute path of the file, which must be
+     *        inside the document root.
+     *
+     * @return The cached file, or <code>null</code> if the file does not
+     *         exist, is not cacheable, or changed while it was being read.
+     *
+     * @throws IOException If the file cannot be read.
+     */
+    public Asset get(Path path) throws IOException {
+        Asset asset = assets.get(path);
+
+        if(null == asset && Files.isRegularFile(path)) {
+            asset = load(path);
+        }
+
+        return asset;
+    }
+
+    /**
+     * Gets the number of files in the cache.
+     *
+     * @return The number of cached files.
+     */
+    public int size() {
+        return assets.size();
+    }
+
+    /**
+     * Drops every file from the cache.
+     */
+    public void clear() {
+        generation.incrementAndGet();
+        assets.clear();
+        cachedBytes.set(0);
+    }
+
+    @Override
+    public void close() {
+        if(null != watchService) {
+            try {
+                watchService.close(); // stops the watcher thread
+            } catch (IOException ioe) {
+                ioe.printStackTrace();
+            }
+        }
+
+        if(null != watchThread) {
+            try {
+                watchThread.join();
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        clear();
+    }
+
+    private void register(Path dir) throws IOException {
+        dir.register(watchService,
+                StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_MODIFY,
+                StandardWatchEventKinds.ENTRY_DELETE);
+    }
+
+    private Asset load(Path path) throws IOException {
+        long loadGeneration = generation.get();
+
+        long size = Files.size(path);
+
+        if(size > maxCachedFileSize || cachedBytes.get() + size > MAX_CACHE_SIZE) {
+            return null;
+        }
+
+        long modified = Files.getLastModifiedTime(path).toMillis();
+        byte[] body = Files.readAllBytes(path);
+
+        if(body.length != size || Files.getLastModifiedTime(path).toMillis() != modified) {
+            // Still being written; stream it until it settles down
+            return null;
+        }
+
+        // HTTP dates only have 1-second resolution
+        long lastModified = modified / 1000 * 1000;
+        String contentType = SimpleHttpServer.guessContentType(path);
+        String etag = computeETag(body);
+        String cacheControl = cacheControlPolicy.apply(contentType);
+
+        byte[][][] responses = new byte[2][][];
+        byte[][][] notModifiedResponses = new byte[2][][];
+        responses[0] = buildResponses("200 OK", contentType, etag, lastModified, cacheControl, body, null);
+        notModifiedResponses[0] = buildResponses("304 Not Modified", contentType, etag, lastModified, cacheControl, null, null);
+
+        if(isCompressible(contentType)) {
+            byte[] compressed = gzip(body);
+
+            if(compressed.length < body.length) {
+                responses[1] = buildResponses("200 OK", contentType, gzipETag(etag), lastModified, cacheControl, compressed, "gzip");
+                notModifiedResponses[1] = buildResponses("304 Not Modified", contentType, gzipETag(etag), lastModified, cacheControl, null, "gzip");
+            }
+        }
+
+        Asset asset = new Asset(path, body.length, etag, lastModified, contentType, responses, notModifiedResponses);
+
+        boolean[] published = new boolean[1];
+        assets.compute(path, (p, previous) -> {
+            // Don't cache what we read if the watcher saw the file change
+            // since we started
+            if(generation.get() != loadGeneration) {
+                return previous;
+            }
+
+            if(null != previous) {
+                cachedBytes.addAndGet(-previous.getLength());
+            }
+            cachedBytes.addAndGet(asset.getLength());
+            published[0] = true;
+
+            return asset;
+        });
+
+        return published[0] ? asset : null;
+    }
+
+    /**
+     * Drops a file, or everything under a directory, from the cache.
+     */
+    private void invalidate(Path path) {
+        // Before removing anything, so a load in progress can't put it back
+        generation.incrementAndGet();
+
+        for(Path cached : assets.keySet()) {
+            if(cached.startsWith(path)) {
+                Asset removed = assets.remove(cached);
+                if(null != removed) {
+                    cachedBytes.addAndGet(-removed.getLength());
+                }
+            }
+        }
+    }
+
+    /**
+     * Builds the complete responses for one encoding of a file: one for
+     * connections which will be closed, one for connections which will
+     * be kept open.
+     *
+     * A <code>null</code> body means a <code>304 Not Modified</code>
+     * response, which has no body or content headers.
+     */
+    private byte[][] buildResponses(String status, String contentType, String etag, long lastModified, String cacheControl, byte[] body, String contentEncoding) {
+        StringBuilder headers = new StringBuilder("HTTP/1.1 ").append(status).append("\r\n");
+        if(null != body) {
+            if(null != contentType) {
+                headers.append("Content-Type: ").append(contentType).append("\r\n");
+            }
+            headers.append("Content-Length: ").append(body.length).append("\r\n");
+        }
+        headers.append("ETag: ").append(etag).append("\r\n");
+        headers.append("Last-Modified: ").append(SimpleHttpServer.formatHttpDate(lastModified)).append("\r\n");
+        if(null != cacheControl) {
+            headers.append("Cache-Control: ").append(cacheControl).append("\r\n");
+        }
+        if(null != body && null != contentEncoding) {
+            headers.append("Content-Encoding: ").append(contentEncoding).append("\r\n");
+        }
+        if(isCompressible(contentType)) {
+            // Caches must not give gzip bodies to clients who didn't ask
+            headers.append("Vary: Accept-Encoding\r\n");
+        }
+
+        byte[] common = headers.toString().getBytes(StandardCharsets.US_ASCII);
+        byte[] content = null == body ? new byte[0] : body;
+
+        byte[][] responses = new byte[2][];
+        responses[0] = concat(common, "Connection: close\r\n\r\n".getBytes(StandardCharsets.US_ASCII), content);
+
+        ByteArrayOutputStream keepAlive = new ByteArrayOutputStream();
+        keepAlive.writeBytes("Connection: keep-alive\r\n".getBytes(StandardCharsets.US_ASCII));
+        keepAlive.writeBytes(keepAliveHeaderBytes);
+        keepAlive.writeBytes("\r\n".getBytes(StandardCharsets.US_ASCII));
+        responses[1] = concat(common, keepAlive.toByteArray(), content);
+
+        return responses;
+    }
+
+    private static byte[] concat(byte[] a, byte[] b, byte[] c) {
+        byte[] result = new byte[a.length + b.length + c.length];
+        System.arraycopy(a, 0, result, 0, a.length);
+        System.arraycopy(b, 0, result, a.length, b.length);
+        System.arraycopy(c, 0, result, a.length + b.length, c.length);
+
+        return result;
+    }
+
+    private static boolean isCompressible(String contentType) {
+        return null != contentType
+            && (contentType.startsWith("text/")
+                || contentType.startsWith("application/javascript")
+                || contentType.startsWith("application/json"));
+    }
+
+    private static byte[] gzip(byte[] data) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(data.length / 2);
+        try(GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(data);
+        }
+
+        return out.toByteArray();
+    }
+
+    private static String gzipETag(String etag) {
+        return etag.substring(0, etag.length() - 1) + "-gzip\"";
+    }
+
+    private static String computeETag(byte[] body) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(body);
+
+            // 128 bits is plenty to tell versions of a file apart
+            return "\"" + HexFormat.of().formatHex(digest, 0, 16) + "\"";
+        } catch (NoSuchAlgorithmException nsae) {
+            // Every JVM is required to support SHA-256
+            throw new IllegalStateException(nsae);
+        }
+    }
+
+    private void watch() {
+        while(true) {
+            WatchKey key;
+            try {
+                key = watchService.take();
+            } catch (ClosedWatchServiceException | InterruptedException e) {
+                break;
+            }
+
+            Path dir = (Path)key.watchable();
+
+            for(WatchEvent<?> event : key.pollEvents()) {
+                if(StandardWatchEventKinds.OVERFLOW == event.kind()) {
+                    // We missed something; start over
+                    System.out.println("Web directory changed; clearing cache");
+
+                    clear();
+
+                    continue;
+                }
+
+                Path changed = dir.resolve((Path)event.context()).normalize().toAbsolutePath();
+
+                invalidate(changed);
+
+                if(StandardWatchEventKinds.ENTRY_CREATE == event.kind() && Files.isDirectory(changed)) {
+                    try {
+                        register(changed);
+                    } catch (IOException ioe) {
+                        ioe.printStackTrace();
+                    }
+                }
+            }
+
+            key.reset();
+        }
+    }
+}
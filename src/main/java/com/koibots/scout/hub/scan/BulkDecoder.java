@@ -0,0 +1,465 @@
+package com.koibots.scout.hub.scan;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.imageio.ImageIO;
+
+import org.bytedeco.ffmpeg.global.avutil;
+import org.bytedeco.javacv.FFmpegFrameGrabber;
+import org.bytedeco.javacv.Frame;
+import org.bytedeco.javacv.FrameGrabber;
+import org.bytedeco.javacv.Java2DFrameConverter;
+
+import com.google.zxing.Result;
+
+/**
+ * Decodes the QR codes in a directory of images or a video file, e.g.
+ * photos or screen recordings of QRScout taken by scouts who couldn't get
+ * to the hub.
+ *
+ * Images and video frames are decoded on all cores by a fork-join pool,
+ * each worker with its own decoder. Video is read in order by the calling
+ * thread, which only gets a few frames ahead of the workers.
+ *
+ * The same code is usually in many frames of a video, and may be in more
+ * than one photo. Each code is reported once, in the order it was first
+ * seen.
+ */
+public class BulkDecoder
+{
+    /**
+     * The most video frames read ahead of the decoders, for each worker.
+     */
+    private static final int FRAMES_AHEAD_PER_WORKER = 2;
+
+    /**
+     * Receives progress reports from a BulkDecoder.
+     */
+    public interface ProgressListener {
+        /**
+         * Called after each image or frame has been decoded, on a worker
+         * thread.
+         *
+         * @param done The number of images or frames decoded so far.
+         * @param total The number to decode, or -1 if not known.
+         */
+        public void progress(int done, int total);
+    }
+
+    private DecodeEngine decodeEngine = DecodeEngine.ZXING;
+    private int parallelism = Runtime.getRuntime().availableProcessors();
+    private ProgressListener progressListener;
+
+    public void setDecodeEngine(DecodeEngine decodeEngine) {
+        this.decodeEngine = decodeEngine;
+    }
+
+    public DecodeEngine getDecodeEngine() {
+        return decodeEngine;
+    }
+
+    /**
+     * Sets the number of images or frames decoded at once.
+     *
+     * @param parallelism The number of worker threads. Defaults to the
+     *        number of processors.
+     */
+    public void setParallelism(int parallelism) {
+        if(parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be at least 1: " + parallelism);
+        }
+
+        this.parallelism = parallelism;
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    public void setProgressListener(ProgressListener progressListener) {
+        this.progressListener = progressListener;
+    }
+
+    /**
+     * Checks whether a file looks like an image we can decode.
+     *
+     * @param file The file.
+     *
+     * @return <code>true</code> if the file is a PNG, JPEG, GIF or BMP
+     *         image.
+     */
+    public static boolean isImage(File file) {
+        return file.getName().toLowerCase(Locale.ROOT).matches(".*\\.(png|jpe?g|gif|bmp)");
+    }
+
+    /**
+     * Decodes the codes in every image in a directory, or in a video file.
+     *
+     * @param file A directory of images, or a video file.
+     *
+     * @return What was found.
+     *
+     * @throws IOException If the directory or video cannot be read.
+     * @throws InterruptedException If interrupted while decoding.
+     */
+    public Report decode(File file) throws IOException, InterruptedException {
+        if(file.isDirectory()) {
+            return decodeImages(file);
+        } else if(file.isFile()) {
+            return decodeVideo(file);
+        } else {
+            throw new IOException("No such file or directory: " + file);
+        }
+    }
+
+    /**
+     * Decodes the codes in every image in a directory. Sub-directories are
+     * not searched.
+     *
+     * @param directory The directory.
+     *
+     * @return What was found.
+     *
+     * @throws IOException If the directory cannot be read.
+     * @throws InterruptedException If interrupted while decoding.
+     */
+    public Report decodeImages(File directory) throws IOException, InterruptedException {
+        File[] files = directory.listFiles((f) -> f.isFile() && isImage(f));
+        if(null == files) {
+            throw new IOException("Cannot read directory " + directory);
+        }
+        Arrays.sort(files);
+
+        long elapsed = System.currentTimeMillis();
+
+        Report report = new Report();
+        AtomicInteger done = new AtomicInteger();
+
+        try(Workers workers = new Workers()) {
+            String[] problems = new String[files.length];
+            List<ForkJoinTask<String>> tasks = new ArrayList<>(files.length);
+            AtomicBoolean stopping = new AtomicBoolean();
+            for(int i=0; i<files.length; ++i) {
+                File image = files[i];
+                int index = i;
+
+                tasks.add(workers.pool.submit(() -> {
+                    if(stopping.get()) {
+                        // We were interrupted; don't bother
+                        return null;
+                    }
+
+                    try {
+                        return workers.decodeImage(image);
+                    } catch (IOException ioe) {
+                        problems[index] = image.getName() + ": " + ioe.getMessage();
+
+                        return null;
+                    } finally {
+                        progress(done.incrementAndGet(), files.length);
+                    }
+                }));
+            }
+
+            try {
+                // Collect the results in file order
+                for(int i=0; i<files.length; ++i) {
+                    String code;
+                    try {
+                        code = tasks.get(i).get();
+                    } catch (ExecutionException ee) {
+                        problems[i] = files[i].getName() + ": " + ee.getCause();
+                        code = null;
+                    }
+
+                    if(null != problems[i]) {
+                        report.unreadable.add(problems[i]);
+                    } else {
+                        report.add(code);
+                    }
+                }
+            } finally {
+                // Don't leave workers using decoders after we close them
+                stopping.set(true);
+
+                for(ForkJoinTask<String> task : tasks) {
+                    task.quietlyJoin();
+                }
+            }
+        }
+
+        report.elapsedMillis = System.currentTimeMillis() - elapsed;
+
+        return report;
+    }
+
+    /**
+     * Decodes the codes in every frame of a video.
+     *
+     * @param video The video file, in any format FFmpeg can read.
+     *
+     * @return What was found.
+     *
+     * @throws IOException If the video cannot be read.
+     * @throws InterruptedException If interrupted while decoding.
+     */
+    public Report decodeVideo(File video) throws IOException, InterruptedException {
+        long elapsed = System.currentTimeMillis();
+
+        Report report = new Report();
+        AtomicInteger done = new AtomicInteger();
+
+        try(Workers workers = new Workers();
+            FFmpegFrameGrabber grabber = new FFmpegFrameGrabber(video)) {
+
+            // The same layout as frames from the camera
+            grabber.setPixelFormat(avutil.AV_PIX_FMT_BGR24);
+            grabber.start();
+
+            int total = grabber.getLengthInVideoFrames();
+            int expected = total > 0 ? total : -1;
+
+            // Don't read the whole video into memory
+            Semaphore ahead = new Semaphore(parallelism * FRAMES_AHEAD_PER_WORKER);
+            List<ForkJoinTask<String>> tasks = new ArrayList<>();
+
+            try {
+                Frame frame;
+                while(null != (frame = grabber.grabImage())) {
+                    ahead.acquire();
+
+                    // The grabber re-uses its frame
+                    Frame copy = frame.clone();
+
+                    tasks.add(workers.pool.submit(() -> {
+                        try {
+                            return workers.decodeFrame(copy);
+                        } finally {
+                            copy.close();
+                            ahead.release();
+                            progress(done.incrementAndGet(), expected);
+                        }
+                    }));
+                }
+            } finally {
+                // Don't leave workers using frames after we're gone
+                for(ForkJoinTask<String> task : tasks) {
+                    task.quietlyJoin();
+                }
+            }
+
+            // Collect the results in frame order
+            for(int i=0; i<tasks.size(); ++i) {
+                ForkJoinTask<String> task = tasks.get(i);
+                if(task.isCompletedAbnormally()) {
+                    report.unreadable.add("Frame " + (i + 1) + ": " + task.getException());
+                } else {
+                    report.add(task.getRawResult());
+                }
+            }
+        } catch (FrameGrabber.Exception fge) {
+            throw new IOException("Cannot read video " + video, fge);
+        }
+
+        report.elapsedMillis = System.currentTimeMillis() - elapsed;
+
+        return report;
+    }
+
+    private void progress(int done, int total) {
+        ProgressListener listener = progressListener;
+        if(null != listener) {
+            listener.progress(done, total);
+        }
+    }
+
+    /**
+     * The pool, and the decoders and converters its threads use. Decoders
+     * are not thread-safe, so each task borrows one and gives it back.
+     */
+    private final class Workers
+        implements AutoCloseable
+    {
+        final ForkJoinPool pool = new ForkJoinPool(parallelism);
+
+        private final ConcurrentLinkedQueue<Worker> idle = new ConcurrentLinkedQueue<>();
+        private final List<Worker> all = Collections.synchronizedList(new ArrayList<>());
+
+        private Worker borrow() {
+            Worker worker = idle.poll();
+            if(null == worker) {
+                worker = new Worker(decodeEngine.createDecoder());
+
+                all.add(worker);
+            }
+
+            return worker;
+        }
+
+        String decodeImage(File file) throws IOException {
+            BufferedImage image = ImageIO.read(file);
+            if(null == image) {
+                throw new IOException("Not a readable image");
+            }
+
+            if(BufferedImage.TYPE_3BYTE_BGR != image.getType()) {
+                // The same layout as frames from the camera
+                BufferedImage bgr = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_3BYTE_BGR);
+                Graphics2D g = bgr.createGraphics();
+                try {
+                    g.drawImage(image, 0, 0, null);
+                } finally {
+                    g.dispose();
+                }
+                image = bgr;
+            }
+
+            Worker worker = borrow();
+            try {
+                return worker.decode(worker.converter.convert(image));
+            } finally {
+                idle.add(worker);
+            }
+        }
+
+        String decodeFrame(Frame frame) {
+            Worker worker = borrow();
+            try {
+                return worker.decode(frame);
+            } finally {
+                idle.add(worker);
+            }
+        }
+
+        /**
+         * Stops the pool and closes the decoders. Every task must have
+         * finished, since the decoders can't be closed while in use.
+         */
+        @Override
+        public void close() {
+            pool.shutdownNow();
+
+            synchronized(all) {
+                for(Worker worker : all) {
+                    worker.close();
+                }
+            }
+        }
+    }
+
+    /**
+     * One worker's decoder, and its converter for images.
+     */
+    private static final class Worker {
+        final FrameDecoder decoder;
+        final Java2DFrameConverter converter = new Java2DFrameConverter();
+
+        Worker(FrameDecoder decoder) {
+            this.decoder = decoder;
+        }
+
+        String decode(Frame frame) {
+            Result result = decoder.decode(frame);
+
+            return null == result ? null : result.getText();
+        }
+
+        void close() {
+            decoder.close();
+            converter.close();
+        }
+    }
+
+    /**
+     * What a BulkDecoder found.
+     */
+    public static final class Report {
+        private final LinkedHashSet<String> codes = new LinkedHashSet<>();
+        private final List<String> unreadable = new ArrayList<>();
+        private int sources;
+        private int decoded;
+        private long elapsedMillis;
+
+        private void add(String code) {
+            ++sources;
+
+            if(null != code) {
+                ++decoded;
+
+                codes.add(code);
+            }
+        }
+
+        /**
+         * Gets the different codes found, in the order they were first
+         * seen.
+         *
+         * @return The codes found.
+         */
+        public List<String> getCodes() {
+            return new ArrayList<>(codes);
+        }
+
+        /**
+         * Gets the number of images or frames decoded.
+         *
+         * @return The number of images or frames decoded.
+         */
+        public int getSources() {
+            return sources;
+        }
+
+        /**
+         * Gets the number of images or frames with a code in them.
+         *
+         * @return The number of images or frames with a code.
+         */
+        public int getDecoded() {
+            return decoded;
+        }
+
+        /**
+         * Gets the number of times a code was found again after the first.
+         *
+         * @return The number of duplicates skipped.
+         */
+        public int getDuplicates() {
+            return decoded - codes.size();
+        }
+
+        /**
+         * Gets the images or frames which could not be read, and why.
+         *
+         * @return A description of each problem.
+         */
+        public List<String> getUnreadable() {
+            return Collections.unmodifiableList(unreadable);
+        }
+
+        public long getElapsedMillis() {
+            return elapsedMillis;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "%d code(s) in %d of %d image(s)/frame(s), %d duplicate(s), %d unreadable, in %dms",
+                    codes.size(), decoded, sources + unreadable.size(), getDuplicates(), unreadable.size(), elapsedMillis);
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package com.koibots.scout.hub.scan;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.bytedeco.javacv.FrameGrabber;
+import org.bytedeco.javacv.OpenCVFrameGrabber;
+
+/**
+ * Finds the cameras attached to this machine, by trying to open each one.
+ *
+ * Opening a camera can take a second or more, and a few drivers hang
+ * instead of failing, so every device is tried at once and none of them
+ * is waited for longer than the timeout.
+ */
+public final class CameraProbe
+{
+    public static final int DEFAULT_MAX_DEVICES = 10;
+    public static final long DEFAULT_TIMEOUT_MILLIS = 5000;
+
+    private CameraProbe() {
+    }
+
+    /**
+     * Loads JavaCV's native libraries for the camera, so that the first
+     * scan doesn't have to wait for them.
+     */
+    public static void loadNatives() {
+        try {
+            OpenCVFrameGrabber.tryLoad();
+        } catch (FrameGrabber.Exception fge) {
+            fge.printStackTrace();
+        }
+    }
+
+    /**
+     * Finds the cameras.
+     *
+     * Camera device ids are positions in the returned list, so the list
+     * stops at the first device which cannot be opened, as it would if
+     * they were tried one after another.
+     *
+     * @param maxDevices The most devices to try.
+     * @param timeoutMillis How long to wait for each device to open.
+     *
+     * @return A description of each camera, e.g. "Camera 0 (1280x720)",
+     *         in device id order. Empty if there are none.
+     */
+    public static String[] probe(int maxDevices, long timeoutMillis) {
+        return probe(maxDevices, timeoutMillis, new CompletableFuture<>());
+    }
+
+    /**
+     * Finds the cameras, and reports when they have all been closed again.
+     *
+     * A camera which is slow to open is still open, or opening, when this
+     * returns, and can't be used by anyone else until its probe closes it.
+     *
+     * @param maxDevices The most devices to try.
+     * @param timeoutMillis How long to wait for each device to open.
+     * @param released Completed once every camera opened by the probe has
+     *        been closed again, which may be some time after this returns.
+     *
+     * @return A description of each camera, e.g. "Camera 0 (1280x720)",
+     *         in device id order. Empty if there are none.
+     *
+     * @see #probe(int, long)
+     */
+    public static String[] probe(int maxDevices, long timeoutMillis, CompletableFuture<Void> released) {
+        ExecutorService executor = Executors.newFixedThreadPool(maxDevices, r -> {
+            Thread thread = new Thread(r, "camera-probe");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        List<String> devices = new ArrayList<>();
+
+        try {
+            List<CompletableFuture<String>> probes = new ArrayList<>();
+            for(int i=0; i<maxDevices; ++i) {
+                int deviceID = i;
+                probes.add(CompletableFuture.supplyAsync(() -> describe(deviceID), executor));
+            }
+
+            CompletableFuture.allOf(probes.toArray(new CompletableFuture<?>[0]))
+                .whenComplete((v, t) -> released.complete(null));
+
+            // The devices were all started together, so each gets the
+            // same deadline
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+
+            for(int i=0; i<maxDevices; ++i) {
+                String device;
+                try {
+                    device = probes.get(i).get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+                } catch (TimeoutException te) {
+                    System.out.println("Camera " + i + " did not open within " + timeoutMillis + "ms");
+
+                    device = null;
+                } catch (ExecutionException ee) {
+                    ee.printStackTrace();
+
+                    device = null;
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+
+                    break;
+                }
+
+                if(null == device) {
+                    break;
+                }
+
+                devices.add(device);
+            }
+        } finally {
+            // Let any slow probes finish, and close their cameras
+            executor.shutdown();
+        }
+
+        return devices.toArray(new String[0]);
+    }
+
+    /**
+     * Opens a camera to find out what it is.
+     *
+     * @return A description of the camera, or <code>null</code> if there
+     *         isn't one.
+     */
+    private static String describe(int deviceID) {
+        try (OpenCVFrameGrabber grabber = new OpenCVFrameGrabber(deviceID)) {
+            grabber.start();
+
+            String device = "Camera " + deviceID + " (" + grabber.getImageWidth() + "x" + grabber.getImageHeight() + ")";
+
+            grabber.stop();
+
+            return device;
+        } catch (FrameGrabber.Exception fge) {
+            // No such device
+            return null;
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package com.koibots.scout.hub.scan;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import org.bytedeco.javacv.Frame;
+
+/**
+ * A copy of one camera frame, passed from the capture thread of a
+ * {@link ScanPipeline} to its display and decode stages.
+ *
+ * A grabber re-uses its own {@link Frame} for every grab, so the capture
+ * thread copies each frame into one of these. They are pooled and
+ * reference-counted: each stage which takes a frame must release it when
+ * it's done, and the frame goes back to the pool when nobody is using it
+ * any more.
+ */
+public final class CapturedFrame
+{
+    private final Frame frame;
+    private final Consumer<CapturedFrame> recycler;
+    private final AtomicInteger references = new AtomicInteger();
+
+    private long sequence;
+    private long captureNanos;
+
+    /**
+     * Creates a new CapturedFrame with the same geometry as another frame.
+     *
+     * @param template The frame whose size and format to copy.
+     * @param recycler Takes this frame back when it's no longer in use.
+     */
+    CapturedFrame(Frame template, Consumer<CapturedFrame> recycler) {
+        this.frame = new Frame(template.imageWidth, template.imageHeight,
+                template.imageDepth, template.imageChannels, template.imageStride);
+        this.recycler = recycler;
+    }
+
+    /**
+     * Checks whether a grabbed frame can be copied into this one.
+     *
+     * @param source The grabbed frame.
+     *
+     * @return <code>true</code> if the frame has the same geometry as this
+     *         one, <code>false</code> otherwise.
+     */
+    boolean fits(Frame source) {
+        return source.imageWidth == frame.imageWidth
+            && source.imageHeight == frame.imageHeight
+            && source.imageDepth == frame.imageDepth
+            && source.imageChannels == frame.imageChannels
+            && source.imageStride == frame.imageStride;
+    }
+
+    /**
+     * Checks whether a grabbed frame is one we know how to copy.
+     *
+     * @param source The grabbed frame.
+     *
+     * @return <code>true</code> if the frame has an image in a single
+     *         plane of bytes.
+     */
+    static boolean isCopyable(Frame source) {
+        return null != source.image
+            && 1 == source.image.length
+            && source.image[0] instanceof ByteBuffer;
+    }
+
+    /**
+     * Copies a grabbed frame's pixels into this frame, and takes the first
+     * reference to it.
+     *
+     * @param source The grabbed frame. Must {@link #fits fit}.
+     * @param sequence The number of this frame since capture started.
+     * @param captureNanos When the frame was grabbed, according to
+     *        {@link System#nanoTime()}.
+     */
+    void copyFrom(Frame source, long sequence, long captureNanos) {
+        ByteBuffer from = ((ByteBuffer)source.image[0]).duplicate();
+        ByteBuffer to = ((ByteBuffer)frame.image[0]).duplicate();
+
+        from.clear();
+        to.clear();
+        // Some grabbers hand out buffers with padding after the last row
+        from.limit(Math.min(from.capacity(), to.capacity()));
+        to.put(from);
+
+        frame.timestamp = source.timestamp;
+
+        this.sequence = sequence;
+        this.captureNanos = captureNanos;
+
+        references.set(1);
+    }
+
+    /**
+     * Takes another reference to this frame.
+     */
+    void retain() {
+        references.incrementAndGet();
+    }
+
+    /**
+     * Gives up a reference to this frame. The last one returns the frame
+     * to its pool.
+     */
+    void release() {
+        int remaining = references.decrementAndGet();
+
+        if(0 == remaining) {
+            recycler.accept(this);
+        } else if(remaining < 0) {
+            throw new IllegalStateException("Frame " + sequence + " released too many times");
+        }
+    }
+
+    /**
+     * Frees the native memory behind this frame. Only call this once
+     * nobody can be using it.
+     */
+    void dispose() {
+        frame.close();
+    }
+
+    /**
+     * Gets the frame's pixels.
+     *
+     * The frame must not be modified, since other stages may be reading
+     * it at the same time.
+     *
+     * @return The frame.
+     */
+    public Frame getFrame() {
+        return frame;
+    }
+
+    public int getWidth() {
+        return frame.imageWidth;
+    }
+
+    public int getHeight() {
+        return frame.imageHeight;
+    }
+
+    /**
+     * Gets the number of this frame since capture started. Later frames
+     * have larger numbers.
+     *
+     * @return The frame's sequence number.
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * Gets the time this frame was grabbed.
+     *
+     * @return The time this frame was grabbed, according to
+     *         {@link System#nanoTime()}.
+     */
+    public long getCaptureNanos() {
+        return captureNanos;
+    }
+}
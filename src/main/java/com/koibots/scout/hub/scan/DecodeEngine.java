@@ -0,0 +1,34 @@
+package com.koibots.scout.hub.scan;
+
+/**
+ * The libraries which can decode QR codes for a {@link ScanPipeline}.
+ */
+public enum DecodeEngine {
+    /**
+     * ZXing, in Java. See {@link ZXingDecoder}.
+     */
+    ZXING {
+        @Override
+        public FrameDecoder createDecoder() {
+            return new ZXingDecoder();
+        }
+    },
+
+    /**
+     * OpenCV's <code>QRCodeDetector</code>, in native code. See
+     * {@link OpenCVDecoder}.
+     */
+    OPENCV {
+        @Override
+        public FrameDecoder createDecoder() {
+            return new OpenCVDecoder();
+        }
+    };
+
+    /**
+     * Creates a decoder for one decode thread.
+     *
+     * @return A new decoder, which the caller must close.
+     */
+    public abstract FrameDecoder createDecoder();
+}
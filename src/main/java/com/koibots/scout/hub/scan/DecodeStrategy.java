@@ -0,0 +1,361 @@
+package com.koibots.scout.hub.scan;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.bytedeco.javacv.Frame;
+
+import com.google.zxing.Result;
+import com.google.zxing.ResultPoint;
+
+/**
+ * Decides which parts of a frame to decode, and at what resolution.
+ *
+ * Decoding a whole 720p frame is slow, and most of it is background: the
+ * scout holds their phone up in the middle of the view. In
+ * {@link Mode#ADAPTIVE ADAPTIVE} mode, each frame gets these attempts, in
+ * order, until one finds a code:
+ *
+ * <ol>
+ * <li>{@link Attempt#TRACKED TRACKED}: the area around where the last code
+ *     was found, if that was recently.</li>
+ * <li>{@link Attempt#DOWNSCALED DOWNSCALED}: the whole frame, scaled down.
+ *     Finds codes held close to the camera, wherever they are.</li>
+ * <li>{@link Attempt#CENTER CENTER}: the middle of the frame at full
+ *     resolution. Finds smaller codes held in the usual place.</li>
+ * </ol>
+ *
+ * Every few frames, the center attempt is replaced by a
+ * {@link Attempt#FULL FULL} one over the whole frame at full resolution,
+ * so that a small code off to one side is found eventually.
+ *
+ * In {@link Mode#FULL FULL} mode, every frame is decoded whole.
+ *
+ * One strategy is shared by all of a pipeline's decode threads, which
+ * share the tracked location and the hit counts.
+ */
+public final class DecodeStrategy
+{
+    public static final int DEFAULT_SCALE = 2;
+    public static final double DEFAULT_CENTER_FRACTION = 0.5;
+    public static final int DEFAULT_FULL_FRAME_INTERVAL = 6;
+
+    /**
+     * How long to keep trying where the last code was.
+     */
+    private static final long TRACK_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    /**
+     * Regions are rounded to multiples of this, so that the decoders can
+     * re-use their buffers for regions of about the same size.
+     */
+    private static final int REGION_ALIGNMENT = 16;
+
+    /**
+     * Regions smaller than this aren't worth decoding.
+     */
+    private static final int MIN_REGION_SIZE = 64;
+
+    public enum Mode {
+        /**
+         * Decode the whole frame, every frame.
+         */
+        FULL,
+
+        /**
+         * Decode the likeliest parts of the frame first.
+         */
+        ADAPTIVE;
+    }
+
+    /**
+     * The kinds of region tried.
+     */
+    public enum Attempt {
+        TRACKED,
+        DOWNSCALED,
+        CENTER,
+        FULL;
+    }
+
+    private volatile Mode mode = Mode.ADAPTIVE;
+    private volatile int scale = DEFAULT_SCALE;
+    private volatile double centerFraction = DEFAULT_CENTER_FRACTION;
+    private volatile int fullFrameInterval = DEFAULT_FULL_FRAME_INTERVAL;
+
+    private final AtomicLong frames = new AtomicLong();
+    private volatile Location tracked;
+
+    private final LongAdder[] attempts = newCounters();
+    private final LongAdder[] hits = newCounters();
+    private final LongAdder[] nanos = newCounters();
+
+    private static LongAdder[] newCounters() {
+        LongAdder[] counters = new LongAdder[Attempt.values().length];
+        for(int i=0; i<counters.length; ++i) {
+            counters[i] = new LongAdder();
+        }
+
+        return counters;
+    }
+
+    public void setMode(Mode mode) {
+        this.mode = mode;
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    /**
+     * Sets how much to scale frames down for the downscaled attempt.
+     *
+     * @param scale The number of frame pixels, in each direction, for each
+     *        decoded pixel. 1 skips the downscaled attempt.
+     */
+    public void setScale(int scale) {
+        if(scale < 1) {
+            throw new IllegalArgumentException("Scale must be at least 1: " + scale);
+        }
+
+        this.scale = scale;
+    }
+
+    public int getScale() {
+        return scale;
+    }
+
+    /**
+     * Sets the size of the center attempt's region.
+     *
+     * @param fraction The fraction of the frame's width and height in the
+     *        region, e.g. 0.5 for the middle quarter of the frame.
+     */
+    public void setCenterFraction(double fraction) {
+        if(!(fraction > 0 && fraction <= 1)) {
+            throw new IllegalArgumentException("Center fraction must be more than 0 and at most 1: " + fraction);
+        }
+
+        this.centerFraction = fraction;
+    }
+
+    public double getCenterFraction() {
+        return centerFraction;
+    }
+
+    /**
+     * Sets how often to decode the whole frame at full resolution.
+     *
+     * @param interval Decode the whole frame every <code>interval</code>
+     *        frames; 1 for every frame.
+     */
+    public void setFullFrameInterval(int interval) {
+        if(interval < 1) {
+            throw new IllegalArgumentException("Full-frame interval must be at least 1: " + interval);
+        }
+
+        this.fullFrameInterval = interval;
+    }
+
+    public int getFullFrameInterval() {
+        return fullFrameInterval;
+    }
+
+    /**
+     * Decodes a frame according to this strategy.
+     *
+     * @param decoder The decoder to use, which belongs to the calling
+     *        thread.
+     * @param frame The frame.
+     *
+     * @return The decoded code, or <code>null</code> if none was found.
+     */
+    public Result decode(FrameDecoder decoder, Frame frame) {
+        int width = frame.imageWidth;
+        int height = frame.imageHeight;
+
+        if(Mode.FULL == mode) {
+            return attempt(Attempt.FULL, decoder, frame, 0, 0, width, height, 1);
+        }
+
+        long count = frames.getAndIncrement();
+        Result result;
+
+        Location location = tracked;
+        if(null != location && System.nanoTime() - location.foundNanos < TRACK_NANOS
+           && location.fits(width, height)) {
+            result = attempt(Attempt.TRACKED, decoder, frame, location.left, location.top, location.width, location.height, 1);
+            if(null != result) {
+                return result;
+            }
+        }
+
+        int scale = this.scale;
+        if(scale > 1 && width / scale >= MIN_REGION_SIZE && height / scale >= MIN_REGION_SIZE) {
+            result = attempt(Attempt.DOWNSCALED, decoder, frame, 0, 0, width - width % scale, height - height % scale, scale);
+            if(null != result) {
+                return result;
+            }
+        }
+
+        if(0 == count % fullFrameInterval) {
+            return attempt(Attempt.FULL, decoder, frame, 0, 0, width, height, 1);
+        }
+
+        int regionWidth = Math.max(MIN_REGION_SIZE, align((int)(width * centerFraction)));
+        int regionHeight = Math.max(MIN_REGION_SIZE, align((int)(height * centerFraction)));
+        if(regionWidth >= width || regionHeight >= height) {
+            return attempt(Attempt.FULL, decoder, frame, 0, 0, width, height, 1);
+        }
+
+        return attempt(Attempt.CENTER, decoder, frame, (width - regionWidth) / 2, (height - regionHeight) / 2, regionWidth, regionHeight, 1);
+    }
+
+    private Result attempt(Attempt attempt, FrameDecoder decoder, Frame frame,
+            int left, int top, int width, int height, int scale)
+    {
+        long start = System.nanoTime();
+
+        Result result = decoder.decode(frame, left, top, width, height, scale);
+
+        long end = System.nanoTime();
+
+        attempts[attempt.ordinal()].increment();
+        nanos[attempt.ordinal()].add(end - start);
+
+        if(null != result) {
+            hits[attempt.ordinal()].increment();
+
+            track(result, frame.imageWidth, frame.imageHeight, end);
+        }
+
+        return result;
+    }
+
+    /**
+     * Remembers the area around a code, to try there first next time.
+     */
+    private void track(Result result, int frameWidth, int frameHeight, long foundNanos) {
+        ResultPoint[] points = result.getResultPoints();
+        if(null == points || points.length < 2) {
+            return;
+        }
+
+        float minX = Float.MAX_VALUE;
+        float minY = Float.MAX_VALUE;
+        float maxX = -Float.MAX_VALUE;
+        float maxY = -Float.MAX_VALUE;
+        for(ResultPoint point : points) {
+            if(null != point) {
+                minX = Math.min(minX, point.getX());
+                minY = Math.min(minY, point.getY());
+                maxX = Math.max(maxX, point.getX());
+                maxY = Math.max(maxY, point.getY());
+            }
+        }
+
+        // The points are the middles of the finder patterns, inside the
+        // code. Leave plenty of room for the code, and for it to move.
+        float size = Math.max(maxX - minX, maxY - minY);
+        int width = Math.min(frameWidth, Math.max(MIN_REGION_SIZE, align((int)(size * 2))));
+        int height = Math.min(frameHeight, Math.max(MIN_REGION_SIZE, align((int)(size * 2))));
+
+        int left = clamp((int)((minX + maxX) / 2) - width / 2, 0, frameWidth - width);
+        int top = clamp((int)((minY + maxY) / 2) - height / 2, 0, frameHeight - height);
+
+        tracked = new Location(left, top, width, height, foundNanos);
+    }
+
+    private static int align(int size) {
+        return (size + REGION_ALIGNMENT - 1) / REGION_ALIGNMENT * REGION_ALIGNMENT;
+    }
+
+    private static int clamp(int value, int min, int max) {
+        return Math.max(min, Math.min(max, value));
+    }
+
+    public long getAttempts(Attempt attempt) {
+        return attempts[attempt.ordinal()].sum();
+    }
+
+    public long getHits(Attempt attempt) {
+        return hits[attempt.ordinal()].sum();
+    }
+
+    /**
+     * Gets the fraction of attempts of one kind which found a code.
+     *
+     * @param attempt The kind of attempt.
+     *
+     * @return The hit rate, from 0 to 1, or 0 if there have been no such
+     *         attempts.
+     */
+    public double getHitRate(Attempt attempt) {
+        long tries = getAttempts(attempt);
+
+        return 0 == tries ? 0 : (double)getHits(attempt) / tries;
+    }
+
+    /**
+     * Gets the average time taken by attempts of one kind.
+     *
+     * @param attempt The kind of attempt.
+     *
+     * @return The average time, in milliseconds.
+     */
+    public double getMeanMillis(Attempt attempt) {
+        long tries = getAttempts(attempt);
+
+        return 0 == tries ? 0 : nanos[attempt.ordinal()].sum() / 1e6 / tries;
+    }
+
+    /**
+     * Describes the hit rates of each kind of attempt.
+     */
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder(mode.name().toLowerCase(Locale.ROOT));
+
+        for(Attempt attempt : Attempt.values()) {
+            if(0 < getAttempts(attempt)) {
+                sb.append(String.format(Locale.ROOT, "; %s %d/%d (%.0f%%, %.1f ms)",
+                        attempt.name().toLowerCase(Locale.ROOT),
+                        getHits(attempt),
+                        getAttempts(attempt),
+                        getHitRate(attempt) * 100,
+                        getMeanMillis(attempt)));
+            }
+        }
+
+        return sb.toString();
+    }
+
+    /**
+     * Where a code was last found.
+     */
+    private static final class Location {
+        final int left;
+        final int top;
+        final int width;
+        final int height;
+        final long foundNanos;
+
+        Location(int left, int top, int width, int height, long foundNanos) {
+            this.left = left;
+            this.top = top;
+            this.width = width;
+            this.height = height;
+            this.foundNanos = foundNanos;
+        }
+
+        /**
+         * Checks that this location is inside a frame, in case the camera
+         * has changed resolution.
+         */
+        boolean fits(int frameWidth, int frameHeight) {
+            return left + width <= frameWidth && top + height <= frameHeight;
+        }
+    }
+}
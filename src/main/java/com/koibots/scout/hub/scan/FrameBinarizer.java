@@ -0,0 +1,217 @@
+package com.koibots.scout.hub.scan;
+
+import com.google.zxing.Binarizer;
+import com.google.zxing.LuminanceSource;
+import com.google.zxing.NotFoundException;
+import com.google.zxing.common.BitArray;
+import com.google.zxing.common.BitMatrix;
+import com.google.zxing.common.GlobalHistogramBinarizer;
+import com.google.zxing.common.HybridBinarizer;
+
+/**
+ * A binarizer which gives the same results as ZXing's
+ * {@link HybridBinarizer}, but which can be re-used for frame after frame
+ * from the same re-filled {@link LuminanceSource}.
+ *
+ * A HybridBinarizer computes its black matrix once and keeps it forever,
+ * so it has to be thrown away (along with its full-frame bit matrix and
+ * block threshold table) for every new frame. This one keeps its arrays and
+ * re-computes them after each {@link #reset}.
+ *
+ * The algorithm is HybridBinarizer's: the image is divided into 8x8
+ * blocks, each block gets a black point from its own pixels (or from its
+ * neighbours, if it's all one shade), and each pixel is thresholded
+ * against the average black point of the 5x5 blocks around its own.
+ *
+ * Not thread-safe: each decoder should have its own.
+ */
+final class FrameBinarizer
+    extends Binarizer
+{
+    private static final int BLOCK_SIZE_POWER = 3;
+    private static final int BLOCK_SIZE = 1 << BLOCK_SIZE_POWER;
+    private static final int BLOCK_SIZE_MASK = BLOCK_SIZE - 1;
+    private static final int MINIMUM_DIMENSION = BLOCK_SIZE * 5;
+    private static final int MIN_DYNAMIC_RANGE = 24;
+
+    /**
+     * Used for single rows (1D barcodes) and images too small for blocks.
+     * It already re-uses its own buffers.
+     */
+    private final GlobalHistogramBinarizer fallback;
+
+    private BitMatrix matrix;
+    private int[][] blackPoints;
+    private boolean valid;
+
+    FrameBinarizer(LuminanceSource source) {
+        super(source);
+
+        fallback = new GlobalHistogramBinarizer(source);
+    }
+
+    /**
+     * Forgets the black matrix, because the source has been re-filled.
+     */
+    void reset() {
+        valid = false;
+    }
+
+    @Override
+    public BitArray getBlackRow(int y, BitArray row) throws NotFoundException {
+        return fallback.getBlackRow(y, row);
+    }
+
+    @Override
+    public BitMatrix getBlackMatrix() throws NotFoundException {
+        if(valid) {
+            return matrix;
+        }
+
+        LuminanceSource source = getLuminanceSource();
+        int width = source.getWidth();
+        int height = source.getHeight();
+
+        if(width < MINIMUM_DIMENSION || height < MINIMUM_DIMENSION) {
+            return fallback.getBlackMatrix();
+        }
+
+        byte[] luminances = source.getMatrix();
+
+        int subWidth = width >> BLOCK_SIZE_POWER;
+        if((width & BLOCK_SIZE_MASK) != 0) {
+            subWidth++;
+        }
+        int subHeight = height >> BLOCK_SIZE_POWER;
+        if((height & BLOCK_SIZE_MASK) != 0) {
+            subHeight++;
+        }
+
+        if(null == blackPoints || blackPoints.length != subHeight || blackPoints[0].length != subWidth) {
+            blackPoints = new int[subHeight][subWidth];
+        }
+        if(null == matrix || matrix.getWidth() != width || matrix.getHeight() != height) {
+            matrix = new BitMatrix(width, height);
+        } else {
+            matrix.clear();
+        }
+
+        calculateBlackPoints(luminances, subWidth, subHeight, width, height, blackPoints);
+        calculateThresholdForBlock(luminances, subWidth, subHeight, width, height, blackPoints, matrix);
+
+        valid = true;
+
+        return matrix;
+    }
+
+    /**
+     * Creates a new binarizer for a different source, e.g. a cropped or
+     * rotated one.
+     */
+    @Override
+    public Binarizer createBinarizer(LuminanceSource source) {
+        return new FrameBinarizer(source);
+    }
+
+    private static void calculateThresholdForBlock(byte[] luminances, int subWidth, int subHeight,
+            int width, int height, int[][] blackPoints, BitMatrix matrix)
+    {
+        int maxYOffset = height - BLOCK_SIZE;
+        int maxXOffset = width - BLOCK_SIZE;
+
+        for(int y=0; y<subHeight; ++y) {
+            int yoffset = Math.min(y << BLOCK_SIZE_POWER, maxYOffset);
+            int top = cap(y, subHeight - 3);
+
+            for(int x=0; x<subWidth; ++x) {
+                int xoffset = Math.min(x << BLOCK_SIZE_POWER, maxXOffset);
+                int left = cap(x, subWidth - 3);
+
+                int sum = 0;
+                for(int z=-2; z<=2; ++z) {
+                    int[] blackRow = blackPoints[top + z];
+                    sum += blackRow[left - 2] + blackRow[left - 1] + blackRow[left] + blackRow[left + 1] + blackRow[left + 2];
+                }
+
+                thresholdBlock(luminances, xoffset, yoffset, sum / 25, width, matrix);
+            }
+        }
+    }
+
+    private static int cap(int value, int max) {
+        return value < 2 ? 2 : Math.min(value, max);
+    }
+
+    private static void thresholdBlock(byte[] luminances, int xoffset, int yoffset, int threshold,
+            int stride, BitMatrix matrix)
+    {
+        for(int y=0, offset=yoffset * stride + xoffset; y<BLOCK_SIZE; ++y, offset+=stride) {
+            for(int x=0; x<BLOCK_SIZE; ++x) {
+                // <= so that black (0) is black even if the threshold is 0
+                if((luminances[offset + x] & 0xff) <= threshold) {
+                    matrix.set(xoffset + x, yoffset + y);
+                }
+            }
+        }
+    }
+
+    private static void calculateBlackPoints(byte[] luminances, int subWidth, int subHeight,
+            int width, int height, int[][] blackPoints)
+    {
+        int maxYOffset = height - BLOCK_SIZE;
+        int maxXOffset = width - BLOCK_SIZE;
+
+        for(int y=0; y<subHeight; ++y) {
+            int yoffset = Math.min(y << BLOCK_SIZE_POWER, maxYOffset);
+
+            for(int x=0; x<subWidth; ++x) {
+                int xoffset = Math.min(x << BLOCK_SIZE_POWER, maxXOffset);
+
+                int sum = 0;
+                int min = 0xff;
+                int max = 0;
+
+                for(int yy=0, offset=yoffset * width + xoffset; yy<BLOCK_SIZE; ++yy, offset+=width) {
+                    for(int xx=0; xx<BLOCK_SIZE; ++xx) {
+                        int pixel = luminances[offset + xx] & 0xff;
+                        sum += pixel;
+                        if(pixel < min) {
+                            min = pixel;
+                        }
+                        if(pixel > max) {
+                            max = pixel;
+                        }
+                    }
+
+                    if(max - min > MIN_DYNAMIC_RANGE) {
+                        // Enough contrast already; just sum the rest
+                        for(++yy, offset+=width; yy<BLOCK_SIZE; ++yy, offset+=width) {
+                            for(int xx=0; xx<BLOCK_SIZE; ++xx) {
+                                sum += luminances[offset + xx] & 0xff;
+                            }
+                        }
+                    }
+                }
+
+                int average = sum >> (BLOCK_SIZE_POWER * 2);
+
+                if(max - min <= MIN_DYNAMIC_RANGE) {
+                    // A flat block: assume it's background, unless its
+                    // neighbours say it's darker than that.
+                    average = min / 2;
+
+                    if(y > 0 && x > 0) {
+                        int averageNeighborBlackPoint =
+                            (blackPoints[y - 1][x] + (2 * blackPoints[y][x - 1]) + blackPoints[y - 1][x - 1]) / 4;
+
+                        if(min < averageNeighborBlackPoint) {
+                            average = averageNeighborBlackPoint;
+                        }
+                    }
+                }
+
+                blackPoints[y][x] = average;
+            }
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package com.koibots.scout.hub.scan;
+
+import org.bytedeco.javacv.Frame;
+
+import com.google.zxing.Result;
+
+/**
+ * Decodes QR codes in JavaCV frames.
+ *
+ * Implementations are not expected to be thread-safe: each decode thread
+ * should have its own, made by its {@link DecodeEngine}.
+ */
+public interface FrameDecoder
+    extends AutoCloseable
+{
+    /**
+     * Decodes a QR code in a frame.
+     *
+     * @param frame The frame, which must be
+     *        {@link FrameLuminanceSource#isSupported supported}.
+     *
+     * @return The decoded code, or <code>null</code> if there isn't one.
+     */
+    public default Result decode(Frame frame) {
+        return decode(frame, 0, 0, frame.imageWidth, frame.imageHeight, 1);
+    }
+
+    /**
+     * Decodes a QR code in part of a frame, optionally scaled down first.
+     *
+     * @param frame The frame, which must be
+     *        {@link FrameLuminanceSource#isSupported supported}.
+     * @param left The left edge of the region to decode.
+     * @param top The top edge of the region to decode.
+     * @param width The width of the region, in frame pixels.
+     * @param height The height of the region, in frame pixels.
+     * @param scale How much to scale the region down by, e.g. 2 for half
+     *        the width and height.
+     *
+     * @return The decoded code, with its points in frame co-ordinates, or
+     *         <code>null</code> if there isn't one.
+     */
+    public Result decode(Frame frame, int left, int top, int width, int height, int scale);
+
+    /**
+     * Gets the most possible finder patterns seen by any one
+     * {@link #decode} since the last {@link #clearCandidatePoints}, whether
+     * or not it found a code.
+     *
+     * @return The number of possible finder patterns.
+     */
+    public int getCandidatePoints();
+
+    public void clearCandidatePoints();
+
+    /**
+     * Frees any native resources held by this decoder.
+     */
+    @Override
+    public void close();
+}
@@ -0,0 +1,230 @@
+package com.koibots.scout.hub.scan;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import org.bytedeco.javacv.Frame;
+
+/**
+ * A recording of camera frames, read from a memory-mapped file.
+ *
+ * The file is a header followed by fixed-size records, one per frame, so
+ * any frame can be found without reading the ones before it:
+ *
+ * <pre>
+ * header:  "QRSFRAME", version, width, height, channels (ints), padding
+ * record:  timestamp (long, nanoseconds since the first frame),
+ *          pixels (height rows of width * channels bytes, BGR or grey)
+ * </pre>
+ *
+ * All numbers are big-endian. A log whose writer didn't finish has a
+ * partial last record, which is ignored.
+ *
+ * Frames returned by this class share the mapped file, rather than being
+ * copied.
+ *
+ * @see FrameLogWriter
+ * @see FrameLogGrabber
+ */
+public class FrameLog
+    implements AutoCloseable
+{
+    static final byte[] MAGIC = { 'Q', 'R', 'S', 'F', 'R', 'A', 'M', 'E' };
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 64;
+
+    /**
+     * The size of the timestamp at the start of each record.
+     */
+    private static final int TIMESTAMP_SIZE = Long.BYTES;
+
+    private final FileChannel channel;
+    private final int width;
+    private final int height;
+    private final int channels;
+    private final int recordSize;
+    private final int frameCount;
+
+    /**
+     * The file is mapped in segments of whole records, since one mapping
+     * can't be more than 2GB.
+     */
+    private final int framesPerSegment;
+    private final MappedByteBuffer[] segments;
+
+    private FrameLog(FileChannel channel, int width, int height, int channels, long fileSize) {
+        this.channel = channel;
+        this.width = width;
+        this.height = height;
+        this.channels = channels;
+        this.recordSize = getRecordSize(width, height, channels);
+        this.frameCount = (int)Math.min(Integer.MAX_VALUE, (fileSize - HEADER_SIZE) / recordSize);
+        this.framesPerSegment = Math.max(1, Integer.MAX_VALUE / recordSize);
+        this.segments = new MappedByteBuffer[(frameCount + framesPerSegment - 1) / framesPerSegment];
+    }
+
+    static int getRecordSize(int width, int height, int channels) {
+        long size = TIMESTAMP_SIZE + (long)width * height * channels;
+        if(size > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Frames are too big to log: " + width + "x" + height + "x" + channels);
+        }
+
+        return (int)size;
+    }
+
+    /**
+     * Opens a frame log.
+     *
+     * @param file The file to read.
+     *
+     * @return The log, which the caller must close.
+     *
+     * @throws IOException If the file cannot be read, or is not a frame
+     *         log.
+     */
+    public static FrameLog open(File file) throws IOException {
+        FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+
+        try {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            while(header.hasRemaining()) {
+                if(channel.read(header) < 0) {
+                    throw new IOException("Not a frame log (too short): " + file);
+                }
+            }
+            header.flip();
+
+            byte[] magic = new byte[MAGIC.length];
+            header.get(magic);
+            if(!Arrays.equals(MAGIC, magic)) {
+                throw new IOException("Not a frame log: " + file);
+            }
+
+            int version = header.getInt();
+            if(VERSION != version) {
+                throw new IOException("Unsupported frame log version " + version + ": " + file);
+            }
+
+            int width = header.getInt();
+            int height = header.getInt();
+            int channels = header.getInt();
+            if(width < 1 || height < 1 || !(1 == channels || 3 == channels || 4 == channels)) {
+                throw new IOException("Bad frame format " + width + "x" + height + "x" + channels + ": " + file);
+            }
+
+            return new FrameLog(channel, width, height, channels, channel.size());
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+
+            throw e;
+        }
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getChannels() {
+        return channels;
+    }
+
+    public int getFrameCount() {
+        return frameCount;
+    }
+
+    /**
+     * Gets when a frame was recorded.
+     *
+     * @param index The frame number, from 0.
+     *
+     * @return The time since the first frame, in nanoseconds.
+     *
+     * @throws IOException If the file cannot be mapped.
+     */
+    public long getTimestampNanos(int index) throws IOException {
+        return getSegment(index).getLong(getOffset(index));
+    }
+
+    /**
+     * Gets a frame.
+     *
+     * @param index The frame number, from 0.
+     *
+     * @return A new frame whose pixels are in the mapped file. Don't close
+     *         it, and don't use it after closing this log.
+     *
+     * @throws IOException If the file cannot be mapped.
+     */
+    public Frame getFrame(int index) throws IOException {
+        Frame frame = new Frame();
+        frame.imageWidth = width;
+        frame.imageHeight = height;
+        frame.imageDepth = Frame.DEPTH_UBYTE;
+        frame.imageChannels = channels;
+        frame.imageStride = width * channels;
+
+        return getFrame(index, frame);
+    }
+
+    /**
+     * Points an existing frame at another frame in the log.
+     *
+     * @param index The frame number, from 0.
+     * @param frame A frame from {@link #getFrame(int)}.
+     *
+     * @return The frame.
+     *
+     * @throws IOException If the file cannot be mapped.
+     */
+    public Frame getFrame(int index, Frame frame) throws IOException {
+        ByteBuffer pixels = getSegment(index).duplicate();
+        int offset = getOffset(index);
+        pixels.limit(offset + recordSize).position(offset + TIMESTAMP_SIZE);
+
+        long timestampNanos = pixels.getLong(offset);
+
+        frame.image = new Buffer[] { pixels.slice() };
+        frame.timestamp = timestampNanos / 1000;
+
+        return frame;
+    }
+
+    private MappedByteBuffer getSegment(int index) throws IOException {
+        if(index < 0 || index >= frameCount) {
+            throw new IndexOutOfBoundsException("Frame " + index + " of " + frameCount);
+        }
+
+        int segment = index / framesPerSegment;
+
+        synchronized(segments) {
+            if(null == segments[segment]) {
+                long first = (long)segment * framesPerSegment;
+                long count = Math.min(framesPerSegment, frameCount - first);
+
+                segments[segment] = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_SIZE + first * recordSize, count * recordSize);
+            }
+
+            return segments[segment];
+        }
+    }
+
+    private int getOffset(int index) {
+        return (index % framesPerSegment) * recordSize;
+    }
+
+    @Override
+    public void close() throws IOException {
+        // Mapped buffers are unmapped when they're garbage-collected
+        channel.close();
+    }
+}
@@ -0,0 +1,146 @@
+package com.koibots.scout.hub.scan;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.bytedeco.javacv.Frame;
+import org.bytedeco.javacv.FrameGrabber;
+
+/**
+ * Replays a {@link FrameLog} as if it were a camera, so the scanner can be
+ * tested and measured without one.
+ *
+ * <ul>
+ * <li>In real time (the default), frames come out when they were
+ *     recorded. Like a camera, if the caller grabs less often than the
+ *     recording's frame rate, it gets the newest frame and the ones in
+ *     between are skipped.</li>
+ * <li>Otherwise, every frame comes out, in order, as fast as the caller
+ *     grabs them.</li>
+ * </ul>
+ *
+ * {@link #grab} returns <code>null</code> at the end of the log.
+ */
+public class FrameLogGrabber
+    extends FrameGrabber
+{
+    private final File file;
+
+    private boolean realTime = true;
+
+    private FrameLog log;
+    private Frame frame;
+    private long startNanos;
+
+    public FrameLogGrabber(File file) {
+        this.file = file;
+    }
+
+    /**
+     * Sets whether to replay the frames at the speed they were recorded.
+     *
+     * @param realTime <code>true</code> to replay in real time,
+     *        <code>false</code> to replay every frame as fast as possible.
+     */
+    public void setRealTime(boolean realTime) {
+        this.realTime = realTime;
+    }
+
+    public boolean isRealTime() {
+        return realTime;
+    }
+
+    @Override
+    public void start() throws Exception {
+        try {
+            log = FrameLog.open(file);
+        } catch (IOException ioe) {
+            throw new Exception("Could not open frame log " + file, ioe);
+        }
+
+        imageWidth = log.getWidth();
+        imageHeight = log.getHeight();
+        frameNumber = 0;
+        frame = null;
+        startNanos = -1;
+    }
+
+    @Override
+    public void stop() throws Exception {
+        if(null != log) {
+            try {
+                log.close();
+            } catch (IOException ioe) {
+                throw new Exception("Could not close frame log " + file, ioe);
+            } finally {
+                log = null;
+                frame = null;
+            }
+        }
+    }
+
+    @Override
+    public void trigger() throws Exception {
+        // Nothing to trigger
+    }
+
+    @Override
+    public void release() throws Exception {
+        stop();
+    }
+
+    @Override
+    public int getLengthInFrames() {
+        return null == log ? 0 : log.getFrameCount();
+    }
+
+    @Override
+    public Frame grab() throws Exception {
+        if(null == log) {
+            throw new Exception("grab() Error: Frame log is not open. (Has start() been called?)");
+        }
+
+        int count = log.getFrameCount();
+        if(frameNumber >= count) {
+            return null;
+        }
+
+        try {
+            if(realTime) {
+                long now = System.nanoTime();
+                if(startNanos < 0) {
+                    startNanos = now - log.getTimestampNanos(frameNumber);
+                }
+                long elapsed = now - startNanos;
+
+                // Skip the frames the "camera" showed while nobody was looking
+                while(frameNumber + 1 < count && log.getTimestampNanos(frameNumber + 1) <= elapsed) {
+                    ++frameNumber;
+                }
+
+                long wait = log.getTimestampNanos(frameNumber) - elapsed;
+                if(wait > 0) {
+                    try {
+                        Thread.sleep(wait / 1_000_000, (int)(wait % 1_000_000));
+                    } catch (InterruptedException ie) {
+                        Thread.currentThread().interrupt();
+
+                        throw new Exception("Interrupted while waiting for frame " + frameNumber, ie);
+                    }
+                }
+            }
+
+            if(null == frame) {
+                frame = log.getFrame(frameNumber);
+            } else {
+                log.getFrame(frameNumber, frame);
+            }
+        } catch (IOException ioe) {
+            throw new Exception("Could not read frame " + frameNumber + " of " + file, ioe);
+        }
+
+        ++frameNumber;
+
+        return frame;
+    }
+}
@@ -0,0 +1,140 @@
+package com.koibots.scout.hub.scan;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+import org.bytedeco.javacv.Frame;
+
+/**
+ * Writes camera frames to a {@link FrameLog} file.
+ *
+ * The frame format is taken from the first frame written; every frame
+ * after that must be the same size and format.
+ *
+ * Not thread-safe.
+ */
+public class FrameLogWriter
+    implements AutoCloseable
+{
+    private final FileChannel channel;
+    private final boolean grey;
+
+    private ByteBuffer record;
+    private FrameLuminanceSource greySource;
+
+    private int width;
+    private int height;
+    private int channels;
+    private long firstNanos;
+    private int frameCount;
+
+    /**
+     * Creates a new FrameLogWriter, replacing any existing file.
+     *
+     * @param file The file to write.
+     * @param grey <code>true</code> to store only the grey levels of each
+     *        frame, which is all the decoders need, in a third of the
+     *        space.
+     *
+     * @throws IOException If the file cannot be created.
+     */
+    public FrameLogWriter(File file, boolean grey) throws IOException {
+        this.channel = FileChannel.open(file.toPath(),
+                StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.WRITE);
+        this.grey = grey;
+    }
+
+    /**
+     * Appends a frame to the log.
+     *
+     * @param frame The frame, which must be
+     *        {@link FrameLuminanceSource#isSupported supported}.
+     * @param timestampNanos When the frame was grabbed, from
+     *        {@link System#nanoTime}.
+     *
+     * @throws IOException If the frame cannot be written.
+     * @throws IllegalArgumentException If the frame is not the same size
+     *         and format as the first frame.
+     */
+    public void write(Frame frame, long timestampNanos) throws IOException {
+        if(!FrameLuminanceSource.isSupported(frame)) {
+            throw new IllegalArgumentException("Unsupported frame format: depth=" + frame.imageDepth + ", channels=" + frame.imageChannels);
+        }
+
+        if(null == record) {
+            writeHeader(frame, timestampNanos);
+        } else if(frame.imageWidth != width || frame.imageHeight != height
+                  || (!grey && frame.imageChannels != channels)) {
+            throw new IllegalArgumentException("Frame " + frame.imageWidth + "x" + frame.imageHeight + "x" + frame.imageChannels
+                    + " does not match the log's " + width + "x" + height + "x" + channels);
+        }
+
+        record.clear();
+        record.putLong(timestampNanos - firstNanos);
+
+        if(grey) {
+            greySource.load(frame);
+            record.put(greySource.getMatrix());
+        } else {
+            ByteBuffer pixels = ((ByteBuffer)frame.image[0]).duplicate();
+            int rowBytes = width * channels;
+
+            for(int y=0; y<height; ++y) {
+                int start = y * frame.imageStride;
+                pixels.limit(start + rowBytes).position(start);
+                record.put(pixels);
+            }
+        }
+
+        record.flip();
+        while(record.hasRemaining()) {
+            channel.write(record);
+        }
+
+        ++frameCount;
+    }
+
+    private void writeHeader(Frame frame, long timestampNanos) throws IOException {
+        width = frame.imageWidth;
+        height = frame.imageHeight;
+        channels = grey ? 1 : frame.imageChannels;
+        firstNanos = timestampNanos;
+
+        if(grey) {
+            greySource = new FrameLuminanceSource(width, height);
+        }
+
+        ByteBuffer header = ByteBuffer.allocate(FrameLog.HEADER_SIZE);
+        header.put(FrameLog.MAGIC);
+        header.putInt(FrameLog.VERSION);
+        header.putInt(width);
+        header.putInt(height);
+        header.putInt(channels);
+        header.position(FrameLog.HEADER_SIZE);
+        header.flip();
+        while(header.hasRemaining()) {
+            channel.write(header);
+        }
+
+        record = ByteBuffer.allocateDirect(FrameLog.getRecordSize(width, height, channels));
+    }
+
+    /**
+     * Gets the number of frames written so far.
+     *
+     * @return The number of frames written.
+     */
+    public int getFrameCount() {
+        return frameCount;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,235 @@
+package com.koibots.scout.hub.scan;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import org.bytedeco.javacv.Frame;
+
+import com.google.zxing.LuminanceSource;
+
+/**
+ * A ZXing {@link LuminanceSource} which reads the grey levels straight out
+ * of a JavaCV {@link Frame}'s native buffer.
+ *
+ * Going through a {@link java.awt.image.BufferedImage} and ZXing's
+ * <code>BufferedImageLuminanceSource</code> costs a full-frame colour
+ * conversion into a new image, and a new array, for every frame. This
+ * source instead keeps one array and {@link #load re-fills} it for each
+ * frame of the same size, so decoding a steady stream of frames allocates
+ * next to nothing. It can also load just part of a frame, or a scaled-down
+ * copy, for decoding less than the whole frame.
+ *
+ * Grey levels are computed with the same weights as
+ * <code>BufferedImageLuminanceSource</code>, so both give identical
+ * results.
+ *
+ * Not thread-safe: each decoder should have its own.
+ */
+public final class FrameLuminanceSource
+    extends LuminanceSource
+{
+    private final byte[] luminances;
+
+    /**
+     * A row of the frame as it is in the native buffer, e.g. BGR.
+     */
+    private byte[] rawRow;
+
+    /**
+     * Running totals for a row of scaled pixels.
+     */
+    private int[] sums;
+
+    /**
+     * Creates a new, black, FrameLuminanceSource.
+     *
+     * @param width The width of the frames to be loaded.
+     * @param height The height of the frames to be loaded.
+     */
+    public FrameLuminanceSource(int width, int height) {
+        super(width, height);
+
+        luminances = new byte[width * height];
+    }
+
+    /**
+     * Checks whether a frame is one we can read.
+     *
+     * @param frame The frame.
+     *
+     * @return <code>true</code> if the frame is 8 bits per channel, and
+     *         grey, BGR or BGRA.
+     */
+    public static boolean isSupported(Frame frame) {
+        return null != frame.image
+            && frame.image[0] instanceof ByteBuffer
+            && (Frame.DEPTH_UBYTE == frame.imageDepth || Frame.DEPTH_BYTE == frame.imageDepth)
+            && (1 == frame.imageChannels || 3 == frame.imageChannels || 4 == frame.imageChannels);
+    }
+
+    /**
+     * Checks whether this source is the right size for a frame.
+     *
+     * @param frame The frame.
+     *
+     * @return <code>true</code> if the frame can be {@link #load loaded}
+     *         into this source.
+     */
+    public boolean fits(Frame frame) {
+        return frame.imageWidth == getWidth() && frame.imageHeight == getHeight();
+    }
+
+    /**
+     * Replaces this source's grey levels with those of a frame.
+     *
+     * @param frame The frame, which must be {@link #isSupported supported}
+     *        and {@link #fits fit}.
+     *
+     * @throws IllegalArgumentException If the frame isn't the right size
+     *         or format.
+     */
+    public void load(Frame frame) {
+        if(!fits(frame)) {
+            throw new IllegalArgumentException("Can't load a " + frame.imageWidth + "x" + frame.imageHeight
+                    + " frame into a " + getWidth() + "x" + getHeight() + " source");
+        }
+
+        load(frame, 0, 0, 1);
+    }
+
+    /**
+     * Replaces this source's grey levels with those of part of a frame,
+     * optionally scaled down.
+     *
+     * The part of the frame loaded starts at (<code>left</code>,
+     * <code>top</code>) and is this source's width and height times
+     * <code>scale</code>. When scaling, each of this source's pixels is
+     * the average of a <code>scale</code> x <code>scale</code> block of the
+     * frame's.
+     *
+     * @param frame The frame, which must be {@link #isSupported supported}.
+     * @param left The left edge of the region to load.
+     * @param top The top edge of the region to load.
+     * @param scale The number of frame pixels, in each direction, for each
+     *        of this source's pixels.
+     *
+     * @throws IllegalArgumentException If the frame isn't a supported
+     *         format, or the region isn't inside it.
+     */
+    public void load(Frame frame, int left, int top, int scale) {
+        int width = getWidth();
+        int height = getHeight();
+
+        if(!isSupported(frame)) {
+            throw new IllegalArgumentException("Unsupported frame format: depth=" + frame.imageDepth + ", channels=" + frame.imageChannels);
+        }
+        if(scale < 1 || left < 0 || top < 0
+           || left + width * scale > frame.imageWidth
+           || top + height * scale > frame.imageHeight) {
+            throw new IllegalArgumentException("Region " + left + "," + top + " " + width + "x" + height + "/" + scale
+                    + " is not inside a " + frame.imageWidth + "x" + frame.imageHeight + " frame");
+        }
+
+        ByteBuffer buffer = (ByteBuffer)frame.image[0];
+        int channels = frame.imageChannels;
+        int stride = frame.imageStride;
+        int rowBytes = width * scale * channels;
+        int start = left * channels;
+
+        if(1 == scale && 1 == channels) {
+            if(stride == width && 0 == left) {
+                buffer.get(top * stride, luminances, 0, width * height);
+            } else {
+                for(int y=0; y<height; ++y) {
+                    buffer.get((top + y) * stride + start, luminances, y * width, width);
+                }
+            }
+
+            return;
+        }
+
+        if(null == rawRow || rawRow.length < rowBytes) {
+            rawRow = new byte[rowBytes];
+        }
+        byte[] raw = rawRow;
+
+        if(1 == scale) {
+            for(int y=0, out=0; y<height; ++y) {
+                buffer.get((top + y) * stride + start, raw, 0, rowBytes);
+
+                // Channels are in BGR(A) order
+                for(int i=0; i<rowBytes; i+=channels) {
+                    luminances[out++] = (byte)grey(raw, i);
+                }
+            }
+
+            return;
+        }
+
+        if(null == sums || sums.length < width) {
+            sums = new int[width];
+        }
+        int[] sum = sums;
+        int pixelBytes = scale * channels;
+        int area = scale * scale;
+
+        for(int y=0, out=0; y<height; ++y) {
+            Arrays.fill(sum, 0, width, 0);
+
+            for(int sy=0; sy<scale; ++sy) {
+                buffer.get((top + y * scale + sy) * stride + start, raw, 0, rowBytes);
+
+                for(int x=0, i=0; x<width; ++x) {
+                    int total = 0;
+                    for(int end=i + pixelBytes; i<end; i+=channels) {
+                        total += 1 == channels ? raw[i] & 0xff : grey(raw, i);
+                    }
+                    sum[x] += total;
+                }
+            }
+
+            for(int x=0; x<width; ++x) {
+                luminances[out++] = (byte)(sum[x] / area);
+            }
+        }
+    }
+
+    /**
+     * Computes the grey level of a BGR(A) pixel, with the same weights as
+     * BufferedImageLuminanceSource.
+     */
+    private static int grey(byte[] raw, int i) {
+        int b = raw[i] & 0xff;
+        int g = raw[i + 1] & 0xff;
+        int r = raw[i + 2] & 0xff;
+
+        return (306 * r + 601 * g + 117 * b + 0x200) >> 10;
+    }
+
+    @Override
+    public byte[] getRow(int y, byte[] row) {
+        if(y < 0 || y >= getHeight()) {
+            throw new IllegalArgumentException("Requested row is outside the image: " + y);
+        }
+
+        int width = getWidth();
+        if(null == row || row.length < width) {
+            row = new byte[width];
+        }
+
+        System.arraycopy(luminances, y * width, row, 0, width);
+
+        return row;
+    }
+
+    /**
+     * Gets the grey levels of the whole frame.
+     *
+     * @return This source's own array, not a copy, which will be
+     *         overwritten by the next frame loaded.
+     */
+    @Override
+    public byte[] getMatrix() {
+        return luminances;
+    }
+}
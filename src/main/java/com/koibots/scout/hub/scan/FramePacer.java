@@ -0,0 +1,165 @@
+package com.koibots.scout.hub.scan;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decides when a {@link ScanPipeline} should grab its next frame.
+ *
+ * Each frame is paced from when the previous one <i>started</i>, so the
+ * time spent grabbing and copying a frame counts towards the frame
+ * period and the capture rate really is the target rate (as long as the
+ * camera can keep up).
+ *
+ * When no decoder has seen anything that looks like a QR code for a while,
+ * the pacer drops to a low idle rate to save the battery. As soon as a
+ * decoder reports a candidate, it goes back to the full rate, waking the
+ * capture thread if it's part-way through a long idle wait.
+ */
+public final class FramePacer
+{
+    public static final int DEFAULT_FRAMES_PER_SECOND = 30;
+    public static final int DEFAULT_IDLE_FRAMES_PER_SECOND = 8;
+    public static final long DEFAULT_IDLE_AFTER_MILLIS = 5000;
+
+    /**
+     * A frame rate which never waits between frames, e.g. for replaying a
+     * recording as fast as it can be decoded.
+     */
+    public static final int UNLIMITED = Integer.MAX_VALUE;
+
+    private final Object lock = new Object();
+
+    private volatile int framesPerSecond = DEFAULT_FRAMES_PER_SECOND;
+    private volatile int idleFramesPerSecond = DEFAULT_IDLE_FRAMES_PER_SECOND;
+    private volatile long idleAfterNanos = TimeUnit.MILLISECONDS.toNanos(DEFAULT_IDLE_AFTER_MILLIS);
+
+    /**
+     * Starts "active", so the preview is smooth while the scout gets
+     * their phone ready.
+     */
+    private volatile long lastCandidateNanos = System.nanoTime();
+
+    /**
+     * When the current frame started. Only used by the capture thread.
+     */
+    private long frameStartNanos;
+
+    /**
+     * Sets the capture rate while codes are in view.
+     *
+     * @param framesPerSecond The target number of frames per second, or
+     *        {@link #UNLIMITED}.
+     */
+    public void setFramesPerSecond(int framesPerSecond) {
+        if(framesPerSecond < 1) {
+            throw new IllegalArgumentException("Frame rate must be positive: " + framesPerSecond);
+        }
+
+        this.framesPerSecond = framesPerSecond;
+
+        wake();
+    }
+
+    public int getFramesPerSecond() {
+        return framesPerSecond;
+    }
+
+    /**
+     * Sets the capture rate while nothing is in view.
+     *
+     * @param idleFramesPerSecond The target number of frames per second
+     *        when idle.
+     */
+    public void setIdleFramesPerSecond(int idleFramesPerSecond) {
+        if(idleFramesPerSecond < 1) {
+            throw new IllegalArgumentException("Idle frame rate must be positive: " + idleFramesPerSecond);
+        }
+
+        this.idleFramesPerSecond = idleFramesPerSecond;
+    }
+
+    public int getIdleFramesPerSecond() {
+        return idleFramesPerSecond;
+    }
+
+    /**
+     * Sets how long to wait without seeing a candidate code before
+     * slowing to the idle rate.
+     *
+     * @param millis The time to wait, in milliseconds.
+     */
+    public void setIdleAfterMillis(long millis) {
+        this.idleAfterNanos = TimeUnit.MILLISECONDS.toNanos(millis);
+    }
+
+    public long getIdleAfterMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(idleAfterNanos);
+    }
+
+    /**
+     * Checks whether the pacer has slowed to the idle rate.
+     *
+     * @return <code>true</code> if nothing has been seen for a while.
+     */
+    public boolean isIdle() {
+        return System.nanoTime() - lastCandidateNanos > idleAfterNanos;
+    }
+
+    /**
+     * Gets the rate the pacer is aiming for right now.
+     *
+     * @return The current target number of frames per second.
+     */
+    public int getCurrentFramesPerSecond() {
+        return isIdle() ? Math.min(idleFramesPerSecond, framesPerSecond) : framesPerSecond;
+    }
+
+    /**
+     * Notes that something which looks like a QR code (or part of one) has
+     * been seen, going back to the full rate immediately if idle.
+     */
+    public void candidateSeen() {
+        boolean wasIdle = isIdle();
+
+        lastCandidateNanos = System.nanoTime();
+
+        if(wasIdle) {
+            wake();
+        }
+    }
+
+    private void wake() {
+        synchronized(lock) {
+            lock.notifyAll();
+        }
+    }
+
+    /**
+     * Notes that the capture thread is starting a frame.
+     */
+    void frameStarted() {
+        frameStartNanos = System.nanoTime();
+    }
+
+    /**
+     * Waits until it's time to start the next frame. Returns immediately if
+     * the last frame took longer than the frame period.
+     *
+     * @throws InterruptedException If interrupted while waiting.
+     */
+    void awaitNextFrame() throws InterruptedException {
+        synchronized(lock) {
+            while(true) {
+                // Re-computed each time, in case we've been woken up early
+                long periodNanos = TimeUnit.SECONDS.toNanos(1) / getCurrentFramesPerSecond();
+                long remaining = frameStartNanos + periodNanos - System.nanoTime();
+
+                if(remaining <= 0) {
+                    return;
+                }
+
+                TimeUnit.NANOSECONDS.timedWait(lock, remaining);
+            }
+        }
+    }
+}
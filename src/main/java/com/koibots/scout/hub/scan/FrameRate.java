@@ -0,0 +1,56 @@
+package com.koibots.scout.hub.scan;
+
+/**
+ * Measures how often something happens, e.g. frames being captured, over
+ * the last few occurrences.
+ *
+ * Thread-safe.
+ */
+final class FrameRate
+{
+    /**
+     * The number of occurrences to average over: a couple of seconds' worth
+     * at camera frame rates.
+     */
+    private static final int WINDOW = 64;
+
+    /**
+     * How long without an occurrence before the rate is reported as zero.
+     */
+    private static final long STALE_NANOS = 2_000_000_000L;
+
+    private final long[] times = new long[WINDOW];
+    private int next;
+    private int filled;
+
+    /**
+     * Records an occurrence now.
+     */
+    synchronized void tick() {
+        times[next] = System.nanoTime();
+        next = (next + 1) % WINDOW;
+        if(filled < WINDOW) {
+            ++filled;
+        }
+    }
+
+    /**
+     * Gets the recent rate.
+     *
+     * @return The number of occurrences per second, recently.
+     */
+    synchronized double getRate() {
+        if(filled < 2) {
+            return 0;
+        }
+
+        long newest = times[(next + WINDOW - 1) % WINDOW];
+        long oldest = times[(next + WINDOW - filled) % WINDOW];
+
+        if(System.nanoTime() - newest > STALE_NANOS || newest == oldest) {
+            return 0;
+        }
+
+        return (filled - 1) * 1e9 / (newest - oldest);
+    }
+}
@@ -0,0 +1,150 @@
+package com.koibots.scout.hub.scan;
+
+import java.nio.charset.StandardCharsets;
+
+import org.bytedeco.javacpp.BytePointer;
+import org.bytedeco.javacpp.FloatPointer;
+import org.bytedeco.javacv.Frame;
+import org.bytedeco.javacv.OpenCVFrameConverter;
+import org.bytedeco.opencv.global.opencv_imgproc;
+import org.bytedeco.opencv.opencv_core.Mat;
+import org.bytedeco.opencv.opencv_core.Rect;
+import org.bytedeco.opencv.opencv_core.Size;
+import org.bytedeco.opencv.opencv_objdetect.QRCodeDetector;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.Result;
+import com.google.zxing.ResultPoint;
+
+/**
+ * Decodes QR codes in JavaCV frames with OpenCV's
+ * <code>QRCodeDetector</code>.
+ *
+ * The frame's native buffer is wrapped in a <code>Mat</code> without
+ * copying it, and regions are views of that <code>Mat</code>; only scaled
+ * regions are copied, by <code>resize</code>, into a buffer kept from frame
+ * to frame. Nothing goes through Java2D.
+ *
+ * The detector finds the code's outline before decoding it, so a code
+ * which is found but can't be read (blurred, say) still counts as a
+ * {@link #getCandidatePoints candidate}. The result's points are the
+ * corners of the code, rather than ZXing's finder pattern centers.
+ *
+ * Not thread-safe: each decode thread should have its own.
+ */
+public final class OpenCVDecoder
+    implements FrameDecoder
+{
+    /**
+     * The number of finder patterns in a code, which is what we report as
+     * candidate points when the detector finds a code's outline.
+     */
+    private static final int FINDER_PATTERNS = 3;
+
+    private final QRCodeDetector detector = new QRCodeDetector();
+    private final OpenCVFrameConverter.ToMat converter = new OpenCVFrameConverter.ToMat();
+
+    /**
+     * Where the detector puts the corners of the code it found.
+     */
+    private final Mat points = new Mat();
+
+    /**
+     * The re-used buffer for scaled-down regions.
+     */
+    private final Mat scaled = new Mat();
+
+    private int mostCandidatePoints;
+
+    @Override
+    public Result decode(Frame frame, int left, int top, int width, int height, int scale) {
+        if(!FrameLuminanceSource.isSupported(frame)) {
+            throw new IllegalArgumentException("Unsupported frame format: depth=" + frame.imageDepth + ", channels=" + frame.imageChannels);
+        }
+        if(scale < 1 || left < 0 || top < 0
+           || left + width > frame.imageWidth
+           || top + height > frame.imageHeight) {
+            throw new IllegalArgumentException("Region " + left + "," + top + " " + width + "x" + height + "/" + scale
+                    + " is not inside a " + frame.imageWidth + "x" + frame.imageHeight + " frame");
+        }
+
+        // A view of the frame's own pixels
+        Mat image = converter.convert(frame);
+
+        boolean whole = 0 == left && 0 == top && width == frame.imageWidth && height == frame.imageHeight;
+
+        try (Rect rect = whole ? null : new Rect(left, top, width, height);
+             Mat region = whole ? null : new Mat(image, rect)) {
+            Mat input = whole ? image : region;
+
+            if(scale > 1) {
+                try (Size size = new Size(width / scale, height / scale)) {
+                    opencv_imgproc.resize(input, scaled, size, 0, 0, opencv_imgproc.INTER_AREA);
+                }
+
+                input = scaled;
+            }
+
+            points.release();
+
+            String text;
+            try (BytePointer decoded = detector.detectAndDecode(input, points, null)) {
+                text = null == decoded ? "" : decoded.getString(StandardCharsets.UTF_8);
+            }
+
+            boolean detected = !points.empty();
+            if(detected) {
+                mostCandidatePoints = Math.max(mostCandidatePoints, FINDER_PATTERNS);
+            }
+
+            if(text.isEmpty()) {
+                return null;
+            }
+
+            Result result = new Result(text, text.getBytes(StandardCharsets.UTF_8),
+                    detected ? getCorners() : null, BarcodeFormat.QR_CODE);
+
+            if(0 == left && 0 == top && 1 == scale) {
+                return result;
+            } else {
+                return ZXingDecoder.toFrameCoordinates(result, left, top, scale);
+            }
+        }
+    }
+
+    /**
+     * Reads the corners of the last code detected.
+     */
+    private ResultPoint[] getCorners() {
+        // Four corners, each an (x, y) pair of floats
+        float[] xy = new float[(int)(points.total() * points.channels())];
+        try (FloatPointer data = new FloatPointer(points.data())) {
+            data.get(xy);
+        }
+
+        ResultPoint[] corners = new ResultPoint[xy.length / 2];
+        for(int i=0; i<corners.length; ++i) {
+            corners[i] = new ResultPoint(xy[2 * i], xy[2 * i + 1]);
+        }
+
+        return corners;
+    }
+
+    @Override
+    public int getCandidatePoints() {
+        return mostCandidatePoints;
+    }
+
+    @Override
+    public void clearCandidatePoints() {
+        mostCandidatePoints = 0;
+    }
+
+    @Override
+    public void close() {
+        detector.close();
+        converter.close();
+        points.close();
+        scaled.close();
+    }
+}
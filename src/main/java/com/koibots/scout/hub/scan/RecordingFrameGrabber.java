@@ -0,0 +1,106 @@
+package com.koibots.scout.hub.scan;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.bytedeco.javacv.Frame;
+import org.bytedeco.javacv.FrameGrabber;
+
+/**
+ * Passes frames through from another grabber, writing each one to a
+ * {@link FrameLog} on the way, so a scanning session can be replayed
+ * later with a {@link FrameLogGrabber}.
+ *
+ * Only the frames actually grabbed are recorded, with the times they were
+ * grabbed at.
+ */
+public class RecordingFrameGrabber
+    extends FrameGrabber
+{
+    private final FrameGrabber grabber;
+    private final File file;
+    private final boolean grey;
+
+    private FrameLogWriter writer;
+
+    /**
+     * Creates a new RecordingFrameGrabber.
+     *
+     * @param grabber The grabber to record, which this grabber owns.
+     * @param file The frame log to write.
+     * @param grey <code>true</code> to record only the grey levels.
+     */
+    public RecordingFrameGrabber(FrameGrabber grabber, File file, boolean grey) {
+        this.grabber = grabber;
+        this.file = file;
+        this.grey = grey;
+    }
+
+    @Override
+    public void start() throws Exception {
+        grabber.start();
+
+        imageWidth = grabber.getImageWidth();
+        imageHeight = grabber.getImageHeight();
+
+        try {
+            writer = new FrameLogWriter(file, grey);
+        } catch (IOException ioe) {
+            grabber.stop();
+
+            throw new Exception("Could not create frame log " + file, ioe);
+        }
+    }
+
+    @Override
+    public void stop() throws Exception {
+        try {
+            grabber.stop();
+        } finally {
+            closeWriter();
+        }
+    }
+
+    @Override
+    public void trigger() throws Exception {
+        grabber.trigger();
+    }
+
+    @Override
+    public void release() throws Exception {
+        try {
+            grabber.release();
+        } finally {
+            closeWriter();
+        }
+    }
+
+    private void closeWriter() throws Exception {
+        if(null != writer) {
+            System.out.println("Recorded " + writer.getFrameCount() + " frames to " + file);
+
+            try {
+                writer.close();
+            } catch (IOException ioe) {
+                throw new Exception("Could not close frame log " + file, ioe);
+            } finally {
+                writer = null;
+            }
+        }
+    }
+
+    @Override
+    public Frame grab() throws Exception {
+        Frame frame = grabber.grab();
+
+        if(null != frame && null != frame.image && null != writer) {
+            try {
+                writer.write(frame, System.nanoTime());
+            } catch (IOException ioe) {
+                throw new Exception("Could not record frame to " + file, ioe);
+            }
+        }
+
+        return frame;
+    }
+}
@@ -0,0 +1,588 @@
+package com.koibots.scout.hub.scan;
+
+import java.awt.geom.AffineTransform;
+import java.awt.image.AffineTransformOp;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.bytedeco.javacv.Frame;
+import org.bytedeco.javacv.FrameGrabber;
+import org.bytedeco.javacv.Java2DFrameConverter;
+
+import com.google.zxing.Result;
+
+/**
+ * Grabs frames from a camera, shows them, and decodes QR codes in them,
+ * each on its own thread(s), so that a slow decode never holds up the
+ * camera or the preview.
+ *
+ * <ul>
+ * <li>The <i>capture</i> thread grabs frames at the rate set by its
+ *     {@link FramePacer} and publishes each one as "the newest
+ *     frame".</li>
+ * <li>The <i>display</i> thread converts the newest frame for the screen,
+ *     at most {@link #setDisplayFramesPerSecond display FPS} times a
+ *     second.</li>
+ * <li>The <i>decode</i> threads each take the newest frame that no other
+ *     decoder has taken yet. Frames which were replaced before any decoder
+ *     got to them are dropped rather than queued, so decoding never falls
+ *     behind the camera. Which parts of each frame are decoded is up to
+ *     the {@link DecodeStrategy}, and which library decodes them is up to
+ *     the {@link #setDecodeEngine decode engine}. Decoders tell the pacer
+ *     whenever they see a code, or the finder patterns of one, so capture
+ *     runs at full rate only while there's something to scan.</li>
+ * </ul>
+ *
+ * The grabber must already be started, and is not stopped by the
+ * pipeline: the caller owns it. If the grabber runs out of frames (returns
+ * <code>null</code>), e.g. at the end of a recording, the frames already
+ * grabbed are decoded and then the pipeline stops.
+ */
+public class ScanPipeline
+    implements AutoCloseable
+{
+    /**
+     * The default number of decode threads: leave a core for capture and
+     * display, but don't take over the laptop.
+     */
+    public static final int DEFAULT_DECODE_THREADS = Math.max(1, Math.min(2, Runtime.getRuntime().availableProcessors() - 1));
+
+    /**
+     * The number of possible finder patterns in one frame which count as a
+     * candidate code: a QR code has three.
+     */
+    private static final int CANDIDATE_POINTS = 3;
+
+    /**
+     * Receives frames to show on the screen.
+     *
+     * Called on the display thread.
+     */
+    public interface DisplayListener {
+        /**
+         * Called with a frame ready to be shown.
+         *
+         * @param image The frame, already mirrored if requested. The same
+         *        image may be re-used for later frames.
+         */
+        public void frameReady(BufferedImage image);
+    }
+
+    /**
+     * Receives the codes found by a ScanPipeline.
+     *
+     * Called on a decode thread. Several decode threads may find the same
+     * code in successive frames.
+     */
+    public interface DecodeListener {
+        /**
+         * Called when a code has been found.
+         *
+         * @param text The decoded text.
+         * @param frame The frame the code was found in. Only valid during
+         *        the call.
+         */
+        public void codeDecoded(String text, CapturedFrame frame);
+    }
+
+    private final FrameGrabber grabber;
+    private final ScanStatistics statistics = new ScanStatistics();
+    private final FramePacer pacer = new FramePacer();
+    private final DecodeStrategy strategy = new DecodeStrategy();
+    private final List<DecodeListener> decodeListeners = new CopyOnWriteArrayList<>();
+    private final List<Thread> threads = new ArrayList<>();
+
+    /**
+     * Frames which are not in use by anyone, ready to be re-filled.
+     */
+    private final Queue<CapturedFrame> freeFrames = new ConcurrentLinkedQueue<>();
+    private final Queue<CapturedFrame> allFrames = new ConcurrentLinkedQueue<>();
+
+    private DisplayListener displayListener;
+    private int decodeThreads = DEFAULT_DECODE_THREADS;
+    private DecodeEngine decodeEngine = DecodeEngine.ZXING;
+    private int displayFramesPerSecond = 33;
+    private boolean mirror = false;
+    private boolean dropFrames = true;
+
+    private final Object lock = new Object();
+    // These are guarded by lock
+    private CapturedFrame latest;
+    private long lastDecodeClaim = -1;
+    private boolean endOfStream;
+    private int activeDecoders;
+
+    private volatile boolean running;
+    private volatile Exception failure;
+
+    /**
+     * Creates a new ScanPipeline.
+     *
+     * @param grabber A started grabber to read frames from.
+     */
+    public ScanPipeline(FrameGrabber grabber) {
+        this.grabber = grabber;
+    }
+
+    public void setDecodeThreads(int decodeThreads) {
+        if(decodeThreads < 1) {
+            throw new IllegalArgumentException("Need at least one decode thread: " + decodeThreads);
+        }
+
+        this.decodeThreads = decodeThreads;
+    }
+
+    public int getDecodeThreads() {
+        return decodeThreads;
+    }
+
+    /**
+     * Sets which library the decode threads use. Takes effect when the
+     * pipeline is started.
+     *
+     * @param engine The decode engine.
+     */
+    public void setDecodeEngine(DecodeEngine engine) {
+        if(null == engine) {
+            throw new IllegalArgumentException("Decode engine must not be null");
+        }
+
+        this.decodeEngine = engine;
+    }
+
+    public DecodeEngine getDecodeEngine() {
+        return decodeEngine;
+    }
+
+    /**
+     * Gets the pacer which sets the capture rate. It may be adjusted while
+     * the pipeline is running.
+     *
+     * @return The pipeline's frame pacer.
+     */
+    public FramePacer getPacer() {
+        return pacer;
+    }
+
+    /**
+     * Gets the strategy the decoders use to decide which parts of each
+     * frame to decode. It may be adjusted while the pipeline is running.
+     *
+     * @return The pipeline's decode strategy.
+     */
+    public DecodeStrategy getDecodeStrategy() {
+        return strategy;
+    }
+
+    public void setDisplayFramesPerSecond(int displayFramesPerSecond) {
+        this.displayFramesPerSecond = displayFramesPerSecond;
+    }
+
+    public int getDisplayFramesPerSecond() {
+        return displayFramesPerSecond;
+    }
+
+    /**
+     * Sets whether frames should be mirrored for display. Decoding always
+     * uses the frame as the camera saw it.
+     *
+     * @param mirror <code>true</code> to flip frames horizontally for
+     *        display.
+     */
+    public void setMirror(boolean mirror) {
+        this.mirror = mirror;
+    }
+
+    public boolean getMirror() {
+        return mirror;
+    }
+
+    /**
+     * Sets whether frames which arrive while all the decoders are busy are
+     * dropped. Live cameras should drop frames, so that decoding keeps up
+     * with the camera; when replaying a recording, it can be more useful
+     * to decode every frame, holding up the grabber until a decoder is
+     * free.
+     *
+     * @param dropFrames <code>false</code> to decode every frame.
+     */
+    public void setDropFrames(boolean dropFrames) {
+        this.dropFrames = dropFrames;
+    }
+
+    public boolean getDropFrames() {
+        return dropFrames;
+    }
+
+    /**
+     * Sets the listener for frames to display. Without one, no display
+     * thread is started.
+     *
+     * @param listener The listener.
+     */
+    public void setDisplayListener(DisplayListener listener) {
+        this.displayListener = listener;
+    }
+
+    public void addDecodeListener(DecodeListener listener) {
+        decodeListeners.add(listener);
+    }
+
+    public void removeDecodeListener(DecodeListener listener) {
+        decodeListeners.remove(listener);
+    }
+
+    public ScanStatistics getStatistics() {
+        return statistics;
+    }
+
+    /**
+     * Checks whether the pipeline is still running. It stops when it is
+     * closed, if the grabber fails, or once it has decoded the last frame
+     * from a grabber which has run out.
+     *
+     * @return <code>true</code> if the pipeline is running.
+     */
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * Gets the problem which stopped the pipeline, if any.
+     *
+     * @return The exception thrown by the grabber, or <code>null</code> if
+     *         there hasn't been one.
+     */
+    public Exception getFailure() {
+        return failure;
+    }
+
+    /**
+     * Starts the capture, display and decode threads.
+     *
+     * @throws IllegalStateException If the pipeline has already been
+     *         started.
+     */
+    public synchronized void start() {
+        if(!threads.isEmpty()) {
+            throw new IllegalStateException("Pipeline already started");
+        }
+
+        running = true;
+        activeDecoders = decodeThreads;
+
+        threads.add(new Thread(this::runCapture, "scan-capture"));
+
+        if(null != displayListener) {
+            threads.add(new Thread(this::runDisplay, "scan-display"));
+        }
+
+        for(int i=0; i<decodeThreads; ++i) {
+            threads.add(new Thread(this::runDecoder, "scan-decode-" + i));
+        }
+
+        for(Thread thread : threads) {
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    /**
+     * Stops all threads, and waits for them to finish. Listeners will not
+     * be called after this returns.
+     */
+    @Override
+    public synchronized void close() {
+        stopRunning();
+
+        for(Thread thread : threads) {
+            thread.interrupt();
+        }
+
+        for(Thread thread : threads) {
+            try {
+                thread.join();
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        CapturedFrame last;
+        synchronized(lock) {
+            last = latest;
+            latest = null;
+        }
+        if(null != last) {
+            last.release();
+        }
+
+        CapturedFrame frame;
+        while(null != (frame = allFrames.poll())) {
+            frame.dispose();
+        }
+        freeFrames.clear();
+    }
+
+    private void stopRunning() {
+        synchronized(lock) {
+            running = false;
+
+            lock.notifyAll();
+        }
+    }
+
+    private void runCapture() {
+        long sequence = 0;
+        boolean ended = false;
+
+        try {
+            while(running) {
+                pacer.frameStarted();
+
+                Frame grabbed = grabber.grab();
+
+                long now = System.nanoTime();
+
+                if(null == grabbed) {
+                    // No more frames
+                    ended = true;
+
+                    break;
+                }
+
+                if(null != grabbed.image) {
+                    if(!CapturedFrame.isCopyable(grabbed) || !FrameLuminanceSource.isSupported(grabbed)) {
+                        throw new IllegalStateException("Unsupported frame format: depth=" + grabbed.imageDepth + ", channels=" + grabbed.imageChannels);
+                    }
+
+                    CapturedFrame frame = acquireFrame(grabbed);
+                    frame.copyFrom(grabbed, sequence++, now);
+
+                    statistics.frameCaptured();
+
+                    publish(frame);
+                }
+
+                pacer.awaitNextFrame();
+            }
+        } catch (InterruptedException ie) {
+            // Stopping
+        } catch (Exception e) {
+            if(running) {
+                e.printStackTrace();
+
+                failure = e;
+            }
+        } finally {
+            if(ended) {
+                // Let the decoders finish what's been grabbed
+                synchronized(lock) {
+                    endOfStream = true;
+
+                    lock.notifyAll();
+                }
+            } else {
+                stopRunning();
+            }
+        }
+    }
+
+    /**
+     * Gets a free frame the same shape as a grabbed frame.
+     */
+    private CapturedFrame acquireFrame(Frame grabbed) {
+        CapturedFrame frame;
+
+        while(null != (frame = freeFrames.poll())) {
+            if(frame.fits(grabbed)) {
+                return frame;
+            }
+
+            // The camera changed resolution; this one's no use any more
+            allFrames.remove(frame);
+            frame.dispose();
+        }
+
+        frame = new CapturedFrame(grabbed, freeFrames::offer);
+        allFrames.add(frame);
+
+        return frame;
+    }
+
+    private void publish(CapturedFrame frame) throws InterruptedException {
+        CapturedFrame previous;
+
+        synchronized(lock) {
+            // Wait for a decoder to take the last frame, if we mustn't drop it
+            while(!dropFrames && running && null != latest && latest.getSequence() > lastDecodeClaim) {
+                lock.wait();
+            }
+
+            previous = latest;
+            latest = frame;
+
+            if(null != previous && previous.getSequence() > lastDecodeClaim) {
+                statistics.frameDropped();
+            }
+
+            lock.notifyAll();
+        }
+
+        if(null != previous) {
+            previous.release();
+        }
+    }
+
+    /**
+     * Waits for a frame newer than the last one the caller saw.
+     *
+     * @param after The sequence number of the last frame the caller saw.
+     * @param claim Whether to claim the frame for decoding, so no other
+     *        decoder takes it.
+     *
+     * @return The frame, which the caller must release, or
+     *         <code>null</code> if the pipeline is stopping, or there will
+     *         be no more frames.
+     */
+    private CapturedFrame takeNewer(long after, boolean claim) throws InterruptedException {
+        synchronized(lock) {
+            long seen = claim ? lastDecodeClaim : after;
+
+            while(running && !endOfStream && (null == latest || latest.getSequence() <= seen)) {
+                lock.wait();
+            }
+
+            if(!running || null == latest || latest.getSequence() <= seen) {
+                return null;
+            }
+
+            if(claim) {
+                lastDecodeClaim = latest.getSequence();
+
+                if(!dropFrames) {
+                    // The capture thread may be waiting for this
+                    lock.notifyAll();
+                }
+            }
+
+            latest.retain();
+
+            return latest;
+        }
+    }
+
+    private void runDisplay() {
+        long displayed = -1;
+        long lastDisplayNanos = 0;
+
+        BufferedImage targetImage = null;
+        AffineTransformOp flipperOp = null;
+
+        try(Java2DFrameConverter converter = new Java2DFrameConverter()) {
+            while(running) {
+                long interval = 1_000_000_000L / Math.max(1, displayFramesPerSecond);
+                long wait = lastDisplayNanos + interval - System.nanoTime();
+                if(wait > 0) {
+                    Thread.sleep(wait / 1_000_000, (int)(wait % 1_000_000));
+                }
+
+                CapturedFrame frame = takeNewer(displayed, false);
+                if(null == frame) {
+                    break;
+                }
+
+                try {
+                    displayed = frame.getSequence();
+                    lastDisplayNanos = System.nanoTime();
+
+                    BufferedImage img = converter.getBufferedImage(frame.getFrame());
+                    if(null == img) {
+                        continue;
+                    }
+
+                    BufferedImage displayImage;
+
+                    if(getMirror()) {
+                        if(null == targetImage
+                           || targetImage.getWidth() != img.getWidth()
+                           || targetImage.getHeight() != img.getHeight()
+                           || targetImage.getType() != img.getType()) {
+                            System.out.println("Creating target image with size=" + img.getWidth() + "x" + img.getHeight() + " and type=" + img.getType());
+                            targetImage = new BufferedImage(img.getWidth(), img.getHeight(), img.getType());
+
+                            AffineTransform flipper = AffineTransform.getScaleInstance(-1, 1); // flip horizontally
+                            flipper.translate(-img.getWidth(), 0); // move back into view
+
+                            flipperOp = new AffineTransformOp(flipper, AffineTransformOp.TYPE_NEAREST_NEIGHBOR);
+                        }
+
+                        displayImage = flipperOp.filter(img, targetImage);
+                    } else {
+                        displayImage = img;
+                    }
+
+                    displayListener.frameReady(displayImage);
+
+                    statistics.frameDisplayed();
+                } finally {
+                    frame.release();
+                }
+            }
+        } catch (InterruptedException ie) {
+            // Stopping
+        } catch (RuntimeException re) {
+            re.printStackTrace();
+        }
+    }
+
+    private void runDecoder() {
+        try (FrameDecoder decoder = decodeEngine.createDecoder()) {
+            while(running) {
+                CapturedFrame frame = takeNewer(-1, true);
+                if(null == frame) {
+                    break;
+                }
+
+                try {
+                    long start = System.nanoTime();
+
+                    decoder.clearCandidatePoints();
+
+                    Result result = strategy.decode(decoder, frame.getFrame());
+
+                    statistics.frameDecoded(frame, start, System.nanoTime(), null != result);
+
+                    if(null != result || decoder.getCandidatePoints() >= CANDIDATE_POINTS) {
+                        pacer.candidateSeen();
+                    }
+
+                    if(null != result && running) {
+                        for(DecodeListener listener : decodeListeners) {
+                            listener.codeDecoded(result.getText(), frame);
+                        }
+                    }
+                } catch (RuntimeException re) {
+                    // One bad frame shouldn't stop the decoder
+                    re.printStackTrace();
+                } finally {
+                    frame.release();
+                }
+            }
+        } catch (InterruptedException ie) {
+            // Stopping
+        } finally {
+            synchronized(lock) {
+                if(0 == --activeDecoders) {
+                    // The last decoder has finished; so has the pipeline
+                    running = false;
+
+                    lock.notifyAll();
+                }
+            }
+        }
+    }
+}
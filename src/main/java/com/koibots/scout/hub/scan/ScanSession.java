@@ -0,0 +1,251 @@
+package com.koibots.scout.hub.scan;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.bytedeco.javacv.FrameGrabber;
+
+/**
+ * A long-lived scanning session: keeps the camera open and reports every
+ * new code it sees, so a line of scouts can be scanned one after another
+ * without re-opening the camera for each of them.
+ *
+ * A code held in front of the camera is decoded from many frames in a
+ * row. The session reports it once, then ignores it until it has been out
+ * of view for the {@link #setDebounceMillis debounce time}; showing it again
+ * after that reports it again. Recognizing the same record scanned twice
+ * is up to whoever receives the codes (e.g. the project's duplicate
+ * check).
+ *
+ * Codes are reported to {@link CodeListener}s on a decode thread. To
+ * collect them in a queue instead, add the queue's <code>offer</code> or
+ * <code>put</code> method as a listener.
+ *
+ * The session owns its grabber: it is started by {@link #start} and
+ * stopped and released by {@link #close}.
+ */
+public class ScanSession
+    implements AutoCloseable
+{
+    public static final long DEFAULT_DEBOUNCE_MILLIS = 2000;
+
+    /**
+     * The most recent codes remembered for debouncing. More than one code
+     * may be in view at once, e.g. the next scout's phone behind this one.
+     */
+    private static final int MAX_RECENT_CODES = 8;
+
+    /**
+     * Receives the codes found by a ScanSession.
+     */
+    public interface CodeListener {
+        /**
+         * Called when a code comes into view.
+         *
+         * Called on a decode thread. While this method runs, that thread
+         * decodes no more frames, so it should return quickly.
+         *
+         * @param text The decoded text.
+         *
+         * @throws InterruptedException If interrupted while handing the
+         *         code on, e.g. to a full queue. The session is stopping.
+         */
+        public void codeScanned(String text) throws InterruptedException;
+    }
+
+    private final FrameGrabber grabber;
+    private final ScanPipeline pipeline;
+    private final List<CodeListener> listeners = new CopyOnWriteArrayList<>();
+
+    private final LongAdder codesAccepted = new LongAdder();
+    private final LongAdder codesSuppressed = new LongAdder();
+
+    /**
+     * When each recent code was last seen, oldest first. Guarded by itself.
+     */
+    private final Map<String,Long> recentCodes = new LinkedHashMap<>(16, 0.75f, true);
+
+    private volatile long debounceNanos = TimeUnit.MILLISECONDS.toNanos(DEFAULT_DEBOUNCE_MILLIS);
+    private volatile String lastCode;
+
+    private boolean started;
+
+    /**
+     * Creates a new ScanSession.
+     *
+     * @param grabber The grabber to read frames from. It must not be
+     *        started yet.
+     */
+    public ScanSession(FrameGrabber grabber) {
+        this.grabber = grabber;
+
+        pipeline = new ScanPipeline(grabber);
+        pipeline.addDecodeListener((text, frame) -> codeDecoded(text));
+    }
+
+    /**
+     * Gets the pipeline which grabs and decodes the frames, to configure
+     * it or add a display listener. Its threads are started and stopped
+     * by the session.
+     *
+     * @return The session's pipeline.
+     */
+    public ScanPipeline getPipeline() {
+        return pipeline;
+    }
+
+    public ScanStatistics getStatistics() {
+        return pipeline.getStatistics();
+    }
+
+    /**
+     * Sets how long a code must be out of view before it is reported
+     * again.
+     *
+     * @param millis The debounce time, in milliseconds.
+     */
+    public void setDebounceMillis(long millis) {
+        if(millis < 0) {
+            throw new IllegalArgumentException("Debounce time must not be negative: " + millis);
+        }
+
+        debounceNanos = TimeUnit.MILLISECONDS.toNanos(millis);
+    }
+
+    public long getDebounceMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(debounceNanos);
+    }
+
+    public void addCodeListener(CodeListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeCodeListener(CodeListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Gets the number of codes reported to the listeners.
+     *
+     * @return The number of codes accepted.
+     */
+    public long getCodesAccepted() {
+        return codesAccepted.sum();
+    }
+
+    /**
+     * Gets the number of decodes ignored because the code was still in
+     * view.
+     *
+     * @return The number of decodes suppressed.
+     */
+    public long getCodesSuppressed() {
+        return codesSuppressed.sum();
+    }
+
+    /**
+     * Gets the code most recently reported to the listeners.
+     *
+     * @return The last code accepted, or <code>null</code> if there hasn't
+     *         been one.
+     */
+    public String getLastCode() {
+        return lastCode;
+    }
+
+    /**
+     * Checks whether the session is still running. It stops when it is
+     * closed, or if the camera fails.
+     *
+     * @return <code>true</code> if the session is running.
+     */
+    public boolean isRunning() {
+        return pipeline.isRunning();
+    }
+
+    /**
+     * Gets the problem which stopped the session, if any.
+     *
+     * @return The exception thrown by the grabber, or <code>null</code> if
+     *         there hasn't been one.
+     */
+    public Exception getFailure() {
+        return pipeline.getFailure();
+    }
+
+    /**
+     * Starts the camera and the pipeline's threads.
+     *
+     * @throws FrameGrabber.Exception If the camera could not be started.
+     * @throws IllegalStateException If the session has already been
+     *         started.
+     */
+    public synchronized void start() throws FrameGrabber.Exception {
+        if(started) {
+            throw new IllegalStateException("Session already started");
+        }
+
+        started = true;
+
+        grabber.start();
+
+        pipeline.start();
+    }
+
+    /**
+     * Stops the pipeline, then the camera. Listeners will not be called
+     * after this returns.
+     */
+    @Override
+    public synchronized void close() {
+        // Stop the pipeline before the camera
+        pipeline.close();
+
+        try {
+            grabber.close();
+        } catch (FrameGrabber.Exception fge) {
+            fge.printStackTrace();
+        }
+    }
+
+    private void codeDecoded(String text) {
+        long now = System.nanoTime();
+
+        synchronized(recentCodes) {
+            Long lastSeen = recentCodes.put(text, Long.valueOf(now));
+
+            // Forget codes which have been out of view long enough
+            for(Iterator<Long> i=recentCodes.values().iterator(); i.hasNext(); ) {
+                long seen = i.next().longValue();
+                if(now - seen < debounceNanos && recentCodes.size() <= MAX_RECENT_CODES) {
+                    // Everything after this was seen more recently
+                    break;
+                }
+                i.remove();
+            }
+
+            if(null != lastSeen && now - lastSeen.longValue() < debounceNanos) {
+                codesSuppressed.increment();
+
+                return;
+            }
+        }
+
+        codesAccepted.increment();
+        lastCode = text;
+
+        try {
+            for(CodeListener listener : listeners) {
+                listener.codeScanned(text);
+            }
+        } catch (InterruptedException ie) {
+            // The pipeline is stopping
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package com.koibots.scout.hub.scan;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.koibots.scout.hub.LatencyHistogram;
+
+/**
+ * Counts the frames going through a {@link ScanPipeline} and how long
+ * decoding them took.
+ *
+ * Two latencies are recorded for each decoded frame: the time spent
+ * decoding it, and the time from when it was grabbed until decoding
+ * finished (which includes waiting for a decoder to be free). Both are in
+ * microseconds.
+ *
+ * Thread-safe; the rates are over the last couple of seconds, the counts
+ * since the pipeline started.
+ */
+public final class ScanStatistics
+{
+    private final FrameRate captureRate = new FrameRate();
+    private final FrameRate displayRate = new FrameRate();
+    private final FrameRate decodeRate = new FrameRate();
+
+    private final LongAdder framesCaptured = new LongAdder();
+    private final LongAdder framesDecoded = new LongAdder();
+    private final LongAdder framesDropped = new LongAdder();
+    private final LongAdder codesDecoded = new LongAdder();
+
+    private final LatencyHistogram decodeTime = new LatencyHistogram();
+    private final LatencyHistogram decodeLatency = new LatencyHistogram();
+
+    void frameCaptured() {
+        framesCaptured.increment();
+        captureRate.tick();
+    }
+
+    void frameDisplayed() {
+        displayRate.tick();
+    }
+
+    /**
+     * Notes that a newer frame arrived before any decoder got to this one.
+     */
+    void frameDropped() {
+        framesDropped.increment();
+    }
+
+    /**
+     * Records a decoded frame.
+     *
+     * @param frame The frame.
+     * @param startNanos When decoding started.
+     * @param endNanos When decoding finished.
+     * @param found Whether a code was found in the frame.
+     */
+    void frameDecoded(CapturedFrame frame, long startNanos, long endNanos, boolean found) {
+        framesDecoded.increment();
+        decodeRate.tick();
+
+        if(found) {
+            codesDecoded.increment();
+        }
+
+        decodeTime.record(TimeUnit.NANOSECONDS.toMicros(endNanos - startNanos));
+        decodeLatency.record(TimeUnit.NANOSECONDS.toMicros(endNanos - frame.getCaptureNanos()));
+    }
+
+    /**
+     * Gets the rate at which frames are being grabbed from the camera.
+     *
+     * @return The recent capture rate, in frames per second.
+     */
+    public double getCaptureFramesPerSecond() {
+        return captureRate.getRate();
+    }
+
+    public double getDisplayFramesPerSecond() {
+        return displayRate.getRate();
+    }
+
+    /**
+     * Gets the rate at which frames are being decoded, by all decoders
+     * together.
+     *
+     * @return The recent decode rate, in frames per second.
+     */
+    public double getDecodeFramesPerSecond() {
+        return decodeRate.getRate();
+    }
+
+    public long getFramesCaptured() {
+        return framesCaptured.sum();
+    }
+
+    public long getFramesDecoded() {
+        return framesDecoded.sum();
+    }
+
+    /**
+     * Gets the number of frames which were never decoded because a newer
+     * frame had already arrived.
+     *
+     * @return The number of frames skipped by the decoders.
+     */
+    public long getFramesDropped() {
+        return framesDropped.sum();
+    }
+
+    /**
+     * Gets the number of frames in which a code was found.
+     *
+     * @return The number of successful decodes.
+     */
+    public long getCodesDecoded() {
+        return codesDecoded.sum();
+    }
+
+    /**
+     * Gets the distribution of time spent decoding each frame, in
+     * microseconds.
+     *
+     * @return The decode time histogram.
+     */
+    public LatencyHistogram getDecodeTime() {
+        return decodeTime;
+    }
+
+    /**
+     * Gets the distribution of times from grabbing each decoded frame to
+     * finishing decoding it, in microseconds.
+     *
+     * @return The decode latency histogram.
+     */
+    public LatencyHistogram getDecodeLatency() {
+        return decodeLatency;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.ROOT,
+                "capture %.1f fps, decode %.1f fps, display %.1f fps; %d captured, %d decoded, %d dropped, %d codes; decode p50 %.1f ms, p99 %.1f ms; latency p50 %.1f ms, p99 %.1f ms",
+                getCaptureFramesPerSecond(),
+                getDecodeFramesPerSecond(),
+                getDisplayFramesPerSecond(),
+                getFramesCaptured(),
+                getFramesDecoded(),
+                getFramesDropped(),
+                getCodesDecoded(),
+                decodeTime.getValueAtPercentile(50) / 1000.0,
+                decodeTime.getValueAtPercentile(99) / 1000.0,
+                decodeLatency.getValueAtPercentile(50) / 1000.0,
+                decodeLatency.getValueAtPercentile(99) / 1000.0);
+    }
+}
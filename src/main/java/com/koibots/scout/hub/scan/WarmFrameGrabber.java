@@ -0,0 +1,138 @@
+package com.koibots.scout.hub.scan;
+
+import org.bytedeco.javacv.Frame;
+import org.bytedeco.javacv.FrameGrabber;
+
+/**
+ * Keeps a camera open between scanning sessions, so that the next session
+ * shows video straight away instead of waiting a second or two for the
+ * camera to start.
+ *
+ * The camera is opened by {@link #open}, e.g. in the background at
+ * startup, and stays open until {@link #shutdown}. In between, it is
+ * {@link #lend lent} to one session at a time: the session starts, stops
+ * and releases this grabber as usual, but stopping it only gives the
+ * camera back.
+ */
+public class WarmFrameGrabber
+    extends FrameGrabber
+{
+    private final FrameGrabber grabber;
+
+    private boolean open;
+    private boolean lent;
+    private boolean shutDown;
+
+    /**
+     * Creates a new WarmFrameGrabber.
+     *
+     * @param grabber The camera's grabber, which this grabber owns. It
+     *        must not be started yet.
+     */
+    public WarmFrameGrabber(FrameGrabber grabber) {
+        this.grabber = grabber;
+    }
+
+    /**
+     * Opens the camera, if it isn't open already. Blocks while the camera
+     * starts.
+     *
+     * @throws Exception If the camera could not be started, or has been
+     *         shut down.
+     */
+    public synchronized void open() throws Exception {
+        if(shutDown) {
+            throw new Exception("Camera has been shut down");
+        }
+
+        if(!open) {
+            grabber.start();
+
+            imageWidth = grabber.getImageWidth();
+            imageHeight = grabber.getImageHeight();
+
+            open = true;
+        }
+    }
+
+    public synchronized boolean isOpen() {
+        return open;
+    }
+
+    /**
+     * Lends the camera to a session.
+     *
+     * @return <code>true</code> if the camera was lent, or
+     *         <code>false</code> if another session has it, or it has been
+     *         shut down.
+     */
+    public synchronized boolean lend() {
+        if(lent || shutDown) {
+            return false;
+        }
+
+        lent = true;
+
+        return true;
+    }
+
+    /**
+     * Opens the camera if it isn't open already; see {@link #open}.
+     */
+    @Override
+    public void start() throws Exception {
+        open();
+    }
+
+    /**
+     * Gives the camera back, leaving it open.
+     */
+    @Override
+    public synchronized void stop() throws Exception {
+        if(lent) {
+            lent = false;
+
+            if(shutDown) {
+                closeCamera();
+            }
+        }
+    }
+
+    @Override
+    public void trigger() throws Exception {
+        grabber.trigger();
+    }
+
+    /**
+     * Gives the camera back, leaving it open; see {@link #stop}.
+     */
+    @Override
+    public void release() throws Exception {
+        stop();
+    }
+
+    @Override
+    public Frame grab() throws Exception {
+        return grabber.grab();
+    }
+
+    /**
+     * Closes the camera. If a session is using it, it is closed when the
+     * session gives it back.
+     *
+     * @throws Exception If the camera could not be closed.
+     */
+    public synchronized void shutdown() throws Exception {
+        shutDown = true;
+
+        if(!lent) {
+            closeCamera();
+        }
+    }
+
+    private void closeCamera() throws Exception {
+        open = false;
+
+        grabber.close();
+    }
+}
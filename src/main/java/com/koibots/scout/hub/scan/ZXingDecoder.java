@@ -0,0 +1,175 @@
+package com.koibots.scout.hub.scan;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.bytedeco.javacv.Frame;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.BinaryBitmap;
+import com.google.zxing.DecodeHintType;
+import com.google.zxing.MultiFormatReader;
+import com.google.zxing.NotFoundException;
+import com.google.zxing.Result;
+import com.google.zxing.ResultPoint;
+import com.google.zxing.ResultPointCallback;
+
+/**
+ * Decodes QR codes in JavaCV frames with ZXing.
+ *
+ * The frame's grey levels are read straight from its native buffer into a
+ * {@link FrameLuminanceSource}, and binarized by a {@link FrameBinarizer},
+ * both of which are re-used from frame to frame (one pair for each size of
+ * region decoded). The reader is set up once and only looks for QR codes,
+ * which is all QRScout makes.
+ *
+ * Not thread-safe: each decode thread should have its own.
+ */
+public final class ZXingDecoder
+    implements FrameDecoder
+{
+    /**
+     * The most region sizes we keep sources for. Regions around a tracked
+     * code vary in size, but not by much from frame to frame.
+     */
+    private static final int MAX_REGIONS = 8;
+
+    private final MultiFormatReader reader = new MultiFormatReader();
+    private final CandidateCounter candidates = new CandidateCounter();
+
+    private final Map<Long,Region> regions = new LinkedHashMap<Long,Region>(16, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long,Region> eldest) {
+            return size() > MAX_REGIONS;
+        }
+    };
+
+    private int mostCandidatePoints;
+
+    public ZXingDecoder() {
+        Map<DecodeHintType,Object> hints = new EnumMap<>(DecodeHintType.class);
+        hints.put(DecodeHintType.POSSIBLE_FORMATS, Collections.singletonList(BarcodeFormat.QR_CODE));
+        hints.put(DecodeHintType.NEED_RESULT_POINT_CALLBACK, candidates);
+
+        reader.setHints(hints);
+    }
+
+    @Override
+    public Result decode(Frame frame, int left, int top, int width, int height, int scale) {
+        Region region = getRegion(width / scale, height / scale);
+
+        region.source.load(frame, left, top, scale);
+        region.binarizer.reset();
+        candidates.points = 0;
+
+        try {
+            // decodeWithState keeps the hints, and the readers they made
+            Result result = reader.decodeWithState(new BinaryBitmap(region.binarizer));
+
+            if(0 == left && 0 == top && 1 == scale) {
+                return result;
+            } else {
+                return toFrameCoordinates(result, left, top, scale);
+            }
+        } catch (NotFoundException nfe) {
+            // no QR code here
+            return null;
+        } finally {
+            mostCandidatePoints = Math.max(mostCandidatePoints, candidates.points);
+
+            reader.reset();
+        }
+    }
+
+    /**
+     * Gets a luminance source and binarizer of a particular size, making
+     * them if we don't have them already.
+     */
+    private Region getRegion(int width, int height) {
+        Long key = Long.valueOf(((long)width << 32) | height);
+
+        Region region = regions.get(key);
+        if(null == region) {
+            region = new Region(width, height);
+
+            regions.put(key, region);
+        }
+
+        return region;
+    }
+
+    /**
+     * Moves a result's points from a (possibly scaled) region to the frame
+     * it came from.
+     */
+    static Result toFrameCoordinates(Result result, int left, int top, int scale) {
+        ResultPoint[] points = result.getResultPoints();
+        ResultPoint[] framePoints = null;
+
+        if(null != points) {
+            // The middle of each scaled pixel
+            float offset = (scale - 1) / 2f;
+
+            framePoints = new ResultPoint[points.length];
+            for(int i=0; i<points.length; ++i) {
+                if(null != points[i]) {
+                    framePoints[i] = new ResultPoint(left + points[i].getX() * scale + offset,
+                            top + points[i].getY() * scale + offset);
+                }
+            }
+        }
+
+        Result framed = new Result(result.getText(), result.getRawBytes(), result.getNumBits(),
+                framePoints, result.getBarcodeFormat(), result.getTimestamp());
+        framed.putAllMetadata(result.getResultMetadata());
+
+        return framed;
+    }
+
+    @Override
+    public int getCandidatePoints() {
+        return mostCandidatePoints;
+    }
+
+    @Override
+    public void clearCandidatePoints() {
+        mostCandidatePoints = 0;
+    }
+
+    @Override
+    public void close() {
+        // Nothing native to free
+    }
+
+    /**
+     * A luminance source and its binarizer, for one size of region.
+     */
+    private static final class Region {
+        final FrameLuminanceSource source;
+        final FrameBinarizer binarizer;
+
+        Region(int width, int height) {
+            source = new FrameLuminanceSource(width, height);
+            binarizer = new FrameBinarizer(source);
+        }
+    }
+
+    /**
+     * Counts the possible finder patterns ZXing finds while decoding a
+     * frame, whether or not it manages to decode anything.
+     */
+    private static final class CandidateCounter
+        implements ResultPointCallback
+    {
+        int points;
+
+        @Override
+        public void foundPossibleResultPoint(ResultPoint point) {
+            ++points;
+        }
+    }
+}
@@ -1,23 +1,28 @@
 package com.koibots.scout.hub.ui;
 
-import com.google.zxing.*;
-import com.google.zxing.client.j2se.BufferedImageLuminanceSource;
-import com.google.zxing.common.HybridBinarizer;
+import com.koibots.scout.hub.scan.CameraProbe;
+import com.koibots.scout.hub.scan.DecodeEngine;
+import com.koibots.scout.hub.scan.DecodeStrategy;
+import com.koibots.scout.hub.scan.FrameLogGrabber;
+import com.koibots.scout.hub.scan.FramePacer;
+import com.koibots.scout.hub.scan.RecordingFrameGrabber;
+import com.koibots.scout.hub.scan.ScanPipeline;
+import com.koibots.scout.hub.scan.ScanSession;
+import com.koibots.scout.hub.scan.ScanStatistics;
+import com.koibots.scout.hub.scan.WarmFrameGrabber;
 
 import org.bytedeco.javacv.*;
-import org.bytedeco.javacv.Frame;
 import javax.swing.*;
 import java.awt.*;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.awt.event.KeyEvent;
-import java.awt.geom.AffineTransform;
-import java.awt.image.AffineTransformOp;
-import java.awt.image.BufferedImage;
+import java.io.File;
 import java.io.PrintStream;
-import java.util.ArrayList;
+import java.util.Locale;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 
@@ -29,14 +34,20 @@ import java.util.concurrent.TimeoutException;
  */
 public class CodeScanner {
     /**
-     * The default sleep time, about 30 FPS.
+     * The default mirror mode (mirror = yes).
      */
-    private static final long DEFAULT_SLEEP_MS = 30;
+    private static final boolean DEFAULT_MIRROR = true;
 
     /**
-     * The default mirror mode (mirror = yes).
+     * How often to update the frame rates shown while scanning.
      */
-    private static final boolean DEFAULT_MIRROR = true;
+    private static final int STATS_REFRESH_MILLIS = 500;
+
+    /**
+     * The longest to wait for a camera probe to close the cameras it
+     * opened, before trying to use one anyway.
+     */
+    private static final long CAMERA_PROBE_WAIT_MILLIS = 2 * CameraProbe.DEFAULT_TIMEOUT_MILLIS;
 
     /**
      * Flag to cancel scanning.
@@ -44,9 +55,20 @@ public class CodeScanner {
     private volatile boolean cancelled = false;
 
     /**
-     * The time to sleep between frame captures.
+     * The target capture FPS while a code is in view.
+     */
+    private int captureFramesPerSecond = FramePacer.DEFAULT_FRAMES_PER_SECOND;
+
+    /**
+     * The target capture FPS while nothing is in view.
+     */
+    private int idleFramesPerSecond = FramePacer.DEFAULT_IDLE_FRAMES_PER_SECOND;
+
+    /**
+     * How long to wait for a code to appear before dropping to the idle
+     * FPS.
      */
-    private long sleepMillis = DEFAULT_SLEEP_MS;
+    private long idleAfterMillis = FramePacer.DEFAULT_IDLE_AFTER_MILLIS;
 
     /**
      * The display FPS - distinct from the capture FPS.
@@ -61,7 +83,13 @@ public class CodeScanner {
     /**
      * An array of camera devices we have detected.
      */
-    private String[] cameraDevices;
+    private volatile String[] cameraDevices;
+
+    /**
+     * Completed once every camera opened by the most recent background
+     * probe has been closed again.
+     */
+    private volatile CompletableFuture<Void> cameraProbe = CompletableFuture.completedFuture(null);
 
     /**
      * The parent of any dialogs created by this class.
@@ -79,52 +107,123 @@ public class CodeScanner {
     private boolean mirror = DEFAULT_MIRROR;
 
     /**
-     * Sets the time to sleep between frame captures.
-     *
-     * @param sleep The time to sleep, in milliseconds.
+     * Which library decodes the frames.
      */
-    public void setCaptureSleepMillis(long sleep) {
-        sleepMillis = sleep;
-    }
+    private DecodeEngine decodeEngine = DecodeEngine.ZXING;
 
     /**
-     * Gets the time to sleep between frame captures.
-     *
-     * return The time to sleep, in milliseconds.
+     * Which parts of each frame to decode.
      */
-    public long getCaptureSleepMillis() {
-        return sleepMillis;
-    }
+    private DecodeStrategy.Mode decodeMode = DecodeStrategy.Mode.ADAPTIVE;
+
+    /**
+     * How much to scale frames down for the first decode attempt.
+     */
+    private int decodeScale = DecodeStrategy.DEFAULT_SCALE;
+
+    /**
+     * The fraction of the frame's width and height to decode at full
+     * resolution when looking in the center.
+     */
+    private double decodeCenterFraction = DecodeStrategy.DEFAULT_CENTER_FRACTION;
+
+    /**
+     * How often to decode the whole frame at full resolution.
+     */
+    private int fullFrameInterval = DecodeStrategy.DEFAULT_FULL_FRAME_INTERVAL;
+
+    /**
+     * The number of threads decoding frames while scanning.
+     */
+    private int decodeThreads = ScanPipeline.DEFAULT_DECODE_THREADS;
+
+    /**
+     * How long a code must be out of view before it is scanned again.
+     */
+    private long debounceMillis = ScanSession.DEFAULT_DEBOUNCE_MILLIS;
+
+    /**
+     * A frame log to record the camera to, if any.
+     */
+    private File recordFile;
+
+    /**
+     * Whether to record only the grey levels of each frame.
+     */
+    private boolean recordGrey;
+
+    /**
+     * A frame log to replay instead of using the camera, if any.
+     */
+    private File replayFile;
 
     /**
-     * Sets the FPS for the camera.
+     * Whether to replay frames at the speed they were recorded.
+     */
+    private boolean replayRealTime = true;
+
+    /**
+     * Whether to keep the camera open between scans.
+     */
+    private boolean keepCameraOpen;
+
+    /**
+     * The camera kept open between scans, if any. Guarded by this.
+     */
+    private WarmFrameGrabber warmGrabber;
+
+    /**
+     * The device id of the camera kept open.
+     */
+    private int warmCameraDeviceID;
+
+    /**
+     * Sets the FPS for the camera while a code is in view.
+     *
+     * This is a real target: the time spent grabbing each frame is taken
+     * out of the wait before the next one. The camera may not be able to
+     * go as fast as this, of course.
      *
-     * This is only an estimate, and will simply compute and set the sleep
-     * time. It is not actually a target FPS that will result in a dynamic
-     * computation of sleep time.
+     * @param framesPerSecond The desired number of frames per second for
+     *        the camera.
      *
-     * @param framesPerSecond The desired approximate number of frames per
-     *        second for the camera.
+     * @see FramePacer
      */
     public void setCaptureFramesPerSecond(int framesPerSecond) {
-        // f / s  = 1000 * f / ms
-        //
-        // Sleep delay = 1000 * 1 / framesPerSecond
+        captureFramesPerSecond = framesPerSecond;
+    }
 
-        setCaptureSleepMillis((long)1000 * 1 / framesPerSecond);
+    public int getCaptureFramesPerSecond() {
+        return captureFramesPerSecond;
     }
 
     /**
-     * Gets the FPS for the camera.
+     * Sets the FPS for the camera when no code has been seen for a while,
+     * to save power.
      *
-     * This is only an estimate, and will simply compute the approximate
-     * FPS of the camera given the current sleep time. It is not actually a
-     * target FPS that will result in a dynamic computation of sleep time.
+     * @param framesPerSecond The desired number of frames per second when
+     *        idle.
+     */
+    public void setIdleFramesPerSecond(int framesPerSecond) {
+        idleFramesPerSecond = framesPerSecond;
+    }
+
+    public int getIdleFramesPerSecond() {
+        return idleFramesPerSecond;
+    }
+
+    /**
+     * Sets how long the camera runs at full speed without seeing a code
+     * before dropping to the idle FPS.
      *
-     * @return The approximate number of frames per second for the camera.
+     * @param millis The time, in milliseconds.
      */
-    public int getCaptureFramesPerSecond() {
-        return (int)((double)1000 * 1 / getCaptureSleepMillis());
+    public void setIdleAfterMillis(long millis) {
+        idleAfterMillis = millis;
+    }
+
+    public long getIdleAfterMillis() {
+        return idleAfterMillis;
     }
 
     public void setDisplayFramesPerSecond(int framesPerSecond) {
@@ -182,6 +281,98 @@ public class CodeScanner {
         cameraDevices = null;
     }
 
+    /**
+     * Sets the camera devices, e.g. found in the background or remembered
+     * from last time, so they don't have to be looked for when choosing a
+     * camera.
+     *
+     * @param devices A description of each camera device, in device id
+     *        order.
+     */
+    public void setCameraDevices(String[] devices) {
+        cameraDevices = devices;
+    }
+
+    /**
+     * Gets the camera devices found so far.
+     *
+     * @return A description of each camera device, or <code>null</code> if
+     *         they haven't been looked for.
+     */
+    public String[] getCameraDevices() {
+        return cameraDevices;
+    }
+
+    /**
+     * Loads the camera libraries and looks for cameras in the background,
+     * e.g. at startup, remembering the cameras found.
+     *
+     * Probing opens every camera, so until the probe has closed them all
+     * again, scans wait for it, and {@link #warmUpCamera} does nothing.
+     *
+     * @return The cameras found, once they have been looked for.
+     */
+    public CompletableFuture<String[]> probeCameraDevicesInBackground() {
+        CompletableFuture<Void> released = new CompletableFuture<>();
+        cameraProbe = released;
+
+        CompletableFuture<String[]> probe = new CompletableFuture<>();
+
+        Thread thread = new Thread(() -> {
+            try {
+                long elapsed = System.currentTimeMillis();
+
+                CameraProbe.loadNatives();
+
+                System.out.println("Loaded native libraries in " + (System.currentTimeMillis() - elapsed) + "ms");
+
+                String[] devices = CameraProbe.probe(CameraProbe.DEFAULT_MAX_DEVICES, CameraProbe.DEFAULT_TIMEOUT_MILLIS, released);
+
+                if(devices.length > 0) {
+                    setCameraDevices(devices);
+                }
+
+                probe.complete(devices);
+            } catch (Throwable t) {
+                released.complete(null);
+                probe.completeExceptionally(t);
+            }
+        }, "scanner-warm-up");
+        thread.setDaemon(true);
+        thread.start();
+
+        return probe;
+    }
+
+    /**
+     * Waits for a background probe to close the cameras it opened.
+     *
+     * @return <code>true</code> if the cameras are free, or
+     *         <code>false</code> if a probe may still have one open.
+     */
+    private boolean awaitCameraProbe() {
+        CompletableFuture<Void> probe = cameraProbe;
+
+        if(!probe.isDone()) {
+            System.out.println("Waiting for the camera probe to finish...");
+        }
+
+        try {
+            probe.get(CAMERA_PROBE_WAIT_MILLIS, TimeUnit.MILLISECONDS);
+
+            return true;
+        } catch (TimeoutException te) {
+            return false;
+        } catch (ExecutionException ee) {
+            // We never complete it exceptionally
+            return true;
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+
+            return false;
+        }
+    }
+
     /**
      * Sets the parent Frame for any dialogs shown by this class.
      *
@@ -215,9 +406,92 @@ public class CodeScanner {
      * @param cameraDeviceID The id of the camera device to use for scanning.
      */
     public void setCameraDeviceID(int cameraDeviceID) {
+        if(cameraDeviceID != this.cameraDeviceID) {
+            // The camera kept open is the wrong one now
+            closeWarmCamera();
+        }
+
         this.cameraDeviceID = cameraDeviceID;
     }
 
+    /**
+     * Sets whether to keep the camera open between scans, so that each
+     * scan shows video straight away. The camera's light (if it has one)
+     * stays on.
+     *
+     * @param keepCameraOpen <code>true</code> to keep the camera open once
+     *        it has been {@link #warmUpCamera warmed up}.
+     */
+    public void setKeepCameraOpen(boolean keepCameraOpen) {
+        this.keepCameraOpen = keepCameraOpen;
+
+        if(!keepCameraOpen) {
+            closeWarmCamera();
+        }
+    }
+
+    public boolean getKeepCameraOpen() {
+        return keepCameraOpen;
+    }
+
+    /**
+     * Opens the current camera and keeps it open for the next scan, if
+     * {@link #setKeepCameraOpen keeping the camera open}. Blocks while
+     * the camera starts, and while a background probe finishes with it,
+     * so should not be called on the EDT.
+     *
+     * @throws FrameGrabber.Exception If the camera could not be started.
+     */
+    public void warmUpCamera() throws FrameGrabber.Exception {
+        WarmFrameGrabber grabber;
+        int deviceID;
+
+        synchronized(this) {
+            if(!keepCameraOpen || null != replayFile) {
+                return;
+            }
+
+            deviceID = getCameraDeviceID();
+            if(null == warmGrabber || warmCameraDeviceID != deviceID) {
+                closeWarmCamera();
+
+                warmGrabber = new WarmFrameGrabber(new OpenCVFrameGrabber(deviceID));
+                warmCameraDeviceID = deviceID;
+            }
+
+            grabber = warmGrabber;
+        }
+
+        if(!awaitCameraProbe()) {
+            // Opening it now would fail, or fight the probe for it; the
+            // scan will open it when it needs it
+            System.out.println("Not warming up camera " + deviceID + ": the camera probe may still have it open");
+
+            return;
+        }
+
+        // Not while holding the lock: this can take a while
+        grabber.open();
+
+        System.out.println("Camera " + deviceID + " ready");
+    }
+
+    /**
+     * Closes the camera kept open between scans, if any. If a scan is
+     * using it, it is closed when the scan finishes.
+     */
+    public synchronized void closeWarmCamera() {
+        if(null != warmGrabber) {
+            try {
+                warmGrabber.shutdown();
+            } catch (FrameGrabber.Exception fge) {
+                fge.printStackTrace();
+            }
+
+            warmGrabber = null;
+        }
+    }
+
     public void setMirror(boolean mirror) {
         this.mirror = mirror;
     }
@@ -226,6 +500,187 @@ public class CodeScanner {
         return mirror;
     }
 
+    /**
+     * Sets the number of threads decoding frames while scanning. Frames
+     * arriving while all of them are busy are skipped.
+     *
+     * @param decodeThreads The number of decode threads.
+     */
+    public void setDecodeThreads(int decodeThreads) {
+        this.decodeThreads = decodeThreads;
+    }
+
+    public int getDecodeThreads() {
+        return decodeThreads;
+    }
+
+    /**
+     * Sets which library decodes the frames.
+     *
+     * @param engine The decode engine.
+     */
+    public void setDecodeEngine(DecodeEngine engine) {
+        decodeEngine = engine;
+    }
+
+    public DecodeEngine getDecodeEngine() {
+        return decodeEngine;
+    }
+
+    /**
+     * Sets which parts of each frame to decode.
+     *
+     * @param mode The decode mode.
+     *
+     * @see DecodeStrategy
+     */
+    public void setDecodeMode(DecodeStrategy.Mode mode) {
+        decodeMode = mode;
+    }
+
+    public DecodeStrategy.Mode getDecodeMode() {
+        return decodeMode;
+    }
+
+    /**
+     * Sets how much to scale frames down for the first decode attempt in
+     * adaptive mode.
+     *
+     * @param scale The scale, e.g. 2 for half the width and height.
+     */
+    public void setDecodeScale(int scale) {
+        decodeScale = scale;
+    }
+
+    public int getDecodeScale() {
+        return decodeScale;
+    }
+
+    /**
+     * Sets the size of the center of the frame decoded at full resolution
+     * in adaptive mode.
+     *
+     * @param fraction The fraction of the frame's width and height.
+     */
+    public void setDecodeCenterFraction(double fraction) {
+        decodeCenterFraction = fraction;
+    }
+
+    public double getDecodeCenterFraction() {
+        return decodeCenterFraction;
+    }
+
+    /**
+     * Sets how often to decode the whole frame at full resolution in
+     * adaptive mode.
+     *
+     * @param interval The number of frames between full-frame decodes.
+     */
+    public void setFullFrameInterval(int interval) {
+        fullFrameInterval = interval;
+    }
+
+    public int getFullFrameInterval() {
+        return fullFrameInterval;
+    }
+
+    /**
+     * Sets how long a code must be out of view before
+     * {@link #scanContinuously} reports it again.
+     *
+     * @param millis The time, in milliseconds.
+     */
+    public void setDebounceMillis(long millis) {
+        debounceMillis = millis;
+    }
+
+    public long getDebounceMillis() {
+        return debounceMillis;
+    }
+
+    /**
+     * Sets a frame log to record the camera's frames to while scanning.
+     * Recording stops when scanning does.
+     *
+     * @param file The file to write, or <code>null</code> not to record.
+     * @param grey <code>true</code> to record only the grey levels of each
+     *        frame, which is smaller.
+     *
+     * @see RecordingFrameGrabber
+     */
+    public void setRecordFile(File file, boolean grey) {
+        recordFile = file;
+        recordGrey = grey;
+    }
+
+    public File getRecordFile() {
+        return recordFile;
+    }
+
+    /**
+     * Sets a frame log to scan instead of the camera. Scanning stops at the
+     * end of the log.
+     *
+     * @param file The file to replay, or <code>null</code> to use the
+     *        camera.
+     * @param realTime <code>true</code> to replay at the speed the frames
+     *        were recorded, <code>false</code> to decode every frame as
+     *        fast as possible.
+     *
+     * @see FrameLogGrabber
+     */
+    public void setReplayFile(File file, boolean realTime) {
+        replayFile = file;
+        replayRealTime = realTime;
+    }
+
+    public File getReplayFile() {
+        return replayFile;
+    }
+
+    /**
+     * Creates the grabber for a scanning session: the camera, or a
+     * recording, and possibly recording either.
+     */
+    private FrameGrabber createGrabber(int cameraDeviceID) {
+        FrameGrabber grabber;
+
+        if(null != replayFile) {
+            FrameLogGrabber replay = new FrameLogGrabber(replayFile);
+            replay.setRealTime(replayRealTime);
+
+            grabber = replay;
+        } else {
+            if(!awaitCameraProbe()) {
+                System.out.println("Camera probe still running; trying camera " + cameraDeviceID + " anyway");
+            }
+
+            grabber = borrowWarmCamera(cameraDeviceID);
+
+            if(null == grabber) {
+                grabber = new OpenCVFrameGrabber(cameraDeviceID);
+            }
+        }
+
+        if(null != recordFile) {
+            grabber = new RecordingFrameGrabber(grabber, recordFile, recordGrey);
+        }
+
+        return grabber;
+    }
+
+    /**
+     * Borrows the camera kept open between scans, if it's the right one and
+     * nobody else has it.
+     */
+    private synchronized FrameGrabber borrowWarmCamera(int cameraDeviceID) {
+        if(null != warmGrabber && warmCameraDeviceID == cameraDeviceID && warmGrabber.lend()) {
+            return warmGrabber;
+        }
+
+        return null;
+    }
+
     /**
      * Utility method to creates a standard dialog.
      */
@@ -277,127 +732,205 @@ public class CodeScanner {
      * @throws FrameGrabber.Exception If the camera could not be opened.
      */
     public String scanCode() throws FrameGrabber.Exception {
-        cancelled = false;
+        CompletableFuture<String> decoded = new CompletableFuture<String>();
 
-        JDialog dialog = createDialog(getParent(), "QR Code Scanner");
+        runSession(decoded::complete, decoded);
 
-        // Show the frame on the EDT
-        SwingUtilities.invokeLater(() -> dialog.setVisible(true));
+        return decoded.getNow(null); // either QR code string or null if cancelled
+    }
 
-        String qrResult = null;
+    /**
+     * Opens a window showing the camera feed and scans QR codes one after
+     * another, keeping the camera open between them. Blocks until the user
+     * cancels.
+     *
+     * Each code is reported once when it comes into view; see
+     * {@link ScanSession}.
+     *
+     * @param listener The listener to receive the codes, which is called
+     *        on a decode thread.
+     *
+     * @throws FrameGrabber.Exception If the camera could not be opened, or
+     *         failed while scanning.
+     */
+    public void scanContinuously(ScanSession.CodeListener listener) throws FrameGrabber.Exception {
+        // Never completes: only cancelling stops the session
+        runSession(listener, new CompletableFuture<Void>());
+    }
 
-        // Grab a reference to the CENTER component -- a JLabel -- so we can
-        // update it
-        JLabel videoLabel = (JLabel)((BorderLayout)dialog.getContentPane().getLayout()).getLayoutComponent(BorderLayout.CENTER);
+    /**
+     * Creates a scanning session for the current camera, configured with
+     * this scanner's settings. The caller must start and close it.
+     *
+     * @return A new session.
+     */
+    public ScanSession createSession() {
+        return createSession(getCameraDeviceID());
+    }
 
-        // Start video capture (this thread blocks)
-        try (OpenCVFrameGrabber grabber = new OpenCVFrameGrabber(getCameraDeviceID());
-             Java2DFrameConverter converter = new Java2DFrameConverter();) {
-            grabber.start();
+    /**
+     * Creates a scanning session for any camera, configured with this
+     * scanner's settings, e.g. for one of several scanning stations. The
+     * caller must start and close it.
+     *
+     * @param cameraDeviceID The id of the camera device to use.
+     *
+     * @return A new session.
+     */
+    public ScanSession createSession(int cameraDeviceID) {
+        ScanSession session = new ScanSession(createGrabber(cameraDeviceID));
+        session.setDebounceMillis(getDebounceMillis());
+
+        ScanPipeline pipeline = session.getPipeline();
+        pipeline.getPacer().setFramesPerSecond(getCaptureFramesPerSecond());
+        pipeline.getPacer().setIdleFramesPerSecond(getIdleFramesPerSecond());
+        pipeline.getPacer().setIdleAfterMillis(getIdleAfterMillis());
+        pipeline.setDisplayFramesPerSecond(getDisplayFramesPerSecond());
+        pipeline.setDecodeThreads(getDecodeThreads());
+        pipeline.setDecodeEngine(getDecodeEngine());
+        pipeline.getDecodeStrategy().setMode(getDecodeMode());
+        pipeline.getDecodeStrategy().setScale(getDecodeScale());
+        pipeline.getDecodeStrategy().setCenterFraction(getDecodeCenterFraction());
+        pipeline.getDecodeStrategy().setFullFrameInterval(getFullFrameInterval());
+        pipeline.setMirror(getMirror());
+
+        if(null != replayFile && !replayRealTime) {
+            // Decode every frame, as fast as we can
+            pipeline.getPacer().setFramesPerSecond(FramePacer.UNLIMITED);
+            pipeline.getPacer().setIdleFramesPerSecond(FramePacer.UNLIMITED);
+            pipeline.setDropFrames(false);
+        } else if(null != recordFile) {
+            // Don't slow down while nothing's in view, so the recording
+            // has every frame the scout would have seen
+            pipeline.getPacer().setIdleFramesPerSecond(getCaptureFramesPerSecond());
+        }
 
-            MultiFormatReader qrReader = new MultiFormatReader();
-            ImageIcon icon = new ImageIcon();
-            SwingUtilities.invokeLater(() -> videoLabel.setIcon(icon));
+        return session;
+    }
 
-            // Try to re-use the same BufferedImage
-            BufferedImage targetImage = null;
-            AffineTransform flipper = null;
-            AffineTransformOp flipperOp = null;
+    /**
+     * Shows the camera feed and runs a scanning session until the user
+     * cancels or <code>done</code> completes.
+     */
+    private void runSession(ScanSession.CodeListener listener, Future<?> done) throws FrameGrabber.Exception {
+        cancelled = false;
 
-            System.out.println("Camera started.");
+        JDialog dialog = createDialog(getParent(), "QR Code Scanner");
 
-            long displayUpdateInterval = (long)1000 * 1 / getDisplayFramesPerSecond();
-            long lastDisplayUpdate = 0;
+        // Grab a reference to the CENTER component -- a JLabel -- so we can
+        // update it
+        JLabel videoLabel = (JLabel)((BorderLayout)dialog.getContentPane().getLayout()).getLayoutComponent(BorderLayout.CENTER);
 
-            // This method goes into a loop fetching and displaying frames,
-            // decoding any QR codes it sees in the process.
-            //
-            // Note that the calling thread is completely blocked until
-            // the operation is complete. This is intentional, so that the
-            // caller's interface is a simple "String code = scanCode()" call.
-            // There are other ways of doing this such as returning a
-            // Future<String> from this method and having the caller
-            // wait on the value.
-            //
-            // The decision about how to structure this depends heavily
-            // upon the caller and the callee (this method) agreeing on
-            // how threading will work. The current implementation allows
-            // the caller to manage threading (other than UI updates)
-            // which is advantageous from the caller's perspective: this
-            // method isn't starting any new threads which may need to be
-            // somehow managed by the caller, etc.
+        JLabel statsLabel = new JLabel(" ", SwingConstants.CENTER);
+        statsLabel.setFont(statsLabel.getFont().deriveFont(Font.PLAIN));
+        dialog.add(statsLabel, BorderLayout.NORTH);
 
-            while (!cancelled && qrResult == null) {
+        // Show the frame on the EDT
+        SwingUtilities.invokeLater(() -> dialog.setVisible(true));
 
-                Frame frameGrab = grabber.grab();
-                if (frameGrab == null) continue;
+        Timer statsTimer = null;
 
-                BufferedImage img = converter.getBufferedImage(frameGrab);
-                if (img != null) {
+        // This method starts a session which fetches and displays frames
+        // on its own threads, decoding any QR codes it sees in the process,
+        // and waits until it is done.
+        //
+        // Note that the calling thread is completely blocked until
+        // the operation is complete. This is intentional, so that the
+        // caller's interface is a simple "String code = scanCode()" call.
+        // There are other ways of doing this such as returning a
+        // Future<String> from this method and having the caller
+        // wait on the value.
+        //
+        // The decision about how to structure this depends heavily
+        // upon the caller and the callee (this method) agreeing on
+        // how threading will work. The session's threads all stop
+        // before this method returns, so the caller still doesn't have
+        // any new threads to manage.
+        try (ScanSession session = createSession()) {
+            ImageIcon icon = new ImageIcon();
 
-                    long now = System.currentTimeMillis();
-                    if(now - lastDisplayUpdate >= displayUpdateInterval) {
-                        // Update the GUI at displayUpdateInterval and maybe not
-                        // every single time through the loop
+            session.getPipeline().setDisplayListener(image -> {
+                // Update video in Swing safely
+                SwingUtilities.invokeLater(() -> {
+                    icon.setImage(image);
+                    videoLabel.repaint();
+                });
+            });
+            session.addCodeListener(listener);
 
-                        // Final for use in the lambda
-                        final BufferedImage displayImage;
+            // Start video capture
+            session.start();
 
-                        if(getMirror()) {
-                            if(null == targetImage
-                               || targetImage.getWidth() != img.getWidth()
-                               || targetImage.getHeight() != img.getHeight()
-                               || targetImage.getType() != img.getType()) {
-                                System.out.println("Creating target image with size=" + img.getWidth() + "x" + img.getHeight() + " and type=" + img.getType());
-                                targetImage = new BufferedImage(img.getWidth(), img.getHeight(), img.getType());
+            SwingUtilities.invokeLater(() -> videoLabel.setIcon(icon));
 
-                                flipper = AffineTransform.getScaleInstance(-1, 1); // flip horizontally
-                                flipper.translate(-img.getWidth(), 0); // move back into view
+            System.out.println("Camera started.");
 
-                                flipperOp = new AffineTransformOp(flipper, AffineTransformOp.TYPE_NEAREST_NEIGHBOR);
-                            }
+            statsTimer = new Timer(STATS_REFRESH_MILLIS, e -> statsLabel.setText(formatStatistics(session)));
+            statsTimer.start();
 
-                            displayImage = flipperOp.filter(img, targetImage);
-                        } else {
-                            displayImage = img;
-                        }
+            while (!cancelled && !done.isDone() && session.isRunning()) {
+                try {
+                    done.get(100, TimeUnit.MILLISECONDS);
+                } catch (TimeoutException te) {
+                    // Keep waiting
+                } catch (ExecutionException ee) {
+                    // We never complete the future exceptionally
+                    throw new IllegalStateException(ee);
+                } catch (InterruptedException ie) {
+                    cancelled = true;
+                }
+            }
 
-                        lastDisplayUpdate = now;
-                        // Update video in Swing safely
-                        SwingUtilities.invokeLater(() -> {
-                            icon.setImage(displayImage);
-                            videoLabel.repaint();
-                        });
-                    }
+            // Stops the pipeline, then the camera
+            session.close();
 
+            System.out.println("Scanner statistics: " + session.getStatistics());
+            System.out.println("Decode strategy: " + session.getPipeline().getDecodeStrategy());
+            System.out.println("Codes accepted: " + session.getCodesAccepted() + ", repeats ignored: " + session.getCodesSuppressed());
 
-                    // Try decoding QR code
-                    LuminanceSource source = new BufferedImageLuminanceSource(img); // Use original
-                    BinaryBitmap bitmap = new BinaryBitmap(new HybridBinarizer(source));
-                    try {
-                        Result result = qrReader.decode(bitmap);
-                        qrResult = result.getText();
-                        cancelled = true; // stop loop
-                    } catch (NotFoundException ignored) {
-                        // no QR code in this frame
-                    }
-                }
+            if(!done.isDone() && null != session.getFailure()) {
+                Exception failure = session.getFailure();
 
-                // Small sleep to reduce CPU usage
-                try {
-                    Thread.sleep(getCaptureSleepMillis());
-                } catch (InterruptedException e) {
-                    cancelled = true;
+                if(failure instanceof FrameGrabber.Exception) {
+                    throw (FrameGrabber.Exception)failure;
+                } else {
+                    throw new FrameGrabber.Exception("Camera failed", failure);
                 }
             }
-
-            grabber.stop();
         } finally {
+            if(null != statsTimer) {
+                statsTimer.stop();
+            }
+
             // Close the frame safely
             SwingUtilities.invokeLater(dialog::dispose);
         }
+    }
+
+    /**
+     * Describes how a session is doing: frame rates, decode time, and the
+     * number of codes scanned.
+     *
+     * @param session The session.
+     *
+     * @return A one-line summary.
+     */
+    public static String formatStatistics(ScanSession session) {
+        ScanStatistics statistics = session.getStatistics();
+        FramePacer pacer = session.getPipeline().getPacer();
+
+        String text = String.format("Camera %.0f fps%s \u00b7 decoding %.0f fps \u00b7 decode %.0f ms",
+                statistics.getCaptureFramesPerSecond(),
+                pacer.isIdle() ? " (idle)" : "",
+                statistics.getDecodeFramesPerSecond(),
+                statistics.getDecodeLatency().getValueAtPercentile(50) / 1000.0);
+
+        long accepted = session.getCodesAccepted();
+        if(accepted > 0) {
+            text += " \u00b7 " + accepted + " scanned";
+        }
 
-        return qrResult; // either QR code string or null if cancelled
+        return text;
     }
 
     private static void listCameras() {
@@ -476,36 +1009,22 @@ public class CodeScanner {
     public String[] probeDevices(JLabel status) {
         SwingUtilities.invokeLater(() -> status.setText("Enumerating cameras by probing..."));
 
-        ArrayList<String> devices = new ArrayList<String>();
-        for (int i = 0; i < 10; i++) {
-            if(cancelled) {
-                return null;
-            }
-            try (OpenCVFrameGrabber grabber = new OpenCVFrameGrabber(i)) {
-                grabber.start();
-
-                String deviceName = "Camera " + i + " (" + grabber.getImageWidth() + "x" + grabber.getImageHeight() + ")";
-                SwingUtilities.invokeLater(() -> status.setText("Discovered " + deviceName));
-
-                devices.add(deviceName);
-
-                grabber.stop();
-            } catch (FrameGrabber.Exception fge) {
-                // No more devices
-                System.out.println("No device at index " + i + "; stopping");
-
-                break;
-            }
-        }
+        // Try every device at once, rather than waiting for each in turn
+        String[] devices = CameraProbe.probe(CameraProbe.DEFAULT_MAX_DEVICES, CameraProbe.DEFAULT_TIMEOUT_MILLIS);
 
-        if(devices.isEmpty()) {
+        if(cancelled || 0 == devices.length) {
             return null;
         } else {
-            return devices.toArray(new String[0]);
+            SwingUtilities.invokeLater(() -> status.setText("Discovered " + devices.length + " camera(s)"));
+
+            return devices;
         }
     }
 
     private String[] getDeviceList(JLabel status) {
+        // A probe in the background will have looked already
+        awaitCameraProbe();
+
         // Don't re-enumerate if we've already looked
         if(null != cameraDevices) {
             return cameraDevices;
@@ -677,20 +1196,72 @@ public class CodeScanner {
         }
     }
 
+    /**
+     * Scans without showing anything, printing each code, until the frames
+     * run out (e.g. at the end of a replay) or the time is up.
+     */
+    private static void scanHeadless(CodeScanner scanner, long durationSeconds) throws Exception {
+        try (ScanSession session = scanner.createSession()) {
+            session.addCodeListener(text -> System.out.println("QR code string data: " + text));
+
+            long start = System.nanoTime();
+            long deadline = start + TimeUnit.SECONDS.toNanos(durationSeconds);
+
+            session.start();
+
+            while(session.isRunning() && (durationSeconds <= 0 || System.nanoTime() < deadline)) {
+                Thread.sleep(100);
+            }
+
+            long elapsed = System.nanoTime() - start;
+
+            session.close();
+
+            ScanStatistics statistics = session.getStatistics();
+            System.out.println("Scanner statistics: " + statistics);
+            System.out.println("Decode strategy: " + session.getPipeline().getDecodeStrategy());
+            System.out.println(String.format(Locale.ROOT, "Decoded %d frames in %.1f s (%.1f fps); %d codes accepted",
+                    statistics.getFramesDecoded(),
+                    elapsed / 1e9,
+                    statistics.getFramesDecoded() * 1e9 / elapsed,
+                    session.getCodesAccepted()));
+
+            if(null != session.getFailure()) {
+                throw session.getFailure();
+            }
+        }
+    }
+
     private static void usage(PrintStream out) {
         out.println("Usage: " + CodeScanner.class.getName() + " [options]");
         out.println();
         out.println("Options:");
         out.println();
-        out.println("   --list        List the available cameras.");
-        out.println("   --probe       Probe for cameras. (Use if --list doesn't work.)");
-        out.println("   --choose      Run the GUI camera-chooser.");
-        out.println("   --test        Run the QR scanner.");
-        out.println("   --device id   Specify the camera device to use for --test");
-        out.println("   --fps FPS     Sets the camera frames per second. No more than 1000. (default 33)");
-        out.println("   --dfps FPS    Sets the display bframes per second. No more than 1000. (default 33)");
-        out.println("   --mirror      Enable mirroring. (default:" + DEFAULT_MIRROR + ")");
-        out.println("   --no-mirror   Disable mirroring. (default:" + !DEFAULT_MIRROR + ")");
+        out.println("   --list            List the available cameras.");
+        out.println("   --probe           Probe for cameras. (Use if --list doesn't work.)");
+        out.println("   --choose          Run the GUI camera-chooser.");
+        out.println("   --test            Run the QR scanner.");
+        out.println("   --continuous      Keep scanning codes with --test until cancelled.");
+        out.println("   --headless        Run --test without a window, printing each code, until the frames run out.");
+        out.println("   --duration s      Stop --headless after this many seconds.");
+        out.println("   --record file     Record the frames scanned by --test to a frame log.");
+        out.println("   --record-grey     Record only the grey levels, in a third of the space.");
+        out.println("   --replay file     Scan a frame log instead of the camera.");
+        out.println("   --replay-speed s  Replay in realtime, or at max speed decoding every frame. (default realtime)");
+        out.println("   --device id       Specify the camera device to use for --test");
+        out.println("   --fps FPS         Sets the camera frames per second. No more than 1000. (default " + FramePacer.DEFAULT_FRAMES_PER_SECOND + ")");
+        out.println("   --idle-fps FPS    Sets the camera frames per second when no code is in view. (default " + FramePacer.DEFAULT_IDLE_FRAMES_PER_SECOND + ")");
+        out.println("   --idle-after ms   Sets how long without a code before slowing down. (default " + FramePacer.DEFAULT_IDLE_AFTER_MILLIS + ")");
+        out.println("   --dfps FPS        Sets the display bframes per second. No more than 1000. (default 33)");
+        out.println("   --decoders N      Sets the number of decode threads. (default " + ScanPipeline.DEFAULT_DECODE_THREADS + ")");
+        out.println("   --engine name     Sets the library which decodes frames: zxing or opencv. (default zxing)");
+        out.println("   --strategy mode   Sets which parts of each frame to decode: adaptive or full. (default adaptive)");
+        out.println("   --scale N         Sets how much adaptive decoding scales frames down first. (default " + DecodeStrategy.DEFAULT_SCALE + ")");
+        out.println("   --center fraction Sets the size of the center adaptive decoding tries. (default " + DecodeStrategy.DEFAULT_CENTER_FRACTION + ")");
+        out.println("   --full-every N    Sets how often adaptive decoding tries the whole frame. (default " + DecodeStrategy.DEFAULT_FULL_FRAME_INTERVAL + ")");
+        out.println("   --debounce ms     Sets how long a code must be out of view to scan it again. (default " + ScanSession.DEFAULT_DEBOUNCE_MILLIS + ")");
+        out.println("   --mirror          Enable mirroring. (default:" + DEFAULT_MIRROR + ")");
+        out.println("   --no-mirror       Disable mirroring. (default:" + !DEFAULT_MIRROR + ")");
     }
 
     private enum Operation {
@@ -701,9 +1272,25 @@ public class CodeScanner {
         int argindex = 0;
         int deviceId = 0;
         Operation operation = null;
-        int fps = 33;
+        int fps = FramePacer.DEFAULT_FRAMES_PER_SECOND;
+        int idleFps = FramePacer.DEFAULT_IDLE_FRAMES_PER_SECOND;
+        long idleAfter = FramePacer.DEFAULT_IDLE_AFTER_MILLIS;
         int dfps = 33;
         boolean mirror = DEFAULT_MIRROR;
+        int decoders = ScanPipeline.DEFAULT_DECODE_THREADS;
+        DecodeEngine engine = DecodeEngine.ZXING;
+        DecodeStrategy.Mode strategy = DecodeStrategy.Mode.ADAPTIVE;
+        int scale = DecodeStrategy.DEFAULT_SCALE;
+        double center = DecodeStrategy.DEFAULT_CENTER_FRACTION;
+        int fullEvery = DecodeStrategy.DEFAULT_FULL_FRAME_INTERVAL;
+        long debounce = ScanSession.DEFAULT_DEBOUNCE_MILLIS;
+        boolean continuous = false;
+        boolean headless = false;
+        long duration = 0;
+        File recordFile = null;
+        boolean recordGrey = false;
+        File replayFile = null;
+        boolean replayRealTime = true;
 
         while(argindex < args.length) {
             String arg = args[argindex++];
@@ -720,8 +1307,51 @@ public class CodeScanner {
                 operation = Operation.test;
             } else if("--fps".equals(arg)) {
                 fps = Integer.parseInt(args[argindex++]);
+            } else if("--idle-fps".equals(arg)) {
+                idleFps = Integer.parseInt(args[argindex++]);
+            } else if("--idle-after".equals(arg)) {
+                idleAfter = Long.parseLong(args[argindex++]);
             } else if("--dfps".equals(arg)) {
                 dfps = Integer.parseInt(args[argindex++]);
+            } else if("--decoders".equals(arg)) {
+                decoders = Integer.parseInt(args[argindex++]);
+            } else if("--engine".equals(arg)) {
+                engine = DecodeEngine.valueOf(args[argindex++].toUpperCase(Locale.ROOT));
+            } else if("--strategy".equals(arg)) {
+                strategy = DecodeStrategy.Mode.valueOf(args[argindex++].toUpperCase(Locale.ROOT));
+            } else if("--scale".equals(arg)) {
+                scale = Integer.parseInt(args[argindex++]);
+            } else if("--center".equals(arg)) {
+                center = Double.parseDouble(args[argindex++]);
+            } else if("--full-every".equals(arg)) {
+                fullEvery = Integer.parseInt(args[argindex++]);
+            } else if("--debounce".equals(arg)) {
+                debounce = Long.parseLong(args[argindex++]);
+            } else if("--continuous".equals(arg)) {
+                continuous = true;
+            } else if("--headless".equals(arg)) {
+                headless = true;
+            } else if("--duration".equals(arg)) {
+                duration = Long.parseLong(args[argindex++]);
+            } else if("--record".equals(arg)) {
+                recordFile = new File(args[argindex++]);
+            } else if("--record-grey".equals(arg)) {
+                recordGrey = true;
+            } else if("--replay".equals(arg)) {
+                replayFile = new File(args[argindex++]);
+            } else if("--replay-speed".equals(arg)) {
+                String speed = args[argindex++];
+                if("realtime".equals(speed)) {
+                    replayRealTime = true;
+                } else if("max".equals(speed)) {
+                    replayRealTime = false;
+                } else {
+                    System.err.println("Unrecognized replay speed: " + speed);
+
+                    usage(System.err);
+
+                    System.exit(1);
+                }
             } else if("--mirror".equals(arg)) {
                 mirror = true;
             } else if("--no-mirror".equals(arg)) {
@@ -770,8 +1400,31 @@ public class CodeScanner {
             scanner = new CodeScanner();
             scanner.setCameraDeviceID(deviceId);
             scanner.setCaptureFramesPerSecond(fps);
+            scanner.setIdleFramesPerSecond(idleFps);
+            scanner.setIdleAfterMillis(idleAfter);
             scanner.setDisplayFramesPerSecond(dfps);
             scanner.setMirror(mirror);
+            scanner.setDecodeThreads(decoders);
+            scanner.setDecodeEngine(engine);
+            scanner.setDecodeMode(strategy);
+            scanner.setDecodeScale(scale);
+            scanner.setDecodeCenterFraction(center);
+            scanner.setFullFrameInterval(fullEvery);
+            scanner.setDebounceMillis(debounce);
+            scanner.setRecordFile(recordFile, recordGrey);
+            scanner.setReplayFile(replayFile, replayRealTime);
+
+            if(headless) {
+                scanHeadless(scanner, duration);
+
+                break;
+            }
+
+            if(continuous) {
+                scanner.scanContinuously(text -> System.out.println("QR code string data: " + text));
+
+                break;
+            }
 
             String qr = scanner.scanCode();
 
@@ -0,0 +1,207 @@
+package com.koibots.scout.hub.ui;
+
+import java.awt.Component;
+import java.awt.Font;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.swing.BorderFactory;
+import javax.swing.BoxLayout;
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
+
+import org.bytedeco.javacv.FrameGrabber;
+
+import com.koibots.scout.hub.scan.ScanSession;
+
+/**
+ * Runs several scanning stations at once, one for each camera, and shows
+ * how each of them is doing.
+ *
+ * Each station is a {@link ScanSession} with its own capture and decode
+ * threads, so a slow or busy camera doesn't hold up the others. All of the
+ * stations report their codes to the same listener, which should expect
+ * to be called from several threads at once, and to get the same code from
+ * more than one station (e.g. an
+ * {@link com.koibots.scout.hub.IngestQueue#submitIfNew IngestQueue}).
+ */
+public class ScanStationsPanel
+    extends JPanel
+{
+    private static final long serialVersionUID = -4127381640275094471L;
+
+    private static final int REFRESH_MILLIS = 500;
+
+    private final CodeScanner scanner;
+    private final Timer _timer;
+
+    /**
+     * The running stations. Replaced, never modified, while synchronized
+     * on this panel.
+     */
+    private volatile List<Station> stations = new ArrayList<>();
+
+    /**
+     * Creates a new ScanStationsPanel.
+     *
+     * @param scanner The scanner whose settings the stations use.
+     */
+    public ScanStationsPanel(CodeScanner scanner) {
+        this.scanner = scanner;
+
+        setLayout(new BoxLayout(this, BoxLayout.Y_AXIS));
+        setBorder(BorderFactory.createEmptyBorder(0, 20, 20, 20));
+        setAlignmentX(Component.CENTER_ALIGNMENT);
+
+        _timer = new Timer(REFRESH_MILLIS, e -> refresh());
+    }
+
+    /**
+     * Starts a station for each camera. The cameras are started at the
+     * same time, since each can take a second or two.
+     *
+     * Blocks until the cameras have started, so should not be called on
+     * the EDT. A camera which fails to start is shown as failed, and the
+     * others keep going.
+     *
+     * @param cameraDeviceIDs The cameras to use.
+     * @param listener The listener to receive every station's codes.
+     *
+     * @return The number of stations which started.
+     *
+     * @throws IllegalStateException If the stations are already running.
+     */
+    public synchronized int start(int[] cameraDeviceIDs, ScanSession.CodeListener listener) {
+        if(isRunning()) {
+            throw new IllegalStateException("Scanning stations already started");
+        }
+
+        List<Station> starting = new ArrayList<>();
+        List<Thread> starters = new ArrayList<>();
+        for(int cameraDeviceID : cameraDeviceIDs) {
+            Station station = new Station(cameraDeviceID, scanner.createSession(cameraDeviceID));
+            station.session.addCodeListener(listener);
+            starting.add(station);
+
+            Thread starter = new Thread(station::start, "station-start-" + cameraDeviceID);
+            starter.start();
+            starters.add(starter);
+        }
+
+        for(Thread starter : starters) {
+            try {
+                starter.join();
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        stations = starting;
+
+        int started = 0;
+        for(Station station : starting) {
+            if(null == station.startFailure) {
+                ++started;
+            }
+        }
+
+        SwingUtilities.invokeLater(() -> {
+            removeAll();
+            for(Station station : starting) {
+                add(station._label);
+            }
+            refresh();
+            revalidate();
+            repaint();
+
+            _timer.start();
+        });
+
+        return started;
+    }
+
+    /**
+     * Stops every station and releases its camera.
+     */
+    public synchronized void stop() {
+        List<Station> stopping = stations;
+        stations = new ArrayList<>();
+
+        for(Station station : stopping) {
+            station.session.close();
+
+            System.out.println("Camera " + station.cameraDeviceID + " statistics: " + station.session.getStatistics());
+            System.out.println("Camera " + station.cameraDeviceID + " codes accepted: " + station.session.getCodesAccepted()
+                    + ", repeats ignored: " + station.session.getCodesSuppressed());
+        }
+
+        SwingUtilities.invokeLater(() -> {
+            _timer.stop();
+
+            removeAll();
+            revalidate();
+            repaint();
+        });
+    }
+
+    /**
+     * Checks whether the stations have been started, and not stopped.
+     *
+     * @return <code>true</code> if the stations are running.
+     */
+    public boolean isRunning() {
+        return !stations.isEmpty();
+    }
+
+    private void refresh() {
+        for(Station station : stations) {
+            station._label.setText(station.describe());
+        }
+    }
+
+    /**
+     * One camera's session, and the label showing its statistics.
+     */
+    private static final class Station {
+        final int cameraDeviceID;
+        final ScanSession session;
+        final JLabel _label;
+
+        volatile FrameGrabber.Exception startFailure;
+
+        Station(int cameraDeviceID, ScanSession session) {
+            this.cameraDeviceID = cameraDeviceID;
+            this.session = session;
+
+            _label = new JLabel("Camera " + cameraDeviceID + ": starting...");
+            _label.setFont(_label.getFont().deriveFont(Font.PLAIN));
+            _label.setAlignmentX(Component.CENTER_ALIGNMENT);
+        }
+
+        void start() {
+            try {
+                session.start();
+            } catch (FrameGrabber.Exception fge) {
+                fge.printStackTrace();
+
+                startFailure = fge;
+            }
+        }
+
+        String describe() {
+            String name = "Camera " + cameraDeviceID + ": ";
+
+            if(null != startFailure) {
+                return name + "failed to start (" + startFailure.getMessage() + ")";
+            } else if(!session.isRunning()) {
+                Exception failure = session.getFailure();
+
+                return name + "stopped" + (null == failure ? "" : " (" + failure.getMessage() + ")");
+            } else {
+                return name + CodeScanner.formatStatistics(session);
+            }
+        }
+    }
+}
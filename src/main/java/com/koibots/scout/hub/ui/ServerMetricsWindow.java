@@ -0,0 +1,152 @@
+package com.koibots.scout.hub.ui;
+
+import java.awt.BorderLayout;
+import java.awt.Dimension;
+import java.awt.Font;
+import java.awt.Window;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.function.Supplier;
+
+import javax.swing.JComponent;
+import javax.swing.JDialog;
+import javax.swing.JScrollPane;
+import javax.swing.JTextArea;
+import javax.swing.KeyStroke;
+import javax.swing.Timer;
+import javax.swing.WindowConstants;
+import javax.swing.border.EmptyBorder;
+
+import com.koibots.scout.hub.LatencyHistogram;
+import com.koibots.scout.hub.ServerMetrics;
+
+/**
+ * Shows the web server's request counts and latencies, refreshed every
+ * second.
+ */
+public class ServerMetricsWindow
+    extends JDialog
+{
+    private static final long serialVersionUID = 6026143527814013309L;
+
+    private static final int REFRESH_MILLIS = 1000;
+
+    /**
+     * The most paths to list, busiest first.
+     */
+    private static final int MAX_PATHS = 15;
+
+    private final Supplier<ServerMetrics.Snapshot> metrics;
+    private final JTextArea _text;
+    private final Timer _timer;
+
+    /**
+     * Creates a new ServerMetricsWindow.
+     *
+     * @param owner The owner of this window.
+     * @param metrics Supplies the current metrics, or <code>null</code> if
+     *        the server is not running.
+     */
+    public ServerMetricsWindow(Window owner, Supplier<ServerMetrics.Snapshot> metrics) {
+        super(owner, "Web Server Statistics");
+
+        this.metrics = metrics;
+
+        setDefaultCloseOperation(WindowConstants.DISPOSE_ON_CLOSE);
+
+        getRootPane().registerKeyboardAction(
+                e -> dispose(),
+                KeyStroke.getKeyStroke("ESCAPE"),
+                JComponent.WHEN_IN_FOCUSED_WINDOW
+        );
+
+        getRootPane().registerKeyboardAction(
+                e -> dispose(),
+                KeyStroke.getKeyStroke("meta W"),
+                JComponent.WHEN_IN_FOCUSED_WINDOW
+        );
+
+        _text = new JTextArea();
+        _text.setEditable(false);
+        _text.setFont(new Font(Font.MONOSPACED, Font.PLAIN, _text.getFont().getSize()));
+        int marginSize = 10;
+        _text.setBorder(new EmptyBorder(marginSize, marginSize, marginSize, marginSize));
+
+        add(new JScrollPane(_text), BorderLayout.CENTER);
+
+        _timer = new Timer(REFRESH_MILLIS, e -> refresh());
+
+        addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowClosed(WindowEvent e) {
+                _timer.stop();
+            }
+        });
+
+        refresh();
+
+        setMinimumSize(new Dimension(300, 200));
+
+        pack();
+
+        setSize(640, 520);
+
+        _timer.start();
+    }
+
+    private void refresh() {
+        ServerMetrics.Snapshot snapshot = metrics.get();
+
+        if(null == snapshot) {
+            _text.setText("The web server is not running.");
+
+            return;
+        }
+
+        StringBuilder text = new StringBuilder();
+
+        text.append(String.format("Up for %,d seconds%n", snapshot.getUptimeMillis() / 1000));
+        text.append(String.format("Connections: %,d open, %,d total%n", snapshot.getActiveConnections(), snapshot.getConnections()));
+        text.append(String.format("Requests:    %,d%n", snapshot.getRequests()));
+        text.append(String.format("Sent:        %,.1f MiB%n", snapshot.getBytesSent() / (1024.0 * 1024.0)));
+
+        text.append(String.format("%nResponses:  "));
+        for(Map.Entry<Integer,Long> entry : snapshot.getStatusCounts().entrySet()) {
+            text.append(String.format(" %d=%,d", entry.getKey(), entry.getValue()));
+        }
+        text.append(String.format("%n%n"));
+
+        text.append(String.format("%-16s %9s %9s %9s %9s %9s%n", "Latency (ms)", "p50", "p90", "p99", "max", "mean"));
+        appendLatency(text, "First byte", snapshot.getTimeToFirstByte());
+        appendLatency(text, "Last byte", snapshot.getTimeToLastByte());
+
+        text.append(String.format("%n%-40s %10s %12s%n", "Path", "Requests", "KiB sent"));
+
+        ArrayList<Map.Entry<String,ServerMetrics.PathStats>> paths = new ArrayList<>(snapshot.getPaths().entrySet());
+        paths.sort((a, b) -> Long.compare(b.getValue().getRequests(), a.getValue().getRequests()));
+
+        for(int i=0; i<paths.size() && i<MAX_PATHS; ++i) {
+            Map.Entry<String,ServerMetrics.PathStats> entry = paths.get(i);
+
+            text.append(String.format("%-40s %,10d %,12.1f%n",
+                    entry.getKey(),
+                    entry.getValue().getRequests(),
+                    entry.getValue().getBytesSent() / 1024.0));
+        }
+
+        _text.setText(text.toString());
+        _text.setCaretPosition(0);
+    }
+
+    private static void appendLatency(StringBuilder text, String name, LatencyHistogram histogram) {
+        text.append(String.format("%-16s %9.2f %9.2f %9.2f %9.2f %9.2f%n",
+                name,
+                histogram.getValueAtPercentile(50) / 1000.0,
+                histogram.getValueAtPercentile(90) / 1000.0,
+                histogram.getValueAtPercentile(99) / 1000.0,
+                histogram.getMax() / 1000.0,
+                histogram.getMean() / 1000.0));
+    }
+}
@@ -0,0 +1,512 @@
+package com.koibots.scout.hub.utils;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A small, bounded pool of JDBC Connections to a single database URL.
+ *
+ * Connections handed-out by this pool are proxies: calling
+ * {@link Connection#close()} returns the physical connection to the pool
+ * rather than closing it. Each physical connection also keeps a small cache
+ * of PreparedStatements keyed by their SQL text, so callers can continue to
+ * use the usual try-with-resources idiom:
+ *
+ * <pre>
+ * try(Connection conn = pool.getConnection();
+ *     PreparedStatement ps = conn.prepareStatement(sql)) {
+ *     ...
+ * }
+ * </pre>
+ *
+ * and both the connection and the compiled statement will be re-used the
+ * next time around.
+ */
+public class ConnectionPool
+    implements AutoCloseable
+{
+    public static final int DEFAULT_MAX_CONNECTIONS = 4;
+    public static final int DEFAULT_WARM_CONNECTIONS = 2;
+    public static final int DEFAULT_STATEMENT_CACHE_SIZE = 32;
+    public static final long DEFAULT_ACQUIRE_TIMEOUT_MILLIS = 30000;
+
+    private final String url;
+    private final int maxConnections;
+    private final int statementCacheSize;
+    private final long acquireTimeoutMillis;
+
+    /**
+     * One permit per connection which may be handed-out.
+     */
+    private final Semaphore permits;
+
+    /**
+     * Physical connections not currently in use. Used as a stack so that
+     * the most-recently-used (warmest) connection is handed-out first.
+     */
+    private final LinkedBlockingDeque<PooledConnection> idle = new LinkedBlockingDeque<>();
+
+    /**
+     * All physical connections, whether idle or in use.
+     */
+    private final Set<PooledConnection> allConnections = ConcurrentHashMap.newKeySet();
+
+    private volatile boolean closed = false;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder waits = new LongAdder();
+    private final LongAdder waitNanos = new LongAdder();
+    private final LongAdder statementHits = new LongAdder();
+    private final LongAdder statementMisses = new LongAdder();
+
+    public ConnectionPool(String url) throws SQLException {
+        this(url, DEFAULT_MAX_CONNECTIONS, DEFAULT_WARM_CONNECTIONS, DEFAULT_STATEMENT_CACHE_SIZE, DEFAULT_ACQUIRE_TIMEOUT_MILLIS);
+    }
+
+    /**
+     * Creates a new connection pool.
+     *
+     * @param url The JDBC URL to connect to.
+     * @param maxConnections The maximum number of connections which may be
+     *        in use at any one time.
+     * @param warmConnections The number of connections to open immediately.
+     * @param statementCacheSize The number of PreparedStatements to cache
+     *        for each connection.
+     * @param acquireTimeoutMillis How long to wait for a connection to become
+     *        available before giving up.
+     *
+     * @throws SQLException If any of the pre-warmed connections could not
+     *         be opened.
+     */
+    public ConnectionPool(String url,
+                          int maxConnections,
+                          int warmConnections,
+                          int statementCacheSize,
+                          long acquireTimeoutMillis)
+        throws SQLException
+    {
+        if(maxConnections < 1) {
+            throw new IllegalArgumentException("maxConnections must be positive: " + maxConnections);
+        }
+
+        this.url = url;
+        this.maxConnections = maxConnections;
+        this.statementCacheSize = statementCacheSize;
+        this.acquireTimeoutMillis = acquireTimeoutMillis;
+        this.permits = new Semaphore(maxConnections, true);
+
+        try {
+            for(int i=0; i<Math.min(warmConnections, maxConnections); ++i) {
+                idle.offerLast(open());
+            }
+        } catch (SQLException sqle) {
+            close();
+
+            throw sqle;
+        }
+    }
+
+    /**
+     * Gets the JDBC URL for this pool's connections.
+     *
+     * @return The JDBC URL for this pool's connections.
+     */
+    public String getURL() {
+        return url;
+    }
+
+    /**
+     * Gets a Connection from the pool, waiting if all connections are
+     * in use.
+     *
+     * The caller must close the Connection to return it to the pool.
+     *
+     * @return A Connection to the database.
+     *
+     * @throws SQLException If the pool is closed, a connection could not be
+     *         opened, or no connection became available in time.
+     */
+    public Connection getConnection() throws SQLException {
+        if(closed) {
+            throw new SQLException("Connection pool is closed");
+        }
+
+        if(!permits.tryAcquire()) {
+            waits.increment();
+
+            long start = System.nanoTime();
+            try {
+                if(!permits.tryAcquire(acquireTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                    throw new SQLException("Timed out waiting for a database connection after " + acquireTimeoutMillis + "ms");
+                }
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+
+                throw new SQLException("Interrupted while waiting for a database connection", ie);
+            } finally {
+                waitNanos.add(System.nanoTime() - start);
+            }
+        }
+
+        try {
+            PooledConnection pc = idle.pollFirst();
+
+            if(null == pc) {
+                misses.increment();
+
+                pc = open();
+            } else {
+                hits.increment();
+            }
+
+            return pc.lease();
+        } catch (SQLException | RuntimeException | Error e) {
+            permits.release();
+
+            throw e;
+        }
+    }
+
+    private PooledConnection open() throws SQLException {
+        PooledConnection pc = new PooledConnection(DriverManager.getConnection(url));
+
+        allConnections.add(pc);
+
+        return pc;
+    }
+
+    private void release(PooledConnection pc) {
+        try {
+            if(closed || pc.connection.isClosed()) {
+                discard(pc);
+            } else {
+                // Put the connection back the way we found it
+                if(!pc.connection.getAutoCommit()) {
+                    pc.connection.rollback();
+                    pc.connection.setAutoCommit(true);
+                }
+                if(pc.connection.isReadOnly()) {
+                    pc.connection.setReadOnly(false);
+                }
+
+                idle.offerFirst(pc);
+            }
+        } catch (SQLException sqle) {
+            // This connection is suspect; don't re-use it
+            sqle.printStackTrace();
+
+            discard(pc);
+        } finally {
+            permits.release();
+        }
+    }
+
+    private void discard(PooledConnection pc) {
+        allConnections.remove(pc);
+
+        pc.closePhysical();
+    }
+
+    /**
+     * Closes all connections in the pool.
+     *
+     * Connections currently in use will be closed when they are returned.
+     */
+    @Override
+    public void close() {
+        closed = true;
+
+        PooledConnection pc;
+        while(null != (pc = idle.pollFirst())) {
+            discard(pc);
+        }
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Gets a snapshot of this pool's usage statistics.
+     *
+     * @return A snapshot of this pool's usage statistics.
+     */
+    public Statistics getStatistics() {
+        return new Statistics(maxConnections,
+                allConnections.size(),
+                idle.size(),
+                hits.sum(),
+                misses.sum(),
+                waits.sum(),
+                TimeUnit.NANOSECONDS.toMillis(waitNanos.sum()),
+                statementHits.sum(),
+                statementMisses.sum());
+    }
+
+    /**
+     * An immutable snapshot of connection pool statistics.
+     */
+    public static class Statistics {
+        private final int maxConnections;
+        private final int openConnections;
+        private final int idleConnections;
+        private final long hits;
+        private final long misses;
+        private final long waits;
+        private final long waitMillis;
+        private final long statementHits;
+        private final long statementMisses;
+
+        Statistics(int maxConnections, int openConnections, int idleConnections,
+                   long hits, long misses, long waits, long waitMillis,
+                   long statementHits, long statementMisses) {
+            this.maxConnections = maxConnections;
+            this.openConnections = openConnections;
+            this.idleConnections = idleConnections;
+            this.hits = hits;
+            this.misses = misses;
+            this.waits = waits;
+            this.waitMillis = waitMillis;
+            this.statementHits = statementHits;
+            this.statementMisses = statementMisses;
+        }
+
+        public int getMaxConnections() {
+            return maxConnections;
+        }
+
+        public int getOpenConnections() {
+            return openConnections;
+        }
+
+        public int getIdleConnections() {
+            return idleConnections;
+        }
+
+        /**
+         * The number of times an idle connection was re-used.
+         */
+        public long getHits() {
+            return hits;
+        }
+
+        /**
+         * The number of times a new physical connection had to be opened.
+         */
+        public long getMisses() {
+            return misses;
+        }
+
+        /**
+         * The number of times a caller had to wait for a connection.
+         */
+        public long getWaits() {
+            return waits;
+        }
+
+        /**
+         * The total time callers have spent waiting for a connection.
+         */
+        public long getWaitMillis() {
+            return waitMillis;
+        }
+
+        public long getStatementHits() {
+            return statementHits;
+        }
+
+        public long getStatementMisses() {
+            return statementMisses;
+        }
+
+        @Override
+        public String toString() {
+            return "ConnectionPool.Statistics { max=" + maxConnections
+                    + ", open=" + openConnections
+                    + ", idle=" + idleConnections
+                    + ", hits=" + hits
+                    + ", misses=" + misses
+                    + ", waits=" + waits
+                    + ", waitMillis=" + waitMillis
+                    + ", statementHits=" + statementHits
+                    + ", statementMisses=" + statementMisses
+                    + " }";
+        }
+    }
+
+    /**
+     * A physical connection plus its statement cache.
+     */
+    private class PooledConnection {
+        private final Connection connection;
+        private final Map<String,PreparedStatement> statements;
+
+        PooledConnection(Connection connection) {
+            this.connection = connection;
+
+            // Access-ordered so the least-recently-used statement is evicted
+            this.statements = new LinkedHashMap<String,PreparedStatement>(16, 0.75f, true) {
+                private static final long serialVersionUID = -2430128316373532398L;
+
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String,PreparedStatement> eldest) {
+                    if(size() > statementCacheSize) {
+                        closeQuietly(eldest.getValue());
+
+                        return true;
+                    }
+
+                    return false;
+                }
+            };
+        }
+
+        /**
+         * Hands this connection out to a caller, wrapped in a proxy which
+         * returns the connection to the pool when closed.
+         */
+        Connection lease() {
+            return (Connection)Proxy.newProxyInstance(ConnectionPool.class.getClassLoader(),
+                    new Class<?>[] { Connection.class },
+                    new ConnectionHandler(this));
+        }
+
+        PreparedStatement prepareStatement(String sql) throws SQLException {
+            PreparedStatement ps = statements.get(sql);
+
+            if(null == ps || ps.isClosed()) {
+                statementMisses.increment();
+
+                ps = connection.prepareStatement(sql);
+
+                if(statementCacheSize > 0) {
+                    statements.put(sql, ps);
+                } else {
+                    return ps;
+                }
+            } else {
+                statementHits.increment();
+            }
+
+            return (PreparedStatement)Proxy.newProxyInstance(ConnectionPool.class.getClassLoader(),
+                    new Class<?>[] { PreparedStatement.class },
+                    new StatementHandler(ps));
+        }
+
+        void closePhysical() {
+            for(Iterator<PreparedStatement> i = statements.values().iterator(); i.hasNext(); ) {
+                closeQuietly(i.next());
+                i.remove();
+            }
+
+            try {
+                connection.close();
+            } catch (SQLException sqle) {
+                sqle.printStackTrace();
+            }
+        }
+    }
+
+    private static void closeQuietly(PreparedStatement ps) {
+        try {
+            ps.close();
+        } catch (SQLException sqle) {
+            sqle.printStackTrace();
+        }
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException ite) {
+            throw ite.getCause();
+        }
+    }
+
+    /**
+     * Intercepts close() and prepareStatement(String) for a leased connection.
+     */
+    private class ConnectionHandler implements InvocationHandler {
+        private final PooledConnection pc;
+        private boolean released = false;
+
+        ConnectionHandler(PooledConnection pc) {
+            this.pc = pc;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+
+            if("close".equals(name) && null == args) {
+                if(!released) {
+                    released = true;
+
+                    release(pc);
+                }
+
+                return null;
+            } else if("isClosed".equals(name) && null == args) {
+                return released || pc.connection.isClosed();
+            } else if(released) {
+                throw new SQLException("Connection has been returned to the pool");
+            } else if("prepareStatement".equals(name) && null != args && 1 == args.length) {
+                return pc.prepareStatement((String)args[0]);
+            } else if("equals".equals(name)) {
+                return proxy == args[0];
+            } else if("hashCode".equals(name)) {
+                return System.identityHashCode(proxy);
+            } else {
+                return ConnectionPool.invoke(pc.connection, method, args);
+            }
+        }
+    }
+
+    /**
+     * Intercepts close() for a cached PreparedStatement, resetting the
+     * statement instead of closing it.
+     */
+    private static class StatementHandler implements InvocationHandler {
+        private final PreparedStatement ps;
+
+        StatementHandler(PreparedStatement ps) {
+            this.ps = ps;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+
+            if("close".equals(name) && null == args) {
+                ps.clearParameters();
+                ps.clearBatch();
+                ps.clearWarnings();
+                ps.setMaxRows(0);
+
+                return null;
+            } else if("equals".equals(name)) {
+                return proxy == args[0];
+            } else if("hashCode".equals(name)) {
+                return System.identityHashCode(proxy);
+            } else {
+                return ConnectionPool.invoke(ps, method, args);
+            }
+        }
+    }
+}